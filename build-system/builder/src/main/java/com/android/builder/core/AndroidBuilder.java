@@ -473,6 +473,7 @@ public class AndroidBuilder {
                             .addNavigationFiles(navigationFiles)
                             .withFeatures(optionalFeatures.toArray(new Invoker.Feature[0]))
                             .setMergeReportFile(reportFile)
+                            .withFeatures(Invoker.Feature.CACHE_LIBRARY_MANIFESTS)
                             .setFeatureName(featureName);
 
             if (mergeType == ManifestMerger2.MergeType.APPLICATION) {
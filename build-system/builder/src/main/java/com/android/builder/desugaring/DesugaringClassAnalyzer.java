@@ -20,6 +20,7 @@ import static com.android.utils.PathUtils.toSystemIndependentPath;
 
 import com.android.SdkConstants;
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import com.android.builder.dexing.ClassFileInput;
 import com.android.builder.utils.ZipEntryUtils;
 import com.google.common.annotations.VisibleForTesting;
@@ -61,13 +62,27 @@ public class DesugaringClassAnalyzer {
 
     @NonNull
     public static List<DesugaringData> analyze(@NonNull Path path) throws IOException {
+        return analyze(path, null);
+    }
+
+    /**
+     * Analyzes the given path, reusing the data in {@code cache} for the .jar and .class files
+     * whose content did not change since they were last analyzed.
+     */
+    @NonNull
+    public static List<DesugaringData> analyze(
+            @NonNull Path path, @Nullable DesugaringDataCache cache) throws IOException {
         if (Files.isDirectory(path)) {
-            return analyzeDir(path);
+            return analyzeDir(path, cache);
         } else if (Files.isRegularFile(path)) {
             if (path.toString().endsWith(SdkConstants.DOT_JAR)) {
-                return analyzeJar(path);
+                return cache != null
+                        ? cache.get(path, DesugaringClassAnalyzer::analyzeJar)
+                        : analyzeJar(path);
             } else if (ClassFileInput.CLASS_MATCHER.test(toSystemIndependentPath(path))) {
-                return ImmutableList.of(analyzeClass(path));
+                return cache != null
+                        ? cache.get(path, DesugaringClassAnalyzer::analyzeClassFile)
+                        : analyzeClassFile(path);
             } else {
                 return ImmutableList.of();
             }
@@ -106,7 +121,8 @@ public class DesugaringClassAnalyzer {
     }
 
     @NonNull
-    private static List<DesugaringData> analyzeDir(@NonNull Path dir) throws IOException {
+    private static List<DesugaringData> analyzeDir(
+            @NonNull Path dir, @Nullable DesugaringDataCache cache) throws IOException {
         Preconditions.checkArgument(Files.isDirectory(dir), "Not a directory: %s", dir.toString());
 
         List<DesugaringData> data = new LinkedList<>();
@@ -118,7 +134,11 @@ public class DesugaringClassAnalyzer {
                             throws IOException {
                         Path relative = dir.relativize(file);
                         if (ClassFileInput.CLASS_MATCHER.test(toSystemIndependentPath(relative))) {
-                            data.add(analyzeClass(file));
+                            data.addAll(
+                                    cache != null
+                                            ? cache.get(
+                                                    file, DesugaringClassAnalyzer::analyzeClassFile)
+                                            : analyzeClassFile(file));
                         }
 
                         return super.visitFile(file, attrs);
@@ -127,6 +147,12 @@ public class DesugaringClassAnalyzer {
         return data;
     }
 
+    @NonNull
+    private static List<DesugaringData> analyzeClassFile(@NonNull Path classFile)
+            throws IOException {
+        return ImmutableList.of(analyzeClass(classFile));
+    }
+
     @NonNull
     private static DesugaringData analyzeClass(@NonNull Path classFile) throws IOException {
         Preconditions.checkArgument(
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.desugaring;
+
+import com.android.annotations.NonNull;
+import com.android.utils.ILogger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent store of {@link DesugaringData}, used to build a {@link DesugaringGraph} without
+ * analyzing all class files again when the graph is not in memory, e.g. in a new Gradle daemon.
+ *
+ * <p>Data is stored per analyzed file (a .jar or a .class file), together with the hash of the
+ * file's content. When the content of a file changes, it is analyzed again with {@link
+ * DesugaringClassAnalyzer} and its entry is replaced.
+ *
+ * <p>The binary format is a pool of all type names followed by the entries, which reference types
+ * by their index in the pool. Instances are safe to use from multiple threads.
+ */
+public final class DesugaringDataCache {
+
+    private static final int MAGIC = 0x44534743; // DSGC
+    @VisibleForTesting static final int VERSION = 1;
+
+    @NonNull private final Map<Path, Entry> entries;
+
+    private DesugaringDataCache(@NonNull Map<Path, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /** Returns an empty cache. */
+    @NonNull
+    public static DesugaringDataCache create() {
+        return new DesugaringDataCache(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Loads the cache from the given file. If the file does not exist, or cannot be read, an empty
+     * cache is returned.
+     */
+    @NonNull
+    public static DesugaringDataCache load(@NonNull Path file, @NonNull ILogger logger) {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.verbose("Ignoring desugaring data cache with unknown format: %s", file);
+                return create();
+            }
+
+            String[] types = new String[in.readInt()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = in.readUTF();
+            }
+
+            int entryCount = in.readInt();
+            Map<Path, Entry> entries = new ConcurrentHashMap<>(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                Path path = Paths.get(in.readUTF());
+                byte[] hash = new byte[in.readUnsignedByte()];
+                in.readFully(hash);
+
+                int dataCount = in.readInt();
+                List<DesugaringData> data = new ArrayList<>(dataCount);
+                for (int j = 0; j < dataCount; j++) {
+                    String internalName = types[in.readInt()];
+                    int dependencyCount = in.readInt();
+                    ImmutableSet.Builder<String> dependencies = ImmutableSet.builder();
+                    for (int k = 0; k < dependencyCount; k++) {
+                        dependencies.add(types[in.readInt()]);
+                    }
+                    data.add(new DesugaringData(path, internalName, dependencies.build()));
+                }
+                entries.put(path, new Entry(HashCode.fromBytes(hash), data));
+            }
+            return new DesugaringDataCache(entries);
+        } catch (NoSuchFileException e) {
+            return create();
+        } catch (IOException | RuntimeException e) {
+            logger.verbose("Unable to load desugaring data cache %s: %s", file, e.getMessage());
+            return create();
+        }
+    }
+
+    /**
+     * Saves the cache to the given file. Entries for files that no longer exist are not written.
+     */
+    public void save(@NonNull Path file) throws IOException {
+        Map<String, Integer> typeIndexes = new HashMap<>();
+        List<String> types = new ArrayList<>();
+        List<Map.Entry<Path, Entry>> liveEntries = new ArrayList<>(entries.size());
+        for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+            if (!Files.exists(entry.getKey())) {
+                continue;
+            }
+            liveEntries.add(entry);
+            for (DesugaringData data : entry.getValue().data) {
+                intern(data.getInternalName(), typeIndexes, types);
+                for (String dependency : data.getDependencies()) {
+                    intern(dependency, typeIndexes, types);
+                }
+            }
+        }
+
+        Files.createDirectories(file.getParent());
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(types.size());
+            for (String type : types) {
+                out.writeUTF(type);
+            }
+
+            out.writeInt(liveEntries.size());
+            for (Map.Entry<Path, Entry> entry : liveEntries) {
+                out.writeUTF(entry.getKey().toString());
+                byte[] hash = entry.getValue().hash.asBytes();
+                out.writeByte(hash.length);
+                out.write(hash);
+
+                out.writeInt(entry.getValue().data.size());
+                for (DesugaringData data : entry.getValue().data) {
+                    out.writeInt(typeIndexes.get(data.getInternalName()));
+                    Set<String> dependencies = data.getDependencies();
+                    out.writeInt(dependencies.size());
+                    for (String dependency : dependencies) {
+                        out.writeInt(typeIndexes.get(dependency));
+                    }
+                }
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the desugaring data for a .jar or .class file, analyzing it only if it is not in the
+     * cache or if its content changed since it was analyzed.
+     */
+    @NonNull
+    List<DesugaringData> get(@NonNull Path path, @NonNull Analyzer analyzer) throws IOException {
+        HashCode hash =
+                com.google.common.io.Files.asByteSource(path.toFile()).hash(Hashing.murmur3_128());
+        Entry entry = entries.get(path);
+        if (entry != null && entry.hash.equals(hash)) {
+            return entry.data;
+        }
+
+        List<DesugaringData> data = analyzer.analyze(path);
+        entries.put(path, new Entry(hash, ImmutableList.copyOf(data)));
+        return data;
+    }
+
+    /** Returns the number of analyzed files in the cache. */
+    @VisibleForTesting
+    int size() {
+        return entries.size();
+    }
+
+    private static void intern(
+            @NonNull String type,
+            @NonNull Map<String, Integer> typeIndexes,
+            @NonNull List<String> types) {
+        if (!typeIndexes.containsKey(type)) {
+            typeIndexes.put(type, types.size());
+            types.add(type);
+        }
+    }
+
+    /** Analyzes a single .jar or .class file. */
+    interface Analyzer {
+        @NonNull
+        List<DesugaringData> analyze(@NonNull Path path) throws IOException;
+    }
+
+    private static final class Entry {
+        @NonNull final HashCode hash;
+        @NonNull final List<DesugaringData> data;
+
+        Entry(@NonNull HashCode hash, @NonNull List<DesugaringData> data) {
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+}
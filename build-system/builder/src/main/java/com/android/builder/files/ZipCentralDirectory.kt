@@ -212,24 +212,27 @@ class ZipCentralDirectory(
         while (buffer.remaining() >= CENTRAL_DIRECTORY_FILE_HEADER_SIZE && buffer.int == CENTRAL_DIRECTORY_FILE_HEADER_MAGIC) {
             // Read all the data
             /*
-            skip those and go over the 12 bytes directly
+            skip those and go over the 4 bytes directly
             val version = buf.short
-            val versionNeeded = buf.short
-            val flags = buf.short
-            val compression = buf.short
+            val versionNeeded = buf.short*/
+            buffer.position(buffer.position() + 4)
+            val flags = buffer.short.toInt() and 0xFFFF
+            val compressionMethod = buffer.short.toInt() and 0xFFFF
+            /*
+            skip those and go over the 4 bytes directly
             val modTime = buf.short
             val modDate = buf.short*/
-            buffer.position(buffer.position() + 12)
+            buffer.position(buffer.position() + 4)
 
             val crc: Long = buffer.int.toLong() and 0xFFFFFFFFL
-            /*val compressedSize =*/ buffer.int
+            val compressedSize: Long = buffer.int.toLong() and 0xFFFFFFFFL
             val decompressedSize = buffer.int
             val pathLength = buffer.short
             val extraLength = buffer.short.toInt()
             val commentLength = buffer.short
             // Skip 2 (disk number) + 2 (internal attributes)+ 4 (external attributes)
             buffer.position(buffer.position() + 8)
-            /*val start =*/ buffer.int.toLong() // offset to local file entry header
+            val start = buffer.int.toLong() and 0xFFFFFFFFL // offset to local file entry header
 
             // Read the filename
             val pathBytes = ByteArray(pathLength.toInt())
@@ -240,7 +243,15 @@ class ZipCentralDirectory(
 
             // only add files, not directories
             if (decompressedSize > 0 || !name.endsWith("/")) {
-                val entry = DirectoryEntry(name, crc, decompressedSize)
+                val entry = DirectoryEntry(
+                    name,
+                    crc,
+                    decompressedSize,
+                    compressedSize,
+                    compressionMethod,
+                    flags,
+                    start
+                )
                 entries[entry.name] = entry
             }
         }
@@ -250,10 +261,24 @@ class ZipCentralDirectory(
 
 }
 
+/**
+ * An entry of the Central Directory.
+ *
+ * Besides the name, CRC and size used to detect changes, the entry records where and how its
+ * data is stored in the archive so that the compressed bytes can be copied verbatim into another
+ * archive without being inflated.
+ */
 data class DirectoryEntry(
     val name: String,
     val crc32: Long,
-    val size: Int
+    val size: Int,
+    val compressedSize: Long,
+    /** The compression method, e.g. [java.util.zip.ZipEntry.DEFLATED]. */
+    val compressionMethod: Int,
+    /** The general purpose bit flags. */
+    val flags: Int,
+    /** The offset of the entry's local file header from the start of the archive. */
+    val localHeaderOffset: Long
 )
 
 private const val EOCD_SIGNATURE: Int = 0x06054b50
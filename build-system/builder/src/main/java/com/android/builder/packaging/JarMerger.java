@@ -19,32 +19,46 @@ package com.android.builder.packaging;
 import com.android.SdkConstants;
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
+import com.android.builder.files.DirectoryEntry;
+import com.android.builder.files.ZipCentralDirectory;
 import com.android.utils.PathUtils;
 import com.google.common.collect.ImmutableSortedMap;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.util.Map;
 import java.util.function.Predicate;
 import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
-/** Jar Merger class. */
+/**
+ * Jar Merger class.
+ *
+ * <p>Entries of jars added with {@link #addJar(Path, Predicate, Relocator)} are copied without
+ * being recompressed when the jar is on the default file system: their compressed bytes and CRC
+ * are read from the location given by the jar's {@link ZipCentralDirectory} and written as is.
+ */
 public class JarMerger implements Closeable {
 
     public static final Predicate<String> CLASSES_ONLY =
@@ -74,9 +88,15 @@ public class JarMerger implements Closeable {
 
     public static final FileTime ZERO_TIME = FileTime.fromMillis(0);
 
-    private final byte[] buffer = new byte[8192];
+    /** Size of the fixed part of a local file header. */
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    /** General purpose flag set on encrypted entries. */
+    private static final int FLAG_ENCRYPTED = 0x1;
 
-    @NonNull private final JarOutputStream jarOutputStream;
+    @NonNull private final ZipWriter zipWriter;
 
     @Nullable private final Predicate<String> filter;
 
@@ -87,8 +107,7 @@ public class JarMerger implements Closeable {
     public JarMerger(@NonNull Path jarFile, @Nullable Predicate<String> filter) throws IOException {
         this.filter = filter;
         Files.createDirectories(jarFile.getParent());
-        jarOutputStream =
-                new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(jarFile)));
+        zipWriter = new ZipWriter(new BufferedOutputStream(Files.newOutputStream(jarFile)));
     }
 
     public void addDirectory(@NonNull Path directory) throws IOException {
@@ -128,10 +147,10 @@ public class JarMerger implements Closeable {
                 if (transformer != null) {
                     @Nullable InputStream is2 = transformer.filter(entryPath, is);
                     if (is2 != null) {
-                        write(new JarEntry(entryPath), is2);
+                        zipWriter.writeDeflated(entryPath, is2);
                     }
                 } else {
-                    write(new JarEntry(entryPath), is);
+                    zipWriter.writeDeflated(entryPath, is);
                 }
             }
         }
@@ -146,6 +165,12 @@ public class JarMerger implements Closeable {
             @Nullable Predicate<String> filterOverride,
             @Nullable Relocator relocator)
             throws IOException {
+        Map<String, DirectoryEntry> entries = readRawCopyableEntries(file);
+        if (entries != null) {
+            addJarRaw(file, entries, filterOverride, relocator);
+            return;
+        }
+
         try (ZipInputStream zis =
                 new ZipInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
 
@@ -167,52 +192,142 @@ public class JarMerger implements Closeable {
                     name = relocator.relocate(name);
                 }
 
-                if (name.contains("../")) {
-                    throw new InvalidPathException(name, "Entry name contains invalid characters");
-                }
-                JarEntry newEntry = new JarEntry(name);
-                newEntry.setMethod(entry.getMethod());
-                if (newEntry.getMethod() == ZipEntry.STORED) {
-                    newEntry.setSize(entry.getSize());
-                    newEntry.setCompressedSize(entry.getCompressedSize());
-                    newEntry.setCrc(entry.getCrc());
-                }
-                newEntry.setLastModifiedTime(ZERO_TIME);
+                checkEntryName(name);
 
                 // read the content of the entry from the input stream, and write it into the
                 // archive.
-                write(newEntry, zis);
+                if (entry.getMethod() == ZipEntry.STORED) {
+                    zipWriter.writeStored(name, entry.getCrc(), entry.getSize(), zis);
+                } else {
+                    zipWriter.writeDeflated(name, zis);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the entries of the given jar if all of them can be copied without being
+     * recompressed, or null if the jar has to be read with a {@link ZipInputStream}.
+     */
+    @Nullable
+    private static Map<String, DirectoryEntry> readRawCopyableEntries(@NonNull Path file) {
+        // ZipCentralDirectory only reads java.io.File.
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            return null;
+        }
+
+        Map<String, DirectoryEntry> entries;
+        try {
+            entries = new ZipCentralDirectory(file.toFile()).getEntries();
+        } catch (Exception e) {
+            // Zip64 archive (see {@code Zip64NotSupportedException}) or malformed central directory,
+            // which ZipInputStream may still be able to read.
+            return null;
+        }
+
+        for (DirectoryEntry entry : entries.values()) {
+            int method = entry.getCompressionMethod();
+            if ((method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+                    || (entry.getFlags() & FLAG_ENCRYPTED) != 0) {
+                return null;
+            }
+        }
+        return entries;
+    }
+
+    private void addJarRaw(
+            @NonNull Path file,
+            @NonNull Map<String, DirectoryEntry> entries,
+            @Nullable Predicate<String> filterOverride,
+            @Nullable Relocator relocator)
+            throws IOException {
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE);
+        localHeader.order(ByteOrder.LITTLE_ENDIAN);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            InputStream channelStream = Channels.newInputStream(channel);
+
+            // entries are in the central directory order, which is also the order in which a
+            // ZipInputStream would read them.
+            for (DirectoryEntry entry : entries.values()) {
+                // Filter out files, e.g. META-INF folder, not classes.
+                String name = entry.getName();
+                if (filterOverride != null && !filterOverride.test(name)) {
+                    continue;
+                }
+
+                if (relocator != null) {
+                    name = relocator.relocate(name);
+                }
+
+                checkEntryName(name);
+
+                // The data starts after the local header, whose name and extra field lengths
+                // may differ from the ones in the central directory.
+                localHeader.clear();
+                channel.position(entry.getLocalHeaderOffset());
+                while (localHeader.hasRemaining()) {
+                    if (channel.read(localHeader) == -1) {
+                        throw new ZipException("Truncated local header for " + entry.getName());
+                    }
+                }
+                if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    throw new ZipException(
+                            "Invalid local header for " + entry.getName() + " in " + file);
+                }
+                int nameLength = Short.toUnsignedInt(localHeader.getShort(26));
+                int extraLength = Short.toUnsignedInt(localHeader.getShort(28));
+                channel.position(
+                        entry.getLocalHeaderOffset()
+                                + LOCAL_HEADER_SIZE
+                                + nameLength
+                                + extraLength);
+
+                zipWriter.writeRaw(
+                        name,
+                        entry.getCompressionMethod(),
+                        entry.getCrc32(),
+                        entry.getCompressedSize(),
+                        Integer.toUnsignedLong(entry.getSize()),
+                        channelStream);
             }
         }
     }
 
+    private static void checkEntryName(@NonNull String name) {
+        if (name.contains("../")) {
+            throw new InvalidPathException(name, "Entry name contains invalid characters");
+        }
+    }
+
     public void addFile(@NonNull String entryPath, @NonNull Path file) throws IOException {
         try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
-            write(new JarEntry(entryPath), is);
+            zipWriter.writeDeflated(entryPath, is);
         }
     }
 
     public void addEntry(@NonNull String entryPath, @NonNull InputStream input) throws IOException {
         try (InputStream is = new BufferedInputStream(input)) {
-            write(new JarEntry(entryPath), is);
+            zipWriter.writeDeflated(entryPath, is);
         }
     }
 
     /**
      * Change the compression level for the next entries added to this jar. See {@link
-     * ZipOutputStream#setLevel(int)} for more details.
+     * java.util.zip.ZipOutputStream#setLevel(int)} for more details.
      *
-     * <p>Use 0 for no compression.
+     * <p>Use 0 for no compression. This does not apply to the entries of jars that are copied
+     * without being recompressed.
      *
      * @param level the compression level (0-9)
      */
     public void setCompressionLevel(int level) {
-        jarOutputStream.setLevel(level);
+        zipWriter.setLevel(level);
     }
 
     @Override
     public void close() throws IOException {
-        jarOutputStream.close();
+        zipWriter.close();
     }
 
     public void setManifestProperties(Map<String, String> properties) throws IOException {
@@ -222,29 +337,9 @@ public class JarMerger implements Closeable {
         properties.forEach(
                 (attributeName, attributeValue) ->
                         global.put(new Attributes.Name(attributeName), attributeValue));
-        JarEntry manifestEntry = new JarEntry(JarFile.MANIFEST_NAME);
-        setEntryAttributes(manifestEntry);
-        jarOutputStream.putNextEntry(manifestEntry);
-        try {
-            manifest.write(jarOutputStream);
-        } finally {
-            jarOutputStream.closeEntry();
-        }
-    }
-
-    private void write(@NonNull JarEntry entry, @NonNull InputStream from) throws IOException {
-        setEntryAttributes(entry);
-        jarOutputStream.putNextEntry(entry);
-        int count;
-        while ((count = from.read(buffer)) != -1) {
-            jarOutputStream.write(buffer, 0, count);
-        }
-        jarOutputStream.closeEntry();
-    }
-
-    private void setEntryAttributes(@NonNull JarEntry entry) {
-        entry.setLastModifiedTime(ZERO_TIME);
-        entry.setLastAccessTime(ZERO_TIME);
-        entry.setCreationTime(ZERO_TIME);
+        ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+        manifest.write(manifestBytes);
+        zipWriter.writeDeflated(
+                JarFile.MANIFEST_NAME, new ByteArrayInputStream(manifestBytes.toByteArray()));
     }
 }
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.packaging;
+
+import com.android.annotations.NonNull;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Streaming zip writer used by {@link JarMerger}.
+ *
+ * <p>The archives it produces have the same layout as the ones {@link java.util.jar.JarOutputStream}
+ * produces for the merger's entries (UTF-8 names, {@link JarMerger#ZERO_TIME} timestamps, data
+ * descriptors after deflated entries, jar magic on the first entry). Unlike {@link
+ * java.util.zip.ZipOutputStream}, it can also copy an entry's compressed bytes verbatim from
+ * another archive with {@link #writeRaw}, which avoids inflating and deflating it again.
+ *
+ * <p>Entries larger than 4GB are not supported. Archives with more than 65535 entries or a
+ * central directory past 4GB get Zip64 end records.
+ */
+final class ZipWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    private static final int FLAG_UTF8 = 0x800;
+
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    /** DOS date and time {@link ZipEntry} uses for any time before 1980 (1980-01-01 00:00). */
+    private static final int DOS_TIME = 0;
+
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int EXTENDED_TIMESTAMP_ID = 0x5455;
+    /** Modification, access and creation times are all set. */
+    private static final int EXTENDED_TIMESTAMP_FLAGS = 0x7;
+
+    private static final int JAR_MAGIC = 0xCAFE;
+
+    private static final long ZIP32_MAX_VALUE = 0xFFFFFFFFL;
+    private static final int ZIP32_MAX_ENTRIES = 0xFFFF;
+
+    @NonNull private final CountingOutputStream out;
+
+    @NonNull private final List<CentralEntry> entries = new ArrayList<>();
+
+    @NonNull private final Set<String> names = new HashSet<>();
+
+    @NonNull private final byte[] buffer = new byte[8192];
+
+    @NonNull private final byte[] deflateBuffer = new byte[8192];
+
+    @NonNull private final CRC32 crc = new CRC32();
+
+    @NonNull private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    ZipWriter(@NonNull OutputStream out) {
+        this.out = new CountingOutputStream(out);
+    }
+
+    /**
+     * Changes the compression level for the next deflated entries.
+     *
+     * @see Deflater#setLevel(int)
+     */
+    void setLevel(int level) {
+        deflater.setLevel(level);
+    }
+
+    /** Writes an entry, deflating the content read from {@code from}. */
+    void writeDeflated(@NonNull String name, @NonNull InputStream from) throws IOException {
+        CentralEntry entry =
+                startEntry(
+                        name, ZipEntry.DEFLATED, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR, 0, 0, 0);
+
+        crc.reset();
+        deflater.reset();
+        long start = out.getCount();
+        long size = 0;
+        int count;
+        while ((count = from.read(buffer)) != -1) {
+            crc.update(buffer, 0, count);
+            size += count;
+            deflater.setInput(buffer, 0, count);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+
+        entry.crc = crc.getValue();
+        entry.compressedSize = out.getCount() - start;
+        entry.size = size;
+        checkEntrySize(entry);
+
+        writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+    }
+
+    /**
+     * Writes an entry without compressing it. The CRC and size of the content must be known in
+     * advance and are checked against the content read from {@code from}.
+     */
+    void writeStored(
+            @NonNull String name, long expectedCrc, long expectedSize, @NonNull InputStream from)
+            throws IOException {
+        startEntry(name, ZipEntry.STORED, FLAG_UTF8, expectedCrc, expectedSize, expectedSize);
+
+        crc.reset();
+        long size = 0;
+        int count;
+        while ((count = from.read(buffer)) != -1) {
+            crc.update(buffer, 0, count);
+            size += count;
+            out.write(buffer, 0, count);
+        }
+
+        if (size != expectedSize) {
+            throw new ZipException(
+                    "invalid entry size (expected " + expectedSize + " but got " + size + " bytes)");
+        }
+        if (crc.getValue() != expectedCrc) {
+            throw new ZipException(
+                    "invalid entry crc-32 (expected 0x"
+                            + Long.toHexString(expectedCrc)
+                            + " but got 0x"
+                            + Long.toHexString(crc.getValue())
+                            + ")");
+        }
+    }
+
+    /**
+     * Writes an entry whose data is already in its final (possibly compressed) form, e.g. read
+     * straight from another archive.
+     *
+     * @param name the name of the entry
+     * @param method the compression method of {@code rawData}, either {@link ZipEntry#STORED} or
+     *     {@link ZipEntry#DEFLATED}
+     * @param crc the CRC-32 of the uncompressed content
+     * @param compressedSize the number of bytes to copy from {@code rawData}
+     * @param size the size of the uncompressed content
+     * @param rawData the stream to read the entry's data from
+     */
+    void writeRaw(
+            @NonNull String name,
+            int method,
+            long crc,
+            long compressedSize,
+            long size,
+            @NonNull InputStream rawData)
+            throws IOException {
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+            throw new ZipException("unsupported compression method " + method + ": " + name);
+        }
+        if (compressedSize > ZIP32_MAX_VALUE || size > ZIP32_MAX_VALUE) {
+            throw new ZipException("Entries larger than 4GB are not supported: " + name);
+        }
+        startEntry(name, method, FLAG_UTF8, crc, compressedSize, size);
+
+        long copied = ByteStreams.copy(ByteStreams.limit(rawData, compressedSize), out);
+        if (copied != compressedSize) {
+            throw new ZipException(
+                    "Unexpected end of data for "
+                            + name
+                            + " (expected "
+                            + compressedSize
+                            + " but got "
+                            + copied
+                            + " bytes)");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long centralDirectoryOffset = out.getCount();
+            for (CentralEntry entry : entries) {
+                writeCentralEntry(entry);
+            }
+            long centralDirectorySize = out.getCount() - centralDirectoryOffset;
+
+            int count = entries.size();
+            if (count >= ZIP32_MAX_ENTRIES
+                    || centralDirectoryOffset >= ZIP32_MAX_VALUE
+                    || centralDirectorySize >= ZIP32_MAX_VALUE) {
+                long zip64EndOffset = out.getCount();
+                writeInt(ZIP64_EOCD_SIGNATURE);
+                writeLong(44); // size of the remaining record
+                writeShort(VERSION_ZIP64); // version made by
+                writeShort(VERSION_ZIP64); // version needed to extract
+                writeInt(0); // number of this disk
+                writeInt(0); // disk where the central directory starts
+                writeLong(count); // number of entries on this disk
+                writeLong(count); // total number of entries
+                writeLong(centralDirectorySize);
+                writeLong(centralDirectoryOffset);
+
+                writeInt(ZIP64_EOCD_LOCATOR_SIGNATURE);
+                writeInt(0); // disk where the Zip64 end record is
+                writeLong(zip64EndOffset);
+                writeInt(1); // total number of disks
+            }
+
+            writeInt(EOCD_SIGNATURE);
+            writeShort(0); // number of this disk
+            writeShort(0); // disk where the central directory starts
+            writeShort(Math.min(count, ZIP32_MAX_ENTRIES));
+            writeShort(Math.min(count, ZIP32_MAX_ENTRIES));
+            writeInt(Math.min(centralDirectorySize, ZIP32_MAX_VALUE));
+            writeInt(Math.min(centralDirectoryOffset, ZIP32_MAX_VALUE));
+            writeShort(0); // comment length
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    @NonNull
+    private CentralEntry startEntry(
+            @NonNull String name,
+            int method,
+            int flags,
+            long entryCrc,
+            long compressedSize,
+            long size)
+            throws IOException {
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+
+        CentralEntry entry = new CentralEntry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        entry.method = method;
+        entry.flags = flags;
+        entry.crc = entryCrc;
+        entry.compressedSize = compressedSize;
+        entry.size = size;
+        entry.offset = out.getCount();
+        entry.jarMagic = entries.isEmpty();
+        entries.add(entry);
+
+        boolean hasDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(version(entry));
+        writeShort(flags);
+        writeShort(method);
+        writeShort(DOS_TIME);
+        writeShort(DOS_DATE);
+        writeInt(hasDescriptor ? 0 : entryCrc);
+        writeInt(hasDescriptor ? 0 : compressedSize);
+        writeInt(hasDescriptor ? 0 : size);
+        writeShort(entry.name.length);
+        writeShort(17 + (entry.jarMagic ? 4 : 0));
+        out.write(entry.name);
+        writeShort(EXTENDED_TIMESTAMP_ID);
+        writeShort(13);
+        out.write(EXTENDED_TIMESTAMP_FLAGS);
+        writeInt(0); // modification time
+        writeInt(0); // access time
+        writeInt(0); // creation time
+        if (entry.jarMagic) {
+            writeShort(JAR_MAGIC);
+            writeShort(0);
+        }
+        return entry;
+    }
+
+    private void writeCentralEntry(@NonNull CentralEntry entry) throws IOException {
+        boolean zip64Offset = entry.offset >= ZIP32_MAX_VALUE;
+        int version = zip64Offset ? VERSION_ZIP64 : version(entry);
+
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(version); // version made by
+        writeShort(version); // version needed to extract
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeShort(DOS_TIME);
+        writeShort(DOS_DATE);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.name.length);
+        writeShort((zip64Offset ? 12 : 0) + 9 + (entry.jarMagic ? 4 : 0));
+        writeShort(0); // comment length
+        writeShort(0); // disk number
+        writeShort(0); // internal attributes
+        writeInt(0); // external attributes
+        writeInt(zip64Offset ? ZIP32_MAX_VALUE : entry.offset);
+        out.write(entry.name);
+        if (zip64Offset) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(8);
+            writeLong(entry.offset);
+        }
+        writeShort(EXTENDED_TIMESTAMP_ID);
+        writeShort(5);
+        out.write(EXTENDED_TIMESTAMP_FLAGS);
+        writeInt(0); // modification time
+        if (entry.jarMagic) {
+            writeShort(JAR_MAGIC);
+            writeShort(0);
+        }
+    }
+
+    private void deflate() throws IOException {
+        int count = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+        if (count > 0) {
+            out.write(deflateBuffer, 0, count);
+        }
+    }
+
+    private static void checkEntrySize(@NonNull CentralEntry entry) throws ZipException {
+        if (entry.compressedSize > ZIP32_MAX_VALUE || entry.size > ZIP32_MAX_VALUE) {
+            throw new ZipException(
+                    "Entries larger than 4GB are not supported: "
+                            + new String(entry.name, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int version(@NonNull CentralEntry entry) {
+        return entry.method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & ZIP32_MAX_VALUE);
+        writeInt(value >>> 32);
+    }
+
+    /** What needs to be remembered about an entry to write its central directory header. */
+    private static final class CentralEntry {
+        byte[] name;
+        int method;
+        int flags;
+        long crc;
+        long compressedSize;
+        long size;
+        long offset;
+        boolean jarMagic;
+    }
+}
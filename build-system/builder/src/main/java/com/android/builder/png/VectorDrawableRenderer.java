@@ -32,7 +32,6 @@ import com.android.resources.Density;
 import com.android.resources.ResourceFolderType;
 import com.android.utils.ILogger;
 import com.google.common.io.Files;
-import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -42,6 +41,9 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
 import javax.imageio.ImageIO;
@@ -205,12 +207,55 @@ public class VectorDrawableRenderer implements ResourcePreprocessor {
         if (isXml(toBeGenerated)) {
             Files.copy(original, toBeGenerated);
         } else {
+            generatePngs(Collections.singletonList(toBeGenerated), original, null);
+        }
+    }
+
+    /**
+     * Generates the given files of each original file, parsing each vector drawable once for all
+     * the densities it is rasterized for. The image buffers are reused across the drawables of
+     * the batch, which often have the same sizes, and dropped with it.
+     */
+    @Override
+    public void generateFiles(@NonNull Map<File, ? extends Collection<File>> toBeGenerated)
+            throws IOException {
+        VdPreview.ImageBuffers buffers = new VdPreview.ImageBuffers();
+        for (Map.Entry<File, ? extends Collection<File>> entry : toBeGenerated.entrySet()) {
+            File original = entry.getKey();
+            try {
+                List<File> pngs = new ArrayList<>();
+                for (File file : entry.getValue()) {
+                    Files.createParentDirs(file);
+                    if (isXml(file)) {
+                        Files.copy(original, file);
+                    } else {
+                        pngs.add(file);
+                    }
+                }
+                if (!pngs.isEmpty()) {
+                    generatePngs(pngs, original, buffers);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new IOException(
+                        "Error while processing " + original + " : " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /** Rasterizes the original file once per PNG file, parsing it only once. */
+    private void generatePngs(
+            @NonNull List<File> pngs,
+            @NonNull File original,
+            @Nullable VdPreview.ImageBuffers buffers)
+            throws IOException {
+        List<VdPreview.TargetSize> imageSizes = new ArrayList<>(pngs.size());
+        for (File png : pngs) {
             mLogger.get()
                     .verbose(
                             "Generating PNG: [%s] from [%s]",
-                            toBeGenerated.getAbsolutePath(), original.getAbsolutePath());
+                            png.getAbsolutePath(), original.getAbsolutePath());
 
-            FolderConfiguration folderConfiguration = getFolderConfiguration(toBeGenerated);
+            FolderConfiguration folderConfiguration = getFolderConfiguration(png);
             checkState(folderConfiguration.getDensityQualifier() != null);
             Density density = folderConfiguration.getDensityQualifier().getValue();
             assert density != null;
@@ -218,13 +263,19 @@ public class VectorDrawableRenderer implements ResourcePreprocessor {
             if (scaleFactor <= 0) {
                 scaleFactor = 1.0f;
             }
-
-            VdPreview.TargetSize imageSize = VdPreview.TargetSize.createFromScale(scaleFactor);
-            String xmlContent = Files.asCharSource(original, StandardCharsets.UTF_8).read();
-            BufferedImage image = VdPreview.getPreviewFromVectorXml(imageSize, xmlContent, null);
-            checkState(image != null, "Generating the image failed.");
-            ImageIO.write(image, "png", toBeGenerated);
+            imageSizes.add(VdPreview.TargetSize.createFromScale(scaleFactor));
         }
+
+        String xmlContent = Files.asCharSource(original, StandardCharsets.UTF_8).read();
+        Iterator<File> outputs = pngs.iterator();
+        boolean rendered =
+                VdPreview.renderVectorXml(
+                        imageSizes,
+                        xmlContent,
+                        null,
+                        buffers,
+                        (imageSize, image) -> ImageIO.write(image, "png", outputs.next()));
+        checkState(rendered, "Generating the image failed.");
     }
 
     @NonNull
@@ -45,32 +45,73 @@ import java.io.IOException
 import java.nio.file.Files
 import java.nio.file.Path
 import java.util.EnumSet
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
 import java.util.jar.JarOutputStream
 import java.util.zip.ZipEntry
 
+/**
+ * Writes the R classes of the given tables to a jar, without compiling sources.
+ *
+ * Tables with the same package are merged first. The classes of the different packages are then
+ * generated in parallel on [forkJoinPool], and written to the jar sorted by package name, so that
+ * the output does not depend on scheduling.
+ *
+ * @param valuesFrom if not null, the table whose values are used for the symbols of all the
+ *     packages (see [SymbolTable.withValuesFrom]); it is shared by all the generating tasks
+ */
 @Throws(IOException::class)
-fun exportToCompiledJava(tables: Iterable<SymbolTable>, outJar: Path, finalIds: Boolean = false) {
-    val mergedTables = tables.groupBy { it.tablePackage }.map { SymbolTable.merge(it.value) }
+fun exportToCompiledJava(
+    tables: Iterable<SymbolTable>,
+    outJar: Path,
+    finalIds: Boolean = false,
+    valuesFrom: SymbolTable? = null,
+    forkJoinPool: ForkJoinPool = ForkJoinPool.commonPool()
+) {
+    val packages = tables.groupBy { it.tablePackage }.toSortedMap()
+    val generatedPackages = packages.values.map { packageTables ->
+        forkJoinPool.submit(Callable {
+            val merged = SymbolTable.merge(packageTables)
+            generateRClasses(valuesFrom?.let { merged.withValuesFrom(it) } ?: merged, finalIds)
+        })
+    }
     JarOutputStream(BufferedOutputStream(Files.newOutputStream(outJar))).use { jarOutputStream ->
-        mergedTables.forEach { table ->
-            val resourceTypes = EnumSet.noneOf(ResourceType::class.java)
-            for (resType in ResourceType.values()) {
-                // Don't write empty R$ classes.
-                val bytes = generateResourceTypeClass(table, resType, finalIds) ?: continue
-                resourceTypes.add(resType)
-                val innerR = internalName(table, resType)
-                jarOutputStream.putNextEntry(ZipEntry(innerR + SdkConstants.DOT_CLASS))
+        // Write the packages in order as they are generated.
+        for (generatedPackage in generatedPackages) {
+            val classes = try {
+                generatedPackage.get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+            for ((entryName, bytes) in classes) {
+                jarOutputStream.putNextEntry(ZipEntry(entryName))
                 jarOutputStream.write(bytes)
             }
-
-            // Generate and write the main R class file.
-            val packageR = internalName(table, null)
-            jarOutputStream.putNextEntry(ZipEntry(packageR + SdkConstants.DOT_CLASS))
-            jarOutputStream.write(generateOuterRClass(resourceTypes, packageR))
         }
     }
 }
 
+/** Generates the R classes of a table, as jar entry names and class bytes, in jar order. */
+private fun generateRClasses(
+    table: SymbolTable,
+    finalIds: Boolean
+): List<Pair<String, ByteArray>> {
+    val classes = ArrayList<Pair<String, ByteArray>>()
+    val resourceTypes = EnumSet.noneOf(ResourceType::class.java)
+    for (resType in ResourceType.values()) {
+        // Don't write empty R$ classes.
+        val bytes = generateResourceTypeClass(table, resType, finalIds) ?: continue
+        resourceTypes.add(resType)
+        classes.add(internalName(table, resType) + SdkConstants.DOT_CLASS to bytes)
+    }
+
+    // Generate the main R class file.
+    val packageR = internalName(table, null)
+    classes.add(packageR + SdkConstants.DOT_CLASS to generateOuterRClass(resourceTypes, packageR))
+    return classes
+}
+
 private fun generateOuterRClass(resourceTypes: EnumSet<ResourceType>, packageR: String): ByteArray {
     val cw = ClassWriter(COMPUTE_MAXS)
     cw.visit(
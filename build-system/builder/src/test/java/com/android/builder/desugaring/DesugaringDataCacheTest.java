@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.desugaring;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.annotations.NonNull;
+import com.android.builder.desugaring.samples.SampleClass;
+import com.android.builder.desugaring.samples.SampleInterface;
+import com.android.utils.NullLogger;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.Type;
+
+/** Tests for {@link DesugaringDataCache}. */
+public class DesugaringDataCacheTest {
+
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final AtomicInteger analyzed = new AtomicInteger();
+
+    private final DesugaringDataCache.Analyzer countingAnalyzer =
+            path -> {
+                analyzed.incrementAndGet();
+                return DesugaringClassAnalyzer.analyze(path);
+            };
+
+    @Test
+    public void testUnchangedFileIsNotAnalyzedAgain() throws IOException {
+        Path classFile = writeClass(SampleClass.class, SampleClass.class);
+        Path cacheFile = tmp.getRoot().toPath().resolve("cache.bin");
+
+        DesugaringDataCache cache = DesugaringDataCache.create();
+        List<DesugaringData> first = cache.get(classFile, countingAnalyzer);
+        cache.save(cacheFile);
+
+        DesugaringDataCache loaded = DesugaringDataCache.load(cacheFile, new NullLogger());
+        List<DesugaringData> second = loaded.get(classFile, countingAnalyzer);
+
+        assertThat(analyzed.get()).isEqualTo(1);
+        assertThat(second).hasSize(1);
+        assertThat(second.get(0).getPath()).isEqualTo(classFile);
+        assertThat(second.get(0).getInternalName()).isEqualTo(first.get(0).getInternalName());
+        assertThat(second.get(0).getDependencies())
+                .containsExactlyElementsIn(first.get(0).getDependencies());
+    }
+
+    @Test
+    public void testChangedFileIsAnalyzedAgain() throws IOException {
+        Path classFile = writeClass(SampleClass.class, SampleClass.class);
+        Path cacheFile = tmp.getRoot().toPath().resolve("cache.bin");
+
+        DesugaringDataCache cache = DesugaringDataCache.create();
+        cache.get(classFile, countingAnalyzer);
+        cache.save(cacheFile);
+
+        // Same path, different content.
+        writeClass(SampleClass.class, SampleInterface.class);
+        List<DesugaringData> data =
+                DesugaringDataCache.load(cacheFile, new NullLogger())
+                        .get(classFile, countingAnalyzer);
+
+        assertThat(analyzed.get()).isEqualTo(2);
+        assertThat(data.get(0).getInternalName())
+                .isEqualTo(Type.getInternalName(SampleInterface.class));
+    }
+
+    @Test
+    public void testRemovedFilesAreNotSaved() throws IOException {
+        Path classFile = writeClass(SampleClass.class, SampleClass.class);
+        Path cacheFile = tmp.getRoot().toPath().resolve("cache.bin");
+
+        DesugaringDataCache cache = DesugaringDataCache.create();
+        cache.get(classFile, countingAnalyzer);
+        Files.delete(classFile);
+        cache.save(cacheFile);
+
+        assertThat(DesugaringDataCache.load(cacheFile, new NullLogger()).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testInvalidCacheFile() throws IOException {
+        Path cacheFile = tmp.newFile("cache.bin").toPath();
+        Files.write(cacheFile, new byte[] {1, 2, 3});
+
+        assertThat(DesugaringDataCache.load(cacheFile, new NullLogger()).size()).isEqualTo(0);
+    }
+
+    @NonNull
+    private Path writeClass(@NonNull Class<?> name, @NonNull Class<?> content) throws IOException {
+        Path classFile =
+                tmp.getRoot().toPath().resolve(Type.getInternalName(name) + ".class");
+        Files.createDirectories(classFile.getParent());
+        String resource = "/" + Type.getInternalName(content) + ".class";
+        try (InputStream is = getClass().getResourceAsStream(resource)) {
+            Files.write(classFile, ByteStreams.toByteArray(is));
+        }
+        return classFile;
+    }
+}
@@ -27,6 +27,7 @@ import java.io.File
 import java.io.FileOutputStream
 import java.io.IOException
 import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
 import java.util.zip.ZipOutputStream
 import kotlin.test.assertFailsWith
 
@@ -74,6 +75,26 @@ class ZipCentralDirectoryTest {
         Truth.assertThat(zipCDR1.entries.values.first().crc32).isNotEqualTo(zipCDR2.entries.values.first().crc32)
     }
 
+    @Test
+    fun testEntryLocation() {
+        val zipCDR = createZip(listOf(
+            Entry("foo.bar", "content"),
+            Entry("some/dir/"),
+            Entry("some/dir/foo.bar", "content2")
+        ))
+
+        ZipFile(zipCDR.file).use { zipFile ->
+            for (entry in zipCDR.entries.values) {
+                val zipEntry = zipFile.getEntry(entry.name)
+                Truth.assertThat(entry.compressionMethod).isEqualTo(ZipEntry.DEFLATED)
+                Truth.assertThat(entry.compressedSize).isEqualTo(zipEntry.compressedSize)
+            }
+        }
+        Truth.assertThat(zipCDR.entries.getValue("foo.bar").localHeaderOffset).isEqualTo(0)
+        Truth.assertThat(zipCDR.entries.getValue("some/dir/foo.bar").localHeaderOffset)
+            .isGreaterThan(0)
+    }
+
     @Test
     @Throws(IOException::class)
     fun testZip64File() {
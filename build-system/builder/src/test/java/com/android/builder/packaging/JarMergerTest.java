@@ -39,11 +39,16 @@ import java.util.jar.JarOutputStream;
 import java.util.stream.Collectors;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class JarMergerTest {
 
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private static final ByteArrayHolder MYCLASS_CONTENT =
             new ByteArrayHolder(
                     new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0x0});
@@ -215,6 +220,42 @@ public class JarMergerTest {
                         "stored.txt[stored]", RESOURCE_CONTENT, "deflated.txt", RESOURCE_CONTENT_2);
     }
 
+    @Test
+    public void rawCopyFromDefaultFileSystem() throws IOException {
+        Path jar = temporaryFolder.newFolder().toPath().resolve("jar.jar");
+        writeStoredAndDeflatedJar(jar);
+        Path out = temporaryFolder.newFolder().toPath().resolve("out.jar");
+
+        try (JarMerger merger = new JarMerger(out)) {
+            // Entries are copied as is, so this does not change the deflated entry.
+            merger.setCompressionLevel(0);
+            merger.addJar(jar, null, path -> "relocated/" + path);
+        }
+
+        assertThat(getEntries(out))
+                .containsExactly(
+                        "relocated/stored.txt[stored]",
+                        RESOURCE_CONTENT,
+                        "relocated/deflated.txt",
+                        RESOURCE_CONTENT_2)
+                .inOrder();
+        assertThat(getCompressedSizes(out).get("relocated/deflated.txt"))
+                .isEqualTo(getCompressedSizes(jar).get("deflated.txt"));
+    }
+
+    @Test
+    public void rawCopyFilter() throws IOException {
+        Path jar = temporaryFolder.newFolder().toPath().resolve("jar.jar");
+        writeStoredAndDeflatedJar(jar);
+        Path out = temporaryFolder.newFolder().toPath().resolve("out.jar");
+
+        try (JarMerger merger = new JarMerger(out, path -> path.startsWith("deflated"))) {
+            merger.addJar(jar);
+        }
+
+        assertThat(getEntries(out)).containsExactly("deflated.txt", RESOURCE_CONTENT_2);
+    }
+
     @Test
     public void setCompressionLevel_addDirectory() throws IOException {
         FileSystem jimfs = Jimfs.newFileSystem(Configuration.unix());
@@ -275,6 +316,39 @@ public class JarMergerTest {
         assertThat(Files.size(outCompressed)).isLessThan(Files.size(outUncompressed));
     }
 
+    private static void writeStoredAndDeflatedJar(@NonNull Path jar) throws IOException {
+        Files.createDirectories(jar.getParent());
+        try (JarOutputStream jos =
+                new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(jar)))) {
+            ZipEntry stored = new ZipEntry("stored.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(RESOURCE_CONTENT.data.length);
+            CRC32 checksum = new CRC32();
+            checksum.update(RESOURCE_CONTENT.data);
+            stored.setCrc(checksum.getValue());
+            jos.putNextEntry(stored);
+            jos.write(RESOURCE_CONTENT.data);
+            jos.closeEntry();
+
+            ZipEntry deflated = new ZipEntry("deflated.txt");
+            deflated.setMethod(ZipEntry.DEFLATED);
+            jos.setLevel(9);
+            jos.putNextEntry(deflated);
+            jos.write(RESOURCE_CONTENT_2.data);
+            jos.closeEntry();
+        }
+    }
+
+    private static ImmutableMap<String, Long> getCompressedSizes(@NonNull Path zip)
+            throws IOException {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            zipFile.stream()
+                    .forEach(entry -> builder.put(entry.getName(), entry.getCompressedSize()));
+        }
+        return builder.build();
+    }
+
     private static Path createDirectoryWithClassAndResource() throws IOException {
         return createDirectoryWithClassAndResource(
                 Jimfs.newFileSystem(Configuration.unix()).getPath("test", "dir"));
@@ -22,12 +22,17 @@ import static org.junit.Assert.assertTrue;
 import com.android.resources.Density;
 import com.android.utils.FileUtils;
 import com.android.utils.NullLogger;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.truth.Truth;
 import java.io.File;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import javax.imageio.ImageIO;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -388,4 +393,42 @@ public class VectorDrawableRendererTest {
                 .named("getFilesToBeGenerated returned")
                 .isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void generateFilesInBatch() throws Exception {
+        File output = tmpFolder.newFolder("generated");
+        VectorDrawableRenderer renderer =
+                new VectorDrawableRenderer(19, false, output, mDensities, NullLogger::new);
+        File first = new File(new File(mRes, "drawable"), "first.xml");
+        File second = new File(new File(mRes, "drawable-fr"), "second.xml");
+        writeToFile(first, VECTOR_WITH_FILLTYPE);
+        writeToFile(second, VECTOR_WITH_GRADIENT);
+
+        Map<File, Collection<File>> toBeGenerated = new LinkedHashMap<>();
+        for (File input : ImmutableList.of(first, second)) {
+            toBeGenerated.put(input, renderer.getFilesToBeGenerated(input));
+        }
+        renderer.generateFiles(toBeGenerated);
+
+        for (File input : ImmutableList.of(first, second)) {
+            for (File generated : renderer.getFilesToBeGenerated(input)) {
+                assertTrue(generated.getPath(), generated.isFile());
+            }
+        }
+        assertEquals(48, readWidth(FileUtils.join(output, "drawable-ldpi", "first.png")));
+        assertEquals(64, readWidth(FileUtils.join(output, "drawable-mdpi", "first.png")));
+        assertEquals(96, readWidth(FileUtils.join(output, "drawable-fr-hdpi", "second.png")));
+
+        // The batch generates the same images as generating the files one by one.
+        File single = new File(tmpFolder.newFolder("single", "drawable-hdpi"), "first.png");
+        renderer.generateFile(single, first);
+        Truth.assertThat(Files.readAllBytes(single.toPath()))
+                .isEqualTo(
+                        Files.readAllBytes(
+                                FileUtils.join(output, "drawable-hdpi", "first.png").toPath()));
+    }
+
+    private static int readWidth(File png) throws Exception {
+        return ImageIO.read(png).getWidth();
+    }
+}
@@ -36,6 +36,7 @@ import java.lang.reflect.Field
 import java.net.URLClassLoader
 import java.nio.file.Files
 import java.nio.file.Path
+import java.util.zip.ZipFile
 import javax.tools.JavaFileObject
 import javax.tools.ToolProvider
 import kotlin.streams.toList
@@ -110,6 +111,44 @@ class BytecodeRClassWriterTest {
         }
     }
 
+    @Test
+    fun testPackagesAreWrittenInOrderWithSharedValues() {
+        val rJar = mTemporaryFolder.newFile("R.jar")
+
+        val mainTable = SymbolTable.builder()
+            .tablePackage("com.example.main")
+            .add(Symbol.NormalSymbol(ResourceType.ID, "foo", 0x7f010001))
+            .add(Symbol.NormalSymbol(ResourceType.ID, "bar", 0x7f010002))
+            .build()
+
+        val libraries = (20 downTo 1).map {
+            SymbolTable.builder()
+                .tablePackage("com.example.lib$it")
+                .add(Symbol.NormalSymbol(ResourceType.ID, if (it % 2 == 0) "foo" else "bar", 0))
+                .build()
+        }
+
+        exportToCompiledJava(listOf(mainTable) + libraries, rJar.toPath(), valuesFrom = mainTable)
+
+        val expectedPackages =
+            (libraries.map { it.tablePackage } + mainTable.tablePackage).sorted()
+        ZipFile(rJar).use { zip ->
+            assertThat(zip.entries().toList().map { it.name })
+                .containsExactlyElementsIn(expectedPackages.flatMap {
+                    val packagePath = it.replace('.', '/')
+                    listOf("$packagePath/R\$id.class", "$packagePath/R.class")
+                })
+                .inOrder()
+        }
+
+        URLClassLoader(arrayOf(rJar.toURI().toURL()), null).use { rJarClassLoader ->
+            assertThat(loadFields(rJarClassLoader, "com.example.lib2.R\$id"))
+                .containsExactly("int foo = 2130771969")
+            assertThat(loadFields(rJarClassLoader, "com.example.lib1.R\$id"))
+                .containsExactly("int bar = 2130771970")
+        }
+    }
+
     @Test
     fun generateRFilesContentTest() {
         val javacCompiledDir = mTemporaryFolder.newFolder("javac-compiled")
@@ -65,7 +65,8 @@ class LibraryDefinedSymbolTableTransform : ArtifactTransform() {
             SymbolTable.builder().tablePackage(pkg).build()
         }
 
-        SymbolIo.writeRDef(symbols, outputFile.toPath())
+        // Written in the binary format, which SymbolIo.readRDef accepts as well.
+        SymbolIo.writeBinary(symbols, outputFile.toPath())
 
         return ImmutableList.of(outputFile)
     }
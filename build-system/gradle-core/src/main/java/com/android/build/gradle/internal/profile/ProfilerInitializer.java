@@ -19,6 +19,7 @@ package com.android.build.gradle.internal.profile;
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.build.gradle.internal.LoggerWrapper;
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter;
 import com.android.build.gradle.options.BooleanOption;
 import com.android.build.gradle.options.ProjectOptions;
 import com.android.build.gradle.options.StringOption;
@@ -78,7 +79,8 @@ public final class ProfilerInitializer {
                     project.getRootProject().getProjectDir(),
                     project.getGradle().getGradleVersion(),
                     new LoggerWrapper(project.getLogger()),
-                    projectOptions.get(BooleanOption.ENABLE_PROFILE_JSON));
+                    projectOptions.get(BooleanOption.ENABLE_PROFILE_JSON),
+                    projectOptions.get(BooleanOption.ENABLE_PROFILE_EVENT_BUFFERS));
             recordingBuildListener =
                     new RecordingBuildListener(project.getName(), ProcessProfileWriter.get());
             project.getGradle().addListener(recordingBuildListener);
@@ -121,6 +123,10 @@ public final class ProfilerInitializer {
                 this.profileDir =
                         gradle.getRootProject().getBuildDir().toPath().resolve(PROFILE_DIRECTORY);
             }
+            if (profileDir != null) {
+                // Start the kinds of work that took the longest in the previous build first
+                AdaptiveWorkLimiter.getInstance().updatePriorities(profileDir);
+            }
         }
 
         private void collectProjectInfo(Project project) {
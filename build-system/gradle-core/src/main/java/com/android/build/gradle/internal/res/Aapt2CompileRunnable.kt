@@ -19,11 +19,14 @@ package com.android.build.gradle.internal.res
 import com.android.build.gradle.internal.LoggerWrapper
 import com.android.build.gradle.internal.res.namespaced.Aapt2ServiceKey
 import com.android.build.gradle.internal.res.namespaced.useAaptDaemon
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter.WorkType
 import com.android.build.gradle.options.SyncOptions
 import com.android.builder.internal.aapt.v2.Aapt2Exception
 import com.android.ide.common.resources.CompileResourceRequest
 import org.gradle.api.logging.Logging
 import java.io.Serializable
+import java.util.concurrent.Callable
 import javax.inject.Inject
 
 class Aapt2CompileRunnable @Inject constructor(
@@ -32,21 +35,24 @@ class Aapt2CompileRunnable @Inject constructor(
 
     override fun run() {
         val logger = Logging.getLogger(this::class.java)
-        useAaptDaemon(params.aapt2ServiceKey) { daemon ->
-            params.requests.forEach { request ->
-                try {
-                    daemon.compile(request, LoggerWrapper(logger))
-                } catch (exception: Aapt2Exception) {
-                    throw rewriteCompileException(
-                        exception,
-                        request,
-                        params.errorFormatMode,
-                        params.enableBlame,
-                        logger
-                    )
+        AdaptiveWorkLimiter.instance.limit(WorkType.AAPT2_COMPILE, Callable<Void> {
+            useAaptDaemon(params.aapt2ServiceKey) { daemon ->
+                params.requests.forEach { request ->
+                    try {
+                        daemon.compile(request, LoggerWrapper(logger))
+                    } catch (exception: Aapt2Exception) {
+                        throw rewriteCompileException(
+                            exception,
+                            request,
+                            params.errorFormatMode,
+                            params.enableBlame,
+                            logger
+                        )
+                    }
                 }
             }
-        }
+            null
+        })
     }
 
     class Params(
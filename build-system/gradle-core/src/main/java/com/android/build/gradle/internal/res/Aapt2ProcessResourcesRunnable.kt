@@ -102,19 +102,19 @@ fun processResources(
             SymbolTable.builder().tablePackage(mainPackageName!!).build()
 
         // For each dependency, load its symbol file.
-        var depSymbolTables: Set<SymbolTable> = loadDependenciesSymbolTables(
+        val depSymbolTables: Set<SymbolTable> = loadDependenciesSymbolTables(
             aaptConfig.librarySymbolTableFiles
         )
 
         val finalIds = aaptConfig.useFinalIds
         if (rJar != null) { // not yet used, will be used in non-namespaced case
             // replace the default values from the dependency table with the allocated values
-            // from the main table
-            depSymbolTables = depSymbolTables.asSequence().map { t -> t.withValuesFrom(mainSymbols) }.toSet()
+            // from the main table, while generating the classes of each package in parallel
             exportToCompiledJava(
                 Iterables.concat(setOf(mainSymbols), depSymbolTables),
                 rJar.toPath(),
-                finalIds
+                finalIds,
+                valuesFrom = mainSymbols
             )
         } else { // namespaced case, TODO: use exportToCompiledJava instead b/130110629
             RGeneration.generateRForLibraries(
@@ -24,6 +24,7 @@ import com.android.build.gradle.internal.scope.BuildArtifactsHolder
 import com.android.build.gradle.internal.scope.ExistingBuildElements
 import com.android.build.gradle.internal.scope.InternalArtifactType
 import com.android.build.gradle.internal.scope.VariantScope
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter
 import com.android.build.gradle.internal.tasks.TaskInputHelper
 import com.android.build.gradle.internal.tasks.Workers
 import com.android.build.gradle.internal.tasks.factory.VariantTaskCreationAction
@@ -51,6 +52,7 @@ import org.gradle.workers.WorkerExecutor
 import java.io.File
 import java.io.IOException
 import java.io.Serializable
+import java.util.concurrent.Callable
 import javax.inject.Inject
 
 @CacheableTask
@@ -133,6 +135,15 @@ open class GenerateLibraryRFileTask @Inject constructor(
 
     class GenerateLibRFileRunnable @Inject constructor(private val params: GenerateLibRFileParams) : Runnable {
         override fun run() {
+            AdaptiveWorkLimiter.instance.limit(
+                AdaptiveWorkLimiter.WorkType.R_CLASS_GENERATION,
+                Callable<Void> {
+                    generate()
+                    null
+                })
+        }
+
+        private fun generate() {
             val androidAttrSymbol = getAndroidAttrSymbols()
 
             val symbolTable = SymbolIo.readRDef(params.localResourcesFile.toPath())
@@ -41,9 +41,9 @@ import javax.inject.Inject
 
 /**
  * Task for parsing local library resources. It generates the local R-def.txt file containing the
- * symbols (see SymbolIo.writeRDef for the format), which is used by the GenerateLibraryRFileTask
- * to merge with the dependencies R.txt files to generate the R.txt for this module and the R.jar
- * for the universe.
+ * symbols (in the binary format of SymbolIo.writeBinary, read back with SymbolIo.readRDef), which
+ * is used by the GenerateLibraryRFileTask to merge with the dependencies R.txt files to generate
+ * the R.txt for this module and the R.jar for the universe.
  *
  * TODO(imorlowska): Make this incremental (at least in the easy cases for now).
  * TODO(imorlowska): Refactor the parsers to work with workers, so we can parse files in parallel.
@@ -98,9 +98,10 @@ open class ParseLibraryResourcesTask @Inject constructor(workerExecutor: WorkerE
                 "local"
             )
 
-            // Write in the format of R-def.txt since the IDs do not matter. The symbols will be
-            // written in a deterministic way (sorted by type, then by canonical name).
-            SymbolIo.writeRDef(symbolTable, params.librarySymbolsFile.toPath())
+            // Write in the binary format read by SymbolIo.readRDef, since the IDs do not matter.
+            // The symbols will be written in a deterministic way (sorted by type, then by
+            // canonical name), and consumers only decode the types they look up.
+            SymbolIo.writeBinary(symbolTable, params.librarySymbolsFile.toPath())
         }
 
         private fun getAndroidAttrSymbols() =
@@ -17,10 +17,13 @@
 package com.android.build.gradle.internal.res.namespaced
 
 import com.android.build.gradle.internal.LoggerWrapper
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter.WorkType
 import com.android.ide.common.resources.CompileResourceRequest
 import com.android.repository.Revision
 import org.gradle.api.logging.Logging
 import java.io.Serializable
+import java.util.concurrent.Callable
 import javax.inject.Inject
 
 class Aapt2CompileRunnable @Inject constructor(
@@ -28,9 +31,12 @@ class Aapt2CompileRunnable @Inject constructor(
 
     override fun run() {
         val logger = LoggerWrapper(Logging.getLogger(this::class.java))
-        useAaptDaemon(params.aapt2ServiceKey) { daemon ->
-            params.requests.forEach { daemon.compile(it, logger) }
-        }
+        AdaptiveWorkLimiter.instance.limit(WorkType.AAPT2_COMPILE, Callable<Void> {
+            useAaptDaemon(params.aapt2ServiceKey) { daemon ->
+                params.requests.forEach { daemon.compile(it, logger) }
+            }
+            null
+        })
     }
 
     class Params(
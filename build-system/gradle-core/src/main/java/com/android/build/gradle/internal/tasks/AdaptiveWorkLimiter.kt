@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.tasks
+
+import com.android.annotations.concurrency.GuardedBy
+import com.android.tools.build.gradle.internal.profile.GradleTaskExecutionType
+import com.android.tools.build.gradle.internal.profile.GradleTransformExecutionType
+import com.google.common.annotations.VisibleForTesting
+import com.google.wireless.android.sdk.stats.GradleBuildProfile
+import com.google.wireless.android.sdk.stats.GradleBuildProfileSpan
+import java.io.IOException
+import java.io.UncheckedIOException
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.PriorityQueue
+import java.util.concurrent.Callable
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Build-wide limiter for heavyweight work items, admitting them based on the live CPU load and
+ * free memory instead of a fixed concurrency limit like [WorkLimiter].
+ *
+ * Each work item has a [WorkType] giving its expected CPU and memory cost. An item is admitted
+ * when the CPU slots not used by other processes and the free memory (minus a reserve) can
+ * accommodate it on top of the items already running. An item is always admitted when nothing is
+ * running, so that large items cannot starve.
+ *
+ * The CPU load of other processes is measured when the limiter goes from idle to busy, before
+ * any item is admitted, so that the load caused by the admitted items themselves is not mistaken
+ * for load that leaves no room for more items. Waiting items are only re-evaluated when an item
+ * is admitted or completes.
+ *
+ * Waiting items are admitted by decreasing priority of their type, then in arrival order.
+ * Priorities are derived from the previous build's profile with [updatePriorities], so that the
+ * types of work that took the longest (a proxy for the critical path) are started first.
+ */
+class AdaptiveWorkLimiter @VisibleForTesting internal constructor(
+    private val systemLoad: SystemLoad,
+    private val maxConcurrency: Int
+) {
+
+    /**
+     * Kind of work being limited.
+     *
+     * @param cpuWeight the number of cores an item is expected to keep busy
+     * @param memoryEstimate the memory an item is expected to allocate, in bytes
+     * @param profileTypeNames the names of the [GradleTaskExecutionType]s and
+     *     [GradleTransformExecutionType]s whose spans measure this kind of work
+     */
+    enum class WorkType(
+        val cpuWeight: Int,
+        val memoryEstimate: Long,
+        vararg profileTypeNames: String
+    ) {
+        DEX(1, 256 * MB, "DEX_ARCHIVE_BUILDER", "DEX_ARTIFACT_TRANSFORM"),
+        AAPT2_COMPILE(
+            1,
+            64 * MB,
+            "MERGE_RESOURCES",
+            "COMPILE_SOURCE_SET_RESOURCES",
+            "VERIFY_LIBRARY_RESOURCES"
+        ),
+        R_CLASS_GENERATION(1, 128 * MB, "GENERATE_LIBRARY_R_FILE"),
+        ;
+
+        internal val profileTypeNames: Set<String> = profileTypeNames.toSet()
+    }
+
+    /** Source of the machine's load, abstracted for tests. */
+    interface SystemLoad {
+        val availableProcessors: Int
+
+        /** Recent CPU load of the whole system, between 0 and 1, or a negative value if unknown. */
+        val systemCpuLoad: Double
+
+        /** Memory that can still be allocated by work items, in bytes. */
+        val freeMemory: Long
+
+        /** Memory to keep available for everything else, in bytes. */
+        val memoryReserve: Long
+    }
+
+    private val lock = ReentrantLock()
+    private val stateChanged = lock.newCondition()
+
+    @GuardedBy("lock")
+    private val waiting = PriorityQueue<Waiter>(
+        compareByDescending<Waiter> { it.priority }.thenBy { it.sequence })
+
+    @GuardedBy("lock")
+    private var nextSequence = 0L
+
+    @GuardedBy("lock")
+    private var running = 0
+
+    @GuardedBy("lock")
+    private var runningCpu = 0
+
+    @GuardedBy("lock")
+    private var runningMemory = 0L
+
+    /** Cores used by other processes, measured before the first running item was admitted. */
+    @GuardedBy("lock")
+    private var otherCpuBaseline = 0.0
+
+    @Volatile
+    private var priorities: Map<WorkType, Long> = emptyMap()
+
+    /**
+     * Run the given callable once the machine has enough resources for an item of the given type,
+     * blocking until then.
+     */
+    @Throws(InterruptedException::class)
+    fun limit(type: WorkType, task: Callable<Void>) {
+        acquire(type)
+        try {
+            task.call()
+        } finally {
+            release(type)
+        }
+    }
+
+    /**
+     * Updates the priority of each [WorkType] from the spans of a previous build: the more time
+     * was spent on a type of work, the earlier its items are admitted.
+     */
+    fun updatePriorities(profile: GradleBuildProfile) {
+        priorities = computePriorities(profile.spanList)
+    }
+
+    /**
+     * Updates the priority of each [WorkType] from the most recent build profile in the given
+     * directory, if there is one that can be read.
+     */
+    fun updatePriorities(profileDir: Path) {
+        val profile = try {
+            if (!Files.isDirectory(profileDir)) {
+                return
+            }
+            val latest = Files.list(profileDir).use { files ->
+                files.filter { it.fileName.toString().endsWith(".rawproto") }
+                    .max(compareBy { Files.getLastModifiedTime(it) })
+                    .orElse(null)
+            } ?: return
+            GradleBuildProfile.parseFrom(Files.readAllBytes(latest))
+        } catch (e: IOException) {
+            // Priorities are only a scheduling hint, so keep the current ones.
+            return
+        } catch (e: UncheckedIOException) {
+            return
+        }
+        updatePriorities(profile)
+    }
+
+    @VisibleForTesting
+    internal fun getPriority(type: WorkType): Long = priorities[type] ?: 0L
+
+    @Throws(InterruptedException::class)
+    private fun acquire(type: WorkType) {
+        lock.withLock {
+            val waiter = Waiter(getPriority(type), nextSequence++)
+            waiting.add(waiter)
+            try {
+                while (waiting.peek() !== waiter || !canAdmit(type)) {
+                    // Woken up when an item is admitted or completes.
+                    stateChanged.await()
+                }
+            } catch (e: InterruptedException) {
+                waiting.remove(waiter)
+                stateChanged.signalAll()
+                throw e
+            }
+            waiting.remove(waiter)
+            if (running == 0) {
+                otherCpuBaseline = systemLoad.systemCpuLoad.coerceAtLeast(0.0) *
+                        systemLoad.availableProcessors
+            }
+            running++
+            runningCpu += type.cpuWeight
+            runningMemory += type.memoryEstimate
+            // The next waiter may fit as well.
+            stateChanged.signalAll()
+        }
+    }
+
+    private fun release(type: WorkType) {
+        lock.withLock {
+            running--
+            runningCpu -= type.cpuWeight
+            runningMemory -= type.memoryEstimate
+            stateChanged.signalAll()
+        }
+    }
+
+    @GuardedBy("lock")
+    private fun canAdmit(type: WorkType): Boolean {
+        if (running == 0) {
+            return true
+        }
+        if (running >= maxConcurrency) {
+            return false
+        }
+
+        // CPU used by other processes or by work that is not limited here: the load measured
+        // before any item was admitted, or more if the load grew beyond what the running items
+        // account for.
+        val processors = systemLoad.availableProcessors
+        val cpuLoad = systemLoad.systemCpuLoad
+        val otherCpu =
+            if (cpuLoad < 0) otherCpuBaseline
+            else maxOf(otherCpuBaseline, cpuLoad * processors - runningCpu)
+        if (runningCpu + type.cpuWeight > processors - otherCpu) {
+            return false
+        }
+
+        // Running items may not have allocated their memory yet, so assume they still will.
+        val availableMemory = systemLoad.freeMemory - systemLoad.memoryReserve - runningMemory
+        return type.memoryEstimate <= availableMemory
+    }
+
+    private class Waiter(val priority: Long, val sequence: Long)
+
+    /** [SystemLoad] of the current JVM and machine. */
+    private class JvmSystemLoad : SystemLoad {
+        private val osBean = ManagementFactory.getOperatingSystemMXBean()
+
+        override val availableProcessors: Int
+            get() = Runtime.getRuntime().availableProcessors()
+
+        override val systemCpuLoad: Double
+            get() = (osBean as? com.sun.management.OperatingSystemMXBean)?.systemCpuLoad ?: -1.0
+
+        override val freeMemory: Long
+            get() {
+                val runtime = Runtime.getRuntime()
+                val heapFree = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())
+                val physicalFree =
+                    (osBean as? com.sun.management.OperatingSystemMXBean)?.freePhysicalMemorySize
+                        ?: Long.MAX_VALUE
+                return minOf(heapFree, physicalFree)
+            }
+
+        override val memoryReserve: Long
+            get() = Runtime.getRuntime().maxMemory() / 10
+    }
+
+    companion object {
+        /** The limiter shared by all projects of the build. */
+        @JvmStatic
+        val instance: AdaptiveWorkLimiter by lazy {
+            AdaptiveWorkLimiter(JvmSystemLoad(), Runtime.getRuntime().availableProcessors())
+        }
+
+        @VisibleForTesting
+        internal fun computePriorities(spans: List<GradleBuildProfileSpan>): Map<WorkType, Long> {
+            val durations = mutableMapOf<WorkType, Long>()
+            for (span in spans) {
+                val typeName = when (span.type) {
+                    GradleBuildProfileSpan.ExecutionType.TASK_EXECUTION ->
+                        GradleTaskExecutionType.forNumber(span.task.type)?.name
+                    GradleBuildProfileSpan.ExecutionType.TASK_TRANSFORM ->
+                        GradleTransformExecutionType.forNumber(span.transform.type)?.name
+                    else -> null
+                } ?: continue
+                for (workType in WorkType.values()) {
+                    if (typeName in workType.profileTypeNames) {
+                        durations[workType] = (durations[workType] ?: 0L) + span.durationInMs
+                    }
+                }
+            }
+            return durations
+        }
+    }
+}
+
+private const val MB = 1024L * 1024L
@@ -29,6 +29,7 @@ import com.android.build.api.transform.TransformInvocation;
 import com.android.build.gradle.internal.LoggerWrapper;
 import com.android.builder.desugaring.DesugaringClassAnalyzer;
 import com.android.builder.desugaring.DesugaringData;
+import com.android.builder.desugaring.DesugaringDataCache;
 import com.android.builder.desugaring.DesugaringGraph;
 import com.android.builder.desugaring.DesugaringGraphs;
 import com.android.ide.common.internal.WaitableExecutor;
@@ -38,6 +39,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
@@ -51,6 +53,10 @@ import java.util.function.Supplier;
  * This helper analyzes the transform inputs, updates the {@link DesugaringGraph} it owns, and its
  * main goal is to provide paths that should also be also considered out of date, in addition to the
  * changed files. See {@link #getAdditionalPaths()} for details.
+ *
+ * <p>When the graph has to be built from scratch (e.g. in a new daemon), the analysis results are
+ * read from and written to a {@link DesugaringDataCache} in the transform's temporary directory, so
+ * that only the inputs whose content changed since the previous build are analyzed again.
  */
 class DesugarIncrementalTransformHelper {
 
@@ -58,6 +64,8 @@ class DesugarIncrementalTransformHelper {
     private static final LoggerWrapper logger =
             LoggerWrapper.getLogger(DesugarIncrementalTransformHelper.class);
 
+    @NonNull private static final String DESUGARING_DATA_CACHE = "desugaring_data.bin";
+
     @NonNull private final String projectVariant;
     @NonNull private final TransformInvocation invocation;
     @NonNull private final WaitableExecutor executor;
@@ -126,6 +134,7 @@ class DesugarIncrementalTransformHelper {
     private DesugaringGraph makeDesugaringGraph() {
         if (!invocation.isIncremental()) {
             // Rebuild totally the graph whatever the cache status
+            // (the persistent data is keyed by content, so it is still valid).
             return DesugaringGraphs.forVariant(
                     projectVariant, getInitalGraphData(invocation, executor));
         }
@@ -138,6 +147,10 @@ class DesugarIncrementalTransformHelper {
     @NonNull
     private static Collection<DesugaringData> getInitalGraphData(
             @NonNull TransformInvocation invocation, @NonNull WaitableExecutor executor) {
+        Path cacheFile =
+                invocation.getContext().getTemporaryDir().toPath().resolve(DESUGARING_DATA_CACHE);
+        DesugaringDataCache cache = DesugaringDataCache.load(cacheFile, logger);
+
         Set<DesugaringData> data = Sets.newConcurrentHashSet();
         for (TransformInput input : getAllInputs(invocation)) {
             for (QualifiedContent qualifiedContent :
@@ -147,7 +160,7 @@ class DesugarIncrementalTransformHelper {
                             Path toProcess = qualifiedContent.getFile().toPath();
                             try {
                                 if (Files.exists(toProcess)) {
-                                    data.addAll(analyze(toProcess));
+                                    data.addAll(analyze(toProcess, cache));
                                 }
                                 return null;
                             } catch (Throwable t) {
@@ -164,6 +177,12 @@ class DesugarIncrementalTransformHelper {
             throw new RuntimeException("Unable to get desugaring graph", e);
         }
 
+        try {
+            cache.save(cacheFile);
+        } catch (IOException e) {
+            logger.warning("Unable to save desugaring data to %s: %s", cacheFile, e.getMessage());
+        }
+
         return data;
     }
 
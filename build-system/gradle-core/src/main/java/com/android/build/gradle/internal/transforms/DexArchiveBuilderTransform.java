@@ -41,6 +41,7 @@ import com.android.build.gradle.internal.errors.MessageReceiverImpl;
 import com.android.build.gradle.internal.pipeline.ExtendedContentType;
 import com.android.build.gradle.internal.pipeline.TransformManager;
 import com.android.build.gradle.internal.scope.VariantScope;
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter;
 import com.android.build.gradle.internal.workeractions.WorkerActionServiceRegistry;
 import com.android.build.gradle.options.SyncOptions;
 import com.android.builder.core.DefaultDexOptions;
@@ -694,13 +695,21 @@ public class DexArchiveBuilderTransform extends Transform {
         @Override
         public void run() {
             try {
-                launchProcessing(
-                        dexConversionParameters,
-                        System.out,
-                        System.err,
-                        new MessageReceiverImpl(
-                                dexConversionParameters.errorFormatMode,
-                                Logging.getLogger(DexArchiveBuilderTransform.class)));
+                // Workers run in process, so they share the build-wide limiter.
+                AdaptiveWorkLimiter.getInstance()
+                        .limit(
+                                AdaptiveWorkLimiter.WorkType.DEX,
+                                () -> {
+                                    launchProcessing(
+                                            dexConversionParameters,
+                                            System.out,
+                                            System.err,
+                                            new MessageReceiverImpl(
+                                                    dexConversionParameters.errorFormatMode,
+                                                    Logging.getLogger(
+                                                            DexArchiveBuilderTransform.class)));
+                                    return null;
+                                });
             } catch (Exception e) {
                 throw new BuildException(e.getMessage(), e);
             }
@@ -824,28 +833,14 @@ public class DexArchiveBuilderTransform extends Transform {
             } else {
                 executor.execute(
                         () -> {
-                            ProcessOutputHandler outputHandler =
-                                    new ParsingProcessOutputHandler(
-                                            new ToolOutputParser(
-                                                    new DexParser(), Message.Kind.ERROR, logger),
-                                            new ToolOutputParser(new DexParser(), logger),
-                                            messageReceiver);
-                            ProcessOutput output = null;
-                            try (Closeable ignored = output = outputHandler.createOutput()) {
-                                launchProcessing(
-                                        parameters,
-                                        output.getStandardOutput(),
-                                        output.getErrorOutput(),
-                                        messageReceiver);
-                            } finally {
-                                if (output != null) {
-                                    try {
-                                        outputHandler.handleOutput(output);
-                                    } catch (ProcessException e) {
-                                        // ignore this one
-                                    }
-                                }
-                            }
+                            // admit dexing work based on the available CPU and memory.
+                            AdaptiveWorkLimiter.getInstance()
+                                    .limit(
+                                            AdaptiveWorkLimiter.WorkType.DEX,
+                                            () -> {
+                                                convertToDexArchive(parameters);
+                                                return null;
+                                            });
                             return null;
                         });
             }
@@ -853,6 +848,28 @@ public class DexArchiveBuilderTransform extends Transform {
         return dexArchives.build();
     }
 
+    private void convertToDexArchive(@NonNull DexConversionParameters parameters)
+            throws IOException, URISyntaxException {
+        ProcessOutputHandler outputHandler =
+                new ParsingProcessOutputHandler(
+                        new ToolOutputParser(new DexParser(), Message.Kind.ERROR, logger),
+                        new ToolOutputParser(new DexParser(), logger),
+                        messageReceiver);
+        ProcessOutput output = null;
+        try (Closeable ignored = output = outputHandler.createOutput()) {
+            launchProcessing(
+                    parameters, output.getStandardOutput(), output.getErrorOutput(), messageReceiver);
+        } finally {
+            if (output != null) {
+                try {
+                    outputHandler.handleOutput(output);
+                } catch (ProcessException e) {
+                    // ignore this one
+                }
+            }
+        }
+    }
+
     private static void launchProcessing(
             @NonNull DexConversionParameters dexConversionParameters,
             @NonNull OutputStream outStream,
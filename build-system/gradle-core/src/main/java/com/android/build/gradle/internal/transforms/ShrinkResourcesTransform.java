@@ -255,6 +255,7 @@ public class ShrinkResourcesTransform extends Transform {
 
         BuildElements mergedManifestsOutputs =
                 ExistingBuildElements.from(InternalArtifactType.MERGED_MANIFESTS, mergedManifests);
+        File temporaryDir = invocation.getContext().getTemporaryDir();
 
         try (WorkerExecutorFacade workers =
                 Workers.INSTANCE.preferWorkers(
@@ -271,6 +272,7 @@ public class ShrinkResourcesTransform extends Transform {
                                             buildInput,
                                             mergedManifestsOutputs,
                                             classes,
+                                            temporaryDir,
                                             this))
                     .into(InternalArtifactType.SHRUNK_PROCESSED_RES, compressedResources);
         }
@@ -322,6 +324,7 @@ public class ShrinkResourcesTransform extends Transform {
             try {
                 analyzer.setVerbose(params.isInfoLoggingEnabled);
                 analyzer.setDebug(params.isDebugLoggingEnabled);
+                analyzer.setCodeUsageCacheFile(params.codeUsageCacheFile);
                 try {
                     analyzer.analyze();
                 } catch (IOException | ParserConfigurationException | SAXException e) {
@@ -386,6 +389,7 @@ public class ShrinkResourcesTransform extends Transform {
         @Nullable private final BuildOutput mergedManifest;
         @NonNull private final List<File> classes;
         @Nullable private final File mappingFile;
+        @NonNull private final File codeUsageCacheFile;
         private final String buildTypeName;
         private final File sourceDir;
         private final File resourceDir;
@@ -397,6 +401,7 @@ public class ShrinkResourcesTransform extends Transform {
                 @NonNull File uncompressedResourceFile,
                 @NonNull BuildElements mergedManifests,
                 @NonNull List<File> classes,
+                @NonNull File temporaryDir,
                 ShrinkResourcesTransform transform) {
             this.uncompressedResourceFile = uncompressedResourceFile;
             this.mergedManifest = mergedManifests.element(apkInfo);
@@ -409,6 +414,8 @@ public class ShrinkResourcesTransform extends Transform {
                     transform.mappingFileSrc != null
                             ? BuildableArtifactUtil.singleFile(transform.mappingFileSrc)
                             : null;
+            codeUsageCacheFile =
+                    new File(temporaryDir, "code-usages-" + apkInfo.getBaseName() + ".bin");
             buildTypeName =
                     transform.variantData.getVariantConfiguration().getBuildType().getName();
             sourceDir = transform.sourceDir.get().getAsFile();
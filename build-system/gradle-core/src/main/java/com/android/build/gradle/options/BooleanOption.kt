@@ -50,6 +50,7 @@ enum class BooleanOption(
     // Used by Studio as workaround for b/71054106, b/75955471
     ENABLE_SDK_DOWNLOAD("android.builder.sdkDownload", true, status = Option.Status.STABLE),
     ENABLE_PROFILE_JSON("android.enableProfileJson", false),
+    ENABLE_PROFILE_EVENT_BUFFERS("android.enableProfileEventBuffers", false),
     WARN_ABOUT_DEPENDENCY_RESOLUTION_AT_CONFIGURATION("android.dependencyResolutionAtConfigurationTime.warn"),
     DISALLOW_DEPENDENCY_RESOLUTION_AT_CONFIGURATION("android.dependencyResolutionAtConfigurationTime.disallow"),
     DEBUG_OBSOLETE_API("android.debug.obsoleteApi", false, Option.Status.STABLE),
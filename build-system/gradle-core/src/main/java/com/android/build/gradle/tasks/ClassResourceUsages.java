@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.tasks;
+
+import static org.objectweb.asm.ClassReader.SKIP_DEBUG;
+import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The references found in a single class file which may be resource references: integer and
+ * string constants, static field reads and the method calls the {@link ResourceUsageAnalyzer}
+ * cares about.
+ *
+ * <p>These only depend on the contents of the class file, not on the resources or the
+ * obfuscation mapping of the app, so they can be cached across shrinker runs and replayed into
+ * the analyzer instead of visiting classes that did not change.
+ */
+final class ClassResourceUsages {
+    /** The contexts in which integer constants are found, as reported in the debug output. */
+    static final String[] INT_CONTEXTS = {"ldc", "field", "annotation"};
+
+    private static final int CONTEXT_LDC = 0;
+    private static final int CONTEXT_FIELD = 1;
+    private static final int CONTEXT_ANNOTATION = 2;
+
+    private static final int CACHE_MAGIC = 0x52555343; // RUSC
+    private static final int CACHE_VERSION = 1;
+
+    /** Callback receiving the references recorded in a class file. */
+    interface Visitor {
+        void referencedInt(@NonNull String context, int value);
+
+        void referencedString(@NonNull String value);
+
+        void referencedStaticField(@NonNull String owner, @NonNull String name);
+
+        void referencedMethod(@NonNull String owner, @NonNull String name, @NonNull String desc);
+    }
+
+    /** Pairs of the context index and value of the integer constants. */
+    @NonNull private final int[] mInts;
+    @NonNull private final String[] mStrings;
+    /** Owner and name of the static fields read. */
+    @NonNull private final String[] mStaticFields;
+    /** Owner, name and descriptor of the interesting methods called. */
+    @NonNull private final String[] mMethods;
+
+    private ClassResourceUsages(
+            @NonNull int[] ints,
+            @NonNull String[] strings,
+            @NonNull String[] staticFields,
+            @NonNull String[] methods) {
+        mInts = ints;
+        mStrings = strings;
+        mStaticFields = staticFields;
+        mMethods = methods;
+    }
+
+    /** Visits the given class file and records its references. */
+    @NonNull
+    static ClassResourceUsages scan(@NonNull byte[] bytes) {
+        Recorder recorder = new Recorder();
+        new ClassReader(bytes).accept(recorder, SKIP_DEBUG | SKIP_FRAMES);
+        return recorder.build();
+    }
+
+    /** Replays the recorded references, grouped by kind. */
+    void accept(@NonNull Visitor visitor) {
+        for (int i = 0; i < mInts.length; i += 2) {
+            visitor.referencedInt(INT_CONTEXTS[mInts[i]], mInts[i + 1]);
+        }
+        for (String string : mStrings) {
+            visitor.referencedString(string);
+        }
+        for (int i = 0; i < mStaticFields.length; i += 2) {
+            visitor.referencedStaticField(mStaticFields[i], mStaticFields[i + 1]);
+        }
+        for (int i = 0; i < mMethods.length; i += 3) {
+            visitor.referencedMethod(mMethods[i], mMethods[i + 1], mMethods[i + 2]);
+        }
+    }
+
+    /**
+     * Reads the usages cached by {@link #writeCache}, returning an empty map if the file does
+     * not exist or cannot be read.
+     */
+    @NonNull
+    static Map<String, ClassResourceUsages> readCache(@NonNull File file) {
+        if (!file.isFile()) {
+            return ImmutableMap.of();
+        }
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+                return ImmutableMap.of();
+            }
+            int count = in.readInt();
+            Map<String, ClassResourceUsages> usages = Maps.newHashMapWithExpectedSize(count);
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                int[] ints = new int[in.readInt()];
+                for (int j = 0; j < ints.length; j++) {
+                    ints[j] = in.readInt();
+                }
+                usages.put(
+                        key,
+                        new ClassResourceUsages(
+                                ints, readStrings(in), readStrings(in), readStrings(in)));
+            }
+            return usages;
+        } catch (IOException | RuntimeException e) {
+            // Truncated or corrupted; start over.
+            return ImmutableMap.of();
+        }
+    }
+
+    /** Writes the given usages, replacing the previous contents of the file. */
+    static void writeCache(@NonNull File file, @NonNull Map<String, ClassResourceUsages> usages)
+            throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(usages.size());
+            for (Map.Entry<String, ClassResourceUsages> entry : usages.entrySet()) {
+                ClassResourceUsages value = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(value.mInts.length);
+                for (int i : value.mInts) {
+                    out.writeInt(i);
+                }
+                writeStrings(out, value.mStrings);
+                writeStrings(out, value.mStaticFields);
+                writeStrings(out, value.mMethods);
+            }
+        }
+    }
+
+    @NonNull
+    private static String[] readStrings(@NonNull DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    private static void writeStrings(@NonNull DataOutputStream out, @NonNull String[] strings)
+            throws IOException {
+        out.writeInt(strings.length);
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ClassResourceUsages that = (ClassResourceUsages) o;
+        return Arrays.equals(mInts, that.mInts)
+                && Arrays.equals(mStrings, that.mStrings)
+                && Arrays.equals(mStaticFields, that.mStaticFields)
+                && Arrays.equals(mMethods, that.mMethods);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mInts) * 31 + Arrays.hashCode(mStrings);
+    }
+
+    /**
+     * Class visitor responsible for looking for resource references in code. It looks for
+     * R.type.name references (as well as inlined constants for these, in the case of non-library
+     * code), as well as looking both for Resources#getIdentifier calls and recording string
+     * literals, used to handle dynamic lookup of resources.
+     */
+    private static class Recorder extends ClassVisitor {
+        private int[] mInts = new int[16];
+        private int mIntCount;
+        private final Set<String> mStrings = new LinkedHashSet<>();
+        private final Set<FieldReference> mStaticFields = new LinkedHashSet<>();
+        private final Set<MethodReference> mMethods = new LinkedHashSet<>();
+
+        Recorder() {
+            super(Opcodes.ASM5);
+        }
+
+        @NonNull
+        ClassResourceUsages build() {
+            String[] staticFields = new String[mStaticFields.size() * 2];
+            int i = 0;
+            for (FieldReference field : mStaticFields) {
+                staticFields[i++] = field.owner;
+                staticFields[i++] = field.name;
+            }
+            String[] methods = new String[mMethods.size() * 3];
+            i = 0;
+            for (MethodReference method : mMethods) {
+                methods[i++] = method.owner;
+                methods[i++] = method.name;
+                methods[i++] = method.desc;
+            }
+            return new ClassResourceUsages(
+                    Arrays.copyOf(mInts, mIntCount),
+                    mStrings.toArray(new String[0]),
+                    staticFields,
+                    methods);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(
+                int access, String name, String desc, String signature, String[] exceptions) {
+            return new MethodVisitor(Opcodes.ASM5) {
+                @Override
+                public void visitLdcInsn(Object cst) {
+                    handleCodeConstant(cst, CONTEXT_LDC);
+                }
+
+                @Override
+                public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                    if (opcode == Opcodes.GETSTATIC) {
+                        mStaticFields.add(new FieldReference(owner, name));
+                    }
+                }
+
+                @Override
+                public void visitMethodInsn(
+                        int opcode, String owner, String name, String desc, boolean itf) {
+                    super.visitMethodInsn(opcode, owner, name, desc, itf);
+                    if (ResourceUsageAnalyzer.isInterestingMethod(owner, name)) {
+                        mMethods.add(new MethodReference(owner, name, desc));
+                    }
+                }
+
+                @Override
+                public AnnotationVisitor visitAnnotationDefault() {
+                    return new AnnotationUsageVisitor();
+                }
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                    return new AnnotationUsageVisitor();
+                }
+
+                @Override
+                public AnnotationVisitor visitParameterAnnotation(
+                        int parameter, String desc, boolean visible) {
+                    return new AnnotationUsageVisitor();
+                }
+            };
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            return new AnnotationUsageVisitor();
+        }
+
+        @Override
+        public FieldVisitor visitField(
+                int access, String name, String desc, String signature, Object value) {
+            handleCodeConstant(value, CONTEXT_FIELD);
+            return new FieldVisitor(Opcodes.ASM5) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                    return new AnnotationUsageVisitor();
+                }
+            };
+        }
+
+        private class AnnotationUsageVisitor extends AnnotationVisitor {
+            public AnnotationUsageVisitor() {
+                super(Opcodes.ASM5);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String desc) {
+                return new AnnotationUsageVisitor();
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return new AnnotationUsageVisitor();
+            }
+
+            @Override
+            public void visit(String name, Object value) {
+                handleCodeConstant(value, CONTEXT_ANNOTATION);
+                super.visit(name, value);
+            }
+        }
+
+        /** Invoked when an ASM visitor encounters a constant: record corresponding reference */
+        private void handleCodeConstant(@Nullable Object cst, int context) {
+            if (cst instanceof Integer) {
+                addInt(context, (Integer) cst);
+            } else if (cst instanceof int[]) {
+                for (int value : (int[]) cst) {
+                    addInt(context, value);
+                }
+            } else if (cst instanceof String) {
+                String string = (String) cst;
+                // Only keep the strings the analyzer would look at.
+                if (ResourceUsageAnalyzer.isPossibleResourceString(string)) {
+                    mStrings.add(string);
+                }
+            }
+        }
+
+        private void addInt(int context, int value) {
+            if (mIntCount + 2 > mInts.length) {
+                mInts = Arrays.copyOf(mInts, mInts.length * 2);
+            }
+            mInts[mIntCount++] = context;
+            mInts[mIntCount++] = value;
+        }
+    }
+
+    private static final class FieldReference {
+        @NonNull final String owner;
+        @NonNull final String name;
+
+        FieldReference(@NonNull String owner, @NonNull String name) {
+            this.owner = owner;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FieldReference)) {
+                return false;
+            }
+            FieldReference that = (FieldReference) o;
+            return owner.equals(that.owner) && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return owner.hashCode() * 31 + name.hashCode();
+        }
+    }
+
+    private static final class MethodReference {
+        @NonNull final String owner;
+        @NonNull final String name;
+        @NonNull final String desc;
+
+        MethodReference(@NonNull String owner, @NonNull String name, @NonNull String desc) {
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MethodReference)) {
+                return false;
+            }
+            MethodReference that = (MethodReference) o;
+            return owner.equals(that.owner) && name.equals(that.name) && desc.equals(that.desc);
+        }
+
+        @Override
+        public int hashCode() {
+            return (owner.hashCode() * 31 + name.hashCode()) * 31 + desc.hashCode();
+        }
+    }
+}
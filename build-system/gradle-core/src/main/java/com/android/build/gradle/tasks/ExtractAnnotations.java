@@ -92,6 +92,12 @@ public class ExtractAnnotations extends NonIncrementalTask {
             AndroidXDependency.fromPreAndroidXDependency(
                     "com.android.support", "support-annotations");
 
+    /**
+     * Name of the file in the task's temporary directory which records the annotations extracted
+     * from each source file, such that later runs only process the changed source files
+     */
+    private static final String ANNOTATIONS_INDEX = "annotations-index.bin";
+
     private FileCollection bootClasspath;
 
     private File typedefFile;
@@ -227,7 +233,8 @@ public class ExtractAnnotations extends NonIncrementalTask {
                         getClassDir().get(),
                         getOutput(),
                         sourceFiles,
-                        roots);
+                        roots,
+                        new File(getTemporaryDir(), ANNOTATIONS_INDEX));
         FileCollection lintClassPath = getLintClassPath();
         if (lintClassPath != null) {
             new ReflectiveLintRunner().extractAnnotations(getProject().getGradle(),
@@ -48,12 +48,13 @@ import com.android.utils.XmlUtils;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
-import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -61,6 +62,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.InvalidPathException;
@@ -80,13 +82,10 @@ import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 import javax.xml.parsers.ParserConfigurationException;
-import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
-import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -232,6 +231,15 @@ public class ResourceUsageAnalyzer {
     /** Obfuscated name of android/support/v7/internal/widget/ResourcesWrapper.java */
     private String mResourcesWrapper;
 
+    /** File caching the references found in class files across runs, if any. */
+    @Nullable private File mCodeUsageCacheFile;
+
+    /** The class references read from {@link #mCodeUsageCacheFile}, by cache key. */
+    @NonNull private Map<String, ClassResourceUsages> mCachedCodeUsages = ImmutableMap.of();
+
+    /** The class references found in this run, to be written to {@link #mCodeUsageCacheFile}. */
+    @NonNull private final Map<String, ClassResourceUsages> mCodeUsages = Maps.newHashMap();
+
     public ResourceUsageAnalyzer(
             @NonNull File rClasses,
             @NonNull Iterable<File> classes,
@@ -299,9 +307,18 @@ public class ResourceUsageAnalyzer {
         gatherResourceValues(mResourceClasseseSource);
         recordMapping(mProguardMapping);
 
+        if (mCodeUsageCacheFile != null) {
+            mCachedCodeUsages = ClassResourceUsages.readCache(mCodeUsageCacheFile);
+        }
         for (File jarOrDir : mClasses) {
             recordClassUsages(jarOrDir);
         }
+        if (mCodeUsageCacheFile != null) {
+            // Only keep the classes seen in this run, so that the cache does not keep growing.
+            ClassResourceUsages.writeCache(mCodeUsageCacheFile, mCodeUsages);
+            mCachedCodeUsages = ImmutableMap.of();
+            mCodeUsages.clear();
+        }
         recordManifestUsages(mMergedManifest);
         recordResources(mResourceDirs);
         keepPossiblyReferencedResources();
@@ -314,6 +331,15 @@ public class ResourceUsageAnalyzer {
         return mDryRun;
     }
 
+    /**
+     * Sets a file in which the references found in class files are cached across runs, so that
+     * only the classes which changed since the previous run are visited again. The references
+     * do not depend on the other inputs of the analysis, which are always processed in full.
+     */
+    public void setCodeUsageCacheFile(@Nullable File cacheFile) {
+        mCodeUsageCacheFile = cacheFile;
+    }
+
     public void setDryRun(boolean dryRun) {
         mDryRun = dryRun;
     }
@@ -1399,11 +1425,27 @@ public class ResourceUsageAnalyzer {
     private boolean mFoundWebContent;
 
     private void referencedString(@NonNull String string) {
+        if (!isPossibleResourceString(string)) {
+            return;
+        }
+
+        if (mStrings == null) {
+            mStrings = Sets.newHashSetWithExpectedSize(300);
+        }
+        mStrings.add(string);
+
+        if (!mFoundWebContent && string.contains(ANDROID_RES)) {
+            mFoundWebContent = true;
+        }
+    }
+
+    /** Returns whether the given string could be used to look up a resource dynamically. */
+    static boolean isPossibleResourceString(@NonNull String string) {
         // See if the string is at all eligible; ignore strings that aren't
         // identifiers (has java identifier chars and nothing but .:/), or are empty or too long
         // We also allow "%", used for formatting strings.
         if (string.isEmpty() || string.length() > 80) {
-            return;
+            return false;
         }
         boolean haveIdentifierChar = false;
         for (int i = 0, n = string.length(); i < n; i++) {
@@ -1412,23 +1454,12 @@ public class ResourceUsageAnalyzer {
             if (!identifierChar && c != '.' && c != ':' && c != '/' && c != '%') {
                 // .:/ are for the fully qualified resource names, or for resource URLs or
                 // relative file names
-                return;
+                return false;
             } else if (identifierChar) {
                 haveIdentifierChar = true;
             }
         }
-        if (!haveIdentifierChar) {
-            return;
-        }
-
-        if (mStrings == null) {
-            mStrings = Sets.newHashSetWithExpectedSize(300);
-        }
-        mStrings.add(string);
-
-        if (!mFoundWebContent && string.contains(ANDROID_RES)) {
-            mFoundWebContent = true;
-        }
+        return haveIdentifierChar;
     }
 
     private void recordClassUsages(File file) throws IOException {
@@ -1440,91 +1471,152 @@ public class ResourceUsageAnalyzer {
                 }
             }
         } else if (file.isFile()) {
-            if (file.getPath().endsWith(DOT_CLASS) || file.getPath().endsWith(DOT_DEX)) {
+            if (file.getPath().endsWith(DOT_CLASS)) {
+                byte[] bytes = Files.toByteArray(file);
+                String key = Hashing.sha256().hashBytes(bytes).toString();
+                recordClassUsages(file, file.getName(), getClassUsages(key, () -> bytes));
+            } else if (file.getPath().endsWith(DOT_DEX)) {
                 byte[] bytes = Files.toByteArray(file);
-                recordClassUsages(file, file.getName(), bytes);
+                recordDexUsages(file, file.getName(), bytes);
             } else if (file.getPath().endsWith(DOT_JAR)) {
-                ZipInputStream zis = null;
-                try {
-                    FileInputStream fis = new FileInputStream(file);
-                    try {
-                        zis = new ZipInputStream(fis);
-                        ZipEntry entry = zis.getNextEntry();
-                        while (entry != null) {
-                            String name = entry.getName();
-                            if ((name.endsWith(DOT_CLASS)
-                                            &&
-                                            // Skip resource type classes like R$drawable; they will
-                                            // reference the integer id's we're looking for, but
-                                            // these aren't actual usages we need to track;
-                                            // if somebody references the field elsewhere, we'll
-                                            // catch that
-                                            !isResourceClass(name))
-                                    || name.endsWith(DOT_DEX)) {
-                                byte[] bytes = ByteStreams.toByteArray(zis);
-                                if (bytes != null) {
-                                    recordClassUsages(file, name, bytes);
-                                }
-                            }
-
-                            entry = zis.getNextEntry();
+                try (ZipFile zipFile = new ZipFile(file)) {
+                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        String name = entry.getName();
+                        if (name.endsWith(DOT_CLASS)
+                                // Skip resource type classes like R$drawable; they will
+                                // reference the integer id's we're looking for, but
+                                // these aren't actual usages we need to track;
+                                // if somebody references the field elsewhere, we'll
+                                // catch that
+                                && !isResourceClass(name)) {
+                            // The zip directory has the checksum of each entry, so unchanged
+                            // classes can be found in the cache without inflating them.
+                            String key =
+                                    entry.getCrc() != -1 && entry.getSize() != -1
+                                            ? name + ':' + entry.getCrc() + ':' + entry.getSize()
+                                            : null;
+                            recordClassUsages(
+                                    file,
+                                    name,
+                                    getClassUsages(key, () -> readEntry(zipFile, entry)));
+                        } else if (name.endsWith(DOT_DEX)) {
+                            recordDexUsages(file, name, readEntry(zipFile, entry));
                         }
-                    } finally {
-                        Closeables.close(fis, true);
                     }
-                } finally {
-                    Closeables.close(zis, true);
                 }
             }
         }
     }
 
-    private void recordClassUsages(File file, String name, byte[] bytes) {
-        if (name.endsWith(DOT_CLASS)) {
-            ClassReader classReader = new ClassReader(bytes);
-            classReader.accept(new UsageVisitor(file, name), SKIP_DEBUG | SKIP_FRAMES);
-        } else {
-            assert name.endsWith(DOT_DEX);
-            AnalysisCallback callback =
-                    new AnalysisCallback() {
-                        @Override
-                        public boolean shouldProcess(@NonNull String internalName) {
-                            return !isResourceClass(internalName + DOT_CLASS);
-                        }
+    @NonNull
+    private static byte[] readEntry(@NonNull ZipFile zipFile, @NonNull ZipEntry entry)
+            throws IOException {
+        try (InputStream stream = zipFile.getInputStream(entry)) {
+            return ByteStreams.toByteArray(stream);
+        }
+    }
 
-                        @Override
-                        public void referencedInt(int value) {
-                            ResourceUsageAnalyzer.this.referencedInt("dex", value, file, name);
-                        }
+    /** Supplies the contents of a class file. */
+    private interface ClassBytes {
+        @NonNull
+        byte[] get() throws IOException;
+    }
 
-                        @Override
-                        public void referencedString(@NonNull String value) {
-                            ResourceUsageAnalyzer.this.referencedString(value);
-                        }
+    /**
+     * Returns the references of the class with the given cache key, only reading and visiting
+     * the class when it is not in the cache.
+     *
+     * @param key the cache key, unique to the contents of the class, or null if not cacheable
+     */
+    @NonNull
+    private ClassResourceUsages getClassUsages(@Nullable String key, @NonNull ClassBytes bytes)
+            throws IOException {
+        if (mCodeUsageCacheFile == null || key == null) {
+            return ClassResourceUsages.scan(bytes.get());
+        }
+        ClassResourceUsages usages = mCachedCodeUsages.get(key);
+        if (usages == null) {
+            usages = ClassResourceUsages.scan(bytes.get());
+        }
+        mCodeUsages.put(key, usages);
+        return usages;
+    }
 
-                        @Override
-                        public void referencedStaticField(
-                                @NonNull String internalName, @NonNull String fieldName) {
-                            Resource resource = getResourceFromCode(internalName, fieldName);
-                            if (resource != null) {
-                                ResourceUsageModel.markReachable(resource);
-                            }
+    private void recordClassUsages(File file, String name, ClassResourceUsages usages) {
+        usages.accept(
+                new ClassResourceUsages.Visitor() {
+                    @Override
+                    public void referencedInt(@NonNull String context, int value) {
+                        ResourceUsageAnalyzer.this.referencedInt(context, value, file, name);
+                    }
+
+                    @Override
+                    public void referencedString(@NonNull String value) {
+                        ResourceUsageAnalyzer.this.referencedString(value);
+                    }
+
+                    @Override
+                    public void referencedStaticField(
+                            @NonNull String owner, @NonNull String fieldName) {
+                        Resource resource = getResourceFromCode(owner, fieldName);
+                        if (resource != null) {
+                            ResourceUsageModel.markReachable(resource);
                         }
+                    }
 
-                        @Override
-                        public void referencedMethod(
-                                @NonNull String internalName,
-                                @NonNull String methodName,
-                                @NonNull String methodDescriptor) {
-                            ResourceUsageAnalyzer.this.referencedMethodInvocation(
-                                    internalName,
-                                    methodName,
-                                    methodDescriptor,
-                                    internalName + DOT_CLASS);
+                    @Override
+                    public void referencedMethod(
+                            @NonNull String owner,
+                            @NonNull String methodName,
+                            @NonNull String desc) {
+                        referencedMethodInvocation(owner, methodName, desc, name);
+                    }
+                });
+    }
+
+    private void recordDexUsages(File file, String name, byte[] bytes) {
+        assert name.endsWith(DOT_DEX);
+        AnalysisCallback callback =
+                new AnalysisCallback() {
+                    @Override
+                    public boolean shouldProcess(@NonNull String internalName) {
+                        return !isResourceClass(internalName + DOT_CLASS);
+                    }
+
+                    @Override
+                    public void referencedInt(int value) {
+                        ResourceUsageAnalyzer.this.referencedInt("dex", value, file, name);
+                    }
+
+                    @Override
+                    public void referencedString(@NonNull String value) {
+                        ResourceUsageAnalyzer.this.referencedString(value);
+                    }
+
+                    @Override
+                    public void referencedStaticField(
+                            @NonNull String internalName, @NonNull String fieldName) {
+                        Resource resource = getResourceFromCode(internalName, fieldName);
+                        if (resource != null) {
+                            ResourceUsageModel.markReachable(resource);
                         }
-                    };
-            R8ResourceShrinker.runResourceShrinkerAnalysis(bytes, file, callback);
-        }
+                    }
+
+                    @Override
+                    public void referencedMethod(
+                            @NonNull String internalName,
+                            @NonNull String methodName,
+                            @NonNull String methodDescriptor) {
+                        ResourceUsageAnalyzer.this.referencedMethodInvocation(
+                                internalName,
+                                methodName,
+                                methodDescriptor,
+                                internalName + DOT_CLASS);
+                    }
+                };
+        R8ResourceShrinker.runResourceShrinkerAnalysis(bytes, file, callback);
     }
 
     /** Returns whether the given class file name points to an aapt-generated compiled R class */
@@ -1761,122 +1853,6 @@ public class ResourceUsageAnalyzer {
         return mModel;
     }
 
-    /**
-     * Class visitor responsible for looking for resource references in code.
-     * It looks for R.type.name references (as well as inlined constants for these,
-     * in the case of non-library code), as well as looking both for Resources#getIdentifier
-     * calls and recording string literals, used to handle dynamic lookup of resources.
-     */
-    private class UsageVisitor extends ClassVisitor {
-        private final File mJarFile;
-        private final String mCurrentClass;
-
-        public UsageVisitor(File jarFile, String name) {
-            super(Opcodes.ASM5);
-            mJarFile = jarFile;
-            mCurrentClass = name;
-        }
-
-        @Override
-        public MethodVisitor visitMethod(int access, final String name,
-                String desc, String signature, String[] exceptions) {
-            return new MethodVisitor(Opcodes.ASM5) {
-                @Override
-                public void visitLdcInsn(Object cst) {
-                    handleCodeConstant(cst, "ldc");
-                }
-
-                @Override
-                public void visitFieldInsn(int opcode, String owner, String name, String desc) {
-                    if (opcode == Opcodes.GETSTATIC) {
-                        Resource resource = getResourceFromCode(owner, name);
-                        if (resource != null) {
-                            ResourceUsageModel.markReachable(resource);
-                        }
-                    }
-                }
-
-                @Override
-                public void visitMethodInsn(
-                        int opcode, String owner, String name, String desc, boolean itf) {
-                    super.visitMethodInsn(opcode, owner, name, desc, itf);
-                    referencedMethodInvocation(owner, name, desc, mCurrentClass);
-                }
-
-                @Override
-                public AnnotationVisitor visitAnnotationDefault() {
-                    return new AnnotationUsageVisitor();
-                }
-
-                @Override
-                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                    return new AnnotationUsageVisitor();
-                }
-
-                @Override
-                public AnnotationVisitor visitParameterAnnotation(
-                        int parameter, String desc, boolean visible) {
-                    return new AnnotationUsageVisitor();
-                }
-            };
-        }
-
-        @Override
-        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-            return new AnnotationUsageVisitor();
-        }
-
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature,
-                Object value) {
-            handleCodeConstant(value, "field");
-            return new FieldVisitor(Opcodes.ASM5) {
-                @Override
-                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                    return new AnnotationUsageVisitor();
-                }
-            };
-        }
-
-        private class AnnotationUsageVisitor extends AnnotationVisitor {
-            public AnnotationUsageVisitor() {
-                super(Opcodes.ASM5);
-            }
-
-            @Override
-            public AnnotationVisitor visitAnnotation(String name, String desc) {
-                return new AnnotationUsageVisitor();
-            }
-
-            @Override
-            public AnnotationVisitor visitArray(String name) {
-                return new AnnotationUsageVisitor();
-            }
-
-            @Override
-            public void visit(String name, Object value) {
-                handleCodeConstant(value, "annotation");
-                super.visit(name, value);
-            }
-        }
-
-        /** Invoked when an ASM visitor encounters a constant: record corresponding reference */
-        private void handleCodeConstant(@Nullable Object cst, @NonNull String context) {
-            if (cst instanceof Integer) {
-                Integer value = (Integer) cst;
-                referencedInt(context, value, mJarFile, mCurrentClass);
-            } else if (cst instanceof int[]) {
-                int[] values = (int[]) cst;
-                for (int value : values) {
-                    referencedInt(context, value, mJarFile, mCurrentClass);
-                }
-            } else if (cst instanceof String) {
-                String string = (String) cst;
-                referencedString(string);
-            }
-        }
-    }
-
     private void referencedInt(@NonNull String context, int value, File file, String currentClass) {
         Resource resource = mModel.getResource(value);
         if (ResourceUsageModel.markReachable(resource) && mDebug) {
@@ -1893,6 +1869,15 @@ public class ResourceUsageAnalyzer {
         }
     }
 
+    /**
+     * Returns whether calls to the given method can affect the analysis, see {@link
+     * #referencedMethodInvocation}.
+     */
+    static boolean isInterestingMethod(@NonNull String owner, @NonNull String name) {
+        return owner.equals("android/content/res/Resources") && name.equals("getIdentifier")
+                || owner.equals("android/webkit/WebView") && name.startsWith("load");
+    }
+
     private void referencedMethodInvocation(
             @NonNull String owner,
             @NonNull String name,
@@ -20,18 +20,18 @@ import com.android.annotations.NonNull;
 import com.android.builder.tasks.Job;
 import com.android.builder.tasks.JobContext;
 import com.android.builder.tasks.QueueThreadContextAdapter;
-import com.android.builder.tasks.WorkQueue;
+import com.android.builder.tasks.WorkStealingQueue;
 import com.android.utils.StdLogger;
 
 /**
- * Common utilities to use a simple shared instance of {@link WorkQueue}.
+ * Common utilities to use a simple shared instance of {@link WorkStealingQueue}.
  * The context for job will be empty, and it is the responsibility of the
- * {@code com.android.builder.tasks.WorkQueue.QueueTask} to have enough context to run.
+ * {@link Job} to have enough context to run.
  */
 public class SimpleWorkQueue {
 
     /**
-     * Simple {@link WorkQueue} context implementation that simply runs the proguard job.
+     * Simple {@link WorkStealingQueue} context implementation that simply runs the proguard job.
      */
     private static class EmptyThreadContext extends
             QueueThreadContextAdapter<Void> {
@@ -46,8 +46,8 @@ public class SimpleWorkQueue {
     /**
      * singleton work queue for all proguard invocations.
      */
-    private static final WorkQueue<Void> WORK_QUEUE =
-            new WorkQueue<>(
+    private static final WorkStealingQueue<Void> WORK_QUEUE =
+            new WorkStealingQueue<>(
                     new StdLogger(StdLogger.Level.VERBOSE),
                     new EmptyThreadContext(), "Tasks limiter", 4);
 
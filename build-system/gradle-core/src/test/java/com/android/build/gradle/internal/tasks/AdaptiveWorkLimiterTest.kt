@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.tasks
+
+import com.android.build.gradle.internal.tasks.AdaptiveWorkLimiter.WorkType
+import com.android.tools.build.gradle.internal.profile.GradleTaskExecutionType
+import com.android.tools.build.gradle.internal.profile.GradleTransformExecutionType
+import com.google.common.truth.Truth.assertThat
+import com.google.wireless.android.sdk.stats.GradleBuildProfileSpan
+import com.google.wireless.android.sdk.stats.GradleTaskExecution
+import com.google.wireless.android.sdk.stats.GradleTransformExecution
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/** Tests for AdaptiveWorkLimiter */
+class AdaptiveWorkLimiterTest {
+
+    private class FakeSystemLoad(
+        override var availableProcessors: Int = 4,
+        override var systemCpuLoad: Double = 0.0,
+        override var freeMemory: Long = Long.MAX_VALUE / 2,
+        override var memoryReserve: Long = 0
+    ) : AdaptiveWorkLimiter.SystemLoad
+
+    @Test
+    fun checkConcurrencyIsCappedByProcessors() {
+        val limiter = AdaptiveWorkLimiter(FakeSystemLoad(availableProcessors = 2), 8)
+        assertThat(maxConcurrentItems(limiter, WorkType.DEX, 6)).isEqualTo(2)
+    }
+
+    @Test
+    fun checkConcurrencyIsCappedByOtherCpuLoad() {
+        // Half of the 4 cores are busy with work the limiter does not know about.
+        val limiter = AdaptiveWorkLimiter(FakeSystemLoad(systemCpuLoad = 0.5), 8)
+        assertThat(maxConcurrentItems(limiter, WorkType.DEX, 6)).isEqualTo(2)
+    }
+
+    @Test
+    fun checkConcurrencyIsCappedByMemory() {
+        val memory = FakeSystemLoad(
+            availableProcessors = 8,
+            freeMemory = WorkType.DEX.memoryEstimate * 3,
+            memoryReserve = WorkType.DEX.memoryEstimate
+        )
+        val limiter = AdaptiveWorkLimiter(memory, 8)
+        assertThat(maxConcurrentItems(limiter, WorkType.DEX, 6)).isEqualTo(2)
+    }
+
+    @Test
+    fun checkSingleItemIsAlwaysAdmitted() {
+        val limiter = AdaptiveWorkLimiter(FakeSystemLoad(systemCpuLoad = 1.0, freeMemory = 0), 8)
+        assertThat(maxConcurrentItems(limiter, WorkType.DEX, 3)).isEqualTo(1)
+    }
+
+    @Test
+    fun checkPrioritiesFromProfile() {
+        val spans = listOf(
+            taskSpan(GradleTaskExecutionType.MERGE_RESOURCES, 300),
+            taskSpan(GradleTaskExecutionType.MERGE_RESOURCES, 200),
+            transformSpan(GradleTransformExecutionType.DEX_ARCHIVE_BUILDER, 100)
+        )
+
+        val priorities = AdaptiveWorkLimiter.computePriorities(spans)
+
+        assertThat(priorities).containsExactly(WorkType.AAPT2_COMPILE, 500L, WorkType.DEX, 100L)
+    }
+
+    /** Runs [count] blocking items and returns how many of them ran at the same time. */
+    private fun maxConcurrentItems(limiter: AdaptiveWorkLimiter, type: WorkType, count: Int): Int {
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val done = CountDownLatch(count)
+        val executor = Executors.newFixedThreadPool(count)
+        try {
+            repeat(count) {
+                executor.execute {
+                    limiter.limit(type, Callable<Void> {
+                        val current = running.incrementAndGet()
+                        maxRunning.accumulateAndGet(current, Math::max)
+                        // Give the other items a chance to be admitted concurrently.
+                        Thread.sleep(50)
+                        running.decrementAndGet()
+                        null
+                    })
+                    done.countDown()
+                }
+            }
+            assertThat(done.await(60, TimeUnit.SECONDS)).isTrue()
+        } finally {
+            executor.shutdownNow()
+        }
+        return maxRunning.get()
+    }
+
+    private fun taskSpan(type: GradleTaskExecutionType, duration: Long) =
+        GradleBuildProfileSpan.newBuilder()
+            .setType(GradleBuildProfileSpan.ExecutionType.TASK_EXECUTION)
+            .setTask(GradleTaskExecution.newBuilder().setType(type.number))
+            .setDurationInMs(duration)
+            .build()
+
+    private fun transformSpan(type: GradleTransformExecutionType, duration: Long) =
+        GradleBuildProfileSpan.newBuilder()
+            .setType(GradleBuildProfileSpan.ExecutionType.TASK_TRANSFORM)
+            .setTransform(GradleTransformExecution.newBuilder().setType(type.number))
+            .setDurationInMs(duration)
+            .build()
+}
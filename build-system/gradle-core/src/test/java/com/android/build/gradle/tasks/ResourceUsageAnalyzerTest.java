@@ -44,6 +44,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -166,6 +167,54 @@ public class ResourceUsageAnalyzerTest {
                 analyzer.getModel().dumpConfig());
     }
 
+    @Test
+    public void testCodeUsageCache() throws Exception {
+        File dir = sTemporaryFolder.newFolder();
+
+        File classes = createProguardedClasses(dir);
+        File mapping = createMappingFile(dir);
+        File rDir = createResourceSources(dir);
+        File mergedManifest = createMergedManifest(dir);
+        File resources = createResourceFolder(dir);
+        File cacheFile = new File(dir, "cache" + separatorChar + "usages.bin");
+
+        ResourceUsageAnalyzer uncached =
+                new ResourceUsageAnalyzer(
+                        rDir,
+                        Collections.singleton(classes),
+                        mergedManifest,
+                        mapping,
+                        resources,
+                        null,
+                        ResourceUsageAnalyzer.ApkFormat.BINARY);
+        uncached.analyze();
+        String expected = uncached.getModel().dumpResourceModel();
+
+        Map<String, ClassResourceUsages> cached = null;
+        for (int i = 0; i < 2; i++) {
+            ResourceUsageAnalyzer analyzer =
+                    new ResourceUsageAnalyzer(
+                            rDir,
+                            Collections.singleton(classes),
+                            mergedManifest,
+                            mapping,
+                            resources,
+                            null,
+                            ResourceUsageAnalyzer.ApkFormat.BINARY);
+            analyzer.setCodeUsageCacheFile(cacheFile);
+            analyzer.analyze();
+            checkState(analyzer);
+            assertEquals(expected, analyzer.getModel().dumpResourceModel());
+
+            Map<String, ClassResourceUsages> usages = ClassResourceUsages.readCache(cacheFile);
+            assertFalse(usages.isEmpty());
+            if (cached != null) {
+                assertEquals(cached, usages);
+            }
+            cached = usages;
+        }
+    }
+
     private void check(CodeInput codeInput, boolean inPlace) throws Exception {
         File dir = sTemporaryFolder.newFolder();
 
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.manifmerger;
+
+import com.android.annotations.NonNull;
+import com.android.utils.PositionXmlParser;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Cache of parsed library manifests shared by all the merger invocations of the process, used
+ * when {@link ManifestMerger2.Invoker.Feature#CACHE_LIBRARY_MANIFESTS} is set.
+ *
+ * <p>The same library manifests are merged over and over, once per variant and once per build.
+ * Entries are keyed by the hash of the manifest contents, so a library is only parsed again when
+ * its manifest actually changed. Merging modifies and adopts the nodes of the library documents,
+ * so every lookup returns a fresh copy of the cached document.
+ */
+final class LibraryManifestCache {
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final LibraryManifestCache sInstance = new LibraryManifestCache();
+
+    @NonNull
+    private final Cache<HashCode, ParsedManifest> mManifests =
+            CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).softValues().build();
+
+    @VisibleForTesting
+    LibraryManifestCache() {}
+
+    @NonNull
+    static LibraryManifestCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the parsed manifest for the contents of the given stream, parsing it only if the
+     * same contents have not been seen before. The stream is closed by this method.
+     */
+    @NonNull
+    ParsedManifest get(@NonNull InputStream inputStream)
+            throws IOException, SAXException, ParserConfigurationException {
+        byte[] contents;
+        try {
+            contents = ByteStreams.toByteArray(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        HashCode hash = Hashing.sha256().hashBytes(contents);
+        ParsedManifest manifest = mManifests.getIfPresent(hash);
+        if (manifest == null) {
+            manifest = new ParsedManifest(PositionXmlParser.parse(contents));
+            mManifests.put(hash, manifest);
+        }
+        return manifest;
+    }
+
+    /** A parsed manifest, from which copies are handed out to the merger invocations. */
+    static final class ParsedManifest {
+        @NonNull private final Document mDocument;
+        private final boolean mHasPlaceholders;
+
+        private ParsedManifest(@NonNull Document document) {
+            mDocument = document;
+            mHasPlaceholders = hasPlaceholders(document.getDocumentElement());
+        }
+
+        /** Returns a copy of the parsed document which the caller is free to modify. */
+        @NonNull
+        Document newDocument() {
+            // DOM implementations are not thread safe, even for reads.
+            synchronized (mDocument) {
+                return PositionXmlParser.copy(mDocument);
+            }
+        }
+
+        /**
+         * Returns whether any attribute of the manifest references a placeholder, i.e. whether
+         * {@link PlaceholderHandler} would have anything to replace.
+         */
+        boolean hasPlaceholders() {
+            return mHasPlaceholders;
+        }
+
+        private static boolean hasPlaceholders(@NonNull Element element) {
+            NamedNodeMap attributes = element.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                if (attributes.item(i).getNodeValue().contains("${")) {
+                    return true;
+                }
+            }
+            for (Node child = element.getFirstChild();
+                    child != null;
+                    child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE
+                        && hasPlaceholders((Element) child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
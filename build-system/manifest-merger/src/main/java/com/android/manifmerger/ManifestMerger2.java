@@ -30,6 +30,7 @@ import com.android.ide.common.xml.XmlFormatStyle;
 import com.android.ide.common.xml.XmlPrettyPrinter;
 import com.android.utils.ILogger;
 import com.android.utils.Pair;
+import com.android.utils.PositionXmlParser;
 import com.android.utils.XmlUtils;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
@@ -1200,15 +1201,26 @@ public class ManifestMerger2 {
                             Optional.fromNullable(mainManifestPackageName));
             File xmlFile = manifestInfo.mLocation;
             XmlDocument libraryDocument;
+            // without a cached manifest, we cannot tell if there are placeholders before looking.
+            boolean hasPlaceholders = true;
             try {
                 InputStream inputStream = mFileStreamProvider.getInputStream(xmlFile);
+                Document domDocument;
+                if (mOptionalFeatures.contains(Invoker.Feature.CACHE_LIBRARY_MANIFESTS)) {
+                    LibraryManifestCache.ParsedManifest parsedManifest =
+                            LibraryManifestCache.getInstance().get(inputStream);
+                    domDocument = parsedManifest.newDocument();
+                    hasPlaceholders = parsedManifest.hasPlaceholders();
+                } else {
+                    domDocument = PositionXmlParser.parse(inputStream);
+                }
                 libraryDocument =
                         XmlLoader.load(
                                 selectors,
                                 mSystemPropertyResolver,
                                 manifestInfo.mName,
                                 xmlFile,
-                                inputStream,
+                                domDocument,
                                 XmlDocument.Type.LIBRARY,
                                 Optional.absent(), /* mainManifestPackageName */
                                 mModel,
@@ -1226,15 +1238,18 @@ public class ManifestMerger2 {
             // perform placeholder substitution, this is useful when the library is using
             // a placeholder in a key element, we however do not need to record these
             // substitutions so feed it with a fake merging report.
-            MergingReport.Builder builder =
-                    new MergingReport.Builder(mergingReportBuilder.getLogger());
-            builder.getActionRecorder().recordAddedNodeAction(libraryDocument.getRootNode(), false);
-            performPlaceHolderSubstitution(
-                    manifestInfo, libraryDocument, builder, MergingReport.Record.Severity.INFO);
-            if (builder.hasErrors()) {
-                // we log the errors but continue, in case the error is of no consequence
-                // to the application consuming the library.
-                builder.build().log(mLogger);
+            if (hasPlaceholders) {
+                MergingReport.Builder builder =
+                        new MergingReport.Builder(mergingReportBuilder.getLogger());
+                builder.getActionRecorder()
+                        .recordAddedNodeAction(libraryDocument.getRootNode(), false);
+                performPlaceHolderSubstitution(
+                        manifestInfo, libraryDocument, builder, MergingReport.Record.Severity.INFO);
+                if (builder.hasErrors()) {
+                    // we log the errors but continue, in case the error is of no consequence
+                    // to the application consuming the library.
+                    builder.build().log(mLogger);
+                }
             }
 
             LoadedManifestInfo info =
@@ -1595,6 +1610,13 @@ public class ManifestMerger2 {
 
             /** Enforce that dependencies manifests don't have duplicated package names. */
             ENFORCE_UNIQUE_PACKAGE_NAME,
+
+            /**
+             * Keep the parsed library manifests in memory, keyed by the hash of their contents,
+             * so that later merges in the same process only parse the manifests that changed.
+             * Placeholder substitution is skipped for library manifests without placeholders.
+             */
+            CACHE_LIBRARY_MANIFESTS,
         }
 
         /**
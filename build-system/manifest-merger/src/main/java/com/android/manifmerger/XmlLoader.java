@@ -57,7 +57,38 @@ public final class XmlLoader {
             @NonNull DocumentModel<ManifestModel.NodeTypes> model,
             boolean rewriteNamespaces)
             throws IOException, SAXException, ParserConfigurationException {
-        Document domDocument = PositionXmlParser.parse(inputStream);
+        return load(
+                selectors,
+                systemPropertyResolver,
+                displayName,
+                xmlFile,
+                PositionXmlParser.parse(inputStream),
+                type,
+                mainManifestPackageName,
+                model,
+                rewriteNamespaces);
+    }
+
+    /**
+     * Creates a {@link XmlDocument} from an already parsed xml file.
+     *
+     * @param displayName the xml file display name.
+     * @param xmlFile the xml file.
+     * @param domDocument the document parsed from the xml file, which is now owned by the returned
+     *     {@link XmlDocument}.
+     * @return the initialized {@link com.android.manifmerger.XmlDocument}
+     */
+    @NonNull
+    public static XmlDocument load(
+            @NonNull KeyResolver<String> selectors,
+            @NonNull KeyBasedValueResolver<ManifestSystemProperty> systemPropertyResolver,
+            @NonNull String displayName,
+            @NonNull File xmlFile,
+            @NonNull Document domDocument,
+            @NonNull XmlDocument.Type type,
+            @NonNull Optional<String> mainManifestPackageName,
+            @NonNull DocumentModel<ManifestModel.NodeTypes> model,
+            boolean rewriteNamespaces) {
         if (rewriteNamespaces) {
             Element rootElement = domDocument.getDocumentElement();
             String localPackage = rootElement.getAttribute("package");
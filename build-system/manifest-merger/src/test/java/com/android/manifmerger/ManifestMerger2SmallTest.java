@@ -242,6 +242,83 @@ public class ManifestMerger2SmallTest {
         }
     }
 
+    @Test
+    public void testCachedLibraryManifests() throws Exception {
+        MockLog mockLog = new MockLog();
+        String xml =
+                ""
+                        + "<manifest\n"
+                        + "    xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+                        + "    package=\"com.example.app1\">\n"
+                        + "\n"
+                        + "    <application android:label=\"@string/app_name\" />\n"
+                        + "\n"
+                        + "</manifest>";
+        File inputFile = TestUtils.inputAsFile("testCachedLibraryManifests", xml);
+
+        String placeholderLibrary =
+                ""
+                        + "<manifest\n"
+                        + "    xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+                        + "    package=\"com.example.lib1\">\n"
+                        + "\n"
+                        + "    <application>\n"
+                        + "        <provider\n"
+                        + "            android:name=\"com.example.lib1.Provider\"\n"
+                        + "            android:authorities=\"${applicationId}.lib1\" />\n"
+                        + "    </application>\n"
+                        + "\n"
+                        + "</manifest>";
+        File placeholderLibFile =
+                TestUtils.inputAsFile("testCachedLibraryManifests", placeholderLibrary);
+
+        String plainLibrary =
+                ""
+                        + "<manifest\n"
+                        + "    xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+                        + "    package=\"com.example.lib2\">\n"
+                        + "\n"
+                        + "    <application>\n"
+                        + "        <activity android:name=\"com.example.lib2.MainActivity\" />\n"
+                        + "    </application>\n"
+                        + "\n"
+                        + "</manifest>";
+        File plainLibFile = TestUtils.inputAsFile("testCachedLibraryManifests", plainLibrary);
+
+        try {
+            MergingReport expected =
+                    ManifestMerger2.newMerger(
+                                    inputFile, mockLog, ManifestMerger2.MergeType.APPLICATION)
+                            .addLibraryManifests(placeholderLibFile, plainLibFile)
+                            .merge();
+            assertEquals(MergingReport.Result.SUCCESS, expected.getResult());
+
+            // Merge several times, the cached documents must not be modified by the merges.
+            for (int i = 0; i < 3; i++) {
+                MergingReport mergingReport =
+                        ManifestMerger2.newMerger(
+                                        inputFile, mockLog, ManifestMerger2.MergeType.APPLICATION)
+                                .withFeatures(
+                                        ManifestMerger2.Invoker.Feature.CACHE_LIBRARY_MANIFESTS)
+                                .addLibraryManifests(placeholderLibFile, plainLibFile)
+                                .merge();
+                assertEquals(MergingReport.Result.SUCCESS, mergingReport.getResult());
+                assertEquals(
+                        expected.getMergedDocument(MergedManifestKind.MERGED),
+                        mergingReport.getMergedDocument(MergedManifestKind.MERGED));
+                assertEquals(
+                        expected.getMergedDocument(MergedManifestKind.BLAME),
+                        mergingReport.getMergedDocument(MergedManifestKind.BLAME));
+            }
+            assertThat(expected.getMergedDocument(MergedManifestKind.MERGED))
+                    .contains("com.example.app1.lib1");
+        } finally {
+            assertTrue(inputFile.delete());
+            assertTrue(placeholderLibFile.delete());
+            assertTrue(plainLibFile.delete());
+        }
+    }
+
     @Test
     public void testToolsAnnotationPresence() throws Exception {
 
@@ -47,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Records profile information for a build.
@@ -60,6 +61,8 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public final class ProcessProfileWriter implements ProfileRecordWriter {
 
+    private static final AtomicLong GENERATION_ALLOCATOR = new AtomicLong(1);
+
     private boolean finished = false;
 
     private final GradleBuildMemorySample mStartMemoryStats;
@@ -79,6 +82,14 @@ public final class ProcessProfileWriter implements ProfileRecordWriter {
 
     private final ConcurrentLinkedQueue<GradleBuildProfileSpan> spans;
 
+    private final boolean mUseEventBuffers;
+
+    // Identifies the event buffers of this writer among those kept by recording threads.
+    private final long mGeneration = GENERATION_ALLOCATOR.getAndIncrement();
+
+    // Also used as the lock ensuring a single thread drains the buffers at a time.
+    private final List<AtomicLongArray> eventBuffers = new ArrayList<>();
+
     private final List<java.util.function.Supplier<String>> applicationIdSuppliers =
             Collections.synchronizedList(new ArrayList<>());
 
@@ -94,7 +105,12 @@ public final class ProcessProfileWriter implements ProfileRecordWriter {
 
 
     ProcessProfileWriter(boolean enableChromeTracingOutput) {
+        this(enableChromeTracingOutput, false);
+    }
+
+    ProcessProfileWriter(boolean enableChromeTracingOutput, boolean useEventBuffers) {
         mEnableChromeTracingOutput = enableChromeTracingOutput;
+        mUseEventBuffers = useEventBuffers;
         mNameAnonymizer = new NameAnonymizer();
         mBuild = GradleBuildProfile.newBuilder();
         mStartMemoryStats = createAndRecordMemorySample();
@@ -130,6 +146,82 @@ public final class ProcessProfileWriter implements ProfileRecordWriter {
         spans.addAll(taskExecutionPhases);
     }
 
+    /**
+     * Whether spans recorded by {@link ThreadRecorder} should be written as events to per-thread
+     * buffers (see {@link #createEventBuffer()}) rather than with {@link #writeRecord}.
+     */
+    boolean useEventBuffers() {
+        return mUseEventBuffers;
+    }
+
+    /**
+     * Creates an event buffer for the calling thread. The events written to it are added to the
+     * profile by {@link #drainEventBuffers()}.
+     */
+    @NonNull
+    AtomicLongArray createEventBuffer() {
+        AtomicLongArray buffer =
+                SpanEventBuffer.allocate(mGeneration, SpanEventBuffer.DEFAULT_CAPACITY);
+        synchronized (eventBuffers) {
+            eventBuffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    /** Returns whether the given event buffer was created by this writer. */
+    boolean ownsEventBuffer(@NonNull AtomicLongArray buffer) {
+        return SpanEventBuffer.getGeneration(buffer) == mGeneration;
+    }
+
+    /** Append the event to the build profile. */
+    void writeEvent(
+            @NonNull AtomicLongArray buffer,
+            long id,
+            long parentId,
+            @NonNull GradleBuildProfileSpan.ExecutionType type,
+            long startTimeInMs,
+            long durationInMs,
+            @NonNull String project,
+            @Nullable String variant) {
+        long threadId = Thread.currentThread().getId();
+        long projectId = mNameAnonymizer.anonymizeProjectPath(project);
+        long variantId = mNameAnonymizer.anonymizeVariant(project, variant);
+        if (!SpanEventBuffer.write(
+                buffer,
+                id,
+                parentId,
+                threadId,
+                type,
+                startTimeInMs,
+                durationInMs,
+                projectId,
+                variantId)) {
+            // The buffer has not been drained in time, do not lose the span.
+            GradleBuildProfileSpan.Builder span =
+                    GradleBuildProfileSpan.newBuilder()
+                            .setId(id)
+                            .setThreadId(threadId)
+                            .setType(type)
+                            .setStartTimeInMs(startTimeInMs)
+                            .setDurationInMs(durationInMs)
+                            .setProject(projectId)
+                            .setVariant(variantId);
+            if (parentId != 0) {
+                span.setParentId(parentId);
+            }
+            spans.add(span.build());
+        }
+    }
+
+    /** Moves the events written to the event buffers so far to the profile. Thread safe. */
+    void drainEventBuffers() {
+        synchronized (eventBuffers) {
+            for (AtomicLongArray buffer : eventBuffers) {
+                SpanEventBuffer.drainTo(buffer, spans);
+            }
+        }
+    }
+
     /** Appends a generic event (e.g. test execution record) to be uploaded. */
     public void recordEvent(@NonNull AndroidStudioEvent.Builder event) {
         // TODO: do this per EVENT_TYPE?
@@ -175,6 +267,7 @@ public final class ProcessProfileWriter implements ProfileRecordWriter {
         checkState(!finished, "Already finished");
         finished = true;
 
+        drainEventBuffers();
         // This will not throw ConcurrentModificationException if writeRecord() calls are still
         // happening. ConcurrentLinkedQueue iterators are instead weakly consistent.
         mBuild.addAllSpan(spans);
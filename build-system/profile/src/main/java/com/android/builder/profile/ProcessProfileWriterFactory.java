@@ -36,6 +36,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -50,6 +51,8 @@ public final class ProcessProfileWriterFactory {
 
     private static final Object LOCK = new Object();
 
+    private static final long EVENT_BUFFER_DRAIN_PERIOD_MS = 500;
+
     @GuardedBy("LOCK")
     @Nullable
     private static ProcessProfileWriterFactory sINSTANCE;
@@ -69,6 +72,13 @@ public final class ProcessProfileWriterFactory {
     @GuardedBy("this")
     private boolean enableChromeTracingOutput;
 
+    @GuardedBy("this")
+    private boolean useEventBuffers;
+
+    @GuardedBy("this")
+    @Nullable
+    private ScheduledFuture<?> eventBufferDrain = null;
+
     private ProcessProfileWriterFactory() {}
 
     /**
@@ -81,21 +91,45 @@ public final class ProcessProfileWriterFactory {
             @NonNull String gradleVersion,
             @NonNull ILogger logger,
             boolean enableChromeTracingOutput) {
+        initialize(
+                rootProjectDirectoryPath, gradleVersion, logger, enableChromeTracingOutput, false);
+    }
+
+    /**
+     * Set up the the ProcessProfileWriter.
+     *
+     * <p>Idempotent for multi-project builds, where the arguments are ignored for subsequent calls.
+     *
+     * @param useEventBuffers whether {@link ThreadRecorder} should record spans in per-thread
+     *     event buffers, drained asynchronously, to reduce the profiling overhead.
+     */
+    public static void initialize(
+            @NonNull File rootProjectDirectoryPath,
+            @NonNull String gradleVersion,
+            @NonNull ILogger logger,
+            boolean enableChromeTracingOutput,
+            boolean useEventBuffers) {
         getFactory()
                 .initializeInternal(
-                        rootProjectDirectoryPath, gradleVersion, logger, enableChromeTracingOutput);
+                        rootProjectDirectoryPath,
+                        gradleVersion,
+                        logger,
+                        enableChromeTracingOutput,
+                        useEventBuffers);
     }
 
     private synchronized void initializeInternal(
             @NonNull File rootProjectDirectoryPath,
             @NonNull String gradleVersion,
             @NonNull ILogger logger,
-            boolean enableChromeTracingOutput) {
+            boolean enableChromeTracingOutput,
+            boolean useEventBuffers) {
         if (isInitialized()) {
             return;
         }
         this.mLogger = logger;
         this.enableChromeTracingOutput = enableChromeTracingOutput;
+        this.useEventBuffers = useEventBuffers;
         ProcessProfileWriter recorder = get();
         setGlobalProperties(recorder, rootProjectDirectoryPath, gradleVersion, logger);
     }
@@ -143,13 +177,19 @@ public final class ProcessProfileWriterFactory {
 
     @VisibleForTesting
     public static void initializeForTests() {
+        initializeForTests(false);
+    }
+
+    @VisibleForTesting
+    public static void initializeForTests(boolean useEventBuffers) {
         AnalyticsSettings.setInstanceForTest(new AnalyticsSettingsData());
         shutdownAndMaybeWrite(null);
         initialize(
                 new File("fake/path/to/test_project"),
                 "2.10",
                 new StdLogger(StdLogger.Level.VERBOSE),
-                false);
+                false,
+                useEventBuffers);
     }
 
 
@@ -164,6 +204,10 @@ public final class ProcessProfileWriterFactory {
     @NonNull
     private synchronized Future<Void> shutdownAndMaybeWriteInternal(@Nullable Path outputFile) {
         Future<Void> shutdownAction;
+        if (eventBufferDrain != null) {
+            eventBufferDrain.cancel(false);
+            eventBufferDrain = null;
+        }
         if (isInitialized()) {
             ProcessProfileWriter processProfileWriter = verifyNotNull(this.processProfileWriter);
             if (outputFile == null) {
@@ -195,7 +239,17 @@ public final class ProcessProfileWriterFactory {
                 mLogger = new StdLogger(StdLogger.Level.INFO);
             }
             initializeAnalytics(mLogger, getScheduledExecutorService());
-            processProfileWriter = new ProcessProfileWriter(enableChromeTracingOutput);
+            processProfileWriter =
+                    new ProcessProfileWriter(enableChromeTracingOutput, useEventBuffers);
+            if (useEventBuffers) {
+                eventBufferDrain =
+                        getScheduledExecutorService()
+                                .scheduleWithFixedDelay(
+                                        processProfileWriter::drainEventBuffers,
+                                        EVENT_BUFFER_DRAIN_PERIOD_MS,
+                                        EVENT_BUFFER_DRAIN_PERIOD_MS,
+                                        TimeUnit.MILLISECONDS);
+            }
         }
         return processProfileWriter;
     }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.profile;
+
+import com.android.annotations.NonNull;
+import com.google.wireless.android.sdk.stats.GradleBuildProfileSpan;
+import com.google.wireless.android.sdk.stats.GradleBuildProfileSpan.ExecutionType;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring buffers of span events, written by a single recording thread and drained by a
+ * single consumer without locking.
+ *
+ * <p>A buffer is a plain {@link AtomicLongArray}, so that it can be kept in a {@link ThreadLocal}
+ * without referencing plugin classes (see {@link ThreadRecorder}). It starts with a header holding
+ * the generation of the {@link ProcessProfileWriter} it belongs to and the number of events
+ * written and read so far, followed by the events. Each event is stored as {@link #EVENT_SIZE}
+ * longs, so recording a span does not allocate.
+ */
+final class SpanEventBuffer {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int GENERATION = 0;
+    private static final int WRITE_COUNT = 1;
+    private static final int READ_COUNT = 2;
+    private static final int HEADER_SIZE = 3;
+
+    private static final int ID = 0;
+    private static final int PARENT_ID = 1;
+    private static final int THREAD_ID = 2;
+    private static final int TYPE = 3;
+    private static final int START_TIME = 4;
+    private static final int DURATION = 5;
+    private static final int PROJECT = 6;
+    private static final int VARIANT = 7;
+    private static final int EVENT_SIZE = 8;
+
+    private SpanEventBuffer() {}
+
+    /** Creates a buffer of the given capacity, in number of events. */
+    @NonNull
+    static AtomicLongArray allocate(long generation, int capacity) {
+        AtomicLongArray buffer = new AtomicLongArray(HEADER_SIZE + capacity * EVENT_SIZE);
+        buffer.set(GENERATION, generation);
+        return buffer;
+    }
+
+    static long getGeneration(@NonNull AtomicLongArray buffer) {
+        return buffer.get(GENERATION);
+    }
+
+    /**
+     * Appends an event to the buffer. Must only be called from the thread owning the buffer.
+     *
+     * @param parentId the id of the parent span, or 0 if there is none
+     * @return false if the buffer is full, in which case nothing was written
+     */
+    static boolean write(
+            @NonNull AtomicLongArray buffer,
+            long id,
+            long parentId,
+            long threadId,
+            @NonNull ExecutionType type,
+            long startTimeInMs,
+            long durationInMs,
+            long project,
+            long variant) {
+        int capacity = getCapacity(buffer);
+        long written = buffer.get(WRITE_COUNT);
+        if (written - buffer.get(READ_COUNT) >= capacity) {
+            return false;
+        }
+
+        int offset = HEADER_SIZE + (int) (written % capacity) * EVENT_SIZE;
+        buffer.lazySet(offset + ID, id);
+        buffer.lazySet(offset + PARENT_ID, parentId);
+        buffer.lazySet(offset + THREAD_ID, threadId);
+        buffer.lazySet(offset + TYPE, type.getNumber());
+        buffer.lazySet(offset + START_TIME, startTimeInMs);
+        buffer.lazySet(offset + DURATION, durationInMs);
+        buffer.lazySet(offset + PROJECT, project);
+        buffer.lazySet(offset + VARIANT, variant);
+        // Publish the event only once all of its fields are written.
+        buffer.lazySet(WRITE_COUNT, written + 1);
+        return true;
+    }
+
+    /**
+     * Converts all the events written so far to spans and removes them from the buffer. Must not
+     * be called concurrently for the same buffer.
+     */
+    static void drainTo(
+            @NonNull AtomicLongArray buffer, @NonNull Collection<GradleBuildProfileSpan> spans) {
+        int capacity = getCapacity(buffer);
+        long read = buffer.get(READ_COUNT);
+        long written = buffer.get(WRITE_COUNT);
+        for (; read < written; read++) {
+            int offset = HEADER_SIZE + (int) (read % capacity) * EVENT_SIZE;
+            GradleBuildProfileSpan.Builder span =
+                    GradleBuildProfileSpan.newBuilder()
+                            .setId(buffer.get(offset + ID))
+                            .setThreadId(buffer.get(offset + THREAD_ID))
+                            .setType(ExecutionType.forNumber((int) buffer.get(offset + TYPE)))
+                            .setStartTimeInMs(buffer.get(offset + START_TIME))
+                            .setDurationInMs(buffer.get(offset + DURATION))
+                            .setProject(buffer.get(offset + PROJECT))
+                            .setVariant(buffer.get(offset + VARIANT));
+            long parentId = buffer.get(offset + PARENT_ID);
+            if (parentId != 0) {
+                span.setParentId(parentId);
+            }
+            spans.add(span.build());
+        }
+        // Let the writer reuse the slots only once they have been read.
+        buffer.lazySet(READ_COUNT, read);
+    }
+
+    private static int getCapacity(@NonNull AtomicLongArray buffer) {
+        return (buffer.length() - HEADER_SIZE) / EVENT_SIZE;
+    }
+}
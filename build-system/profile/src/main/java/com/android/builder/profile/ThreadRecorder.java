@@ -24,9 +24,9 @@ import com.google.wireless.android.sdk.stats.GradleBuildProfileSpan.ExecutionTyp
 import com.google.wireless.android.sdk.stats.GradleTransformExecution;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,12 +44,18 @@ public final class ThreadRecorder implements Recorder {
     private static final AtomicLong THREAD_ID_ALLOCATOR = new AtomicLong(1);
     private static final Recorder RECORDER = new ThreadRecorder();
 
+    // The first element of a record stack is its size, followed by the ids of the records.
+    private static final int INITIAL_STACK_SIZE = 16;
+
     /**
      * Do not put anything else than JDK classes in the ThreadLocal as it prevents that class and
      * therefore the plugin classloader to be gc'ed leading to OOM or PermGen issues.
      */
-    protected final ThreadLocal<Deque<Long>> recordStacks =
-            ThreadLocal.withInitial(ArrayDeque::new);
+    protected final ThreadLocal<long[]> recordStacks =
+            ThreadLocal.withInitial(() -> new long[INITIAL_STACK_SIZE]);
+
+    /** Event buffers used when {@link ProcessProfileWriter#useEventBuffers()} is enabled. */
+    private final ThreadLocal<AtomicLongArray> eventBuffers = new ThreadLocal<>();
 
     //protected final ThreadLocal<Long> threadId =
     //        ThreadLocal.withInitial(THREAD_ID_ALLOCATOR::getAndIncrement);
@@ -75,7 +81,26 @@ public final class ThreadRecorder implements Recorder {
             @NonNull String projectPath,
             @Nullable String variant,
             @NonNull VoidBlock block) {
-        ProfileRecordWriter profileRecordWriter = ProcessProfileWriter.get();
+        ProcessProfileWriter profileRecordWriter = ProcessProfileWriter.get();
+        if (profileRecordWriter.useEventBuffers()) {
+            long startTimeInMs = System.currentTimeMillis();
+            long recordId = startEvent(profileRecordWriter);
+            try {
+                block.call();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                writeEvent(
+                        profileRecordWriter,
+                        recordId,
+                        executionType,
+                        startTimeInMs,
+                        projectPath,
+                        variant);
+            }
+            return;
+        }
+
         GradleBuildProfileSpan.Builder currentRecord =
                 create(profileRecordWriter, executionType, null);
         try {
@@ -84,9 +109,6 @@ public final class ThreadRecorder implements Recorder {
             throw new UncheckedIOException(e);
         } finally {
             write(profileRecordWriter, currentRecord, projectPath, variant);
-            if (recordStacks.get().isEmpty()) {
-                recordStacks.remove();
-            }
         }
     }
 
@@ -98,7 +120,28 @@ public final class ThreadRecorder implements Recorder {
             @NonNull String projectPath,
             @Nullable String variant,
             @NonNull Block<T> block) {
-        ProfileRecordWriter profileRecordWriter = ProcessProfileWriter.get();
+        ProcessProfileWriter profileRecordWriter = ProcessProfileWriter.get();
+
+        // Events cannot hold the transform details, which are rare anyway.
+        if (transform == null && profileRecordWriter.useEventBuffers()) {
+            long startTimeInMs = System.currentTimeMillis();
+            long recordId = startEvent(profileRecordWriter);
+            try {
+                return block.call();
+            } catch (Exception e) {
+                block.handleException(e);
+            } finally {
+                writeEvent(
+                        profileRecordWriter,
+                        recordId,
+                        executionType,
+                        startTimeInMs,
+                        projectPath,
+                        variant);
+            }
+            // we always return null when an exception occurred and was not rethrown.
+            return null;
+        }
 
         GradleBuildProfileSpan.Builder currentRecord =
                 create(profileRecordWriter, executionType, transform);
@@ -108,9 +151,6 @@ public final class ThreadRecorder implements Recorder {
             block.handleException(e);
         } finally {
             write(profileRecordWriter, currentRecord, projectPath, variant);
-            if (recordStacks.get().isEmpty()) {
-                recordStacks.remove();
-            }
         }
         // we always return null when an exception occurred and was not rethrown.
         return null;
@@ -123,8 +163,7 @@ public final class ThreadRecorder implements Recorder {
         long thisRecordId = profileRecordWriter.allocateRecordId();
 
         // am I a child ?
-        @Nullable
-        Long parentId = recordStacks.get().peek();
+        long parentId = peekRecordId();
 
         long startTimeInMs = System.currentTimeMillis();
 
@@ -139,12 +178,12 @@ public final class ThreadRecorder implements Recorder {
             currentRecord.setTransform(transform);
         }
 
-        if (parentId != null) {
+        if (parentId != 0) {
             currentRecord.setParentId(parentId);
         }
 
         currentRecord.setThreadId(Thread.currentThread().getId());
-        recordStacks.get().push(thisRecordId);
+        pushRecordId(thisRecordId);
         return currentRecord;
     }
 
@@ -153,13 +192,73 @@ public final class ThreadRecorder implements Recorder {
             @NonNull GradleBuildProfileSpan.Builder currentRecord,
             @NonNull String projectPath,
             @Nullable String variant) {
-        // pop this record from the stack.
-        if (recordStacks.get().pop() != currentRecord.getId()) {
-            Logger.getLogger(ThreadRecorder.class.getName())
-                    .log(Level.SEVERE, "Profiler stack corrupted");
-        }
+        popRecordId(currentRecord.getId());
         currentRecord.setDurationInMs(
                 System.currentTimeMillis() - currentRecord.getStartTimeInMs());
         profileRecordWriter.writeRecord(projectPath, variant, currentRecord, ImmutableList.of());
     }
+
+    private long startEvent(@NonNull ProcessProfileWriter profileRecordWriter) {
+        long thisRecordId = profileRecordWriter.allocateRecordId();
+        pushRecordId(thisRecordId);
+        return thisRecordId;
+    }
+
+    private void writeEvent(
+            @NonNull ProcessProfileWriter profileRecordWriter,
+            long recordId,
+            @NonNull ExecutionType executionType,
+            long startTimeInMs,
+            @NonNull String projectPath,
+            @Nullable String variant) {
+        long durationInMs = System.currentTimeMillis() - startTimeInMs;
+        popRecordId(recordId);
+        // the parent, if any, is now at the top of the stack.
+        long parentId = peekRecordId();
+
+        AtomicLongArray buffer = eventBuffers.get();
+        if (buffer == null || !profileRecordWriter.ownsEventBuffer(buffer)) {
+            // first event on this thread for this build.
+            buffer = profileRecordWriter.createEventBuffer();
+            eventBuffers.set(buffer);
+        }
+        profileRecordWriter.writeEvent(
+                buffer,
+                recordId,
+                parentId,
+                executionType,
+                startTimeInMs,
+                durationInMs,
+                projectPath,
+                variant);
+    }
+
+    /** Returns the id of the innermost record in progress on this thread, or 0 if none. */
+    private long peekRecordId() {
+        long[] stack = recordStacks.get();
+        return stack[(int) stack[0]];
+    }
+
+    private void pushRecordId(long recordId) {
+        long[] stack = recordStacks.get();
+        int size = (int) stack[0] + 1;
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+            recordStacks.set(stack);
+        }
+        stack[size] = recordId;
+        stack[0] = size;
+    }
+
+    private void popRecordId(long recordId) {
+        long[] stack = recordStacks.get();
+        int size = (int) stack[0];
+        if (size == 0 || stack[size] != recordId) {
+            Logger.getLogger(ThreadRecorder.class.getName())
+                    .log(Level.SEVERE, "Profiler stack corrupted");
+        }
+        if (size > 0) {
+            stack[0] = size - 1;
+        }
+    }
 }
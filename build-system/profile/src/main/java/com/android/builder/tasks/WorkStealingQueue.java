@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.tasks;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.annotations.concurrency.GuardedBy;
+import com.android.utils.ILogger;
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An alternative to {@link WorkQueue} for large numbers of small jobs.
+ *
+ * <p>Instead of a single shared queue, each worker thread owns a deque of jobs. Pushed jobs are
+ * distributed among the workers' deques, and a worker that runs out of jobs steals them from the
+ * other workers, so pushing and taking jobs do not contend on a single lock. {@link
+ * #pushAll(Collection)} distributes a batch of jobs with a single wake-up per worker.
+ *
+ * <p>The number of workers is fixed when the queue is created. Workers are started on the first
+ * push (and again after {@link #shutdown()}) and are notified through the same {@link
+ * QueueThreadContext} callbacks as in {@link WorkQueue}. Unlike in {@link WorkQueue}, a worker
+ * keeps processing jobs after one of them failed.
+ */
+public class WorkStealingQueue<T> {
+
+    private static final boolean VERBOSE = System.getenv("GRADLE_WORK_QUEUE_VERBOSE") != null;
+
+    // we could base this on the number of processors this machine has, etc...
+    private static final int MAX_WORKFORCE_SIZE = 20;
+
+    @NonNull private final ILogger mLogger;
+
+    // queue name as human would understand.
+    @NonNull private final String mName;
+
+    @NonNull private final QueueThreadContext<T> mQueueThreadContext;
+
+    @NonNull private final Worker[] mWorkers;
+
+    // workers waiting for jobs to be pushed.
+    @NonNull private final ConcurrentLinkedQueue<Worker> mIdleWorkers =
+            new ConcurrentLinkedQueue<>();
+
+    // number of jobs pushed but not taken by a worker yet.
+    @NonNull private final AtomicInteger mPendingJobs = new AtomicInteger();
+
+    // used to distribute jobs pushed from threads that are not workers.
+    @NonNull private final AtomicInteger mNextWorker = new AtomicInteger();
+
+    @NonNull private final AtomicInteger mThreadId = new AtomicInteger(0);
+
+    // number of workers that could not be created in the current generation of threads.
+    @NonNull private final AtomicInteger mServerFailures = new AtomicInteger();
+
+    private volatile boolean mRunning = false;
+
+    private volatile boolean mShuttingDown = false;
+
+    @GuardedBy("this")
+    private final List<Thread> mWorkThreads = new ArrayList<>();
+
+    /**
+     * Creates a new queue, with a number of dedicated threads to process the queue's jobs.
+     *
+     * @param logger to log messages
+     * @param queueThreadContext notified of the workers' lifecycle and running the jobs
+     * @param queueName a meaningful descriptive name.
+     * @param workforce the number of dedicated threads for this queue, at most 20.
+     */
+    @SuppressWarnings("unchecked")
+    public WorkStealingQueue(
+            @NonNull ILogger logger,
+            @NonNull QueueThreadContext<T> queueThreadContext,
+            @NonNull String queueName,
+            int workforce) {
+        Preconditions.checkArgument(workforce > 0, "workforce must be positive: %s", workforce);
+        this.mLogger = logger;
+        this.mName = queueName;
+        this.mQueueThreadContext = queueThreadContext;
+        this.mWorkers = new WorkStealingQueue.Worker[Math.min(workforce, MAX_WORKFORCE_SIZE)];
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new Worker(i);
+        }
+    }
+
+    /** Pushes a job to be executed by one of the workers. */
+    public void push(@NonNull Job<T> job) {
+        ensureRunning();
+        mPendingJobs.incrementAndGet();
+        targetWorker().mJobs.addLast(job);
+        wakeUpIdleWorkers(1);
+    }
+
+    /**
+     * Pushes a batch of jobs, spreading them in contiguous chunks over the workers' deques so that
+     * jobs pushed together tend to be executed by the same worker.
+     */
+    public void pushAll(@NonNull Collection<Job<T>> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        ensureRunning();
+        mPendingJobs.addAndGet(jobs.size());
+
+        int chunkSize = (jobs.size() + mWorkers.length - 1) / mWorkers.length;
+        int first = Math.floorMod(mNextWorker.getAndIncrement(), mWorkers.length);
+        int index = 0;
+        for (Job<T> job : jobs) {
+            mWorkers[(first + index / chunkSize) % mWorkers.length].mJobs.addLast(job);
+            index++;
+        }
+        wakeUpIdleWorkers(Math.min(jobs.size(), mWorkers.length));
+    }
+
+    /**
+     * Shutdowns the working queue and wait until all pending jobs have been processed.
+     *
+     * @throws InterruptedException if the shutdown sequence is interrupted
+     */
+    public synchronized void shutdown() throws InterruptedException {
+        if (!mRunning) {
+            return;
+        }
+        mShuttingDown = true;
+        for (Worker worker : mWorkers) {
+            LockSupport.unpark(worker.mThread);
+        }
+        for (Thread thread : mWorkThreads) {
+            thread.join();
+        }
+        mWorkThreads.clear();
+        mIdleWorkers.clear();
+
+        if (mPendingJobs.get() > 0) {
+            // all of our threads died without processing all the jobs, this is not good.
+            mLogger.verbose("Shutdown called on the work queue, but there are still jobs pending.");
+            failPendingJobs(new RuntimeException("No slave process to process jobs, aborting"));
+        }
+
+        mRunning = false;
+        mShuttingDown = false;
+        mQueueThreadContext.shutdown();
+    }
+
+    /**
+     * Return a human readable queue name, mainly used for identification purposes.
+     *
+     * @return a unique meaningful descriptive name
+     */
+    @NonNull
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the number of jobs waiting to be scheduled.
+     *
+     * @return the size of the queue.
+     */
+    public int size() {
+        return mPendingJobs.get();
+    }
+
+    private void ensureRunning() {
+        if (mRunning) {
+            return;
+        }
+        synchronized (this) {
+            if (mRunning) {
+                return;
+            }
+            mServerFailures.set(0);
+            for (Worker worker : mWorkers) {
+                Thread thread = new Thread(worker, mName + "_" + mThreadId.incrementAndGet());
+                thread.setDaemon(true);
+                worker.mThread = thread;
+                mWorkThreads.add(thread);
+            }
+            mRunning = true;
+            for (Thread thread : mWorkThreads) {
+                thread.start();
+            }
+            mLogger.verbose("thread-pool size=%1$d", mWorkThreads.size());
+        }
+    }
+
+    @NonNull
+    private Worker targetWorker() {
+        // Jobs pushed from a job stay on the same worker, where they are likely to run soonest.
+        Thread current = Thread.currentThread();
+        for (Worker worker : mWorkers) {
+            if (worker.mThread == current) {
+                return worker;
+            }
+        }
+        return mWorkers[Math.floorMod(mNextWorker.getAndIncrement(), mWorkers.length)];
+    }
+
+    private void wakeUpIdleWorkers(int count) {
+        for (int i = 0; i < count; i++) {
+            Worker idle = mIdleWorkers.poll();
+            if (idle == null) {
+                return;
+            }
+            LockSupport.unpark(idle.mThread);
+        }
+    }
+
+    /** Takes a job from the given worker's deque, or steals one from the other workers. */
+    @Nullable
+    private Job<T> takeJob(@NonNull Worker worker) {
+        Job<T> job = worker.mJobs.pollFirst();
+        if (job == null) {
+            for (int i = 1; i < mWorkers.length && job == null; i++) {
+                // Steal from the end of the other deques, i.e. the jobs their owners would
+                // run last.
+                job = mWorkers[(worker.mIndex + i) % mWorkers.length].mJobs.pollLast();
+            }
+        }
+        if (job != null) {
+            mPendingJobs.decrementAndGet();
+        }
+        return job;
+    }
+
+    /*
+     * Registers a worker that could not be created. If none could, fail all pending jobs.
+     */
+    private void checkFailedServers() {
+        if (mServerFailures.incrementAndGet() >= mWorkers.length) {
+            failPendingJobs(
+                    new RuntimeException("No server to serve request. Check logs for details."));
+        }
+    }
+
+    private void failPendingJobs(@NonNull Throwable error) {
+        for (Worker worker : mWorkers) {
+            Job<T> job;
+            while ((job = worker.mJobs.pollFirst()) != null) {
+                mPendingJobs.decrementAndGet();
+                mLogger.verbose(job.toString());
+                job.error(error);
+            }
+        }
+    }
+
+    private void verbose(String format, Object... args) {
+        if (VERBOSE) {
+            mLogger.verbose(format, args);
+        }
+    }
+
+    /** A worker thread and the deque of jobs it owns. */
+    private final class Worker implements Runnable {
+
+        private final int mIndex;
+
+        @NonNull private final ConcurrentLinkedDeque<Job<T>> mJobs = new ConcurrentLinkedDeque<>();
+
+        private volatile Thread mThread;
+
+        Worker(int index) {
+            this.mIndex = index;
+        }
+
+        @Override
+        public void run() {
+            final String threadName = Thread.currentThread().getName();
+            try {
+                try {
+                    verbose("Creating a new working thread %1$s", threadName);
+                    if (!mQueueThreadContext.creation(Thread.currentThread())) {
+                        mLogger.error(
+                                new Exception(),
+                                "Thread(%1$s): Could not start slave process, exiting thread.",
+                                threadName);
+                        checkFailedServers();
+                        return;
+                    }
+                } catch (IOException e) {
+                    mLogger.verbose(
+                            "Thread(%1$s): Exception while starting thread : (%2$s)",
+                            threadName, e.getMessage());
+                    checkFailedServers();
+                    return;
+                }
+
+                while (true) {
+                    Job<T> job = takeJob(this);
+                    if (job == null) {
+                        if (mShuttingDown) {
+                            mLogger.verbose("Thread(%1$s): Death requested", threadName);
+                            return;
+                        }
+                        // Register as idle, then look again so that a job pushed in between is
+                        // not missed. A job pushed after that unparks this worker, and an unpark
+                        // before the park makes it return immediately, so no wakeup is lost.
+                        mIdleWorkers.add(this);
+                        job = takeJob(this);
+                        if (job == null) {
+                            LockSupport.park(WorkStealingQueue.this);
+                            mIdleWorkers.remove(this);
+                            if (Thread.interrupted()) {
+                                throw new InterruptedException();
+                            }
+                            continue;
+                        }
+                        mIdleWorkers.remove(this);
+                    }
+
+                    verbose("Thread(%1$s): scheduling %2$s", threadName, job.getJobTitle());
+                    try {
+                        mQueueThreadContext.runTask(job);
+                    } catch (Throwable e) {
+                        mLogger.warning("Exception while processing task %1$s", e);
+                        job.error(e);
+                        continue;
+                    }
+                    // wait for the job completion.
+                    boolean result = job.await();
+                    verbose(
+                            "Thread(%1$s): job %2$s finished, result=%3$b",
+                            threadName, job.getJobTitle(), result);
+                }
+            } catch (InterruptedException e) {
+                mLogger.error(e, "Thread(%1$s): Interrupted", threadName);
+            } finally {
+                try {
+                    mLogger.verbose("Thread(%1$s): destruction", threadName);
+                    mQueueThreadContext.destruction(Thread.currentThread());
+                } catch (IOException | InterruptedException e) {
+                    mLogger.error(e, "Thread(%1$s): %2$s", threadName, e.getMessage());
+                }
+            }
+        }
+    }
+}
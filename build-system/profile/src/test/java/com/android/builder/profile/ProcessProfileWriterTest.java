@@ -222,6 +222,65 @@ public class ProcessProfileWriterTest {
                 .containsExactly("com.example.app.a", "com.example.app.b");
     }
 
+    @Test
+    public void testEventBufferRecords() throws Exception {
+        ProcessProfileWriterFactory.initializeForTests(true);
+        threadRecorder.record(
+                ExecutionType.SOME_RANDOM_PROCESSING,
+                ":projectName",
+                "foo",
+                () ->
+                        threadRecorder.record(
+                                ExecutionType.TASK_EXECUTION, ":projectName", null, () -> 10));
+        ProcessProfileWriterFactory.shutdownAndMaybeWrite(outputFile).get();
+        GradleBuildProfile profile = loadProfile();
+        assertThat(profile.getSpanList()).hasSize(2);
+        GradleBuildProfileSpan parent = profile.getSpan(1);
+        GradleBuildProfileSpan child = profile.getSpan(0);
+        assertThat(parent.getType()).isEqualTo(ExecutionType.SOME_RANDOM_PROCESSING);
+        assertThat(parent.getVariant()).isNotEqualTo(0);
+        assertThat(parent.getStartTimeInMs()).isNotEqualTo(0);
+        assertThat(parent.getParentId()).isEqualTo(0);
+        assertThat(child.getType()).isEqualTo(ExecutionType.TASK_EXECUTION);
+        assertThat(child.getVariant()).isEqualTo(0);
+        assertThat(child.getParentId()).isEqualTo(parent.getId());
+        assertThat(child.getProject()).isEqualTo(parent.getProject());
+        assertThat(child.getThreadId()).isEqualTo(parent.getThreadId());
+    }
+
+    @Test
+    public void testEventBufferConcurrentRecording() throws Exception {
+        ProcessProfileWriterFactory.initializeForTests(true);
+        // More records than a buffer can hold, to also exercise the overflow path.
+        int recordsPerThread = SpanEventBuffer.DEFAULT_CAPACITY * 2;
+        Runnable recordRunnable =
+                () -> {
+                    for (int i = 0; i < recordsPerThread; i++) {
+                        threadRecorder.record(
+                                ExecutionType.TASK_EXECUTION, ":projectName", "variant", () -> null);
+                    }
+                };
+
+        List<Thread> threads =
+                Stream.generate(() -> new Thread(recordRunnable))
+                        .limit(10)
+                        .collect(Collectors.toList());
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        ProcessProfileWriterFactory.shutdownAndMaybeWrite(outputFile).get();
+
+        GradleBuildProfile profile = loadProfile();
+        assertThat(profile.getSpanList()).hasSize(10 * recordsPerThread);
+        assertThat(
+                        profile.getSpanList()
+                                .stream()
+                                .map(GradleBuildProfileSpan::getId)
+                                .collect(Collectors.toSet()))
+                .hasSize(10 * recordsPerThread);
+    }
+
     private GradleBuildProfile loadProfile() throws IOException {
         return GradleBuildProfile.parseFrom(Files.readAllBytes(outputFile));
     }
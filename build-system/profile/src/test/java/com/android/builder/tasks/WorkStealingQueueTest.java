@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.builder.tasks;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.annotations.NonNull;
+import com.android.utils.NullLogger;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/** Tests for {@link WorkStealingQueue}. */
+public class WorkStealingQueueTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger destroyed = new AtomicInteger();
+    private final AtomicInteger shutdowns = new AtomicInteger();
+
+    private final QueueThreadContext<Void> context =
+            new QueueThreadContextAdapter<Void>() {
+                @Override
+                public boolean creation(@NonNull Thread t) {
+                    created.incrementAndGet();
+                    return true;
+                }
+
+                @Override
+                public void runTask(@NonNull Job<Void> job) throws Exception {
+                    job.runTask(new JobContext<>(null));
+                    job.finished();
+                }
+
+                @Override
+                public void destruction(@NonNull Thread t) {
+                    destroyed.incrementAndGet();
+                }
+
+                @Override
+                public void shutdown() {
+                    shutdowns.incrementAndGet();
+                }
+            };
+
+    @Test
+    public void testAllJobsAreRun() throws InterruptedException {
+        WorkStealingQueue<Void> queue = new WorkStealingQueue<>(new NullLogger(), context, "q", 4);
+        AtomicInteger count = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        List<Job<Void>> batch = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            batch.add(
+                    createJob(
+                            () -> {
+                                count.incrementAndGet();
+                                threads.add(Thread.currentThread().getName());
+                            }));
+        }
+        queue.pushAll(batch);
+        for (int i = 0; i < 100; i++) {
+            queue.push(createJob(count::incrementAndGet));
+        }
+        queue.shutdown();
+
+        assertThat(count.get()).isEqualTo(1100);
+        assertThat(queue.size()).isEqualTo(0);
+        assertThat(threads.size()).isAtMost(4);
+        assertThat(created.get()).isEqualTo(4);
+        assertThat(destroyed.get()).isEqualTo(4);
+        assertThat(shutdowns.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedJobDoesNotStopWorkers() throws InterruptedException {
+        WorkStealingQueue<Void> queue = new WorkStealingQueue<>(new NullLogger(), context, "q", 1);
+        AtomicInteger count = new AtomicInteger();
+
+        TestTask failing =
+                new TestTask(
+                        () -> {
+                            throw new RuntimeException("failed");
+                        });
+        queue.push(new Job<>("failing", failing, failing.result));
+        queue.push(createJob(count::incrementAndGet));
+        queue.shutdown();
+
+        assertThat(failing.result.isDone()).isTrue();
+        assertThat(count.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testQueueCanBeReusedAfterShutdown() throws InterruptedException {
+        WorkStealingQueue<Void> queue = new WorkStealingQueue<>(new NullLogger(), context, "q", 2);
+        AtomicInteger count = new AtomicInteger();
+
+        queue.push(createJob(count::incrementAndGet));
+        queue.shutdown();
+        queue.push(createJob(count::incrementAndGet));
+        queue.shutdown();
+
+        assertThat(count.get()).isEqualTo(2);
+        assertThat(created.get()).isEqualTo(4);
+        assertThat(shutdowns.get()).isEqualTo(2);
+    }
+
+    @NonNull
+    private static Job<Void> createJob(@NonNull Runnable body) {
+        TestTask task = new TestTask(body);
+        return new Job<>("test", task, task.result);
+    }
+
+    private static final class TestTask implements Task<Void> {
+        @NonNull private final Runnable body;
+        @NonNull final SettableFuture<Void> result = SettableFuture.create();
+
+        TestTask(@NonNull Runnable body) {
+            this.body = body;
+        }
+
+        @Override
+        public void run(@NonNull Job<Void> job, @NonNull JobContext<Void> context) {
+            body.run();
+        }
+
+        @Override
+        public void finished() {
+            result.set(null);
+        }
+
+        @Override
+        public void error(Throwable e) {
+            result.setException(e);
+        }
+    }
+}
@@ -187,6 +187,36 @@ public class PositionXmlParser {
         }
     }
 
+    /**
+     * Returns a deep copy of a document created by this parser. Unlike {@link Node#cloneNode},
+     * the copy retains the position information of the original nodes, which makes it possible
+     * to parse a file once and hand out independent copies to code that modifies them.
+     *
+     * @param document the document to copy, as returned by one of the {@code parse} methods
+     * @return the copied document
+     */
+    @NonNull
+    public static Document copy(@NonNull Document document) {
+        Document copy = (Document) document.cloneNode(true);
+        copy.setUserData(CONTENT_KEY, document.getUserData(CONTENT_KEY), null);
+        copyPositions(document, copy);
+        return copy;
+    }
+
+    private static void copyPositions(@NonNull Node from, @NonNull Node to) {
+        Object position = from.getUserData(POS_KEY);
+        if (position != null) {
+            to.setUserData(POS_KEY, position, null);
+        }
+        Node fromChild = from.getFirstChild();
+        Node toChild = to.getFirstChild();
+        while (fromChild != null && toChild != null) {
+            copyPositions(fromChild, toChild);
+            fromChild = fromChild.getNextSibling();
+            toChild = toChild.getNextSibling();
+        }
+    }
+
     /**
      * Returns the String corresponding to the given byte array of XML data
      * (with unknown encoding). This method attempts to guess the encoding based
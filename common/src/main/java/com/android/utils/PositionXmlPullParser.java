@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.utils;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ide.common.blame.SourcePosition;
+import java.io.StringReader;
+import java.util.Arrays;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A pull parser which reports the source offsets of the XML elements it visits, for callers which
+ * need the positions computed by {@link PositionXmlParser} but not a DOM.
+ *
+ * <p>Nothing is materialized beyond the current event: only start and end offsets are tracked,
+ * and line and column numbers are computed on demand from an index of the line starts. Attribute
+ * offsets are located by scanning the source of the current start tag when they are requested.
+ *
+ * <p>Typical usage:
+ *
+ * <pre>
+ * PositionXmlPullParser parser = PositionXmlPullParser.create(xml);
+ * while (parser.next() != XMLStreamConstants.END_DOCUMENT) {
+ *     if (parser.getEventType() == XMLStreamConstants.START_ELEMENT) {
+ *         SourcePosition position = parser.getPosition();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>Instances are not thread safe.
+ */
+public final class PositionXmlPullParser implements AutoCloseable {
+    /** Property of the JDK parser which prevents loading of external DTDs. */
+    private static final String IGNORE_EXTERNAL_DTD =
+            "http://java.sun.com/xml/stream/properties/ignore-external-dtd"; //$NON-NLS-1$
+
+    @NonNull private final String mXml;
+    @NonNull private final XMLStreamReader mReader;
+    /** Offsets at which each line starts; only the first {@link #mLineCount} are valid. */
+    @NonNull private final int[] mLineStarts;
+
+    private final int mLineCount;
+    private int mEventType = XMLStreamConstants.START_DOCUMENT;
+    private int mStartOffset;
+    private int mEndOffset;
+
+    private PositionXmlPullParser(@NonNull String xml, @NonNull XMLStreamReader reader) {
+        mXml = xml;
+        mReader = reader;
+
+        // Line breaks are counted the same way as the XML parser does, so that a line number it
+        // reports can be turned into an offset: \n, \r\n and a lone \r each end a line.
+        int[] lineStarts = new int[xml.length() / 32 + 1];
+        int lineCount = 1;
+        for (int i = 0, n = xml.length(); i < n; i++) {
+            char c = xml.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == n || xml.charAt(i + 1) != '\n')) {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                }
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+        mLineStarts = lineStarts;
+        mLineCount = lineCount;
+    }
+
+    /**
+     * Creates a parser for the given XML data.
+     *
+     * @param data the raw XML data (with unknown encoding)
+     * @return the parser, positioned at the start of the document
+     * @throws XMLStreamException if the parser cannot be created
+     */
+    @NonNull
+    public static PositionXmlPullParser create(@NonNull byte[] data) throws XMLStreamException {
+        return create(PositionXmlParser.getXmlString(data));
+    }
+
+    /**
+     * Creates a parser for the given XML content.
+     *
+     * @param xml the XML string to be parsed. This must be in the correct encoding already.
+     * @return the parser, positioned at the start of the document
+     * @throws XMLStreamException if the parser cannot be created
+     */
+    @NonNull
+    public static PositionXmlPullParser create(@NonNull String xml) throws XMLStreamException {
+        xml = XmlUtils.stripBom(xml);
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // Prevent XML External Entity attack
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            factory.setProperty(IGNORE_EXTERNAL_DTD, true);
+        } catch (IllegalArgumentException e) {
+            // Not the JDK parser; do not read DTDs at all.
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        }
+        return new PositionXmlPullParser(
+                xml, factory.createXMLStreamReader(new StringReader(xml)));
+    }
+
+    /**
+     * Advances to the next parsing event.
+     *
+     * @return the type of the new event, one of the {@link XMLStreamConstants}
+     * @throws XMLStreamException if the document contains a parsing error
+     */
+    public int next() throws XMLStreamException {
+        int previousEnd = mEndOffset;
+        mEventType = mReader.next();
+        // The position reported by the parser is at the end of the current event: after the
+        // whole start tag for elements, or after the end tag. For empty elements, both the
+        // start and the end event are reported after the "/>".
+        mEndOffset = getCurrentOffset();
+        switch (mEventType) {
+            case XMLStreamConstants.START_ELEMENT:
+            case XMLStreamConstants.END_ELEMENT:
+                // '<' cannot appear within a tag, so the first one found is the tag start.
+                mStartOffset = mXml.lastIndexOf('<', mEndOffset - 1);
+                break;
+            case XMLStreamConstants.COMMENT:
+                mStartOffset = mXml.lastIndexOf(XmlUtils.XML_COMMENT_BEGIN, mEndOffset - 1);
+                break;
+            default:
+                mStartOffset = previousEnd;
+                break;
+        }
+        if (mStartOffset == -1) {
+            // Not found, approximate.
+            mStartOffset = previousEnd;
+        }
+        return mEventType;
+    }
+
+    /**
+     * Skips the content of the current element, leaving the parser on its end element. Must be
+     * called when the current event is a {@link XMLStreamConstants#START_ELEMENT}.
+     *
+     * @throws XMLStreamException if the document contains a parsing error
+     */
+    public void skipSubtree() throws XMLStreamException {
+        if (mEventType != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Not at the start of an element");
+        }
+        int depth = 1;
+        while (depth > 0) {
+            int event = next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                return;
+            }
+        }
+    }
+
+    /** Returns the type of the current event, one of the {@link XMLStreamConstants}. */
+    public int getEventType() {
+        return mEventType;
+    }
+
+    /** Returns the local name of the current element. */
+    @NonNull
+    public String getLocalName() {
+        return mReader.getLocalName();
+    }
+
+    /** Returns the namespace URI of the current element, or null if it has none. */
+    @Nullable
+    public String getNamespaceURI() {
+        return emptyToNull(mReader.getNamespaceURI());
+    }
+
+    /** Returns the namespace prefix of the current element, or null if it has none. */
+    @Nullable
+    public String getPrefix() {
+        return emptyToNull(mReader.getPrefix());
+    }
+
+    /** Returns the number of attributes of the current start element. */
+    public int getAttributeCount() {
+        return mReader.getAttributeCount();
+    }
+
+    /** Returns the local name of the attribute at the given index. */
+    @NonNull
+    public String getAttributeLocalName(int index) {
+        return mReader.getAttributeLocalName(index);
+    }
+
+    /** Returns the namespace URI of the attribute at the given index, or null if it has none. */
+    @Nullable
+    public String getAttributeNamespace(int index) {
+        return emptyToNull(mReader.getAttributeNamespace(index));
+    }
+
+    /** Returns the namespace prefix of the attribute at the given index, or null if it has none. */
+    @Nullable
+    public String getAttributePrefix(int index) {
+        return emptyToNull(mReader.getAttributePrefix(index));
+    }
+
+    /** Returns the value of the attribute at the given index. */
+    @NonNull
+    public String getAttributeValue(int index) {
+        return mReader.getAttributeValue(index);
+    }
+
+    /**
+     * Returns the value of the given attribute of the current start element, or null if the
+     * element does not have the attribute.
+     *
+     * @param namespaceUri the namespace of the attribute, or null for no namespace
+     * @param localName the local name of the attribute
+     */
+    @Nullable
+    public String getAttributeValue(@Nullable String namespaceUri, @NonNull String localName) {
+        // The reader ignores the namespace when passed null, while null here means no namespace.
+        return mReader.getAttributeValue(namespaceUri == null ? "" : namespaceUri, localName);
+    }
+
+    /** Returns the text of the current text or comment event. */
+    @NonNull
+    public String getText() {
+        return mReader.getText();
+    }
+
+    /**
+     * Returns the offset at which the current event starts. For elements, this is the offset of
+     * the opening '<' of the start tag or of the end tag.
+     */
+    public int getStartOffset() {
+        return mStartOffset;
+    }
+
+    /**
+     * Returns the offset just after the current event. For elements, this is the offset after
+     * the closing '>' of the start tag or of the end tag.
+     */
+    public int getEndOffset() {
+        return mEndOffset;
+    }
+
+    /** Returns the position of the current event. */
+    @NonNull
+    public SourcePosition getPosition() {
+        return getPosition(mStartOffset, mEndOffset);
+    }
+
+    /**
+     * Returns the position of the attribute at the given index of the current start element,
+     * covering the attribute name, value and quotes, or null if it cannot be found in the
+     * source of the start tag.
+     */
+    @Nullable
+    public SourcePosition getAttributePosition(int index) {
+        int start = findAttribute(index);
+        if (start == -1) {
+            return null;
+        }
+        int quoteIndex = skipWhitespace(mXml.indexOf('=', start) + 1);
+        int end = mXml.indexOf(mXml.charAt(quoteIndex), quoteIndex + 1) + 1;
+        return getPosition(start, end);
+    }
+
+    /**
+     * Returns the offset of the name of the attribute at the given index of the current start
+     * element, or -1 if it cannot be found in the source of the start tag.
+     */
+    public int getAttributeStartOffset(int index) {
+        return findAttribute(index);
+    }
+
+    /** Returns the position of the given range of offsets in the source. */
+    @NonNull
+    public SourcePosition getPosition(int startOffset, int endOffset) {
+        int startLine = getLine(startOffset);
+        int endLine = getLine(endOffset);
+        return new SourcePosition(
+                startLine,
+                startOffset - mLineStarts[startLine],
+                startOffset,
+                endLine,
+                endOffset - mLineStarts[endLine],
+                endOffset);
+    }
+
+    /** Returns the 0-based line number of the given offset. */
+    public int getLine(int offset) {
+        int index = Arrays.binarySearch(mLineStarts, 0, mLineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /** Returns the 0-based column number of the given offset. */
+    public int getColumn(int offset) {
+        return offset - mLineStarts[getLine(offset)];
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        mReader.close();
+    }
+
+    private int getCurrentOffset() {
+        Location location = mReader.getLocation();
+        int line = location.getLineNumber() - 1;
+        if (line < 0) {
+            return mEndOffset;
+        }
+        if (line >= mLineCount) {
+            return mXml.length();
+        }
+        int offset = mLineStarts[line] + Math.max(location.getColumnNumber() - 1, 0);
+        // The parser sometimes passes wrong column numbers at the end of the file: Ensure that
+        // the offset remains valid.
+        return Math.min(offset, mXml.length());
+    }
+
+    /**
+     * Returns the offset of the name of the attribute at the given index by tokenizing the source
+     * of the current start tag, or -1 if it is not found.
+     */
+    private int findAttribute(int index) {
+        if (mEventType != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Not at the start of an element");
+        }
+        String prefix = getAttributePrefix(index);
+        String localName = getAttributeLocalName(index);
+        int offset = mStartOffset + 1;
+        // Skip the element name.
+        while (offset < mEndOffset && !isWhitespace(mXml.charAt(offset))) {
+            offset++;
+        }
+        while (true) {
+            int nameStart = skipWhitespace(offset);
+            int nameEnd = nameStart;
+            while (nameEnd < mEndOffset
+                    && mXml.charAt(nameEnd) != '='
+                    && !isWhitespace(mXml.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            int equals = skipWhitespace(nameEnd);
+            if (equals >= mEndOffset || mXml.charAt(equals) != '=') {
+                return -1;
+            }
+            int quoteIndex = skipWhitespace(equals + 1);
+            if (quoteIndex >= mEndOffset) {
+                return -1;
+            }
+            int valueEnd = mXml.indexOf(mXml.charAt(quoteIndex), quoteIndex + 1);
+            if (valueEnd == -1 || valueEnd >= mEndOffset) {
+                return -1;
+            }
+            if (matchesName(nameStart, nameEnd, prefix, localName)) {
+                return nameStart;
+            }
+            offset = valueEnd + 1;
+        }
+    }
+
+    private boolean matchesName(
+            int start, int end, @Nullable String prefix, @NonNull String localName) {
+        if (prefix != null) {
+            int length = prefix.length();
+            if (!mXml.startsWith(prefix, start)
+                    || start + length >= end
+                    || mXml.charAt(start + length) != ':') {
+                return false;
+            }
+            start += length + 1;
+        }
+        return end - start == localName.length() && mXml.startsWith(localName, start);
+    }
+
+    private int skipWhitespace(int offset) {
+        while (offset < mEndOffset && isWhitespace(mXml.charAt(offset))) {
+            offset++;
+        }
+        return offset;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    @Nullable
+    private static String emptyToNull(@Nullable String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+}
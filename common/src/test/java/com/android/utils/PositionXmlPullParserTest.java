@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+import static javax.xml.stream.XMLStreamConstants.COMMENT;
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import com.android.SdkConstants;
+import com.android.ide.common.blame.SourcePosition;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/** Tests for {@link PositionXmlPullParser}. */
+public class PositionXmlPullParserTest {
+    private static final String XML =
+            ""
+                    + "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                    + "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+                    + "    android:layout_width=\"match_parent\"\n"
+                    + "    android:layout_height=\"wrap_content\"\n"
+                    + "    android:orientation=\"vertical\" >\n"
+                    + "\n"
+                    + "    <!-- A comment -->\n"
+                    + "    <Button\n"
+                    + "        android:id=\"@+id/button1\"\n"
+                    + "        android:text=\"Button\" />\n"
+                    + "\n"
+                    + "    <TextView android:text='Say \"hello\"'>\n"
+                    + "        Some text\n"
+                    + "        <b>bold</b>\n"
+                    + "    </TextView>\n"
+                    + "\n"
+                    + "</LinearLayout>\n";
+
+    @Test
+    public void elementPositionsMatchDom() throws Exception {
+        checkElementPositions(XML);
+    }
+
+    @Test
+    public void elementPositionsMatchDomWithCrLf() throws Exception {
+        checkElementPositions(XML.replace("\n", "\r\n"));
+    }
+
+    @Test
+    public void elementAndAttributes() throws Exception {
+        try (PositionXmlPullParser parser = PositionXmlPullParser.create(XML)) {
+            assertThat(parser.next()).isEqualTo(START_ELEMENT);
+            assertThat(parser.getLocalName()).isEqualTo("LinearLayout");
+            assertThat(parser.getNamespaceURI()).isNull();
+            assertThat(parser.getAttributeValue(SdkConstants.ANDROID_URI, "orientation"))
+                    .isEqualTo("vertical");
+            assertThat(parser.getAttributeValue(null, "orientation")).isNull();
+
+            assertThat(nextElementOrComment(parser)).isEqualTo(COMMENT);
+            assertThat(parser.getText()).isEqualTo(" A comment ");
+            assertThat(XML.substring(parser.getStartOffset(), parser.getEndOffset()))
+                    .isEqualTo("<!-- A comment -->");
+            assertThat(parser.getPosition().getStartLine()).isEqualTo(6);
+            assertThat(parser.getPosition().getStartColumn()).isEqualTo(4);
+
+            assertThat(nextElementOrComment(parser)).isEqualTo(START_ELEMENT);
+            assertThat(parser.getLocalName()).isEqualTo("Button");
+            assertThat(parser.getAttributeCount()).isEqualTo(2);
+            assertThat(parser.getAttributePrefix(1)).isEqualTo("android");
+            assertThat(parser.getAttributeLocalName(1)).isEqualTo("text");
+            SourcePosition textPosition = parser.getAttributePosition(1);
+            assertThat(XML.substring(textPosition.getStartOffset(), textPosition.getEndOffset()))
+                    .isEqualTo("android:text=\"Button\"");
+            assertThat(textPosition.getStartLine()).isEqualTo(9);
+            assertThat(textPosition.getStartColumn()).isEqualTo(8);
+            assertThat(parser.getAttributeStartOffset(0)).isEqualTo(XML.indexOf("android:id"));
+            // Empty elements have an end element at the same position.
+            SourcePosition position = parser.getPosition();
+            assertThat(parser.next()).isEqualTo(END_ELEMENT);
+            assertThat(parser.getPosition()).isEqualTo(position);
+
+            assertThat(nextElementOrComment(parser)).isEqualTo(START_ELEMENT);
+            assertThat(parser.getLocalName()).isEqualTo("TextView");
+            assertThat(parser.getAttributeValue(0)).isEqualTo("Say \"hello\"");
+            SourcePosition attributePosition = parser.getAttributePosition(0);
+            assertThat(XML.substring(
+                            attributePosition.getStartOffset(), attributePosition.getEndOffset()))
+                    .isEqualTo("android:text='Say \"hello\"'");
+
+            parser.skipSubtree();
+            assertThat(parser.getEventType()).isEqualTo(END_ELEMENT);
+            assertThat(parser.getLocalName()).isEqualTo("TextView");
+            assertThat(XML.substring(parser.getStartOffset(), parser.getEndOffset()))
+                    .isEqualTo("</TextView>");
+
+            assertThat(nextElementOrComment(parser)).isEqualTo(END_ELEMENT);
+            assertThat(parser.getLocalName()).isEqualTo("LinearLayout");
+            assertThat(nextElementOrComment(parser)).isEqualTo(END_DOCUMENT);
+        }
+    }
+
+    @Test
+    public void lineAndColumn() throws Exception {
+        String xml = "<a>\r\n<b/>\r<c/>\n</a>";
+        try (PositionXmlPullParser parser = PositionXmlPullParser.create(xml)) {
+            assertThat(parser.getLine(0)).isEqualTo(0);
+            assertThat(parser.getLine(xml.indexOf("<b"))).isEqualTo(1);
+            assertThat(parser.getColumn(xml.indexOf("<b"))).isEqualTo(0);
+            assertThat(parser.getLine(xml.indexOf("<c"))).isEqualTo(2);
+            assertThat(parser.getLine(xml.indexOf("</a"))).isEqualTo(3);
+            assertThat(parser.getLine(xml.length())).isEqualTo(3);
+            assertThat(parser.getColumn(xml.length())).isEqualTo(4);
+        }
+    }
+
+    private static int nextElementOrComment(PositionXmlPullParser parser) throws Exception {
+        while (true) {
+            int event = parser.next();
+            if (event == START_ELEMENT
+                    || event == END_ELEMENT
+                    || event == COMMENT
+                    || event == END_DOCUMENT) {
+                return event;
+            }
+        }
+    }
+
+    private static void checkElementPositions(String xml) throws Exception {
+        Document document = PositionXmlParser.parse(xml.getBytes(StandardCharsets.UTF_8));
+        List<SourcePosition> expected = new ArrayList<>();
+        collectElementPositions(document.getDocumentElement(), expected);
+
+        List<SourcePosition> actual = new ArrayList<>();
+        // Indexes in actual and start offsets of the elements being visited.
+        List<int[]> open = new ArrayList<>();
+        try (PositionXmlPullParser parser =
+                PositionXmlPullParser.create(xml.getBytes(StandardCharsets.UTF_8))) {
+            while (parser.next() != END_DOCUMENT) {
+                if (parser.getEventType() == START_ELEMENT) {
+                    open.add(new int[] {actual.size(), parser.getStartOffset()});
+                    actual.add(null);
+                } else if (parser.getEventType() == END_ELEMENT) {
+                    // The element spans from its start tag to the end of its end tag.
+                    int[] element = open.remove(open.size() - 1);
+                    actual.set(element[0], parser.getPosition(element[1], parser.getEndOffset()));
+                }
+            }
+        }
+        assertThat(actual).containsExactlyElementsIn(expected).inOrder();
+    }
+
+    private static void collectElementPositions(Element element, List<SourcePosition> positions) {
+        positions.add(PositionXmlParser.getPosition(element));
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                collectElementPositions((Element) child, positions);
+            }
+        }
+    }
+}
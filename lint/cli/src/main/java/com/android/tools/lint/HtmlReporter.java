@@ -85,6 +85,9 @@ public class HtmlReporter extends Reporter {
 
     private static final String REPORT_PREFERENCE_PROPERTY = "lint.html.prefs";
 
+    /** Initial size of the buffer the report is written to between flushes */
+    private static final int FLUSH_BUFFER_SIZE = 64 * 1024;
+
     private static final boolean USE_WAVY_UNDERLINES_FOR_ERRORS;
 
     /**
@@ -535,7 +538,7 @@ public class HtmlReporter extends Reporter {
         Map<Issue, String> missing = computeMissingIssues(issues);
         List<List<Warning>> related = computeIssueLists(issues);
 
-        startReport(stats);
+        startReport();
 
         writeNavigationHeader(
                 stats,
@@ -574,6 +577,7 @@ public class HtmlReporter extends Reporter {
                 }
 
                 writeIssueCard(warnings);
+                flushReport();
             }
 
             if (!client.isCheckingSpecificIssues()) {
@@ -855,8 +859,10 @@ public class HtmlReporter extends Reporter {
         return related;
     }
 
-    private void startReport(@NonNull LintStats stats) {
-        sb = new StringBuilder(1800 * stats.count());
+    private void startReport() {
+        // The report is flushed to the writer after each issue card, so the buffer only
+        // needs to hold a single card rather than the whole report
+        sb = new StringBuilder(FLUSH_BUFFER_SIZE);
         builder = new HtmlBuilder(sb);
 
         writeOpenHtmlTag();
@@ -1450,7 +1456,7 @@ public class HtmlReporter extends Reporter {
     public void writeProjectList(
             @NonNull LintStats stats, @NonNull List<MultiProjectHtmlReporter.ProjectEntry> projects)
             throws IOException {
-        startReport(stats);
+        startReport();
 
         writeNavigationHeader(
                 stats,
@@ -1512,8 +1518,14 @@ public class HtmlReporter extends Reporter {
         writeReport();
     }
 
+    /** Writes the HTML appended so far to the report file */
+    private void flushReport() throws IOException {
+        writer.append(sb);
+        sb.setLength(0);
+    }
+
     private void writeReport() throws IOException {
-        writer.write(sb.toString());
+        flushReport();
         writer.close();
         sb = null;
         builder = null;
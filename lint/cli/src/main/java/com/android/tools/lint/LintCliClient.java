@@ -60,6 +60,7 @@ import com.android.tools.lint.client.api.GradleVisitor;
 import com.android.tools.lint.client.api.IssueRegistry;
 import com.android.tools.lint.client.api.LintBaseline;
 import com.android.tools.lint.client.api.LintClient;
+import com.android.tools.lint.client.api.LintDetectorProfiler;
 import com.android.tools.lint.client.api.LintDriver;
 import com.android.tools.lint.client.api.LintListener;
 import com.android.tools.lint.client.api.LintRequest;
@@ -79,6 +80,7 @@ import com.android.tools.lint.detector.api.TextFormat;
 import com.android.tools.lint.helpers.DefaultUastParser;
 import com.android.utils.CharSequences;
 import com.android.utils.NullLogger;
+import com.android.utils.SdkUtils;
 import com.android.utils.StdLogger;
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
@@ -236,6 +238,8 @@ public class LintCliClient extends LintClient {
 
         driver.analyze();
 
+        writeProfile();
+
         Collections.sort(warnings);
 
         LintBaseline baseline = driver.getBaseline();
@@ -465,6 +469,12 @@ public class LintCliClient extends LintClient {
         driver.setFatalOnlyMode(flags.isFatalOnly());
         driver.setCheckDependencies(flags.isCheckDependencies());
         driver.setAllowSuppress(flags.getAllowSuppress());
+        driver.setPrefetchThreads(flags.getPrefetchThreads());
+        driver.setIncidentCacheDir(flags.getIncidentCacheDir());
+        driver.setShareLibraryIncidents(flags.isShareLibraries());
+        if (flags.getProfileFile() != null) {
+            driver.setProfiler(new LintDetectorProfiler());
+        }
 
         File baselineFile = flags.getBaselineFile();
         if (baselineFile != null) {
@@ -487,6 +497,20 @@ public class LintCliClient extends LintClient {
         }
     }
 
+    /** Writes the time spent in each detector to the profile file, if requested */
+    private void writeProfile() throws IOException {
+        LintDetectorProfiler profiler = driver.getProfiler();
+        File profileFile = flags.getProfileFile();
+        if (profiler == null || profileFile == null) {
+            return;
+        }
+        profiler.write(profileFile, registry);
+        if (!flags.isQuiet()) {
+            String url = SdkUtils.fileToUrlString(profileFile.getAbsoluteFile());
+            System.out.println(String.format("Wrote detector profile to %1$s", url));
+        }
+    }
+
     /** Creates a lint request */
     @NonNull
     protected LintRequest createLintRequest(@NonNull List<File> files) {
@@ -78,6 +78,10 @@ public class LintCliFlags {
     private boolean autoFix = VALUE_TRUE.equals(System.getProperty("lint.autofix"));
     private boolean includeXmlFixes;
     private boolean allowSuppress;
+    private int prefetchThreads = 1;
+    private File incidentCacheDir;
+    private boolean shareLibraries;
+    private File profileFile;
 
     public static final int ERRNO_SUCCESS = 0;
     public static final int ERRNO_ERRORS = 1;
@@ -681,4 +685,60 @@ public class LintCliFlags {
     public boolean getAllowSuppress() {
         return allowSuppress;
     }
+
+    /**
+     * Returns the number of threads lint may use to read and parse files ahead of the
+     * detectors, which still run on a single thread. See {@link
+     * com.android.tools.lint.client.api.LintDriver#getPrefetchThreads()}.
+     */
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    /** Sets the number of threads lint may use to read and parse files ahead of the detectors. */
+    public void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+    }
+
+    /**
+     * Returns the directory to cache the incidents reported for individual files in, if any.
+     * See {@link com.android.tools.lint.client.api.LintDriver#getIncidentCacheDir()}.
+     */
+    @Nullable
+    public File getIncidentCacheDir() {
+        return incidentCacheDir;
+    }
+
+    /** Sets the directory to cache the incidents reported for individual files in */
+    public void setIncidentCacheDir(@Nullable File incidentCacheDir) {
+        this.incidentCacheDir = incidentCacheDir;
+    }
+
+    /**
+     * Returns true if file local resource detectors should only be run once on the resource
+     * files of libraries shared by several of the checked projects. See {@link
+     * com.android.tools.lint.client.api.LintDriver#getShareLibraryIncidents()}.
+     */
+    public boolean isShareLibraries() {
+        return shareLibraries;
+    }
+
+    /** Sets whether file local detectors are run once on the resource files of shared libraries */
+    public void setShareLibraries(boolean shareLibraries) {
+        this.shareLibraries = shareLibraries;
+    }
+
+    /**
+     * Returns the file to write the time spent in each detector to, if any. See {@link
+     * com.android.tools.lint.client.api.LintDriver#getProfiler()}.
+     */
+    @Nullable
+    public File getProfileFile() {
+        return profileFile;
+    }
+
+    /** Sets the file to write the time spent in each detector to */
+    public void setProfileFile(@Nullable File profileFile) {
+        this.profileFile = profileFile;
+    }
 }
@@ -118,6 +118,10 @@ public class Main {
     private static final String ARG_UPDATE_BASELINE = "--update-baseline";
     private static final String ARG_ALLOW_SUPPRESS = "--allow-suppress";
     private static final String ARG_RESTRICT_SUPPRESS = "--restrict-suppress";
+    private static final String ARG_PREFETCH_THREADS = "--prefetch-threads";
+    private static final String ARG_INCIDENT_CACHE = "--incident-cache";
+    private static final String ARG_SHARE_LIBRARIES = "--share-libraries";
+    private static final String ARG_PROFILE = "--profile";
 
     private static final String ARG_NO_WARN_2 = "--nowarn";
     // GCC style flag names for options
@@ -942,6 +946,32 @@ public class Main {
                 flags.setAllowSuppress(true);
             } else if (arg.equals(ARG_RESTRICT_SUPPRESS)) {
                 flags.setAllowSuppress(false);
+            } else if (arg.equals(ARG_INCIDENT_CACHE)) {
+                if (index == args.length - 1) {
+                    System.err.println("Missing incident cache directory");
+                    exit(ERRNO_INVALID_ARGS);
+                }
+                flags.setIncidentCacheDir(getOutArgumentPath(args[++index]));
+            } else if (arg.equals(ARG_SHARE_LIBRARIES)) {
+                flags.setShareLibraries(true);
+            } else if (arg.equals(ARG_PROFILE)) {
+                if (index == args.length - 1) {
+                    System.err.println("Missing profile file");
+                    exit(ERRNO_INVALID_ARGS);
+                }
+                flags.setProfileFile(getOutArgumentPath(args[++index]));
+            } else if (arg.equals(ARG_PREFETCH_THREADS)) {
+                if (index == args.length - 1) {
+                    System.err.println("Missing thread count");
+                    exit(ERRNO_INVALID_ARGS);
+                }
+                String count = args[++index];
+                try {
+                    flags.setPrefetchThreads(Math.max(1, Integer.parseInt(count)));
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid thread count " + count);
+                    exit(ERRNO_INVALID_ARGS);
+                }
             } else if (arg.startsWith("--")) {
                 System.err.println("Invalid argument " + arg + "\n");
                 printUsage(System.err);
@@ -1364,6 +1394,19 @@ public class Main {
                     "Only check for fatal severity issues",
                     ARG_AUTO_FIX,
                     "Apply suggestions to the source code (for safe fixes)",
+                    ARG_PREFETCH_THREADS + " <count>",
+                    "Number of threads to read and parse resource and class files on ahead of "
+                            + "the checks. The checks themselves still run on a single thread",
+                    ARG_INCIDENT_CACHE + " <dir>",
+                    "Cache the issues the file local resource checks find in each file in the "
+                            + "given directory, and only run them again on files that changed "
+                            + "since the previous run",
+                    ARG_SHARE_LIBRARIES,
+                    "Run the file local resource checks on the resource files of libraries "
+                            + "that several of the checked projects depend on only once",
+                    ARG_PROFILE + " <file>",
+                    "Write the time spent and memory allocated in each detector callback to the "
+                            + "given file, in the Chrome trace format",
                     "",
                     "\nEnabled Checks:",
                     ARG_DISABLE + " <list>",
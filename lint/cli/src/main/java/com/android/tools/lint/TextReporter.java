@@ -45,6 +45,9 @@ import java.util.List;
  */
 @Beta
 public class TextReporter extends Reporter {
+    /** Number of characters buffered before they are written to the writer */
+    private static final int FLUSH_BUFFER_SIZE = 64 * 1024;
+
     private final Writer writer;
     private final boolean close;
     private final LintCliFlags flags;
@@ -92,7 +95,7 @@ public class TextReporter extends Reporter {
     public void write(@NonNull LintStats stats, List<Warning> issues) throws IOException {
         boolean abbreviate = !flags.isShowEverything();
 
-        StringBuilder output = new StringBuilder(issues.size() * 200);
+        StringBuilder output = new StringBuilder(FLUSH_BUFFER_SIZE);
         if (issues.isEmpty()) {
             if (isDisplayEmpty() && writeStats) {
                 writer.write("No issues found");
@@ -241,10 +244,16 @@ public class TextReporter extends Reporter {
                     output.append(Joiner.on(", ").join(names));
                     output.append('\n');
                 }
+
+                // Write the report in chunks rather than holding all of it in memory
+                if (output.length() >= FLUSH_BUFFER_SIZE) {
+                    writer.append(output);
+                    output.setLength(0);
+                }
             }
             explainIssue(output, lastIssue);
 
-            writer.write(output.toString());
+            writer.append(output);
 
             if (writeStats) {
                 // TODO: Update to using describeCounts
@@ -17,6 +17,7 @@
 package com.android.tools.lint.client.api;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import com.android.tools.lint.detector.api.ClassContext;
 import com.android.tools.lint.detector.api.ClassScanner;
 import com.android.tools.lint.detector.api.Detector;
@@ -69,6 +70,9 @@ class AsmVisitor {
     private final List<? extends Detector> allDetectors;
     private List<ClassScanner>[] nodeTypeDetectors;
 
+    /** The profiler of the current lint run, if any */
+    @Nullable private LintDetectorProfiler profiler;
+
     // Really want this:
     //<T extends List<Detector> & ClassScanner> ClassVisitor(T xmlDetectors) {
     // but it makes client code tricky and ugly.
@@ -144,15 +148,16 @@ class AsmVisitor {
     // ASM API uses raw types
     void runClassDetectors(ClassContext context) {
         ClassNode classNode = context.getClassNode();
+        profiler = context.getDriver().getProfiler();
 
         for (Detector detector : allDetectors) {
-            detector.beforeCheckFile(context);
+            profile(detector, "beforeCheckFile", () -> detector.beforeCheckFile(context));
         }
 
         for (Detector detector : fullClassChecks) {
             ClassScanner scanner = (ClassScanner) detector;
-            scanner.checkClass(context, classNode);
-            detector.afterCheckFile(context);
+            profile(detector, "checkClass", () -> scanner.checkClass(context, classNode));
+            profile(detector, "afterCheckFile", () -> detector.afterCheckFile(context));
         }
 
         if (!methodNameToChecks.isEmpty()
@@ -172,7 +177,16 @@ class AsmVisitor {
                         List<ClassScanner> scanners = methodOwnerToChecks.get(owner);
                         if (scanners != null) {
                             for (ClassScanner scanner : scanners) {
-                                scanner.checkCall(context, classNode, method, call);
+                                if (profiler == null) {
+                                    scanner.checkCall(context, classNode, method, call);
+                                } else {
+                                    profile(
+                                            scanner,
+                                            "checkCall",
+                                            () ->
+                                                    scanner.checkCall(
+                                                            context, classNode, method, call));
+                                }
                             }
                         }
 
@@ -180,7 +194,16 @@ class AsmVisitor {
                         scanners = methodNameToChecks.get(name);
                         if (scanners != null) {
                             for (ClassScanner scanner : scanners) {
-                                scanner.checkCall(context, classNode, method, call);
+                                if (profiler == null) {
+                                    scanner.checkCall(context, classNode, method, call);
+                                } else {
+                                    profile(
+                                            scanner,
+                                            "checkCall",
+                                            () ->
+                                                    scanner.checkCall(
+                                                            context, classNode, method, call));
+                                }
                             }
                         }
                     }
@@ -189,7 +212,20 @@ class AsmVisitor {
                         List<ClassScanner> scanners = nodeTypeDetectors[type];
                         if (scanners != null) {
                             for (ClassScanner scanner : scanners) {
-                                scanner.checkInstruction(context, classNode, method, instruction);
+                                if (profiler == null) {
+                                    scanner.checkInstruction(
+                                            context, classNode, method, instruction);
+                                } else {
+                                    profile(
+                                            scanner,
+                                            "checkInstruction",
+                                            () ->
+                                                    scanner.checkInstruction(
+                                                            context,
+                                                            classNode,
+                                                            method,
+                                                            instruction));
+                                }
                             }
                         }
                     }
@@ -198,7 +234,21 @@ class AsmVisitor {
         }
 
         for (Detector detector : allDetectors) {
-            detector.afterCheckFile(context);
+            profile(detector, "afterCheckFile", () -> detector.afterCheckFile(context));
+        }
+    }
+
+    /**
+     * Runs the given callback of the given detector (a {@link ClassScanner}), recording it in the
+     * profiler if profiling. Callbacks invoked for every instruction check {@link #profiler}
+     * first instead, such that no lambda is allocated for them when profiling is off.
+     */
+    private void profile(
+            @NonNull Object detector, @NonNull String callback, @NonNull Runnable runnable) {
+        if (profiler != null) {
+            profiler.measure((Detector) detector, callback, runnable);
+        } else {
+            runnable.run();
         }
     }
 }
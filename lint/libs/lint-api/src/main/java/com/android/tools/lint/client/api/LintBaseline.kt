@@ -32,22 +32,28 @@ import com.android.tools.lint.detector.api.Severity
 import com.android.tools.lint.detector.api.TextFormat
 import com.android.tools.lint.detector.api.describeCounts
 import com.android.utils.XmlUtils.toXmlAttributeValue
-import com.google.common.collect.ArrayListMultimap
 import com.google.common.collect.Lists
 import com.google.common.collect.Maps
+import com.google.common.hash.Hashing
 import org.kxml2.io.KXmlParser
 import org.xmlpull.v1.XmlPullParser
 import org.xmlpull.v1.XmlPullParserException
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
 import java.io.BufferedReader
 import java.io.BufferedWriter
+import java.io.DataInputStream
+import java.io.DataOutputStream
 import java.io.File
 import java.io.FileInputStream
+import java.io.FileOutputStream
 import java.io.FileWriter
 import java.io.IOException
 import java.io.InputStreamReader
 import java.io.Writer
 import java.nio.charset.StandardCharsets
 import java.util.ArrayList
+import java.util.HashMap
 
 /**
  * A lint baseline is a collection of warnings for a project that have been
@@ -82,8 +88,11 @@ class LintBaseline(
     var totalCount: Int = 0
         private set
 
-    /** Map from message to [Entry]  */
-    private val messageToEntry = ArrayListMultimap.create<String, Entry>(100, 20)
+    /**
+     * Map from issue id, file name and message to the [Entry] instances with that key,
+     * such that matching an incident only needs to look at the entries for the same file
+     */
+    private val entries = HashMap<EntryKey, MutableList<Entry>>(100)
 
     /**
      * Whether we should write the baseline file when the baseline is closed, if the
@@ -156,7 +165,7 @@ class LintBaseline(
             val client = driver.client
             val baselineFile = file
             val ids = Maps.newHashMap<String, Int>()
-            for (entry in messageToEntry.values()) {
+            for (entry in entries.values.flatten()) {
                 var count: Int? = ids[entry.issueId]
                 if (count == null) {
                     count = 1
@@ -245,41 +254,46 @@ class LintBaseline(
         message: String,
         severity: Severity?
     ): Boolean {
-        val entries = messageToEntry.get(message)
-        if (entries == null || entries.isEmpty()) {
-            return false
-        }
-
-        val file = location.file
-        val path = file.path
+        val path = location.file.path
         val issueId = issue.id
-        for (entry in entries) {
-            if (entry!!.issueId == issueId) {
-                if (isSamePathSuffix(path, entry.path)) {
-                    // Remove all linked entries. We don't loop through all the locations;
-                    // they're allowed to vary over time, we just assume that all entries
-                    // for the same warning should be cleared.
-                    var curr = entry
-                    while (curr.previous != null) {
-                        curr = curr.previous
-                    }
-                    while (curr != null) {
-                        messageToEntry.remove(curr.message, curr)
-                        curr = curr.next
-                    }
-
-                    if ((severity ?: issue.defaultSeverity).isError) {
-                        foundErrorCount++
-                    } else {
-                        foundWarningCount++
-                    }
-
-                    return true
+        val entry = findEntry(EntryKey(issueId, getFileName(path), message), path)
+            ?: findEntry(EntryKey(issueId, null, message), path)
+            ?: return false
+
+        // Remove all linked entries. We don't loop through all the locations;
+        // they're allowed to vary over time, we just assume that all entries
+        // for the same warning should be cleared.
+        var curr: Entry? = entry
+        while (curr!!.previous != null) {
+            curr = curr.previous
+        }
+        while (curr != null) {
+            val list = entries[curr.key]
+            if (list != null) {
+                list.remove(curr)
+                if (list.isEmpty()) {
+                    entries.remove(curr.key)
                 }
             }
+            curr = curr.next
+        }
+
+        if ((severity ?: issue.defaultSeverity).isError) {
+            foundErrorCount++
+        } else {
+            foundWarningCount++
         }
 
-        return false
+        return true
+    }
+
+    private fun findEntry(key: EntryKey, path: String): Entry? {
+        val list = entries[key] ?: return null
+        return list.firstOrNull { isSamePathSuffix(path, it.path) }
+    }
+
+    private fun addEntry(entry: Entry) {
+        entries.getOrPut(entry.key) { ArrayList(1) }.add(entry)
     }
 
     /**
@@ -302,12 +316,31 @@ class LintBaseline(
         attributes[name] = value
     }
 
-    /** Read in the XML report  */
+    /**
+     * Reads in the baseline, from the binary cache of the parsed baseline if the
+     * baseline file has not been modified since it was cached
+     */
     private fun readBaselineFile() {
         if (!file.exists()) {
             return
         }
 
+        val cacheFile = getCacheFile()
+        if (cacheFile != null && readCache(cacheFile)) {
+            return
+        }
+
+        val issues = ArrayList<Entry>()
+        if (readBaselineXml(issues) && cacheFile != null) {
+            writeCache(cacheFile, issues)
+        }
+    }
+
+    /**
+     * Reads in the XML report, and adds the first entry of each issue to [issues].
+     * Returns false if the file could not be read.
+     */
+    private fun readBaselineXml(issues: MutableList<Entry>): Boolean {
         try {
             BufferedReader(
                 InputStreamReader(
@@ -332,10 +365,12 @@ class LintBaseline(
                                 val entry = Entry(issue, message, path)
                                 if (currentEntry != null) {
                                     currentEntry.next = entry
+                                } else {
+                                    issues.add(entry)
                                 }
                                 entry.previous = currentEntry
                                 currentEntry = entry
-                                messageToEntry.put(entry.message, entry)
+                                addEntry(entry)
                             }
                         } else if (tag == TAG_ISSUE) {
                             totalCount++
@@ -387,12 +422,106 @@ class LintBaseline(
             } else {
                 e.printStackTrace()
             }
+            return false
         } catch (e: XmlPullParserException) {
             if (client != null) {
                 client.log(e, null)
             } else {
                 e.printStackTrace()
             }
+            return false
+        }
+        return true
+    }
+
+    /** Returns the file to cache the parsed baseline in, if any */
+    private fun getCacheFile(): File? {
+        val dir = client?.getCacheDir(BASELINE_CACHE_DIR, true) ?: return null
+        val key = Hashing.sha256().hashString(file.absolutePath, Charsets.UTF_8).toString()
+        return File(dir, "baseline-" + key.substring(0, 16) + ".bin")
+    }
+
+    /**
+     * Reads the parsed baseline from the given [cacheFile], and returns true if it was
+     * written for the current version of the baseline file.
+     */
+    private fun readCache(cacheFile: File): Boolean {
+        if (!cacheFile.isFile) {
+            return false
+        }
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(cacheFile))).use { input ->
+                if (input.readInt() != CACHE_MAGIC || input.readInt() != CACHE_VERSION ||
+                    readString(input) != file.absolutePath ||
+                    input.readLong() != file.lastModified() || input.readLong() != file.length()
+                ) {
+                    return false
+                }
+                val count = input.readInt()
+                val attributeCount = input.readInt()
+                for (i in 0 until attributeCount) {
+                    setAttribute(readString(input), readString(input))
+                }
+                val issueCount = input.readInt()
+                for (i in 0 until issueCount) {
+                    val issue = readString(input)
+                    val message = readString(input)
+                    var currentEntry: Entry? = null
+                    for (j in 0 until input.readInt()) {
+                        val entry = Entry(issue, message, readString(input))
+                        currentEntry?.next = entry
+                        entry.previous = currentEntry
+                        currentEntry = entry
+                        addEntry(entry)
+                    }
+                }
+                totalCount = count
+                return true
+            }
+        } catch (e: IOException) {
+            // Corrupt or truncated cache: parse the baseline file instead
+            entries.clear()
+            attributes = null
+            return false
+        }
+    }
+
+    /** Writes the given parsed [issues] to the given [cacheFile] */
+    private fun writeCache(cacheFile: File, issues: List<Entry>) {
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(cacheFile))).use { output ->
+                output.writeInt(CACHE_MAGIC)
+                output.writeInt(CACHE_VERSION)
+                writeString(output, file.absolutePath)
+                output.writeLong(file.lastModified())
+                output.writeLong(file.length())
+                output.writeInt(totalCount)
+                val attributes = attributes ?: emptyMap<String, String>()
+                output.writeInt(attributes.size)
+                for ((name, value) in attributes) {
+                    writeString(output, name)
+                    writeString(output, value)
+                }
+                output.writeInt(issues.size)
+                for (issue in issues) {
+                    writeString(output, issue.issueId)
+                    writeString(output, issue.message)
+                    var count = 0
+                    var curr: Entry? = issue
+                    while (curr != null) {
+                        count++
+                        curr = curr.next
+                    }
+                    output.writeInt(count)
+                    curr = issue
+                    while (curr != null) {
+                        writeString(output, curr.path)
+                        curr = curr.next
+                    }
+                }
+            }
+        } catch (e: IOException) {
+            cacheFile.delete()
         }
     }
 
@@ -594,6 +723,8 @@ class LintBaseline(
         val message: String,
         val path: String
     ) {
+        val key = EntryKey(issueId, getIndexName(path), message)
+
         /**
          * An issue can have multiple locations; we create a separate entry for each
          * but we link them together such that we can mark them all fixed
@@ -602,10 +733,26 @@ class LintBaseline(
         var previous: Entry? = null
     }
 
+    /**
+     * Key of the [Entry] instances that can match an incident: the issue id, the file
+     * name of the entry path (or null if the path does not determine the file name) and
+     * the message
+     */
+    private data class EntryKey(
+        val issueId: String,
+        val fileName: String?,
+        val message: String
+    )
+
     companion object {
         const val VARIANT_ALL = "all"
         const val VARIANT_FATAL = "fatal"
 
+        /** Name of the cache directory holding the parsed baselines */
+        private const val BASELINE_CACHE_DIR = "lint-baselines"
+        private const val CACHE_MAGIC = 0x4c424153 // "LBAS"
+        private const val CACHE_VERSION = 1
+
         /**
          * Given an error message produced by this lint detector for the given issue type,
          * determines whether this corresponds to the warning (produced by
@@ -646,11 +793,25 @@ class LintBaseline(
             }
         }
 
-        /** Like path.endsWith(suffix), but considers \\ and / identical  */
-        fun isSamePathSuffix(path: String, suffix: String): Boolean {
-            var i = path.length - 1
-            var j = suffix.length - 1
+        /** Returns the name of the file with the given [path]  */
+        private fun getFileName(path: String): String =
+            path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1)
 
+        /**
+         * Returns the file name that all the paths an entry with the given [suffix] matches
+         * (see [isSamePathSuffix]) end with, or null if there is no such name because the
+         * suffix does not include a separator before the name.
+         */
+        private fun getIndexName(suffix: String): String? {
+            val begin = getSuffixBegin(suffix)
+            val separator = Math.max(suffix.lastIndexOf('/'), suffix.lastIndexOf('\\'))
+            // The character at begin isn't compared with the path
+            return if (separator > begin) suffix.substring(separator + 1) else null
+        }
+
+        /** Returns the index of the first character of the suffix after any leading ./\\ */
+        private fun getSuffixBegin(suffix: String): Int {
+            val j = suffix.length - 1
             var begin = 0
             while (begin < j) {
                 val c = suffix[begin]
@@ -659,6 +820,15 @@ class LintBaseline(
                 }
                 begin++
             }
+            return begin
+        }
+
+        /** Like path.endsWith(suffix), but considers \\ and / identical  */
+        fun isSamePathSuffix(path: String, suffix: String): Boolean {
+            var i = path.length - 1
+            var j = suffix.length - 1
+
+            val begin = getSuffixBegin(suffix)
 
             if (j - begin > i) {
                 return false
@@ -719,6 +889,20 @@ class LintBaseline(
             writer.write("\"")
         }
 
+        @Throws(IOException::class)
+        private fun writeString(output: DataOutputStream, string: String) {
+            val bytes = string.toByteArray(Charsets.UTF_8)
+            output.writeInt(bytes.size)
+            output.write(bytes)
+        }
+
+        @Throws(IOException::class)
+        private fun readString(input: DataInputStream): String {
+            val bytes = ByteArray(input.readInt())
+            input.readFully(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
         @Throws(IOException::class)
         private fun indent(writer: Writer, indent: Int) {
             for (level in 0 until indent) {
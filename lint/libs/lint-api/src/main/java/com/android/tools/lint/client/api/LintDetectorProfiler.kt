@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.detector.api.Detector
+import com.google.common.annotations.Beta
+import com.sun.management.ThreadMXBean
+import java.io.BufferedWriter
+import java.io.File
+import java.io.IOException
+import java.io.Writer
+import java.lang.management.ManagementFactory
+import java.util.ArrayList
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Records the time spent in each detector callback during a [LintDriver] run, how many times
+ * each callback is invoked, and (on JVMs which support it) how much memory it allocates.
+ * Enable it by setting [LintDriver.profiler].
+ *
+ * The results are written as a Chrome trace (see `chrome://tracing`), with an additional
+ * `detectors` property summarizing the cost of each detector and its issues.
+ *
+ * **NOTE: This is not a public or final API; if you rely on this be prepared
+ * to adjust your code for the next tools release.**
+ */
+@Beta
+class LintDetectorProfiler {
+    /** Totals for a single callback of a single detector */
+    private class Stats(val callback: String) {
+        var count = 0L
+        var nanos = 0L
+        var maxNanos = 0L
+        var allocatedBytes = 0L
+    }
+
+    /** A single slow invocation of a callback, included in the trace */
+    private class Event(
+        val detector: String,
+        val callback: String,
+        val thread: Long,
+        val startNanos: Long,
+        val nanos: Long
+    )
+
+    private val startNanos = System.nanoTime()
+
+    private val stats = ConcurrentHashMap<Class<out Detector>, ConcurrentHashMap<String, Stats>>()
+
+    private val events = ArrayList<Event>()
+
+    /** Runs the given [runnable] on behalf of the given [callback] of the given [detector] */
+    fun measure(detector: Detector, callback: String, runnable: Runnable) {
+        val startAllocated = allocatedBytes()
+        val startTime = System.nanoTime()
+        try {
+            runnable.run()
+        } finally {
+            record(detector, callback, startTime, startAllocated)
+        }
+    }
+
+    /**
+     * Records an invocation of the given [callback] of the given [detector], which started at
+     * the given [startTime] (see [System.nanoTime]) when the current thread had allocated
+     * [startAllocated] bytes (see [allocatedBytes]).
+     */
+    fun record(detector: Detector, callback: String, startTime: Long, startAllocated: Long) {
+        val nanos = System.nanoTime() - startTime
+        val allocated = if (startAllocated != -1L) allocatedBytes() - startAllocated else 0L
+        val detectorClass = detector.javaClass
+        val callbacks = stats.computeIfAbsent(detectorClass) { ConcurrentHashMap() }
+        val entry = callbacks.computeIfAbsent(callback) { Stats(callback) }
+        synchronized(entry) {
+            entry.count++
+            entry.nanos += nanos
+            entry.allocatedBytes += allocated
+            if (nanos > entry.maxNanos) {
+                entry.maxNanos = nanos
+            }
+        }
+
+        if (nanos >= TRACE_THRESHOLD_NANOS) {
+            synchronized(events) {
+                if (events.size < MAX_TRACE_EVENTS) {
+                    events.add(
+                        Event(
+                            detectorClass.simpleName, callback, Thread.currentThread().id,
+                            startTime - startNanos, nanos
+                        )
+                    )
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or -1 if this
+     * isn't supported by the JVM
+     */
+    fun allocatedBytes(): Long {
+        val bean = threadBean ?: return -1L
+        return bean.getThreadAllocatedBytes(Thread.currentThread().id)
+    }
+
+    /**
+     * Writes the recorded results to the given [file]. The issues of each detector are looked
+     * up in the given [registry].
+     */
+    @Throws(IOException::class)
+    fun write(file: File, registry: IssueRegistry) {
+        file.parentFile?.mkdirs()
+        BufferedWriter(file.writer(Charsets.UTF_8)).use { write(it, registry) }
+    }
+
+    /** Writes the recorded results to the given [writer] */
+    @Throws(IOException::class)
+    fun write(writer: Writer, registry: IssueRegistry) {
+        writer.write("{\n  \"displayTimeUnit\": \"ms\",\n  \"traceEvents\": [")
+        synchronized(events) {
+            var first = true
+            for (event in events) {
+                writer.write(if (first) "\n" else ",\n")
+                first = false
+                writer.write("    {\"name\": ")
+                writeString(writer, event.callback)
+                writer.write(", \"cat\": ")
+                writeString(writer, event.detector)
+                writer.write(", \"ph\": \"X\", \"pid\": 1, \"tid\": ${event.thread}")
+                writer.write(", \"ts\": ${event.startNanos / 1000}")
+                writer.write(", \"dur\": ${event.nanos / 1000}}")
+            }
+        }
+        writer.write("\n  ],\n  \"detectors\": [")
+
+        val detectors = stats.entries
+            .map { (detectorClass, callbacks) ->
+                Pair(detectorClass, callbacks.values.sortedByDescending { it.nanos })
+            }
+            .sortedByDescending { (_, callbacks) -> callbacks.map { it.nanos }.sum() }
+        var firstDetector = true
+        for ((detectorClass, callbacks) in detectors) {
+            writer.write(if (firstDetector) "\n" else ",\n")
+            firstDetector = false
+            writer.write("    {\n      \"detector\": ")
+            writeString(writer, detectorClass.name)
+            writer.write(",\n      \"issues\": [")
+            val issues = registry.issues.filter {
+                it.implementation.detectorClass == detectorClass
+            }
+            issues.forEachIndexed { index, issue ->
+                if (index > 0) {
+                    writer.write(", ")
+                }
+                writeString(writer, issue.id)
+            }
+            writer.write("],\n")
+            writeTotals(writer, "      ", callbacks)
+            writer.write(",\n      \"callbacks\": [")
+            var firstCallback = true
+            for (callback in callbacks) {
+                writer.write(if (firstCallback) "\n" else ",\n")
+                firstCallback = false
+                writer.write("        {\"callback\": ")
+                writeString(writer, callback.callback)
+                writer.write(", ")
+                writeTotals(writer, "", listOf(callback))
+                writer.write(", \"maxMs\": ${formatMillis(callback.maxNanos)}}")
+            }
+            writer.write("\n      ]\n    }")
+        }
+        writer.write("\n  ]\n}\n")
+    }
+
+    private fun writeTotals(writer: Writer, indent: String, callbacks: List<Stats>) {
+        var count = 0L
+        var nanos = 0L
+        var allocated = 0L
+        for (callback in callbacks) {
+            synchronized(callback) {
+                count += callback.count
+                nanos += callback.nanos
+                allocated += callback.allocatedBytes
+            }
+        }
+        val separator = if (indent.isEmpty()) ", " else ",\n$indent"
+        writer.write("$indent\"count\": $count")
+        writer.write("$separator\"timeMs\": ${formatMillis(nanos)}")
+        if (threadBean != null) {
+            writer.write("$separator\"allocatedBytes\": $allocated")
+        }
+    }
+
+    companion object {
+        /** Invocations taking at least this long are included individually in the trace */
+        private const val TRACE_THRESHOLD_NANOS = 100_000L
+
+        /** Maximum number of invocations included in the trace, to bound memory usage */
+        private const val MAX_TRACE_EVENTS = 200_000
+
+        private val threadBean: ThreadMXBean? =
+            (ManagementFactory.getThreadMXBean() as? ThreadMXBean)?.takeIf {
+                it.isThreadAllocatedMemorySupported && it.isThreadAllocatedMemoryEnabled
+            }
+
+        private fun formatMillis(nanos: Long): String =
+            String.format(Locale.US, "%.3f", nanos / 1e6)
+
+        private fun writeString(writer: Writer, string: String) {
+            writer.write('"'.toInt())
+            for (c in string) {
+                when {
+                    c == '"' || c == '\\' -> {
+                        writer.write('\\'.toInt())
+                        writer.write(c.toInt())
+                    }
+                    c < ' ' -> writer.write(String.format("\\u%04x", c.toInt()))
+                    else -> writer.write(c.toInt())
+                }
+            }
+            writer.write('"'.toInt())
+        }
+    }
+}
+
+/**
+ * Runs the given [block] on behalf of the given [callback] of the given [detector], recording
+ * it in this profiler unless it is null
+ */
+internal inline fun <T> LintDetectorProfiler?.profile(
+    detector: Detector,
+    callback: String,
+    block: () -> T
+): T {
+    if (this == null) {
+        return block()
+    }
+    val startAllocated = allocatedBytes()
+    val startTime = System.nanoTime()
+    try {
+        return block()
+    } finally {
+        record(detector, callback, startTime, startAllocated)
+    }
+}
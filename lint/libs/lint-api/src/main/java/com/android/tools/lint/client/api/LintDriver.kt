@@ -24,6 +24,7 @@ import com.android.SdkConstants.DOT_JAR
 import com.android.SdkConstants.DOT_JAVA
 import com.android.SdkConstants.DOT_KT
 import com.android.SdkConstants.DOT_KTS
+import com.android.SdkConstants.FN_BUILD_GRADLE
 import com.android.SdkConstants.FQCN_SUPPRESS_LINT
 import com.android.SdkConstants.KOTLIN_SUPPRESS
 import com.android.SdkConstants.RES_FOLDER
@@ -83,6 +84,8 @@ import com.google.common.base.Splitter
 import com.google.common.collect.ArrayListMultimap
 import com.google.common.collect.Iterables
 import com.google.common.collect.Sets
+import com.google.common.hash.Hashing
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.intellij.openapi.progress.ProcessCanceledException
 import com.intellij.openapi.project.IndexNotReadyException
 import com.intellij.openapi.util.Computable
@@ -131,6 +134,11 @@ import java.util.HashMap
 import java.util.HashSet
 import java.util.IdentityHashMap
 import java.util.LinkedHashMap
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import java.util.function.Predicate
 import java.util.regex.Pattern
 import kotlin.system.measureTimeMillis
@@ -241,6 +249,59 @@ class LintDriver
     /** Whether dependent projects should be checked */
     var checkDependencies = true
 
+    /**
+     * Number of threads used to read and parse resource and class files ahead of
+     * the detectors. This only prefetches input files: the detectors themselves are
+     * not run in parallel. They are always invoked from the analysis thread, one file
+     * at a time and in the same order as a single threaded run, so the results do not
+     * depend on this setting. Java and Kotlin sources are not prefetched. When set
+     * above 1, [LintClient.readFile] and [XmlParser.parseXml] must be safe to call
+     * from multiple threads.
+     */
+    var prefetchThreads: Int = 1
+
+    /** Pool used to prepare files ahead of the detectors when [prefetchThreads] is above 1 */
+    private var prepareExecutor: ExecutorService? = null
+
+    /**
+     * Directory to persist the incidents reported for individual resource files in, or null.
+     * When set, file local detectors (see [Detector.isFileLocal]) are not run again on
+     * resource files whose contents are unchanged since the previous run; the incidents they
+     * reported for those files are reported again instead. All other detectors still run on
+     * every file. Source files are always analyzed, since source detectors resolve references
+     * into other files.
+     */
+    var incidentCacheDir: File? = null
+
+    /**
+     * Whether libraries that several of the projects in this run depend on should only be
+     * analyzed once. When set, the incidents file local detectors (see [Detector.isFileLocal])
+     * report for the resource files of a library are recorded the first time the library is
+     * checked, and reported again for the other projects depending on it. Only resource
+     * detectors opt in to being file local, so the sources of the library and the resource
+     * files seen by the other detectors are still analyzed for every project. This is implied
+     * when [incidentCacheDir] is set.
+     */
+    var shareLibraryIncidents: Boolean = false
+
+    /**
+     * Profiler recording the time spent in each detector callback, or null. Clients can set
+     * this to find out which detectors are expensive to run.
+     */
+    var profiler: LintDetectorProfiler? = null
+
+    /** Whether incidents are cached for the project being analyzed */
+    private var cachingIncidents = false
+
+    /** The incident caches of the project being analyzed and its libraries */
+    private val incidentCaches = HashMap<Project, LintIncidentCache>()
+
+    /** The incident caches of the libraries checked in this run, by fingerprint */
+    private val libraryIncidentCaches = HashMap<String, LintIncidentCache>()
+
+    /** Detectors whose incidents are cached in [incidentCaches] */
+    private var fileLocalDetectors: Set<Class<out Detector>> = emptySet()
+
     /** Cancels the current lint run as soon as possible  */
     fun cancel() {
         isCanceled = true
@@ -415,6 +476,12 @@ class LintDriver
                     continue
                 }
 
+                cachingIncidents = incidentCacheDir != null || shareLibraryIncidents
+                if (cachingIncidents) {
+                    fileLocalDetectors = computeFileLocalDetectors()
+                    createIncidentCache(project)
+                }
+
                 checkProjectTimeMs += measureTimeMillis {
                     checkProject(project, main)
                 }
@@ -425,12 +492,28 @@ class LintDriver
                 extraPhasesTimeMs += measureTimeMillis {
                     runExtraPhases(project, main)
                 }
+
+                incidentCaches[project]?.write()
+                incidentCaches.clear()
+                cachingIncidents = false
+            }
+
+            if (!isCanceled) {
+                for (cache in libraryIncidentCaches.values) {
+                    cache.write()
+                }
             }
         } catch (throwable: Throwable) {
             // Process canceled etc
             if (!handleDetectorError(null, this, throwable)) {
                 cancel()
             }
+        } finally {
+            prepareExecutor?.shutdownNow()
+            prepareExecutor = null
+            incidentCaches.clear()
+            libraryIncidentCaches.clear()
+            cachingIncidents = false
         }
 
         val baseline = this.baseline
@@ -484,6 +567,15 @@ class LintDriver
         // Did any detectors request another phase?
         repeatingDetectors ?: return
 
+        // The repeated phases visit files regardless of the incident cache, and the
+        // detectors may depend on state from files skipped in the first phase
+        for (cache in incidentCaches.values) {
+            cache.invalidate()
+        }
+        libraryIncidentCaches.values.removeAll(incidentCaches.values)
+        incidentCaches.clear()
+        cachingIncidents = false
+
         // Yes. Iterate up to MAX_PHASES times.
 
         // During the extra phases, we might be narrowing the scope, and setting it in the
@@ -535,6 +627,7 @@ class LintDriver
         // Ensure that the current visitor is recomputed
         currentFolderType = null
         currentVisitor = null
+        uncachedVisitors.clear()
         currentXmlDetectors = null
         currentBinaryDetectors = null
 
@@ -614,6 +707,7 @@ class LintDriver
         // Ensure that the current visitor is recomputed
         currentFolderType = null
         currentVisitor = null
+        uncachedVisitors.clear()
 
         val configuration = project.getConfiguration(this)
         val map = EnumMap<Scope, MutableList<Detector>>(Scope::class.java)
@@ -887,8 +981,12 @@ class LintDriver
         currentProject = project
 
         for (check in applicableDetectors) {
-            check.beforeCheckRootProject(projectContext)
-            check.beforeCheckEachProject(projectContext)
+            profiler.profile(check, "beforeCheckRootProject") {
+                check.beforeCheckRootProject(projectContext)
+            }
+            profiler.profile(check, "beforeCheckEachProject") {
+                check.beforeCheckEachProject(projectContext)
+            }
             if (isCanceled) {
                 return
             }
@@ -910,13 +1008,18 @@ class LintDriver
                 currentProject = library
 
                 for (check in applicableDetectors) {
-                    check.beforeCheckEachProject(libraryContext)
+                    profiler.profile(check, "beforeCheckEachProject") {
+                        check.beforeCheckEachProject(libraryContext)
+                    }
                     if (isCanceled) {
                         return
                     }
                 }
                 assert(currentProject === library)
 
+                if (cachingIncidents) {
+                    openLibraryIncidentCache(main, library)
+                }
                 runFileDetectors(library, main)
                 if (isCanceled) {
                     return
@@ -926,7 +1029,9 @@ class LintDriver
                 runDelayedRunnables()
 
                 for (check in applicableDetectors) {
-                    check.afterCheckEachProject(libraryContext)
+                    profiler.profile(check, "afterCheckEachProject") {
+                        check.afterCheckEachProject(libraryContext)
+                    }
                     if (isCanceled) {
                         return
                     }
@@ -938,8 +1043,12 @@ class LintDriver
 
         for (check in applicableDetectors) {
             client.runReadAction(Runnable {
-                check.afterCheckEachProject(projectContext)
-                check.afterCheckRootProject(projectContext)
+                profiler.profile(check, "afterCheckEachProject") {
+                    check.afterCheckEachProject(projectContext)
+                }
+                profiler.profile(check, "afterCheckRootProject") {
+                    check.afterCheckRootProject(projectContext)
+                }
             })
             if (isCanceled) {
                 return
@@ -1181,7 +1290,9 @@ class LintDriver
 
                             uastVisitor.visitBuildScript(gradleContext, gradleScanners)
                             for (scanner in customVisitedGradleScanners) {
-                                scanner.visitBuildScript(context)
+                                profiler.profile(scanner as Detector, "visitBuildScript") {
+                                    scanner.visitBuildScript(context)
+                                }
                             }
                             for (detector in detectors) {
                                 detector.afterCheckFile(context)
@@ -1202,7 +1313,9 @@ class LintDriver
                         }
                         gradleVisitor.visitBuildScript(context, gradleScanners)
                         for (scanner in customVisitedGradleScanners) {
-                            scanner.visitBuildScript(context)
+                            profiler.profile(scanner as Detector, "visitBuildScript") {
+                                scanner.visitBuildScript(context)
+                            }
                         }
                         for (detector in detectors) {
                             detector.afterCheckFile(context)
@@ -1222,9 +1335,13 @@ class LintDriver
                 val context = Context(this, project, main, file)
                 fireEvent(EventType.SCANNING_FILE, context)
                 for (detector in detectors) {
-                    detector.beforeCheckFile(context)
-                    detector.run(context)
-                    detector.afterCheckFile(context)
+                    profiler.profile(detector, "beforeCheckFile") {
+                        detector.beforeCheckFile(context)
+                    }
+                    profiler.profile(detector, "run") { detector.run(context) }
+                    profiler.profile(detector, "afterCheckFile") {
+                        detector.afterCheckFile(context)
+                    }
                     fileCount++
                 }
             }
@@ -1238,9 +1355,13 @@ class LintDriver
                 val context = Context(this, project, main, file)
                 fireEvent(EventType.SCANNING_FILE, context)
                 for (detector in detectors) {
-                    detector.beforeCheckFile(context)
-                    detector.run(context)
-                    detector.afterCheckFile(context)
+                    profiler.profile(detector, "beforeCheckFile") {
+                        detector.beforeCheckFile(context)
+                    }
+                    profiler.profile(detector, "run") { detector.run(context) }
+                    profiler.profile(detector, "afterCheckFile") {
+                        detector.afterCheckFile(context)
+                    }
                     fileCount++
                 }
             }
@@ -1388,25 +1509,21 @@ class LintDriver
                 var sourceName = ""
                 outerClasses = ArrayDeque<ClassNode>()
                 var prev: ClassEntry? = null
-                for (entry in entries) {
-                    if (prev != null && prev.compareTo(entry) == 0) {
+                visitPrepared(entries, ::readClass) visit@{ entry, parsed ->
+                    if (prev?.compareTo(entry) == 0) {
                         // Duplicate entries for some reason: ignore
-                        continue
+                        return@visit
                     }
                     prev = entry
 
-                    val reader: ClassReader
-                    val classNode: ClassNode
-                    try {
-                        reader = ClassReader(entry.bytes)
-                        classNode = ClassNode()
-                        reader.accept(classNode, 0 /* flags */)
-                    } catch (t: Throwable) {
+                    val classNode = parsed.node
+                    if (classNode == null) {
                         client.log(
                             null,
-                            "Error processing ${entry.path()}: broken class file? (${t.message})"
+                            "Error processing ${entry.path()}: " +
+                                    "broken class file? (${parsed.error?.message})"
                         )
-                        continue
+                        return@visit
                     }
 
                     var peek: ClassNode?
@@ -1425,7 +1542,7 @@ class LintDriver
 
                     if (isSuppressed(null, classNode)) {
                         // Class was annotated with suppress all -- no need to look any further
-                        continue
+                        return@visit
                     }
 
                     if (sourceContents != null) {
@@ -1476,18 +1593,35 @@ class LintDriver
                     // fileCount++
 
                     if (isCanceled) {
-                        return
+                        return@visit
                     }
 
                     sourceContents = context.getSourceContents(false/*read*/)
                     sourceName = classNode.name
                 }
 
+                if (isCanceled) {
+                    return
+                }
+
                 outerClasses = null
             }
         }
     }
 
+    /** A class file read ahead of running the class detectors on it */
+    private class ParsedClass(val node: ClassNode?, val error: Throwable?)
+
+    private fun readClass(entry: ClassEntry): ParsedClass {
+        return try {
+            val classNode = ClassNode()
+            ClassReader(entry.bytes).accept(classNode, 0 /* flags */)
+            ParsedClass(classNode, null)
+        } catch (t: Throwable) {
+            ParsedClass(null, t)
+        }
+    }
+
     /** Returns the outer class node of the given class node
      * @param classNode the inner class node
      *
@@ -1603,9 +1737,9 @@ class LintDriver
         }
 
         // Test sources
-        val testContexts: List<JavaContext>
+        val testContexts: MutableList<JavaContext>
         if (ignoreTestSources) {
-            testContexts = emptyList()
+            testContexts = mutableListOf()
         } else {
             sources.clear()
             for (folder in testSourceFolders) {
@@ -1886,9 +2020,15 @@ class LintDriver
             fireEvent(EventType.SCANNING_FILE, context)
             for (check in dirChecks) {
                 if (check.appliesTo(type)) {
-                    check.beforeCheckFile(context)
-                    check.checkFolder(context, folderName)
-                    check.afterCheckFile(context)
+                    profiler.profile(check, "beforeCheckFile") {
+                        check.beforeCheckFile(context)
+                    }
+                    profiler.profile(check, "checkFolder") {
+                        check.checkFolder(context, folderName)
+                    }
+                    profiler.profile(check, "afterCheckFile") {
+                        check.afterCheckFile(context)
+                    }
                     fileCount++
                     resourceFileCount++
                 }
@@ -1910,12 +2050,17 @@ class LintDriver
             // Process files in alphabetical order, to ensure stable output
             // (for example for the duplicate resource detector)
             Arrays.sort(files)
-            for (file in files) {
+            val prepare = { file: File -> if (isXmlFile(file)) parseXml(file, parser) else null }
+            visitPrepared(files.asList(), prepare) visit@{ file, xml ->
                 if (isXmlFile(file)) {
-                    val context = createXmlContext(project, main, file, type, parser) ?: continue
+                    xml ?: return@visit
+                    val context = XmlContext(
+                        this, project, main, file, type, parser,
+                        xml.contents, xml.document
+                    )
                     try {
                         fireEvent(EventType.SCANNING_FILE, context)
-                        visitor.visitFile(context)
+                        visitXmlFile(context, visitor, type, xmlChecks)
                     } finally {
                         disposeXmlContext(context)
                     }
@@ -1934,13 +2079,179 @@ class LintDriver
                     fileCount++
                     resourceFileCount++
                 }
-                if (isCanceled) {
-                    return
-                }
             }
         }
     }
 
+    /**
+     * Runs the given resource [visitor] on the given XML file, or if the file is unchanged
+     * since its incidents were cached, only the detectors whose incidents are not cached.
+     */
+    private fun visitXmlFile(
+        context: XmlContext,
+        visitor: ResourceVisitor,
+        type: ResourceFolderType,
+        xmlChecks: List<XmlScanner>
+    ) {
+        val cache = incidentCaches[context.project]
+        if (cache == null) {
+            visitor.visitFile(context)
+            return
+        }
+
+        val file = context.file
+        val hash = LintIncidentCache.hash(context.getContents() ?: "")
+        val incidents = cache.reuse(file, hash)
+        if (incidents != null) {
+            getUncachedVisitor(type, xmlChecks)?.visitFile(context)
+            reportCachedIncidents(context, incidents)
+        } else {
+            cache.track(file, hash, fileLocalDetectors)
+            cache.currentFile = file
+            try {
+                visitor.visitFile(context)
+            } finally {
+                cache.currentFile = null
+            }
+        }
+    }
+
+    /** Resource visitors for the detectors whose incidents are not cached, by folder type */
+    private val uncachedVisitors = HashMap<ResourceFolderType, ResourceVisitor?>()
+
+    private fun getUncachedVisitor(
+        type: ResourceFolderType,
+        checks: List<XmlScanner>
+    ): ResourceVisitor? {
+        if (uncachedVisitors.containsKey(type)) {
+            return uncachedVisitors[type]
+        }
+        val applicable = checks.filter {
+            it.appliesTo(type) && !fileLocalDetectors.contains((it as Detector).javaClass)
+        }
+        val visitor =
+            if (applicable.isEmpty()) null else ResourceVisitor(client.xmlParser, applicable, null)
+        uncachedVisitors[type] = visitor
+        return visitor
+    }
+
+    /** Reports the cached incidents for the file of the given context again */
+    private fun reportCachedIncidents(
+        context: Context,
+        incidents: List<LintIncidentCache.Incident>
+    ) {
+        for (incident in incidents) {
+            val issue = registry.getIssue(incident.issueId) ?: continue
+            client.report(
+                context, issue, incident.severity, incident.location,
+                incident.message, incident.format, null
+            )
+        }
+    }
+
+    /** Computes the [fileLocalDetectors] whose incidents are cached */
+    private fun computeFileLocalDetectors(): Set<Class<out Detector>> {
+        // Only cache the incidents of detectors which declare that they are file local, and
+        // whose issues can all be analyzed one file at a time, for each of their scopes
+        val detectorIssues = ArrayListMultimap.create<Class<out Detector>, Issue>()
+        for (issue in registry.issues) {
+            detectorIssues.put(issue.implementation.detectorClass, issue)
+        }
+        val fileLocal = HashSet<Class<out Detector>>()
+        for (detector in applicableDetectors) {
+            val detectorClass = detector.javaClass
+            if (detector.isFileLocal() &&
+                detectorIssues.get(detectorClass).all { isFileLocal(it) }
+            ) {
+                fileLocal.add(detectorClass)
+            }
+        }
+        return fileLocal
+    }
+
+    /**
+     * Computes the fingerprint of the inputs other than the file contents that the
+     * incidents reported for the files of the given [projects] depend on, when they are
+     * checked as part of the given [main] project.
+     */
+    private fun computeIncidentFingerprint(main: Project, projects: List<Project>): String {
+        val hasher = Hashing.sha256().newHasher()
+        hasher.putString(client.getClientRevision() ?: "", Charsets.UTF_8)
+        hasher.putString(scope.toString(), Charsets.UTF_8)
+        hasher.putString(platforms.toString(), Charsets.UTF_8)
+        hasher.putBoolean(checkTestSources)
+        hasher.putBoolean(ignoreTestSources)
+        hasher.putBoolean(checkGeneratedSources)
+        for (name in fileLocalDetectors.map { it.name }.sorted()) {
+            hasher.putString(name, Charsets.UTF_8)
+        }
+        val issues = registry.issues.sortedBy { it.id }
+        // Detectors consult the main project for the SDK versions, and its configuration
+        // decides which issues are reported at all
+        hasher.putString(main.minSdkVersion.apiString, Charsets.UTF_8)
+        hasher.putString(main.targetSdkVersion.apiString, Charsets.UTF_8)
+        hasher.putInt(main.buildSdk)
+        for (p in (listOf(main) + projects).distinct()) {
+            val configuration = p.getConfiguration(this)
+            for (issue in issues) {
+                hasher.putString(issue.id, Charsets.UTF_8)
+                hasher.putString(configuration.getSeverity(issue).name, Charsets.UTF_8)
+            }
+        }
+        for (p in projects) {
+            hasher.putString(p.dir.path, Charsets.UTF_8)
+            // Project level inputs, such as the minSdkVersion, file local detectors use
+            for (file in p.manifestFiles + File(p.dir, FN_BUILD_GRADLE)) {
+                if (file.isFile) {
+                    hasher.putString(LintIncidentCache.hash(client.readFile(file)), Charsets.UTF_8)
+                }
+            }
+        }
+        return hasher.hash().toString()
+    }
+
+    /** Returns the file the incident cache with the given key is persisted in, if any */
+    private fun getIncidentCacheFile(key: String): File? {
+        val dir = incidentCacheDir ?: return null
+        val hash = Hashing.sha256().hashString(key, Charsets.UTF_8).toString()
+        return File(dir, "incidents-" + hash.substring(0, 16) + ".bin")
+    }
+
+    /** Creates the incident cache for the given root project, if [incidentCacheDir] is set */
+    private fun createIncidentCache(project: Project) {
+        val file = getIncidentCacheFile(project.dir.absolutePath) ?: return
+        val projects = listOf(project) + project.allLibraries
+        val fingerprint = computeIncidentFingerprint(project, projects)
+        val cache = LintIncidentCache(file, fingerprint)
+        cache.read()
+        incidentCaches[project] = cache
+    }
+
+    /**
+     * Looks up or creates the incident cache for the given [library] of the [main] project.
+     * The caches are shared by all the projects in this run that check the library in the
+     * same way, such that its files are only analyzed once.
+     */
+    private fun openLibraryIncidentCache(main: Project, library: Project) {
+        // Computed once the manifest of the main project has been read
+        val fingerprint = computeIncidentFingerprint(main, listOf(library))
+        val cache = libraryIncidentCaches.getOrPut(fingerprint) {
+            val file = getIncidentCacheFile(library.dir.absolutePath + "#" + main.dir.absolutePath)
+            LintIncidentCache(file, fingerprint).also { it.read() }
+        }
+        incidentCaches[library] = cache
+    }
+
+    private fun isFileLocal(issue: Issue): Boolean {
+        val implementation = issue.implementation
+        for (scope in implementation.scope) {
+            if (scope != Scope.TEST_SOURCES && !implementation.isAdequate(EnumSet.of(scope))) {
+                return false
+            }
+        }
+        return true
+    }
+
     private fun disposeXmlContext(context: XmlContext) =
         context.parser.dispose(context, context.document)
 
@@ -1951,6 +2262,14 @@ class LintDriver
         type: ResourceFolderType?,
         parser: XmlParser
     ): XmlContext? {
+        val xml = parseXml(file, parser) ?: return null
+        return XmlContext(this, project, main, file, type, parser, xml.contents, xml.document)
+    }
+
+    /** The contents and document of an XML file, read ahead of creating its [XmlContext] */
+    private class ParsedXml(val contents: String, val document: Document)
+
+    private fun parseXml(file: File, parser: XmlParser): ParsedXml? {
         assert(isXmlFile(file))
         val contents = client.readFile(file)
         if (contents.isEmpty()) {
@@ -1962,7 +2281,55 @@ class LintDriver
         // Ignore empty documents
         document.documentElement ?: return null
 
-        return XmlContext(this, project, main, file, type, parser, xml, document)
+        return ParsedXml(xml, document)
+    }
+
+    /**
+     * Calls [visit] for each of the given [items] in order, along with the result of
+     * [prepare] for that item, until lint is canceled. When [prefetchThreads] is above 1,
+     * [prepare] runs on a thread pool for a bounded number of items ahead of the one
+     * being visited, so it must not call detectors or modify driver state. [visit]
+     * is always called on the current thread.
+     */
+    private fun <T, R> visitPrepared(items: List<T>, prepare: (T) -> R, visit: (T, R) -> Unit) {
+        val threads = prefetchThreads
+        if (threads <= 1 || items.size <= 1) {
+            for (item in items) {
+                visit(item, prepare(item))
+                if (isCanceled) {
+                    return
+                }
+            }
+            return
+        }
+
+        val executor = prepareExecutor ?: Executors.newFixedThreadPool(
+            threads,
+            ThreadFactoryBuilder().setNameFormat("lint-prepare-%d").setDaemon(true).build()
+        ).also { prepareExecutor = it }
+        val pending = ArrayDeque<Future<R>>()
+        var next = 0
+        try {
+            for (item in items) {
+                while (next < items.size && pending.size < 2 * threads) {
+                    val nextItem = items[next++]
+                    pending.add(executor.submit(Callable { prepare(nextItem) }))
+                }
+                val prepared = try {
+                    pending.remove().get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+                visit(item, prepared)
+                if (isCanceled) {
+                    return
+                }
+            }
+        } finally {
+            for (future in pending) {
+                future.cancel(false)
+            }
+        }
     }
 
     /** Checks individual resources  */
@@ -2102,6 +2469,9 @@ class LintDriver
             format: TextFormat,
             fix: LintFix?
         ) {
+            for (cache in incidentCaches.values) {
+                cache.record(issue, severity, location, message, format, fix)
+            }
 
             if (currentProject != null && currentProject?.reportIssues == false) {
                 return
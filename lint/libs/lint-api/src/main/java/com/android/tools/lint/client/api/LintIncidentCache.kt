@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.detector.api.DefaultPosition
+import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.Issue
+import com.android.tools.lint.detector.api.LintFix
+import com.android.tools.lint.detector.api.Location
+import com.android.tools.lint.detector.api.Position
+import com.android.tools.lint.detector.api.Severity
+import com.android.tools.lint.detector.api.TextFormat
+import com.google.common.hash.Hashing
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.ArrayList
+import java.util.HashMap
+
+/**
+ * A persistent cache of the incidents reported for individual resource files, keyed by the
+ * contents of each file.
+ *
+ * [LintDriver] uses this to avoid running detectors on files that have not changed since
+ * the previous run. Only file local detectors (see [Detector.isFileLocal]) are skipped; the
+ * incidents they reported for the file in the previous run are reported again instead.
+ * Incidents are recorded before the configuration and baseline filters are applied, so
+ * those still apply as usual to cached incidents.
+ *
+ * The whole cache is discarded when the [fingerprint] changes, which covers the lint
+ * version, the enabled issues and their severities, and project level inputs such as the
+ * manifest.
+ *
+ * Entries recorded earlier in the same run are reused as well, which lets a library that
+ * several projects depend on be analyzed only once per run.
+ */
+internal class LintIncidentCache(
+    /** The file the cache is persisted in, or null to only keep it in memory */
+    private val file: File?,
+    /** Fingerprint of everything other than the file contents the incidents depend on */
+    private val fingerprint: String
+) {
+    /** An incident reported for a file */
+    class Incident(
+        val issueId: String,
+        val severity: Severity,
+        val location: Location,
+        val message: String,
+        val format: TextFormat
+    )
+
+    private class Entry(
+        /** Hash of the contents of the file */
+        val hash: String,
+        /** The detectors whose incidents are recorded, or null for a reused entry */
+        val detectors: Set<Class<out Detector>>?,
+        val incidents: MutableList<Incident>
+    ) {
+        /** Whether the incidents could all be recorded */
+        var cacheable = true
+    }
+
+    /** Entries from the previous run, by file path */
+    private val previous = HashMap<String, Entry>()
+
+    /** Entries for the files seen in this run, by file path */
+    private val entries = HashMap<String, Entry>()
+
+    /**
+     * The file the detectors are currently visiting, if any. Incidents reported while a file
+     * is visited are recorded for that file; other incidents are recorded for the file of
+     * their location.
+     */
+    var currentFile: File? = null
+
+    private var valid = true
+
+    /** Reads the entries persisted by the previous run, if any */
+    fun read() {
+        if (file == null || !file.isFile) {
+            return
+        }
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION ||
+                    readString(input) != fingerprint
+                ) {
+                    return
+                }
+                val entryCount = input.readInt()
+                for (i in 0 until entryCount) {
+                    val path = readString(input)
+                    val hash = readString(input)
+                    val incidentCount = input.readInt()
+                    val incidents = ArrayList<Incident>(incidentCount)
+                    for (j in 0 until incidentCount) {
+                        val issueId = readString(input)
+                        val severity = Severity.valueOf(readString(input))
+                        val message = readString(input)
+                        val format = TextFormat.valueOf(readString(input))
+                        val location = readLocation(input) ?: throw IOException()
+                        incidents.add(Incident(issueId, severity, location, message, format))
+                    }
+                    previous[path] = Entry(hash, null, incidents)
+                }
+            }
+        } catch (e: IOException) {
+            // Corrupt or truncated cache: start over
+            previous.clear()
+        } catch (e: IllegalArgumentException) {
+            previous.clear()
+        }
+    }
+
+    /**
+     * Returns the incidents reported for the given [file] earlier in this run or in the
+     * previous run if its contents (with the given [hash]) are unchanged, or null if the file
+     * has to be analyzed.
+     */
+    fun reuse(file: File, hash: String): List<Incident>? {
+        val entry = entries[file.path] ?: previous[file.path] ?: return null
+        if (entry.hash != hash || !entry.cacheable) {
+            return null
+        }
+        // The incidents are reported again by the caller; don't record them twice
+        entries[file.path] =
+            if (entry.detectors == null) entry else Entry(hash, null, entry.incidents)
+        return entry.incidents
+    }
+
+    /**
+     * Starts recording the incidents the given [detectors] report for the given [file],
+     * whose contents have the given [hash].
+     */
+    fun track(file: File, hash: String, detectors: Set<Class<out Detector>>) {
+        entries[file.path] = Entry(hash, detectors, ArrayList())
+    }
+
+    /** Records an incident reported to the lint client */
+    fun record(
+        issue: Issue,
+        severity: Severity,
+        location: Location,
+        message: String,
+        format: TextFormat,
+        fix: LintFix?
+    ) {
+        val entry = entries[(currentFile ?: location.file).path] ?: return
+        val detectors = entry.detectors ?: return // reused from the previous run
+        if (!entry.cacheable || !detectors.contains(issue.implementation.detectorClass)) {
+            return
+        }
+        if (fix != null) {
+            // Quickfixes cannot be persisted; analyze this file again next time
+            entry.cacheable = false
+            entry.incidents.clear()
+            return
+        }
+        entry.incidents.add(Incident(issue.id, severity, location, message, format))
+    }
+
+    /** Marks the recorded incidents as incomplete, such that they are not persisted */
+    fun invalidate() {
+        valid = false
+    }
+
+    /** Persists the entries of the files seen in this run */
+    fun write() {
+        val file = file ?: return
+        if (!valid) {
+            file.delete()
+            return
+        }
+        try {
+            file.parentFile?.mkdirs()
+            DataOutputStream(BufferedOutputStream(FileOutputStream(file))).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                writeString(output, fingerprint)
+                val cacheable = entries.filterValues { it.cacheable }
+                output.writeInt(cacheable.size)
+                for ((path, entry) in cacheable) {
+                    writeString(output, path)
+                    writeString(output, entry.hash)
+                    output.writeInt(entry.incidents.size)
+                    for (incident in entry.incidents) {
+                        writeString(output, incident.issueId)
+                        writeString(output, incident.severity.name)
+                        writeString(output, incident.message)
+                        writeString(output, incident.format.name)
+                        writeLocation(output, incident.location)
+                    }
+                }
+            }
+        } catch (e: IOException) {
+            file.delete()
+        }
+    }
+
+    companion object {
+        private const val MAGIC = 0x4c494e43 // "LINC"
+        private const val VERSION = 1
+
+        /** Returns the hash used to identify the given file contents */
+        fun hash(contents: CharSequence): String =
+            Hashing.sha256().hashString(contents, Charsets.UTF_8).toString()
+
+        private fun writeString(output: DataOutputStream, string: String) {
+            val bytes = string.toByteArray(Charsets.UTF_8)
+            output.writeInt(bytes.size)
+            output.write(bytes)
+        }
+
+        private fun readString(input: DataInputStream): String {
+            val bytes = ByteArray(input.readInt())
+            input.readFully(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
+        private fun writeLocation(output: DataOutputStream, location: Location) {
+            var count = 0
+            var current: Location? = location
+            while (current != null) {
+                count++
+                current = current.secondary
+            }
+            output.writeInt(count)
+            current = location
+            while (current != null) {
+                writeString(output, current.file.path)
+                writePosition(output, current.start)
+                writePosition(output, current.end)
+                val message = current.message
+                output.writeBoolean(message != null)
+                if (message != null) {
+                    writeString(output, message)
+                }
+                output.writeBoolean(current.isSelfExplanatory())
+                output.writeBoolean(current.visible)
+                current = current.secondary
+            }
+        }
+
+        private fun readLocation(input: DataInputStream): Location? {
+            var first: Location? = null
+            var last: Location? = null
+            for (i in 0 until input.readInt()) {
+                val file = File(readString(input))
+                val start = readPosition(input)
+                val end = readPosition(input)
+                val location =
+                    if (start != null) Location.create(file, start, end) else Location.create(file)
+                if (input.readBoolean()) {
+                    location.message = readString(input)
+                }
+                location.setSelfExplanatory(input.readBoolean())
+                location.visible = input.readBoolean()
+                if (last == null) {
+                    first = location
+                } else {
+                    last.secondary = location
+                }
+                last = location
+            }
+            return first
+        }
+
+        private fun writePosition(output: DataOutputStream, position: Position?) {
+            output.writeBoolean(position != null)
+            if (position != null) {
+                output.writeInt(position.line)
+                output.writeInt(position.column)
+                output.writeInt(position.offset)
+            }
+        }
+
+        private fun readPosition(input: DataInputStream): Position? {
+            if (!input.readBoolean()) {
+                return null
+            }
+            val line = input.readInt()
+            val column = input.readInt()
+            val offset = input.readInt()
+            return DefaultPosition(line, column, offset)
+        }
+    }
+}
@@ -221,9 +221,14 @@ internal class OtherFileVisitor(private val detectors: List<Detector>) {
                 for (file in files) {
                     val context = Context(driver, project, main, file)
                     for (detector in applicable) {
-                        detector.beforeCheckFile(context)
-                        detector.run(context)
-                        detector.afterCheckFile(context)
+                        val profiler = driver.profiler
+                        profiler.profile(detector, "beforeCheckFile") {
+                            detector.beforeCheckFile(context)
+                        }
+                        profiler.profile(detector, "run") { detector.run(context) }
+                        profiler.profile(detector, "afterCheckFile") {
+                            detector.afterCheckFile(context)
+                        }
                         driver.fileCount++
                     }
                     if (driver.isCanceled) {
@@ -66,6 +66,9 @@ class ResourceVisitor {
     private final List<? extends Detector> binaryDetectors;
     private final XmlParser parser;
 
+    /** The profiler of the current lint run, if any */
+    @Nullable private LintDetectorProfiler profiler;
+
     // Really want this:
     //<T extends List<Detector> & XmlScanner> XmlVisitor(IDomParser parser,
     //    T xmlDetectors) {
@@ -112,10 +115,14 @@ class ResourceVisitor {
     }
 
     void visitFile(@NonNull XmlContext context) {
+        profiler = context.getDriver().getProfiler();
         try {
             for (XmlScanner check : allDetectors) {
-                check.beforeCheckFile(context);
-                check.visitDocument(context, context.document);
+                profile(check, "beforeCheckFile", () -> check.beforeCheckFile(context));
+                profile(
+                        check,
+                        "visitDocument",
+                        () -> check.visitDocument(context, context.document));
             }
 
             if (!elementToCheck.isEmpty()
@@ -126,7 +133,7 @@ class ResourceVisitor {
             }
 
             for (XmlScanner check : allDetectors) {
-                check.afterCheckFile(context);
+                profile(check, "afterCheckFile", () -> check.afterCheckFile(context));
             }
         } catch (RuntimeException e) {
             LintDriver.handleDetectorError(context, context.getDriver(), e);
@@ -138,12 +145,20 @@ class ResourceVisitor {
         if (elementChecks != null) {
             assert elementChecks instanceof RandomAccess;
             for (XmlScanner check : elementChecks) {
-                check.visitElement(context, element);
+                if (profiler == null) {
+                    check.visitElement(context, element);
+                } else {
+                    profile(check, "visitElement", () -> check.visitElement(context, element));
+                }
             }
         }
         if (!allElementDetectors.isEmpty()) {
             for (XmlScanner check : allElementDetectors) {
-                check.visitElement(context, element);
+                if (profiler == null) {
+                    check.visitElement(context, element);
+                } else {
+                    profile(check, "visitElement", () -> check.visitElement(context, element));
+                }
             }
         }
 
@@ -158,12 +173,26 @@ class ResourceVisitor {
                 List<XmlScanner> list = attributeToCheck.get(name);
                 if (list != null) {
                     for (XmlScanner check : list) {
-                        check.visitAttribute(context, attribute);
+                        if (profiler == null) {
+                            check.visitAttribute(context, attribute);
+                        } else {
+                            profile(
+                                    check,
+                                    "visitAttribute",
+                                    () -> check.visitAttribute(context, attribute));
+                        }
                     }
                 }
                 if (!allAttributeDetectors.isEmpty()) {
                     for (XmlScanner check : allAttributeDetectors) {
-                        check.visitAttribute(context, attribute);
+                        if (profiler == null) {
+                            check.visitAttribute(context, attribute);
+                        } else {
+                            profile(
+                                    check,
+                                    "visitAttribute",
+                                    () -> check.visitAttribute(context, attribute));
+                        }
                     }
                 }
             }
@@ -181,12 +210,26 @@ class ResourceVisitor {
         // Post hooks
         if (elementChecks != null) {
             for (XmlScanner check : elementChecks) {
-                check.visitElementAfter(context, element);
+                if (profiler == null) {
+                    check.visitElementAfter(context, element);
+                } else {
+                    profile(
+                            check,
+                            "visitElementAfter",
+                            () -> check.visitElementAfter(context, element));
+                }
             }
         }
         if (!allElementDetectors.isEmpty()) {
             for (XmlScanner check : allElementDetectors) {
-                check.visitElementAfter(context, element);
+                if (profiler == null) {
+                    check.visitElementAfter(context, element);
+                } else {
+                    profile(
+                            check,
+                            "visitElementAfter",
+                            () -> check.visitElementAfter(context, element));
+                }
             }
         }
     }
@@ -200,10 +243,26 @@ class ResourceVisitor {
         if (binaryDetectors == null) {
             return;
         }
+        profiler = context.getDriver().getProfiler();
         for (Detector check : binaryDetectors) {
-            check.beforeCheckFile(context);
-            check.checkBinaryResource(context);
-            check.afterCheckFile(context);
+            profile(check, "beforeCheckFile", () -> check.beforeCheckFile(context));
+            profile(check, "checkBinaryResource", () -> check.checkBinaryResource(context));
+            profile(check, "afterCheckFile", () -> check.afterCheckFile(context));
+        }
+    }
+
+    /**
+     * Runs the given callback of the given detector (an {@link XmlScanner} or a binary resource
+     * {@link Detector}), recording it in the profiler if profiling. Callbacks invoked for every
+     * element or attribute check {@link #profiler} first instead, such that no lambda is
+     * allocated for them when profiling is off.
+     */
+    private void profile(
+            @NonNull Object check, @NonNull String callback, @NonNull Runnable runnable) {
+        if (profiler != null) {
+            profiler.measure((Detector) check, callback, runnable);
+        } else {
+            runnable.run();
         }
     }
 }
@@ -134,6 +134,9 @@ internal class UElementVisitor constructor(
     private val annotationHandler: AnnotationHandler?
     private val callGraphDetectors = ArrayList<SourceCodeScanner>()
 
+    /** The profiler of the current lint run, if any */
+    private var profiler: LintDetectorProfiler? = null
+
     init {
         allDetectors = ArrayList(detectors.size)
 
@@ -233,6 +236,7 @@ internal class UElementVisitor constructor(
     }
 
     fun visitFile(context: JavaContext) {
+        profiler = context.driver.profiler
         try {
             val uastParser = context.uastParser
 
@@ -253,7 +257,9 @@ internal class UElementVisitor constructor(
                 client.runReadAction(Runnable {
                     for (v in allDetectors) {
                         v.setContext(context)
-                        v.detector.beforeCheckFile(context)
+                        profiler.profile(v.detector, "beforeCheckFile") {
+                            v.detector.beforeCheckFile(context)
+                        }
                     }
                 })
 
@@ -290,7 +296,9 @@ internal class UElementVisitor constructor(
                 client.runReadAction(Runnable {
                     for (v in allDetectors) {
                         ProgressManager.checkCanceled()
-                        v.detector.afterCheckFile(context)
+                        profiler.profile(v.detector, "afterCheckFile") {
+                            v.detector.afterCheckFile(context)
+                        }
                     }
                 })
             } finally {
@@ -322,10 +330,13 @@ internal class UElementVisitor constructor(
                 generateCallGraph(projectContext, parser, allContexts)
             })
             if (callGraph != null && !callGraphDetectors.isEmpty()) {
+                val profiler = projectContext.driver.profiler
                 for (scanner in callGraphDetectors) {
                     projectContext.client.runReadAction(Runnable {
                         ProgressManager.checkCanceled()
-                        scanner.analyzeCallGraph(projectContext, callGraph)
+                        profiler.profile(scanner as Detector, "analyzeCallGraph") {
+                            scanner.analyzeCallGraph(projectContext, callGraph)
+                        }
                     })
                 }
             }
@@ -461,11 +472,13 @@ internal class UElementVisitor constructor(
                 if (list != null) {
                     for (v in list) {
                         val uastScanner = v.uastScanner
-                        if (uClass != null) {
-                            uastScanner.visitClass(context, uClass)
-                        } else {
-                            assert(lambda != null)
-                            uastScanner.visitClass(context, lambda!!)
+                        profiler.profile(v.detector, "visitClass") {
+                            if (uClass != null) {
+                                uastScanner.visitClass(context, uClass)
+                            } else {
+                                assert(lambda != null)
+                                uastScanner.visitClass(context, lambda!!)
+                            }
                         }
                     }
                 }
@@ -478,11 +491,13 @@ internal class UElementVisitor constructor(
                         if (list != null) {
                             for (v in list) {
                                 val uastScanner = v.uastScanner
-                                if (uClass != null) {
-                                    uastScanner.visitClass(context, uClass)
-                                } else {
-                                    assert(lambda != null)
-                                    uastScanner.visitClass(context, lambda!!)
+                                profiler.profile(v.detector, "visitClass") {
+                                    if (uClass != null) {
+                                        uastScanner.visitClass(context, uClass)
+                                    } else {
+                                        assert(lambda != null)
+                                        uastScanner.visitClass(context, lambda!!)
+                                    }
                                 }
                             }
                         }
@@ -507,7 +522,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UAnnotation::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitAnnotation(node)
+                    profiler.profile(v.detector, "visitAnnotation") {
+                        v.visitor.visitAnnotation(node)
+                    }
                 }
             }
             return super.visitAnnotation(node)
@@ -517,7 +534,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UArrayAccessExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitArrayAccessExpression(node)
+                    profiler.profile(v.detector, "visitArrayAccessExpression") {
+                        v.visitor.visitArrayAccessExpression(node)
+                    }
                 }
             }
             return super.visitArrayAccessExpression(node)
@@ -527,7 +546,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UBinaryExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitBinaryExpression(node)
+                    profiler.profile(v.detector, "visitBinaryExpression") {
+                        v.visitor.visitBinaryExpression(node)
+                    }
                 }
             }
             return super.visitBinaryExpression(node)
@@ -537,7 +558,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UBinaryExpressionWithType::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitBinaryExpressionWithType(node)
+                    profiler.profile(v.detector, "visitBinaryExpressionWithType") {
+                        v.visitor.visitBinaryExpressionWithType(node)
+                    }
                 }
             }
             return super.visitBinaryExpressionWithType(node)
@@ -547,7 +570,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UBlockExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitBlockExpression(node)
+                    profiler.profile(v.detector, "visitBlockExpression") {
+                        v.visitor.visitBlockExpression(node)
+                    }
                 }
             }
             return super.visitBlockExpression(node)
@@ -557,7 +582,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UBreakExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitBreakExpression(node)
+                    profiler.profile(v.detector, "visitBreakExpression") {
+                        v.visitor.visitBreakExpression(node)
+                    }
                 }
             }
             return super.visitBreakExpression(node)
@@ -567,7 +594,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UCallExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitCallExpression(node)
+                    profiler.profile(v.detector, "visitCallExpression") {
+                        v.visitor.visitCallExpression(node)
+                    }
                 }
             }
             return super.visitCallExpression(node)
@@ -577,7 +606,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UCallableReferenceExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitCallableReferenceExpression(node)
+                    profiler.profile(v.detector, "visitCallableReferenceExpression") {
+                        v.visitor.visitCallableReferenceExpression(node)
+                    }
                 }
             }
             return super.visitCallableReferenceExpression(node)
@@ -587,7 +618,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UCatchClause::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitCatchClause(node)
+                    profiler.profile(v.detector, "visitCatchClause") {
+                        v.visitor.visitCatchClause(node)
+                    }
                 }
             }
             return super.visitCatchClause(node)
@@ -597,7 +630,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UClass::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitClass(node)
+                    profiler.profile(v.detector, "visitClass") {
+                        v.visitor.visitClass(node)
+                    }
                 }
             }
             return super.visitClass(node)
@@ -607,7 +642,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UClassLiteralExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitClassLiteralExpression(node)
+                    profiler.profile(v.detector, "visitClassLiteralExpression") {
+                        v.visitor.visitClassLiteralExpression(node)
+                    }
                 }
             }
             return super.visitClassLiteralExpression(node)
@@ -617,7 +654,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UContinueExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitContinueExpression(node)
+                    profiler.profile(v.detector, "visitContinueExpression") {
+                        v.visitor.visitContinueExpression(node)
+                    }
                 }
             }
             return super.visitContinueExpression(node)
@@ -627,7 +666,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UDeclaration::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitDeclaration(node)
+                    profiler.profile(v.detector, "visitDeclaration") {
+                        v.visitor.visitDeclaration(node)
+                    }
                 }
             }
             return super.visitDeclaration(node)
@@ -637,7 +678,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UDeclarationsExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitDeclarationsExpression(node)
+                    profiler.profile(v.detector, "visitDeclarationsExpression") {
+                        v.visitor.visitDeclarationsExpression(node)
+                    }
                 }
             }
             return super.visitDeclarationsExpression(node)
@@ -647,7 +690,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UDoWhileExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitDoWhileExpression(node)
+                    profiler.profile(v.detector, "visitDoWhileExpression") {
+                        v.visitor.visitDoWhileExpression(node)
+                    }
                 }
             }
             return super.visitDoWhileExpression(node)
@@ -657,7 +702,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UElement::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitElement(node)
+                    profiler.profile(v.detector, "visitElement") {
+                        v.visitor.visitElement(node)
+                    }
                 }
             }
             return super.visitElement(node)
@@ -667,7 +714,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UEnumConstant::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitEnumConstant(node)
+                    profiler.profile(v.detector, "visitEnumConstant") {
+                        v.visitor.visitEnumConstant(node)
+                    }
                 }
             }
             return super.visitEnumConstant(node)
@@ -677,7 +726,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitExpression(node)
+                    profiler.profile(v.detector, "visitExpression") {
+                        v.visitor.visitExpression(node)
+                    }
                 }
             }
             return super.visitExpression(node)
@@ -687,7 +738,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UExpressionList::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitExpressionList(node)
+                    profiler.profile(v.detector, "visitExpressionList") {
+                        v.visitor.visitExpressionList(node)
+                    }
                 }
             }
             return super.visitExpressionList(node)
@@ -697,7 +750,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UField::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitField(node)
+                    profiler.profile(v.detector, "visitField") {
+                        v.visitor.visitField(node)
+                    }
                 }
             }
             return super.visitField(node)
@@ -707,7 +762,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UFile::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitFile(node)
+                    profiler.profile(v.detector, "visitFile") {
+                        v.visitor.visitFile(node)
+                    }
                 }
             }
             return super.visitFile(node)
@@ -717,7 +774,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UForEachExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitForEachExpression(node)
+                    profiler.profile(v.detector, "visitForEachExpression") {
+                        v.visitor.visitForEachExpression(node)
+                    }
                 }
             }
             return super.visitForEachExpression(node)
@@ -727,7 +786,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UForExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitForExpression(node)
+                    profiler.profile(v.detector, "visitForExpression") {
+                        v.visitor.visitForExpression(node)
+                    }
                 }
             }
             return super.visitForExpression(node)
@@ -737,7 +798,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UIfExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitIfExpression(node)
+                    profiler.profile(v.detector, "visitIfExpression") {
+                        v.visitor.visitIfExpression(node)
+                    }
                 }
             }
             return super.visitIfExpression(node)
@@ -747,7 +810,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UImportStatement::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitImportStatement(node)
+                    profiler.profile(v.detector, "visitImportStatement") {
+                        v.visitor.visitImportStatement(node)
+                    }
                 }
             }
             return super.visitImportStatement(node)
@@ -757,7 +822,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UClassInitializer::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitInitializer(node)
+                    profiler.profile(v.detector, "visitInitializer") {
+                        v.visitor.visitInitializer(node)
+                    }
                 }
             }
             return super.visitInitializer(node)
@@ -767,7 +834,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[ULabeledExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitLabeledExpression(node)
+                    profiler.profile(v.detector, "visitLabeledExpression") {
+                        v.visitor.visitLabeledExpression(node)
+                    }
                 }
             }
             return super.visitLabeledExpression(node)
@@ -777,7 +846,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[ULambdaExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitLambdaExpression(node)
+                    profiler.profile(v.detector, "visitLambdaExpression") {
+                        v.visitor.visitLambdaExpression(node)
+                    }
                 }
             }
             return super.visitLambdaExpression(node)
@@ -787,7 +858,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[ULiteralExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitLiteralExpression(node)
+                    profiler.profile(v.detector, "visitLiteralExpression") {
+                        v.visitor.visitLiteralExpression(node)
+                    }
                 }
             }
             return super.visitLiteralExpression(node)
@@ -797,7 +870,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[ULocalVariable::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitLocalVariable(node)
+                    profiler.profile(v.detector, "visitLocalVariable") {
+                        v.visitor.visitLocalVariable(node)
+                    }
                 }
             }
             return super.visitLocalVariable(node)
@@ -807,7 +882,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UMethod::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitMethod(node)
+                    profiler.profile(v.detector, "visitMethod") {
+                        v.visitor.visitMethod(node)
+                    }
                 }
             }
             return super.visitMethod(node)
@@ -817,7 +894,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UObjectLiteralExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitObjectLiteralExpression(node)
+                    profiler.profile(v.detector, "visitObjectLiteralExpression") {
+                        v.visitor.visitObjectLiteralExpression(node)
+                    }
                 }
             }
             return super.visitObjectLiteralExpression(node)
@@ -827,7 +906,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UParameter::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitParameter(node)
+                    profiler.profile(v.detector, "visitParameter") {
+                        v.visitor.visitParameter(node)
+                    }
                 }
             }
             return super.visitParameter(node)
@@ -837,7 +918,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UParenthesizedExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitParenthesizedExpression(node)
+                    profiler.profile(v.detector, "visitParenthesizedExpression") {
+                        v.visitor.visitParenthesizedExpression(node)
+                    }
                 }
             }
             return super.visitParenthesizedExpression(node)
@@ -847,7 +930,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UPolyadicExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitPolyadicExpression(node)
+                    profiler.profile(v.detector, "visitPolyadicExpression") {
+                        v.visitor.visitPolyadicExpression(node)
+                    }
                 }
             }
             return super.visitPolyadicExpression(node)
@@ -857,7 +942,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UPostfixExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitPostfixExpression(node)
+                    profiler.profile(v.detector, "visitPostfixExpression") {
+                        v.visitor.visitPostfixExpression(node)
+                    }
                 }
             }
             return super.visitPostfixExpression(node)
@@ -867,7 +954,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UPrefixExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitPrefixExpression(node)
+                    profiler.profile(v.detector, "visitPrefixExpression") {
+                        v.visitor.visitPrefixExpression(node)
+                    }
                 }
             }
             return super.visitPrefixExpression(node)
@@ -877,7 +966,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UQualifiedReferenceExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitQualifiedReferenceExpression(node)
+                    profiler.profile(v.detector, "visitQualifiedReferenceExpression") {
+                        v.visitor.visitQualifiedReferenceExpression(node)
+                    }
                 }
             }
             return super.visitQualifiedReferenceExpression(node)
@@ -887,7 +978,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UReturnExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitReturnExpression(node)
+                    profiler.profile(v.detector, "visitReturnExpression") {
+                        v.visitor.visitReturnExpression(node)
+                    }
                 }
             }
             return super.visitReturnExpression(node)
@@ -897,7 +990,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[USimpleNameReferenceExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitSimpleNameReferenceExpression(node)
+                    profiler.profile(v.detector, "visitSimpleNameReferenceExpression") {
+                        v.visitor.visitSimpleNameReferenceExpression(node)
+                    }
                 }
             }
             return super.visitSimpleNameReferenceExpression(node)
@@ -907,7 +1002,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[USuperExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitSuperExpression(node)
+                    profiler.profile(v.detector, "visitSuperExpression") {
+                        v.visitor.visitSuperExpression(node)
+                    }
                 }
             }
             return super.visitSuperExpression(node)
@@ -917,7 +1014,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[USwitchClauseExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitSwitchClauseExpression(node)
+                    profiler.profile(v.detector, "visitSwitchClauseExpression") {
+                        v.visitor.visitSwitchClauseExpression(node)
+                    }
                 }
             }
             return super.visitSwitchClauseExpression(node)
@@ -927,7 +1026,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[USwitchExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitSwitchExpression(node)
+                    profiler.profile(v.detector, "visitSwitchExpression") {
+                        v.visitor.visitSwitchExpression(node)
+                    }
                 }
             }
             return super.visitSwitchExpression(node)
@@ -937,7 +1038,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UThisExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitThisExpression(node)
+                    profiler.profile(v.detector, "visitThisExpression") {
+                        v.visitor.visitThisExpression(node)
+                    }
                 }
             }
             return super.visitThisExpression(node)
@@ -947,7 +1050,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UThrowExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitThrowExpression(node)
+                    profiler.profile(v.detector, "visitThrowExpression") {
+                        v.visitor.visitThrowExpression(node)
+                    }
                 }
             }
             return super.visitThrowExpression(node)
@@ -957,7 +1062,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UTryExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitTryExpression(node)
+                    profiler.profile(v.detector, "visitTryExpression") {
+                        v.visitor.visitTryExpression(node)
+                    }
                 }
             }
             return super.visitTryExpression(node)
@@ -967,7 +1074,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UTypeReferenceExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitTypeReferenceExpression(node)
+                    profiler.profile(v.detector, "visitTypeReferenceExpression") {
+                        v.visitor.visitTypeReferenceExpression(node)
+                    }
                 }
             }
             return super.visitTypeReferenceExpression(node)
@@ -977,7 +1086,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UUnaryExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitUnaryExpression(node)
+                    profiler.profile(v.detector, "visitUnaryExpression") {
+                        v.visitor.visitUnaryExpression(node)
+                    }
                 }
             }
             return super.visitUnaryExpression(node)
@@ -987,7 +1098,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UVariable::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitVariable(node)
+                    profiler.profile(v.detector, "visitVariable") {
+                        v.visitor.visitVariable(node)
+                    }
                 }
             }
             return super.visitVariable(node)
@@ -997,7 +1110,9 @@ internal class UElementVisitor constructor(
             val list = nodePsiTypeDetectors[UWhileExpression::class.java]
             if (list != null) {
                 for (v in list) {
-                    v.visitor.visitWhileExpression(node)
+                    profiler.profile(v.detector, "visitWhileExpression") {
+                        v.visitor.visitWhileExpression(node)
+                    }
                 }
             }
             return super.visitWhileExpression(node)
@@ -1025,7 +1140,9 @@ internal class UElementVisitor constructor(
                     if (referenced != null) {
                         for (v in list) {
                             val uastScanner = v.uastScanner
-                            uastScanner.visitReference(mContext, node, referenced)
+                            profiler.profile(v.detector, "visitReference") {
+                                uastScanner.visitReference(mContext, node, referenced)
+                            }
                         }
                     }
                 }
@@ -1036,13 +1153,15 @@ internal class UElementVisitor constructor(
                 if (reference != null) {
                     for (v in resourceFieldDetectors) {
                         val uastScanner = v.uastScanner
-                        uastScanner.visitResourceReference(
-                            mContext,
-                            reference.node,
-                            reference.type,
-                            reference.name,
-                            reference.`package` == ANDROID_PKG
-                        )
+                        profiler.profile(v.detector, "visitResourceReference") {
+                            uastScanner.visitResourceReference(
+                                mContext,
+                                reference.node,
+                                reference.type,
+                                reference.name,
+                                reference.`package` == ANDROID_PKG
+                            )
+                        }
                     }
                 }
             }
@@ -1078,7 +1197,9 @@ internal class UElementVisitor constructor(
                         if (function != null) {
                             for (v in list) {
                                 val scanner = v.uastScanner
-                                scanner.visitMethodCall(mContext, node, function)
+                                profiler.profile(v.detector, "visitMethodCall") {
+                                    scanner.visitMethodCall(mContext, node, function)
+                                }
                             }
                         }
                     }
@@ -1096,7 +1217,9 @@ internal class UElementVisitor constructor(
                     if (list != null) {
                         for (v in list) {
                             val javaPsiScanner = v.uastScanner
-                            javaPsiScanner.visitConstructor(mContext, node, method)
+                            profiler.profile(v.detector, "visitConstructor") {
+                                javaPsiScanner.visitConstructor(mContext, node, method)
+                            }
                         }
                     }
                 }
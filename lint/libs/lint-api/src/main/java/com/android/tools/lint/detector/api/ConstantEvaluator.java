@@ -21,6 +21,8 @@ import static org.jetbrains.uast.UastBinaryExpressionWithTypeKind.TYPE_CAST;
 
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.JavaTokenType;
@@ -93,6 +95,17 @@ public class ConstantEvaluator {
      */
     private static final int LARGEST_LITERAL_ARRAY = 12;
 
+    /**
+     * Values of static final field initializers which are not compile time constants, shared by
+     * all evaluators since they don't depend on where the field is referenced from. The values
+     * depend on whether unknowns are allowed, so these are cached separately.
+     */
+    private static final Cache<PsiField, FieldValue> fieldValues =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    private static final Cache<PsiField, FieldValue> fieldValuesAllowingUnknowns =
+            CacheBuilder.newBuilder().weakKeys().build();
+
     private boolean allowUnknown;
     private boolean allowFieldInitializers;
 
@@ -251,7 +264,7 @@ public class ConstantEvaluator {
                             && (allowFieldInitializers
                                     || (field.hasModifierProperty(PsiModifier.STATIC)
                                             && field.hasModifierProperty(PsiModifier.FINAL)))) {
-                        value = evaluate(field.getInitializer());
+                        value = evaluateFieldInitializer(field);
                         if (value != null) {
                             if (surroundedByVariableCheck(node, field)) {
                                 return null;
@@ -881,6 +894,47 @@ public class ConstantEvaluator {
         return null;
     }
 
+    /**
+     * Evaluates the initializer of the given field. The values of static final fields are cached
+     * until the PSI is modified, such that fields referenced from many places (or by many
+     * detectors) are only evaluated once.
+     */
+    @Nullable
+    private Object evaluateFieldInitializer(@NonNull PsiField field) {
+        PsiExpression initializer = field.getInitializer();
+        if (allowFieldInitializers
+                || !field.hasModifierProperty(PsiModifier.STATIC)
+                || !field.hasModifierProperty(PsiModifier.FINAL)) {
+            return evaluate(initializer);
+        }
+
+        Cache<PsiField, FieldValue> cache =
+                allowUnknown ? fieldValuesAllowingUnknowns : fieldValues;
+        long modificationCount = field.getManager().getModificationTracker().getModificationCount();
+        FieldValue cached = cache.getIfPresent(field);
+        if (cached != null && cached.modificationCount == modificationCount) {
+            return cached.value;
+        }
+
+        Object value = evaluate(initializer);
+        // Arrays are mutable, so each caller gets its own copy
+        if (value == null || !value.getClass().isArray()) {
+            cache.put(field, new FieldValue(value, modificationCount));
+        }
+        return value;
+    }
+
+    /** A cached field value, along with the PSI modification count it was computed at */
+    private static class FieldValue {
+        @Nullable private final Object value;
+        private final long modificationCount;
+
+        private FieldValue(@Nullable Object value, long modificationCount) {
+            this.value = value;
+            this.modificationCount = modificationCount;
+        }
+    }
+
     private static boolean surroundedByVariableCheck(
             @Nullable UElement node, @NonNull PsiVariable variable) {
         if (node == null) {
@@ -2156,7 +2210,7 @@ public class ConstantEvaluator {
                         && (allowFieldInitializers
                                 || (field.hasModifierProperty(PsiModifier.STATIC)
                                         && field.hasModifierProperty(PsiModifier.FINAL)))) {
-                    value = evaluate(field.getInitializer());
+                    value = evaluateFieldInitializer(field);
                     if (value != null) {
                         // See if it looks like the value has been clamped locally
                         PsiIfStatement curr =
@@ -358,6 +358,20 @@ abstract class Detector {
     @Deprecated("Slated for removal") // Slated for removal in Lint 2.0
     open fun getSpeed(issue: Issue): Speed = Speed.NORMAL
 
+    /**
+     * Returns true if the incidents this detector reports for a file depend only on the
+     * contents of that file, and on project level inputs such as the manifest and the
+     * configuration. Such a detector must not carry state from one file to the next, and
+     * must not resolve references into other source files.
+     *
+     * When incidents are cached (see
+     * [com.android.tools.lint.client.api.LintDriver.incidentCacheDir]), lint skips file local
+     * detectors on resource files which are unchanged since the previous run and reports the
+     * incidents they recorded for the file instead. Only return true for detectors which have
+     * been audited to be file local.
+     */
+    open fun isFileLocal(): Boolean = false
+
     // ---- Dummy implementations to make implementing XmlScanner easier: ----
 
     open fun visitDocument(context: XmlContext, document: Document) {}
@@ -75,6 +75,11 @@ public class AccessibilityDetector extends LayoutDetector {
     /** Constructs a new {@link AccessibilityDetector} */
     public AccessibilityDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return Arrays.asList(IMAGE_BUTTON, IMAGE_VIEW);
@@ -15,16 +15,21 @@
  */
 package com.android.tools.lint.checks;
 
+import com.android.SdkConstants;
 import com.android.annotations.NonNull;
 import com.android.tools.lint.client.api.LintClient;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -35,11 +40,15 @@ import java.util.Random;
  *
  * <p>This class provides a binary cache around an API to make initialization faster and to require
  * fewer objects. It creates a binary cache data structure which fits in a single byte array,
- * meaning that to open the database you can just read in the byte array and go. On one particular
- * machine, this takes about 30-50 ms versus seconds for the full parse. It also helps memory by
- * placing everything in a compact byte array instead of needing separate strings (2 bytes per
- * character in a char[] for the 25k method entries, 11k field entries and 6k class entries) - and
- * it also avoids the same number of Map.Entry objects.
+ * meaning that to open the database you can just map the file into memory and go. On one particular
+ * machine, reading the data takes about 30-50 ms versus seconds for the full parse. It also helps
+ * memory by placing everything in a compact byte array instead of needing separate strings (2 bytes
+ * per character in a char[] for the 25k method entries, 11k field entries and 6k class entries) -
+ * and it also avoids the same number of Map.Entry objects.
+ *
+ * <p>The data is read directly from the memory mapped file, and shared by all the databases in the
+ * JVM reading the same file. Since the mapping is read-only, the operating system can also share
+ * the pages between processes, such as parallel Gradle workers running lint.
  *
  * <p>Note: It stores the strings as single bytes, since all the JVM signatures are in ASCII.
  */
@@ -54,10 +63,17 @@ public class ApiDatabase {
 
     private static final int BINARY_FORMAT_VERSION = 15;
 
-    protected byte[] mData;
-    protected int[] mIndices;
+    protected ByteBuffer mData;
+    /** The offset of the index table (see {@link #getIndex(int)}) in {@link #mData} */
+    protected int indexOffset;
     protected int containerCount;
 
+    /**
+     * The data of the database files read in this JVM, keyed by path, timestamp and size, such
+     * that all the databases reading the same file share the same data
+     */
+    private static final Map<String, WeakReference<ByteBuffer>> sharedData = new HashMap<>();
+
     @FunctionalInterface
     interface CacheCreator {
         boolean create(LintClient client, File binaryData);
@@ -92,10 +108,9 @@ public class ApiDatabase {
      * 2. A file version number. If the binary file does not match the reader's expected
      *     version, it can ignore it (and regenerate the cache from XML).
      *
-     * 3. The index table. When the data file is read, this is used to initialize the
-     *    {@link #mIndices} array. The index table is built up like this:
-     *    a. The number of index entries (e.g. number of elements in the {@link #mIndices} array)
-     *        [a 4-byte integer]
+     * 3. The index table. Entries are looked up in the table with {@link #getIndex(int)}.
+     *    The index table is built up like this:
+     *    a. The number of index entries [a 4-byte integer]
      *    b. The number of java/javax packages [a 4-byte integer]
      *    c. Offsets to the container entries, one for each package or a class containing inner
      *       classes [a 4-byte integer].
@@ -147,13 +162,13 @@ public class ApiDatabase {
         }
         long start = WRITE_STATS ? System.currentTimeMillis() : 0;
         try {
-            byte[] b = Files.toByteArray(binaryFile);
+            ByteBuffer b = getData(binaryFile);
 
             // First skip the header
             int offset = 0;
             byte[] expectedHeader = FILE_HEADER.getBytes(StandardCharsets.US_ASCII);
             for (byte anExpectedHeader : expectedHeader) {
-                if (anExpectedHeader != b[offset++]) {
+                if (anExpectedHeader != b.get(offset++)) {
                     client.log(
                             null,
                             "Incorrect file header: not an API database cache "
@@ -163,7 +178,7 @@ public class ApiDatabase {
             }
 
             // Read in the format number.
-            if (b[offset++] != getBinaryFormatVersion(majorBinaryFormatVersion)) {
+            if (b.get(offset++) != getBinaryFormatVersion(majorBinaryFormatVersion)) {
                 // Force regeneration of new binary data with up to date format.
                 if (cacheCreator.create(client, binaryFile)) {
                     readData(client, binaryFile, cacheCreator, majorBinaryFormatVersion); // Recurse
@@ -172,32 +187,24 @@ public class ApiDatabase {
                 return;
             }
 
-            int indexCount = get4ByteInt(b, offset);
+            int indexCount = b.getInt(offset);
             offset += 4;
-            containerCount = get4ByteInt(b, offset);
+            containerCount = b.getInt(offset);
             offset += 4;
 
-            mIndices = new int[indexCount];
-            for (int i = 0; i < indexCount; i++) {
-                // TODO: Pack the offsets: They increase by a small amount for each entry, so
-                // no need to spend 4 bytes on each. These will need to be processed when read
-                // back in anyway, so consider storing the offset -deltas- as single bytes and
-                // adding them up cumulatively in readData().
-                mIndices[i] = get4ByteInt(b, offset);
-                offset += 4;
+            // The index table is read lazily; make sure it's all there
+            if (indexCount < 0 || offset + 4L * indexCount > b.limit()) {
+                throw new IOException("Truncated index table");
             }
+            indexOffset = offset;
             mData = b;
-            // TODO: We only need to keep the data portion here since we've initialized
-            // the offset array separately.
-            // TODO: Investigate (profile) accessing the byte buffer directly instead of
-            // accessing a byte array.
 
             if (WRITE_STATS) {
                 long end = System.currentTimeMillis();
                 System.out.println("\nRead API database in " + (end - start) + " milliseconds.");
-                System.out.print("Size of data table: " + mData.length + " bytes");
+                System.out.print("Size of data table: " + mData.limit() + " bytes");
                 System.out.println(
-                        String.format(Locale.US, " (%.3gMB)", mData.length / (1024. * 1024.)));
+                        String.format(Locale.US, " (%.3gMB)", mData.limit() / (1024. * 1024.)));
             }
         } catch (Throwable e) {
             client.log(null, "Failure reading binary cache file %1$s", binaryFile.getPath());
@@ -209,6 +216,42 @@ public class ApiDatabase {
         }
     }
 
+    /**
+     * Returns the contents of the given database file, shared with the other databases reading the
+     * same file
+     */
+    @NonNull
+    private static ByteBuffer getData(@NonNull File file) throws IOException {
+        String key = file.getAbsolutePath() + '@' + file.lastModified() + ':' + file.length();
+        synchronized (sharedData) {
+            WeakReference<ByteBuffer> reference = sharedData.get(key);
+            ByteBuffer data = reference != null ? reference.get() : null;
+            if (data == null) {
+                sharedData.values().removeIf(r -> r.get() == null);
+                data = loadData(file);
+                sharedData.put(key, new WeakReference<>(data));
+            }
+            return data;
+        }
+    }
+
+    @NonNull
+    private static ByteBuffer loadData(@NonNull File file) throws IOException {
+        if (SdkConstants.CURRENT_PLATFORM == SdkConstants.PLATFORM_WINDOWS) {
+            // Windows doesn't allow mapped files to be deleted or replaced until the mapping has
+            // been garbage collected, which would prevent updating the cache file
+            return ByteBuffer.wrap(Files.toByteArray(file));
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /** Returns the offset of the entry with the given index in the index table */
+    protected int getIndex(int index) {
+        return mData.getInt(indexOffset + 4 * index);
+    }
+
     /**
      * See the {@link #readData(LintClient, File, CacheCreator, int)} for documentation on the data
      * format.
@@ -403,15 +446,6 @@ public class ApiDatabase {
         }
     }
 
-    protected static int get4ByteInt(@NonNull byte[] data, int offset) {
-        byte b1 = data[offset++];
-        byte b2 = data[offset++];
-        byte b3 = data[offset++];
-        byte b4 = data[offset];
-        // The byte data is always big endian.
-        return (b1 & 0xFF) << 24 | (b2 & 0xFF) << 16 | (b3 & 0xFF) << 8 | (b4 & 0xFF);
-    }
-
     protected static void put3ByteInt(@NonNull ByteBuffer buffer, int value) {
         // Big endian
         byte b3 = (byte) (value & 0xFF);
@@ -433,17 +467,17 @@ public class ApiDatabase {
         buffer.put(b2);
     }
 
-    protected static int get3ByteInt(@NonNull byte[] mData, int offset) {
-        byte b1 = mData[offset++];
-        byte b2 = mData[offset++];
-        byte b3 = mData[offset];
+    protected static int get3ByteInt(@NonNull ByteBuffer data, int offset) {
+        byte b1 = data.get(offset++);
+        byte b2 = data.get(offset++);
+        byte b3 = data.get(offset);
         // The byte data is always big endian.
         return (b1 & 0xFF) << 16 | (b2 & 0xFF) << 8 | (b3 & 0xFF);
     }
 
-    protected static int get2ByteInt(@NonNull byte[] data, int offset) {
-        byte b1 = data[offset++];
-        byte b2 = data[offset];
+    protected static int get2ByteInt(@NonNull ByteBuffer data, int offset) {
+        byte b1 = data.get(offset++);
+        byte b2 = data.get(offset);
         // The byte data is always big endian.
         return (b1 & 0xFF) << 8 | (b2 & 0xFF);
     }
@@ -452,8 +486,8 @@ public class ApiDatabase {
     protected String dumpEntry(int offset) {
         if (DEBUG_SEARCH) {
             StringBuilder sb = new StringBuilder(200);
-            for (int i = offset; i < mData.length; i++) {
-                byte b = mData[i];
+            for (int i = offset; i < mData.limit(); i++) {
+                byte b = mData.get(i);
                 if (b == 0 || b == 1) {
                     break;
                 }
@@ -468,11 +502,11 @@ public class ApiDatabase {
     }
 
     protected static int compare(
-            byte[] data, int offset, byte terminator, String s, int sOffset, int max) {
+            ByteBuffer data, int offset, byte terminator, String s, int sOffset, int max) {
         int i = offset;
         int j = sOffset;
         for (; j < max; i++, j++) {
-            byte b = data[i];
+            byte b = data.get(i);
             char c = s.charAt(j);
             if (c == '.' && (b == '/' || b == '$')) { // '.' matches both '/' and '$'.
                 continue;
@@ -486,7 +520,7 @@ public class ApiDatabase {
             }
         }
 
-        byte b = data[i];
+        byte b = data.get(i);
         if (terminator == 1 && b == 0) { // Terminator 1 matches both 0 and 1.
             return 0;
         }
@@ -497,12 +531,12 @@ public class ApiDatabase {
     protected int findContainer(
             @NonNull String packageOrClassName, int containerNameLength, boolean packageOnly) {
         // The index array contains class indexes from 0 to classCount and
-        // member indices from classCount to mIndices.length.
+        // member indices from classCount to the end of the index table.
         int low = 0;
         int high = containerCount;
         while (low < high) {
             int middle = (low + high) >>> 1;
-            int offset = mIndices[middle];
+            int offset = getIndex(middle);
 
             if (DEBUG_SEARCH) {
                 System.out.println(
@@ -545,9 +579,9 @@ public class ApiDatabase {
         int classNameLength = className.length();
         int classNameOffset = lastSeparator + 1;
 
-        int curr = mIndices[containerNumber];
+        int curr = getIndex(containerNumber);
         // Skip the name of the container.
-        while ((mData[curr] & ~1) != 0) { // Iterate until encountering 0 or 1.
+        while ((mData.get(curr) & ~1) != 0) { // Iterate until encountering 0 or 1.
             curr++;
         }
         curr++;
@@ -560,7 +594,7 @@ public class ApiDatabase {
         int high = low + length;
         while (low < high) {
             int middle = (low + high) >>> 1;
-            int offset = mIndices[middle];
+            int offset = getIndex(middle);
             offset++; // Skip the byte which points to the metadata after the name.
 
             if (DEBUG_SEARCH) {
@@ -311,7 +311,7 @@ public class ApiLookup extends ApiDatabase {
     private int getClassVersion(int classNumber) {
         if (classNumber >= 0) {
             int offset = seekClassData(classNumber, CLASS_HEADER_API);
-            int api = Byte.toUnsignedInt(mData[offset]) & API_MASK;
+            int api = Byte.toUnsignedInt(mData.get(offset)) & API_MASK;
             return api > 0 ? api : -1;
         }
         return -1;
@@ -339,11 +339,11 @@ public class ApiLookup extends ApiDatabase {
                 int interfaceNumber = findClass(destinationClass);
                 if (interfaceNumber >= 0) {
                     int offset = seekClassData(classNumber, CLASS_HEADER_INTERFACES);
-                    int interfaceCount = mData[offset++];
+                    int interfaceCount = mData.get(offset++);
                     for (int i = 0; i < interfaceCount; i++) {
                         int clsNumber = get3ByteInt(mData, offset);
                         offset += 3;
-                        int api = mData[offset++];
+                        int api = mData.get(offset++);
                         if (clsNumber == interfaceNumber) {
                             return api;
                         }
@@ -384,7 +384,7 @@ public class ApiLookup extends ApiDatabase {
                     // Not deprecated
                     return -1;
                 }
-                int deprecatedIn = Byte.toUnsignedInt(mData[offset]) & API_MASK;
+                int deprecatedIn = Byte.toUnsignedInt(mData.get(offset)) & API_MASK;
 
                 return deprecatedIn != 0 ? deprecatedIn : -1;
             }
@@ -415,7 +415,7 @@ public class ApiLookup extends ApiDatabase {
                     // Not removed
                     return -1;
                 }
-                int removedIn = Byte.toUnsignedInt(mData[offset]) & API_MASK;
+                int removedIn = Byte.toUnsignedInt(mData.get(offset)) & API_MASK;
                 return removedIn != 0 ? removedIn : -1;
             }
         } else if (mInfo != null) {
@@ -615,11 +615,11 @@ public class ApiLookup extends ApiDatabase {
         List<ApiMember> result = null;
         int end = start + length;
         for (int index = start; index < end; index++) {
-            int offset = mIndices[index];
+            int offset = getIndex(index);
             boolean methodSignatureDetected = false;
             int i;
-            for (i = offset; i < mData.length; i++) {
-                byte b = mData[i];
+            for (i = offset; i < mData.limit(); i++) {
+                byte b = mData.get(i);
                 if (b == 0) {
                     break;
                 }
@@ -627,7 +627,7 @@ public class ApiLookup extends ApiDatabase {
                     methodSignatureDetected = true;
                 }
             }
-            if (i >= mData.length) {
+            if (i >= mData.limit()) {
                 assert false;
                 break;
             }
@@ -635,15 +635,15 @@ public class ApiLookup extends ApiDatabase {
                 continue;
             }
             int endOfSignature = i++;
-            int since = Byte.toUnsignedInt(mData[i++]);
+            int since = Byte.toUnsignedInt(mData.get(i++));
             if ((since & HAS_EXTRA_BYTE_FLAG) != 0) {
-                int deprecatedIn = Byte.toUnsignedInt(mData[i++]);
+                int deprecatedIn = Byte.toUnsignedInt(mData.get(i++));
                 if ((deprecatedIn & HAS_EXTRA_BYTE_FLAG) != 0) {
-                    int removedIn = Byte.toUnsignedInt(mData[i]);
+                    int removedIn = Byte.toUnsignedInt(mData.get(i));
                     if (removedIn != 0) {
                         StringBuilder sb = new StringBuilder(endOfSignature - offset);
                         for (i = offset; i < endOfSignature; i++) {
-                            sb.append((char) Byte.toUnsignedInt(mData[i]));
+                            sb.append((char) Byte.toUnsignedInt(mData.get(i)));
                         }
                         since &= API_MASK;
                         deprecatedIn &= API_MASK;
@@ -842,8 +842,8 @@ public class ApiLookup extends ApiDatabase {
     }
 
     private int seekClassData(int classNumber, int field) {
-        int offset = mIndices[classNumber];
-        offset += mData[offset] & 0xFF;
+        int offset = getIndex(classNumber);
+        offset += mData.get(offset) & 0xFF;
         if (field == CLASS_HEADER_MEMBER_OFFSETS) {
             return offset;
         }
@@ -851,13 +851,13 @@ public class ApiLookup extends ApiDatabase {
         if (field == CLASS_HEADER_API) {
             return offset;
         }
-        boolean hasDeprecatedIn = (mData[offset] & HAS_EXTRA_BYTE_FLAG) != 0;
+        boolean hasDeprecatedIn = (mData.get(offset) & HAS_EXTRA_BYTE_FLAG) != 0;
         boolean hasRemovedIn = false;
         offset++;
         if (field == CLASS_HEADER_DEPRECATED) {
             return hasDeprecatedIn ? offset : -1;
         } else if (hasDeprecatedIn) {
-            hasRemovedIn = (mData[offset] & HAS_EXTRA_BYTE_FLAG) != 0;
+            hasRemovedIn = (mData.get(offset) & HAS_EXTRA_BYTE_FLAG) != 0;
             offset++;
         }
         if (field == CLASS_HEADER_REMOVED) {
@@ -885,7 +885,7 @@ public class ApiLookup extends ApiDatabase {
 
         while (low < high) {
             int middle = (low + high) >>> 1;
-            int offset = mIndices[middle];
+            int offset = getIndex(middle);
 
             if (DEBUG_SEARCH) {
                 System.out.println(
@@ -915,7 +915,7 @@ public class ApiLookup extends ApiDatabase {
 
                         offset += argsEnd + 1;
 
-                        if (mData[offset++] == 0) {
+                        if (mData.get(offset++) == 0) {
                             // Yes, terminated argument list: get the API level
                             return getApiLevel(offset, apiLevelField);
                         }
@@ -927,7 +927,7 @@ public class ApiLookup extends ApiDatabase {
                 compare = compare(mData, offset, (byte) 0, name, 0, nameLength);
                 if (compare == 0) {
                     offset += nameLength;
-                    if (mData[offset++] == 0) {
+                    if (mData.get(offset++) == 0) {
                         // Yes, terminated argument list: get the API level
                         return getApiLevel(offset, apiLevelField);
                     }
@@ -948,14 +948,14 @@ public class ApiLookup extends ApiDatabase {
     }
 
     private int getApiLevel(int offset, int apiLevelField) {
-        int api = Byte.toUnsignedInt(mData[offset]);
+        int api = Byte.toUnsignedInt(mData.get(offset));
         if (apiLevelField == CLASS_HEADER_API) {
             return api & API_MASK;
         }
         if ((api & HAS_EXTRA_BYTE_FLAG) == 0) {
             return -1;
         }
-        api = Byte.toUnsignedInt(mData[++offset]);
+        api = Byte.toUnsignedInt(mData.get(++offset));
         if (apiLevelField == CLASS_HEADER_DEPRECATED) {
             api &= API_MASK;
             return api == 0 ? -1 : api;
@@ -964,7 +964,7 @@ public class ApiLookup extends ApiDatabase {
         if ((api & HAS_EXTRA_BYTE_FLAG) == 0 || apiLevelField != CLASS_HEADER_REMOVED) {
             return -1;
         }
-        api = Byte.toUnsignedInt(mData[++offset]);
+        api = Byte.toUnsignedInt(mData.get(++offset));
         return api == 0 ? -1 : api;
     }
 
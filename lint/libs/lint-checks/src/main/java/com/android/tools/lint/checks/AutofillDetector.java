@@ -70,6 +70,11 @@ public class AutofillDetector extends LayoutDetector {
 
     public AutofillDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return Collections.singletonList(EDIT_TEXT);
@@ -30,6 +30,8 @@ import org.w3c.dom.Element
  * wrong parent.
  */
 class BottomAppBarDetector : LayoutDetector() {
+    override fun isFileLocal(): Boolean = true
+
     override fun getApplicableElements(): Collection<String>? {
         return listOf(OLD_BOTTOM_APP_BAR, NEW_BOTTOM_APP_BAR)
     }
@@ -76,6 +76,8 @@ class ChildCountDetector : LayoutDetector() {
         )
     }
 
+    override fun isFileLocal(): Boolean = true
+
     override fun getApplicableElements(): Collection<String>? = Arrays.asList(
         SCROLL_VIEW,
         HORIZONTAL_SCROLL_VIEW,
@@ -28,6 +28,8 @@ import org.w3c.dom.Attr
 import java.lang.Integer.min
 
 class DataBindingDetector : LayoutDetector() {
+    override fun isFileLocal(): Boolean = true
+
     override fun getApplicableAttributes(): Collection<String> {
         return ALL
     }
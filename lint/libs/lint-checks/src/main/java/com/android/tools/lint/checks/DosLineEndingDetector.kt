@@ -57,6 +57,8 @@ class DosLineEndingDetector : LayoutDetector() {
         )
     }
 
+    override fun isFileLocal(): Boolean = true
+
     override fun visitDocument(context: XmlContext, document: Document) {
         val contents = context.getContents() ?: return
 
@@ -63,6 +63,11 @@ public class EllipsizeMaxLinesDetector extends LayoutDetector {
     /** Constructs a new {@link EllipsizeMaxLinesDetector} */
     public EllipsizeMaxLinesDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public boolean appliesTo(@NonNull ResourceFolderType folderType) {
         return folderType == ResourceFolderType.LAYOUT;
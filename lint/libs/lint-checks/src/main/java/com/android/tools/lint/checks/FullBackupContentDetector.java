@@ -72,6 +72,11 @@ public class FullBackupContentDetector extends ResourceXmlDetector {
     /** Constructs a new {@link FullBackupContentDetector} */
     public FullBackupContentDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public boolean appliesTo(@NonNull ResourceFolderType folderType) {
         return folderType == ResourceFolderType.XML;
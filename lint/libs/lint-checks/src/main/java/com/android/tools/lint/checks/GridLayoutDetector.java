@@ -70,6 +70,11 @@ public class GridLayoutDetector extends LayoutDetector {
     /** Constructs a new {@link GridLayoutDetector} check */
     public GridLayoutDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return ImmutableSet.of(
@@ -46,6 +46,8 @@ import java.util.Arrays
  */
 class HardcodedValuesDetector : LayoutDetector() {
 
+    override fun isFileLocal(): Boolean = true
+
     override fun getApplicableAttributes(): Collection<String>? {
         return Arrays.asList(
             // Layouts
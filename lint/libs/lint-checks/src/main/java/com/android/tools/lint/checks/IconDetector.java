@@ -81,6 +81,9 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
 import java.awt.Dimension;
@@ -104,6 +107,10 @@ import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.imageio.ImageIO;
@@ -465,6 +472,15 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
     }
 
     private void checkResourceFolder(Context context, @NonNull Project project) {
+        imageSizes = new HashMap<>();
+        try {
+            checkResourceFolders(context, project);
+        } finally {
+            imageSizes = null;
+        }
+    }
+
+    private void checkResourceFolders(Context context, @NonNull Project project) {
         // The resource files corresponding  of the notification icons. The keys are icon names.
         // The values are the icon files most compatible with old Android versions.
         Map<String, File> notificationIconFiles = null;
@@ -688,10 +704,16 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
                 }
             }
 
-            // Map from file to actual byte contents of the file.
-            // We store this in a map such that for repeated files, such as noSize files
-            // which can appear in multiple buckets, we only need to read them once
-            Map<File, byte[]> fileContents = new HashMap<>();
+            // Map from file to the hash of the contents of the file, or null if it can't be
+            // read. We compute all of them up front such that repeated files, such as noSize
+            // files which can appear in multiple buckets, are only read once
+            Set<File> candidates = new HashSet<>();
+            for (Set<File> set : sets) {
+                if (set.size() > 1) {
+                    candidates.addAll(set);
+                }
+            }
+            Map<File, HashCode> contentHashes = computeContentHashes(context, candidates);
 
             // Now we're ready for the final check where we actually check the
             // bits. We have to partition the files into buckets of files that
@@ -701,91 +723,25 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
                     continue;
                 }
 
-                // Read all files in this set and store in map
+                Map<HashCode, List<File>> partitions = new HashMap<>();
                 for (File file : set) {
-                    byte[] bits = fileContents.get(file);
-                    if (bits == null) {
-                        try {
-                            bits = context.getClient().readBytes(file);
-                            fileContents.put(file, bits);
-                        } catch (IOException e) {
-                            context.log(e, null);
-                        }
+                    HashCode hash = contentHashes.get(file);
+                    if (hash != null) { // null: File couldn't be read: ignore
+                        partitions.computeIfAbsent(hash, k -> new ArrayList<>()).add(file);
                     }
                 }
 
-                // Map where the key file is known to be equal to the value file.
-                // After we check individual files for equality this will be used
-                // to look for transitive equality.
-                Map<File, File> equal = new HashMap<>();
-
-                // Now go and compare all the files. This isn't an efficient algorithm
-                // but the number of candidates should be very small
-
-                List<File> files = new ArrayList<>(set);
-                Collections.sort(files);
-                for (int i = 0; i < files.size() - 1; i++) {
-                    for (int j = i + 1; j < files.size(); j++) {
-                        File file1 = files.get(i);
-                        File file2 = files.get(j);
-                        byte[] contents1 = fileContents.get(file1);
-                        byte[] contents2 = fileContents.get(file2);
-                        if (contents1 == null || contents2 == null) {
-                            // File couldn't be read: ignore
-                            continue;
-                        }
-                        if (contents1.length != contents2.length) {
-                            // Sizes differ: not identical.
-                            // This shouldn't happen since we've already partitioned based
-                            // on File.length(), but just make sure here since the file
-                            // system could have lied, or cached a value that has changed
-                            // if the file was just overwritten
-                            continue;
-                        }
-                        boolean same = true;
-                        for (int k = 0; k < contents1.length; k++) {
-                            if (contents1[k] != contents2[k]) {
-                                same = false;
-                                break;
-                            }
-                        }
-                        if (same) {
-                            equal.put(file1, file2);
-                        }
+                // We've computed the partitions of equal files. Now sort them
+                // for stable output.
+                List<List<File>> lists = new ArrayList<>();
+                for (List<File> same : partitions.values()) {
+                    if (same.size() > 1) {
+                        Collections.sort(same);
+                        lists.add(same);
                     }
                 }
 
-                if (!equal.isEmpty()) {
-                    Map<File, Set<File>> partitions = new HashMap<>();
-                    List<Set<File>> sameSets = new ArrayList<>();
-                    for (Map.Entry<File, File> entry : equal.entrySet()) {
-                        File file1 = entry.getKey();
-                        File file2 = entry.getValue();
-                        Set<File> set1 = partitions.get(file1);
-                        Set<File> set2 = partitions.get(file2);
-                        if (set1 != null) {
-                            set1.add(file2);
-                        } else if (set2 != null) {
-                            set2.add(file1);
-                        } else {
-                            set = new HashSet<>();
-                            sameSets.add(set);
-                            set.add(file1);
-                            set.add(file2);
-                            partitions.put(file1, set);
-                            partitions.put(file2, set);
-                        }
-                    }
-
-                    // We've computed the partitions of equal files. Now sort them
-                    // for stable output.
-                    List<List<File>> lists = new ArrayList<>();
-                    for (Set<File> same : sameSets) {
-                        assert !same.isEmpty();
-                        ArrayList<File> sorted = new ArrayList<>(same);
-                        Collections.sort(sorted);
-                        lists.add(sorted);
-                    }
+                if (!lists.isEmpty()) {
                     // Sort overall partitions by the first item in each list
                     lists.sort((list1, list2) -> list1.get(0).compareTo(list2.get(0)));
 
@@ -863,6 +819,52 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
         }
     }
 
+    /**
+     * Computes the hashes of the contents of the given files, reading and hashing them on a
+     * few threads since there can be many of them. Files that can't be read are mapped to null.
+     */
+    @NonNull
+    private static Map<File, HashCode> computeContentHashes(
+            @NonNull Context context, @NonNull Collection<File> files) {
+        Map<File, HashCode> contentHashes = new HashMap<>();
+        if (files.isEmpty()) {
+            return contentHashes;
+        }
+
+        LintClient client = context.getClient();
+        int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        threads,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("lint-icon-hash-%d")
+                                .setDaemon(true)
+                                .build());
+        try {
+            Map<File, Future<HashCode>> futures = new HashMap<>();
+            for (File file : files) {
+                futures.put(
+                        file,
+                        executor.submit(() -> Hashing.sha256().hashBytes(client.readBytes(file))));
+            }
+            for (Map.Entry<File, Future<HashCode>> entry : futures.entrySet()) {
+                HashCode hash = null;
+                try {
+                    hash = entry.getValue().get();
+                } catch (ExecutionException e) {
+                    context.log(e.getCause(), null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                contentHashes.put(entry.getKey(), hash);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return contentHashes;
+    }
+
     // This method checks the given map from resource file to pixel dimensions for each
     // such image and makes sure that the normalized dip sizes across all the densities
     // are mostly the same.
@@ -1432,6 +1434,25 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
 
     private Map<File, BufferedImage> imageCache;
 
+    /**
+     * The pixel sizes of the images in the resource folders being checked, such that the checks
+     * don't need to read the same image more than once. Unreadable images have null sizes.
+     */
+    private Map<File, Dimension> imageSizes;
+
+    @Nullable
+    private Dimension getImageSize(@NonNull File file) {
+        if (imageSizes == null) {
+            return getSize(file);
+        }
+        if (imageSizes.containsKey(file)) {
+            return imageSizes.get(file);
+        }
+        Dimension size = getSize(file);
+        imageSizes.put(file, size);
+        return size;
+    }
+
     @Nullable
     private BufferedImage getImage(@Nullable File file) throws IOException {
         if (file == null) {
@@ -1522,6 +1543,9 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
                         if (size != null && pixelSizes != null) {
                             pixelSizes.put(file, size);
                         }
+                        if (size != null && imageSizes != null) {
+                            imageSizes.put(file, size);
+                        }
                     }
                 }
             }
@@ -1545,8 +1569,6 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
 
         if (pixelSizes != null || fileSizes != null) {
             for (File file : files) {
-                // TODO: Combine this check with the check for expected sizes such that
-                // I don't check file sizes twice!
                 String fileName = file.getName();
 
                 if (endsWith(fileName, DOT_PNG)
@@ -1558,7 +1580,7 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
                     if (pixelSizes != null
                             && !endsWith(fileName, DOT_9PNG)
                             && !pixelSizes.containsKey(file)) { // already read by checkColor?
-                        Dimension size = getSize(file);
+                        Dimension size = getImageSize(file);
                         pixelSizes.put(file, size);
                     }
                     if (fileSizes != null) {
@@ -2143,7 +2165,7 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
         }
     }
 
-    private static void checkSize(
+    private void checkSize(
             Context context,
             String folderName,
             File file,
@@ -2195,7 +2217,7 @@ public class IconDetector extends Detector implements XmlScanner, SourceCodeScan
             return;
         }
 
-        Dimension size = getSize(file);
+        Dimension size = getImageSize(file);
         if (size != null) {
             if (exactMatch && (size.width != width || size.height != height)) {
                 context.report(
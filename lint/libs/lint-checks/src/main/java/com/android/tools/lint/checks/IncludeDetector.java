@@ -57,6 +57,11 @@ public class IncludeDetector extends LayoutDetector {
                     .addMoreInfo(
                             "http://stackoverflow.com/questions/2631614/does-android-xml-layouts-include-tag-really-work");
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Nullable
     @Override
     public Collection<String> getApplicableElements() {
@@ -60,6 +60,11 @@ public class InvalidImeActionIdDetector extends LayoutDetector {
     /** Constructs a new {@link InvalidImeActionIdDetector} check */
     public InvalidImeActionIdDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableAttributes() {
         return Collections.singletonList(ATTR_IME_ACTION_ID);
@@ -55,6 +55,11 @@ public class KeyboardNavigationDetector extends LayoutDetector {
                     new Implementation(
                             KeyboardNavigationDetector.class, Scope.RESOURCE_FILE_SCOPE));
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableAttributes() {
         return Collections.singletonList(ATTR_CLICKABLE);
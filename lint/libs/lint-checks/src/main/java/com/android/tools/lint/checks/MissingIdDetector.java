@@ -63,6 +63,11 @@ public class MissingIdDetector extends LayoutDetector {
     /** Constructs a new {@link MissingIdDetector} */
     public MissingIdDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return Collections.singletonList(VIEW_FRAGMENT);
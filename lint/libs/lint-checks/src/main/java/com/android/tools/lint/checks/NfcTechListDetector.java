@@ -58,6 +58,11 @@ public class NfcTechListDetector extends ResourceXmlDetector {
     /** Constructs a new {@link NfcTechListDetector} */
     public NfcTechListDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public boolean appliesTo(@NonNull ResourceFolderType folderType) {
         return folderType == ResourceFolderType.XML;
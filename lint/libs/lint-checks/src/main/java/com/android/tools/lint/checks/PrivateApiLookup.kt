@@ -67,7 +67,7 @@ class PrivateApiLookup private constructor(
 
         while (low < high) {
             val middle = (low + high).ushr(1)
-            var offset = mIndices[middle]
+            var offset = getIndex(middle)
 
             if (DEBUG_SEARCH) {
                 println("Comparing string $name$desc with entry at $offset: " + dumpEntry(offset))
@@ -92,9 +92,9 @@ class PrivateApiLookup private constructor(
 
                         offset += argsEnd + 1
 
-                        if (mData[offset++].toInt() == 0) {
+                        if (mData.get(offset++).toInt() == 0) {
                             // Yes, terminated argument list: get the API level
-                            return mData[offset].toInt()
+                            return mData.get(offset).toInt()
                         }
                     }
                 }
@@ -104,9 +104,9 @@ class PrivateApiLookup private constructor(
                 compare = compare(mData, offset, 0.toByte(), name, 0, nameLength)
                 if (compare == 0) {
                     offset += nameLength
-                    if (mData[offset++].toInt() == 0) {
+                    if (mData.get(offset++).toInt() == 0) {
                         // Yes, terminated argument list: get the API level
-                        return mData[offset].toInt()
+                        return mData.get(offset).toInt()
                     }
                 }
             }
@@ -126,8 +126,8 @@ class PrivateApiLookup private constructor(
     }
 
     private fun seekClassData(classNumber: Int): Int {
-        val offset = mIndices[classNumber]
-        return offset + (mData[offset].toInt() and 0xFF)
+        val offset = getIndex(classNumber)
+        return offset + (mData.get(offset).toInt() and 0xFF)
     }
 
     companion object {
@@ -43,6 +43,8 @@ import org.w3c.dom.Node
  */
 class RestrictionsDetector : ResourceXmlDetector() {
 
+    override fun isFileLocal(): Boolean = true
+
     override fun appliesTo(folderType: ResourceFolderType): Boolean {
         return folderType == ResourceFolderType.XML
     }
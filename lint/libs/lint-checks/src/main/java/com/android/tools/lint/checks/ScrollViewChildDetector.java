@@ -60,6 +60,11 @@ public class ScrollViewChildDetector extends LayoutDetector {
     /** Constructs a new {@link ScrollViewChildDetector} */
     public ScrollViewChildDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return Arrays.asList(SCROLL_VIEW, HORIZONTAL_SCROLL_VIEW);
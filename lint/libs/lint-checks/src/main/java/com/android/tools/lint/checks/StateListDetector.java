@@ -59,6 +59,11 @@ public class StateListDetector extends ResourceXmlDetector {
     /** Constructs a new {@link StateListDetector} */
     public StateListDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public boolean appliesTo(@NonNull ResourceFolderType folderType) {
         return folderType == ResourceFolderType.DRAWABLE;
@@ -67,6 +67,11 @@ public class TitleDetector extends ResourceXmlDetector {
     /** Constructs a new {@link TitleDetector} */
     public TitleDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public boolean appliesTo(@NonNull ResourceFolderType folderType) {
         return folderType == ResourceFolderType.MENU;
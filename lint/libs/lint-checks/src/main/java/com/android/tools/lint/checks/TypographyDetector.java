@@ -191,6 +191,11 @@ public class TypographyDetector extends ResourceXmlDetector {
     /** Constructs a new {@link TypographyDetector} */
     public TypographyDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public boolean appliesTo(@NonNull ResourceFolderType folderType) {
         return folderType == ResourceFolderType.VALUES;
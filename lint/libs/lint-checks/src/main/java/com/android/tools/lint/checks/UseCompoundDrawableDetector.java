@@ -62,6 +62,11 @@ public class UseCompoundDrawableDetector extends LayoutDetector {
     /** Constructs a new {@link UseCompoundDrawableDetector} */
     public UseCompoundDrawableDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return Collections.singletonList(LINEAR_LAYOUT);
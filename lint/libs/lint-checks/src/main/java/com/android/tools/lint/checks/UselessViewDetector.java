@@ -126,6 +126,11 @@ public class UselessViewDetector extends LayoutDetector {
         //  CONTAINERS.add("TabHost");
     }
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return CONTAINERS;
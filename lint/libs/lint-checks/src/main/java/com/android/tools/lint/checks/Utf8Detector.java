@@ -64,6 +64,11 @@ public class Utf8Detector extends ResourceXmlDetector {
     /** Constructs a new {@link Utf8Detector} */
     public Utf8Detector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public void visitDocument(@NonNull XmlContext context, @NonNull Document document) {
         if (context.getResourceFolderType() == ResourceFolderType.RAW) {
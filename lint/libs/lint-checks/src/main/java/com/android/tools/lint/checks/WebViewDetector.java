@@ -56,6 +56,11 @@ public class WebViewDetector extends LayoutDetector {
     /** Constructs a new {@link WebViewDetector} */
     public WebViewDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return Collections.singletonList(WEB_VIEW);
@@ -52,6 +52,11 @@ public class WrongCaseDetector extends LayoutDetector {
     /** Constructs a new {@link WrongCaseDetector} */
     public WrongCaseDetector() {}
 
+    @Override
+    public boolean isFileLocal() {
+        return true;
+    }
+
     @Override
     public Collection<String> getApplicableElements() {
         return Arrays.asList("Fragment", "RequestFocus", "Include", "Merge");
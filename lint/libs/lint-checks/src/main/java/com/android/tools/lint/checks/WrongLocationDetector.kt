@@ -49,6 +49,8 @@ class WrongLocationDetector : LayoutDetector() {
         )
     }
 
+    override fun isFileLocal(): Boolean = true
+
     override fun visitDocument(context: XmlContext, document: Document) {
         val root = document.documentElement
         if (root != null && root.tagName == TAG_RESOURCES) {
@@ -46,5 +46,11 @@ class ExtractAnnotationRequest(
     val sourceFiles: List<File>,
 
     /** The roots from the source files */
-    val roots: List<File>
+    val roots: List<File>,
+
+    /**
+     * A file to record the annotations extracted from each source file in, if any. When
+     * set, the next extraction only processes the source files which have changed.
+     */
+    val index: File? = null
 )
\ No newline at end of file
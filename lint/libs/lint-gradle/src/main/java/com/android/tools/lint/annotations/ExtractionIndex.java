@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.annotations;
+
+import com.android.annotations.NonNull;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A persistent index of the annotations the {@link Extractor} extracted from each source file,
+ * keyed by the contents of the file.
+ *
+ * <p>This lets an extractor only process the source files which have changed since the previous
+ * run: the annotations of the other source files are copied from the index into the output. The
+ * index records which other source files the annotations of each file depend on (for example the
+ * declaration of a typedef annotation, or a constant referenced from an annotation), and a file
+ * is processed again when any of those have changed as well.
+ *
+ * <p>The whole index is discarded when the {@link #fingerprint} changes, which should cover
+ * everything other than the source files the extracted annotations depend on, such as the
+ * classpath.
+ */
+public class ExtractionIndex {
+    private static final int MAGIC = 0x4c414e58; // "LANX"
+    private static final int VERSION = 1;
+
+    /** The annotations extracted from a single source file */
+    private static class Record {
+        /** Hash of the contents of the source file */
+        @NonNull private final String hash;
+
+        /** Map from package to map from class to the XML of the items in the class */
+        private final Map<String, Map<String, String>> classes = new HashMap<>();
+
+        /** Map from package to the XML of the package item */
+        private final Map<String, String> packages = new HashMap<>();
+
+        /** Internal names of the hidden typedef classes declared in the file */
+        private final List<String> typedefClasses = new ArrayList<>();
+
+        /** Paths of the other source files the extracted annotations depend on */
+        private final Set<String> dependencies = new HashSet<>();
+
+        private Record(@NonNull String hash) {
+            this.hash = hash;
+        }
+    }
+
+    /** The file the index is persisted in */
+    @NonNull private final File file;
+
+    /** Fingerprint of everything other than the source files the annotations depend on */
+    @NonNull private final String fingerprint;
+
+    /** Records for the source files of this run, by source path */
+    private final Map<String, Record> records = new HashMap<>();
+
+    /** Hashes of the source files of this run, by source path */
+    private final Map<String, String> hashes = new HashMap<>();
+
+    /** Paths of the source files whose records are reused from the previous run */
+    private final Set<String> reused = new HashSet<>();
+
+    public ExtractionIndex(@NonNull File file, @NonNull String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Reads the records of the previous run and returns the subset of the given source files
+     * whose annotations have to be extracted again: the files which have changed, and the files
+     * which (directly or indirectly) depend on those. The annotations of the other files are
+     * reused from the index.
+     */
+    @NonNull
+    public List<File> getFilesToExtract(@NonNull List<File> sources) throws IOException {
+        for (File source : sources) {
+            String hash = Files.asByteSource(source).hash(Hashing.sha256()).toString();
+            hashes.put(getPath(source), hash);
+        }
+
+        Map<String, Record> unchanged = read();
+        unchanged.entrySet().removeIf(e -> !e.getValue().hash.equals(hashes.get(e.getKey())));
+        boolean removed = true;
+        while (removed) {
+            Set<String> paths = new HashSet<>(unchanged.keySet());
+            removed = unchanged.values().removeIf(r -> !paths.containsAll(r.dependencies));
+        }
+
+        List<File> stale = new ArrayList<>();
+        for (File source : sources) {
+            String path = getPath(source);
+            Record record = unchanged.get(path);
+            if (record != null) {
+                records.put(path, record);
+                reused.add(path);
+            } else {
+                stale.add(source);
+            }
+        }
+        return stale;
+    }
+
+    /** Starts recording the annotations extracted from the given source file */
+    void startFile(@NonNull String path) {
+        String hash = hashes.get(path);
+        if (hash != null) {
+            records.put(path, new Record(hash));
+            reused.remove(path);
+        }
+    }
+
+    /**
+     * Records that the annotations extracted from the given {@code source} file depend on the
+     * contents of the given {@code dependency} file. Dependencies on files other than the
+     * source files of this run, such as libraries, are covered by the {@link #fingerprint}.
+     */
+    void addDependency(@NonNull String source, @NonNull String dependency) {
+        Record record = records.get(source);
+        if (record != null && !source.equals(dependency) && hashes.containsKey(dependency)) {
+            record.dependencies.add(dependency);
+        }
+    }
+
+    /** Records the XML of the items of the given class, extracted from the given file */
+    void addClass(
+            @NonNull String source, @NonNull String pkg, @NonNull String cls, @NonNull String xml) {
+        Record record = records.get(source);
+        if (record != null) {
+            record.classes.computeIfAbsent(pkg, k -> new HashMap<>()).put(cls, xml);
+        }
+    }
+
+    /** Records the XML of the package item of the given package, extracted from the given file */
+    void addPackage(@NonNull String source, @NonNull String pkg, @NonNull String xml) {
+        Record record = records.get(source);
+        if (record != null) {
+            record.packages.put(pkg, xml);
+        }
+    }
+
+    /** Records a hidden typedef class declared in the given file */
+    void addTypedefClass(@NonNull String source, @NonNull String cls) {
+        Record record = records.get(source);
+        if (record != null) {
+            record.typedefClasses.add(cls);
+        }
+    }
+
+    /** Returns the hidden typedef classes declared in the files which were not processed again */
+    @NonNull
+    List<String> getReusedTypedefClasses() {
+        List<String> classes = new ArrayList<>();
+        for (String path : reused) {
+            classes.addAll(records.get(path).typedefClasses);
+        }
+        return classes;
+    }
+
+    /** Returns true if any annotations are reused from the previous run */
+    boolean hasReusedAnnotations() {
+        for (String path : reused) {
+            Record record = records.get(path);
+            if (!record.classes.isEmpty() || !record.packages.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the XML of the classes and packages of the files which were not processed again to
+     * the given maps, unless already present
+     */
+    void addReusedAnnotations(
+            @NonNull Map<String, Map<String, String>> classes,
+            @NonNull Map<String, String> packages) {
+        for (String path : reused) {
+            Record record = records.get(path);
+            for (Map.Entry<String, Map<String, String>> entry : record.classes.entrySet()) {
+                Map<String, String> classMap =
+                        classes.computeIfAbsent(entry.getKey(), k -> new HashMap<>());
+                for (Map.Entry<String, String> cls : entry.getValue().entrySet()) {
+                    classMap.putIfAbsent(cls.getKey(), cls.getValue());
+                }
+            }
+            for (Map.Entry<String, String> entry : record.packages.entrySet()) {
+                packages.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Reads the records of the previous run, by source path */
+    @NonNull
+    private Map<String, Record> read() {
+        Map<String, Record> previous = new HashMap<>();
+        if (!file.isFile()) {
+            return previous;
+        }
+        try (DataInputStream input =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC
+                    || input.readInt() != VERSION
+                    || !fingerprint.equals(input.readUTF())) {
+                return previous;
+            }
+            for (int i = 0, records = input.readInt(); i < records; i++) {
+                String path = input.readUTF();
+                Record record = new Record(input.readUTF());
+                for (int j = 0, packages = input.readInt(); j < packages; j++) {
+                    String pkg = input.readUTF();
+                    Map<String, String> classMap = new HashMap<>();
+                    for (int k = 0, classes = input.readInt(); k < classes; k++) {
+                        String cls = input.readUTF();
+                        classMap.put(cls, readString(input));
+                    }
+                    record.classes.put(pkg, classMap);
+                }
+                for (int j = 0, packages = input.readInt(); j < packages; j++) {
+                    String pkg = input.readUTF();
+                    record.packages.put(pkg, readString(input));
+                }
+                for (int j = 0, classes = input.readInt(); j < classes; j++) {
+                    record.typedefClasses.add(input.readUTF());
+                }
+                for (int j = 0, dependencies = input.readInt(); j < dependencies; j++) {
+                    record.dependencies.add(input.readUTF());
+                }
+                previous.put(path, record);
+            }
+        } catch (IOException e) {
+            // Corrupt or truncated index: extract everything again
+            previous.clear();
+        }
+        return previous;
+    }
+
+    /** Persists the records of the source files of this run */
+    public void write() throws IOException {
+        Files.createParentDirs(file);
+        try (DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(fingerprint);
+            output.writeInt(records.size());
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeUTF(record.hash);
+                output.writeInt(record.classes.size());
+                for (Map.Entry<String, Map<String, String>> pkg : record.classes.entrySet()) {
+                    output.writeUTF(pkg.getKey());
+                    output.writeInt(pkg.getValue().size());
+                    for (Map.Entry<String, String> cls : pkg.getValue().entrySet()) {
+                        output.writeUTF(cls.getKey());
+                        writeString(output, cls.getValue());
+                    }
+                }
+                output.writeInt(record.packages.size());
+                for (Map.Entry<String, String> pkg : record.packages.entrySet()) {
+                    output.writeUTF(pkg.getKey());
+                    writeString(output, pkg.getValue());
+                }
+                output.writeInt(record.typedefClasses.size());
+                for (String cls : record.typedefClasses) {
+                    output.writeUTF(cls);
+                }
+                output.writeInt(record.dependencies.size());
+                for (String dependency : record.dependencies) {
+                    output.writeUTF(dependency);
+                }
+            }
+        } catch (IOException e) {
+            // Don't leave a partial index behind
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+    }
+
+    /** Returns the path the given source file is recorded under */
+    @NonNull
+    static String getPath(@NonNull File file) {
+        return file.getAbsolutePath().replace(File.separatorChar, '/');
+    }
+
+    /** Writes a string which may be longer than {@link DataOutputStream#writeUTF} allows */
+    private static void writeString(@NonNull DataOutputStream output, @NonNull String string)
+            throws IOException {
+        byte[] bytes = string.getBytes(Charsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @NonNull
+    private static String readString(@NonNull DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+}
@@ -121,6 +121,7 @@ import org.jetbrains.uast.UMethod;
 import org.jetbrains.uast.UNamedExpression;
 import org.jetbrains.uast.UParameter;
 import org.jetbrains.uast.UReferenceExpression;
+import org.jetbrains.uast.USimpleNameReferenceExpression;
 import org.jetbrains.uast.UastContext;
 import org.jetbrains.uast.UastEmptyExpression;
 import org.jetbrains.uast.UastVisibility;
@@ -250,6 +251,18 @@ public class Extractor {
     private Map<String, Boolean> sourceRetention;
     private final List<Item> keepItems = new ArrayList<>();
 
+    /** Index of the annotations extracted in the previous run, if extracting incrementally */
+    @Nullable private ExtractionIndex index;
+
+    /** The path of the source file annotations are currently extracted from, if indexing */
+    @Nullable private String currentSource;
+
+    /** Map from class to the paths of the source files its items were extracted from */
+    private final Map<String, Set<String>> classSources = new HashMap<>();
+
+    /** Map from package to the paths of the source files its package item was extracted from */
+    private final Map<String, Set<String>> packageSources = new HashMap<>();
+
     public static List<? extends PsiFile> createUnitsForFiles(
             @NonNull Project project, @NonNull List<File> specificSources) {
         List<PsiFile> units = new ArrayList<>(specificSources.size());
@@ -314,8 +327,21 @@ public class Extractor {
         this.sortAnnotations = sortAnnotations;
     }
 
+    /**
+     * Sets the index to record the extracted annotations in. The annotations the index reuses
+     * from the previous run, for the source files which are not passed to {@link
+     * #extractFromProjectSource} again, are included in the output as well. (They are not
+     * included in the {@link #writeStats() statistics}, and keep rules are not recorded.)
+     */
+    public void setIndex(@Nullable ExtractionIndex index) {
+        this.index = index;
+    }
+
     public void extractFromProjectSource(List<? extends PsiFile> units) {
         if (units.isEmpty()) {
+            if (index != null) {
+                typedefsToRemove = index.getReusedTypedefClasses();
+            }
             return;
         }
 
@@ -330,10 +356,28 @@ public class Extractor {
                 System.out.println("Warning: Could not convert " + unit.getName() + " with UAST");
                 continue;
             }
+            if (index != null) {
+                VirtualFile virtualFile = unit.getVirtualFile();
+                if (virtualFile != null) {
+                    currentSource = ExtractionIndex.getPath(new File(virtualFile.getPath()));
+                    index.startFile(currentSource);
+                }
+            }
+            List<String> privateTypedefs = visitor.getPrivateTypedefClasses();
+            int typedefCount = privateTypedefs.size();
             uFile.accept(visitor);
+            if (currentSource != null) {
+                for (String cls : privateTypedefs.subList(typedefCount, privateTypedefs.size())) {
+                    index.addTypedefClass(currentSource, cls);
+                }
+                currentSource = null;
+            }
         }
 
         typedefsToRemove = visitor.getPrivateTypedefClasses();
+        if (index != null) {
+            typedefsToRemove.addAll(index.getReusedTypedefClasses());
+        }
     }
 
     public void removeTypedefClasses() {
@@ -394,7 +438,9 @@ public class Extractor {
         }
 
         if (annotationsZip != null) {
-            if (itemMap.isEmpty() && packageMap == null) {
+            if (itemMap.isEmpty()
+                    && packageMap == null
+                    && (index == null || !index.hasReusedAnnotations())) {
                 FileUtils.deleteIfExists(annotationsZip);
             } else {
                 writeExternalAnnotations(annotationsZip);
@@ -731,6 +777,10 @@ public class Extractor {
     }
 
     boolean isMagicConstant(@NonNull UAnnotation annotation, @NonNull String typeName) {
+        if (currentSource != null && !typeName.startsWith("java.lang.")) {
+            // The outcome (which is cached below) depends on the annotation declaration
+            addDependency(annotation.resolve());
+        }
         if (irrelevantAnnotations.contains(typeName)
                 || typeName.startsWith("java.lang.")) { // @Override, @SuppressWarnings, etc.
             return false;
@@ -816,16 +866,40 @@ public class Extractor {
     }
 
     private void writeExternalAnnotations(@NonNull File annotationsZip) throws IOException {
+        // Map from package to map from class to the XML of the items in the class
+        Map<String, Map<String, String>> classXml = new HashMap<>();
+        // Map from package to the XML of the package item
+        Map<String, String> packageXml = new HashMap<>();
+
+        for (Map.Entry<String, Map<String, List<Item>>> entry : itemMap.entrySet()) {
+            String pkg = entry.getKey();
+            Map<String, String> classes = classXml.computeIfAbsent(pkg, k -> new HashMap<>());
+            for (Map.Entry<String, List<Item>> classEntry : entry.getValue().entrySet()) {
+                String cls = classEntry.getKey();
+                List<Item> items = classEntry.getValue();
+                Collections.sort(items);
+                classes.put(cls, writeItems(items, classSources.get(cls), pkg, cls));
+            }
+        }
+        if (packageMap != null) {
+            for (Map.Entry<String, PackageItem> entry : packageMap.entrySet()) {
+                String pkg = entry.getKey();
+                List<Item> items = Collections.singletonList(entry.getValue());
+                packageXml.put(pkg, writeItems(items, packageSources.get(pkg), pkg, null));
+            }
+        }
+        if (index != null) {
+            index.addReusedAnnotations(classXml, packageXml);
+        }
+
         try (FileOutputStream fileOutputStream = new FileOutputStream(annotationsZip);
                 JarOutputStream zos =
                         new JarOutputStream(new BufferedOutputStream(fileOutputStream))) {
-            List<String> sortedPackages = new ArrayList<>(itemMap.keySet());
+            List<String> sortedPackages = new ArrayList<>(classXml.keySet());
 
-            if (packageMap != null) {
-                for (String pkg : packageMap.keySet()) {
-                    if (!itemMap.containsKey(pkg)) {
-                        sortedPackages.add(pkg);
-                    }
+            for (String pkg : packageXml.keySet()) {
+                if (!classXml.containsKey(pkg)) {
+                    sortedPackages.add(pkg);
                 }
             }
 
@@ -841,7 +915,7 @@ public class Extractor {
                 try (StringPrintWriter writer = StringPrintWriter.create()) {
                     writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>");
 
-                    Map<String, List<Item>> classMap = itemMap.get(pkg);
+                    Map<String, String> classMap = classXml.get(pkg);
 
                     if (classMap == null) {
                         // package only contains package-info.java annotations
@@ -849,21 +923,15 @@ public class Extractor {
                     }
 
                     // Export package items first
-                    if (packageMap != null) {
-                        PackageItem item = packageMap.get(pkg);
-                        if (item != null) {
-                            item.write(writer);
-                        }
+                    String item = packageXml.get(pkg);
+                    if (item != null) {
+                        writer.print(item);
                     }
 
                     List<String> classes = new ArrayList<>(classMap.keySet());
                     Collections.sort(classes);
                     for (String cls : classes) {
-                        List<Item> items = classMap.get(cls);
-                        Collections.sort(items);
-                        for (Item item : items) {
-                            item.write(writer);
-                        }
+                        writer.print(classMap.get(cls));
                     }
 
                     writer.println("</root>\n");
@@ -890,6 +958,47 @@ public class Extractor {
         }
     }
 
+    /**
+     * Returns the XML for the given items of the given package and class (or the package item,
+     * if {@code cls} is null), and records it in the index for the given source files, if any
+     */
+    @NonNull
+    private String writeItems(
+            @NonNull List<Item> items,
+            @Nullable Set<String> sources,
+            @NonNull String pkg,
+            @Nullable String cls) {
+        if (index == null || sources == null) {
+            return writeItems(items);
+        }
+
+        String xml = "";
+        for (String source : sources) {
+            // Writing the items resolves the annotation attributes, which the annotations
+            // extracted from each source file depend on
+            currentSource = source;
+            xml = writeItems(items);
+            if (cls != null) {
+                index.addClass(source, pkg, cls, xml);
+            } else {
+                index.addPackage(source, pkg, xml);
+            }
+        }
+        currentSource = null;
+        return xml;
+    }
+
+    @NonNull
+    private static String writeItems(@NonNull List<Item> items) {
+        try (StringPrintWriter writer = StringPrintWriter.create()) {
+            for (Item item : items) {
+                item.write(writer);
+            }
+            writer.flush();
+            return writer.getContents();
+        }
+    }
+
     private void addPackage(@NonNull String pkg, @NonNull PackageItem item) {
         // Not part of the API?
         if (apiFilter != null && item.isFiltered(apiFilter)) {
@@ -906,6 +1015,7 @@ public class Extractor {
         }
 
         packageMap.put(pkg, item);
+        recordSource(packageSources, pkg);
     }
 
     private void addItem(@NonNull String fqn, @NonNull Item item) {
@@ -936,6 +1046,42 @@ public class Extractor {
         }
 
         items.add(item);
+        recordSource(classSources, fqn);
+    }
+
+    /**
+     * Records that items for the given class or package are extracted from the current source
+     * file. Since the output for the class or package is recorded as a whole, the source files
+     * which contribute to the same class or package (such as Kotlin multi-file facades) depend
+     * on each other.
+     */
+    private void recordSource(@NonNull Map<String, Set<String>> sources, @NonNull String key) {
+        if (index == null || currentSource == null) {
+            return;
+        }
+        Set<String> paths = sources.computeIfAbsent(key, k -> new HashSet<>());
+        if (paths.add(currentSource)) {
+            for (String path : paths) {
+                index.addDependency(path, currentSource);
+                index.addDependency(currentSource, path);
+            }
+        }
+    }
+
+    /**
+     * Records that the annotations extracted from the current source file depend on the file
+     * containing the given element
+     */
+    private void addDependency(@Nullable PsiElement element) {
+        if (index == null || currentSource == null || element == null) {
+            return;
+        }
+        PsiFile file = element.getContainingFile();
+        VirtualFile virtualFile = file != null ? file.getVirtualFile() : null;
+        if (virtualFile != null) {
+            index.addDependency(
+                    currentSource, ExtractionIndex.getPath(new File(virtualFile.getPath())));
+        }
     }
 
     private void removeItem(@NonNull String classFqn, @NonNull Item item) {
@@ -1926,6 +2072,8 @@ public class Extractor {
 
         private boolean appendExpression(
                 @NonNull StringBuilder sb, @NonNull UExpression expression) {
+            // The expression may come from another source file, such as a typedef declaration
+            addDependency(expression.getPsi());
             if (UastExpressionUtils.isArrayInitializer(expression)) {
                 UCallExpression call = (UCallExpression) expression;
                 List<UExpression> initializers = call.getValueArguments();
@@ -1960,6 +2108,7 @@ public class Extractor {
                 PsiElement resolved = referenceExpression.resolve();
                 if (resolved instanceof PsiField) {
                     PsiField field = (PsiField) resolved;
+                    addDependency(field);
                     if (!isInlinedConstant()) {
                         // Inline constants
                         Object value = field.computeConstantValue();
@@ -2013,6 +2162,17 @@ public class Extractor {
             }
 
             // For example, binary expressions like 3 + 4
+            if (currentSource != null) {
+                expression.accept(
+                        new AbstractUastVisitor() {
+                            @Override
+                            public boolean visitSimpleNameReferenceExpression(
+                                    USimpleNameReferenceExpression node) {
+                                addDependency(node.resolve());
+                                return super.visitSimpleNameReferenceExpression(node);
+                            }
+                        });
+            }
             Object literalValue = ConstantEvaluator.evaluate(null, expression);
             if (literalValue != null) {
                 if (appendLiteralValue(sb, literalValue)) {
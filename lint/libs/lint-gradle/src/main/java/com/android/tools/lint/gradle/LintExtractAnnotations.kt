@@ -20,8 +20,10 @@ import com.android.SdkConstants.DOT_KT
 import com.android.tools.lint.KotlinLintAnalyzerFacade
 import com.android.tools.lint.LintCoreApplicationEnvironment
 import com.android.tools.lint.LintCoreProjectEnvironment
+import com.android.tools.lint.annotations.ExtractionIndex
 import com.android.tools.lint.annotations.Extractor
 import com.android.tools.lint.gradle.api.ExtractAnnotationRequest
+import com.google.common.hash.Hashing
 import com.intellij.openapi.util.Disposer
 import org.gradle.api.logging.LogLevel
 import java.io.File
@@ -39,31 +41,44 @@ class LintExtractAnnotations {
         val sourceFiles = request.sourceFiles
         val roots = request.roots
 
-        val appEnv = LintCoreApplicationEnvironment.get()
         val parentDisposable = Disposer.newDisposable()
 
         try {
-            val projectEnvironment = LintCoreProjectEnvironment.create(parentDisposable, appEnv)
-            projectEnvironment.registerPaths(roots)
-            val parsedUnits = Extractor.createUnitsForFiles(
-                projectEnvironment.project,
-                sourceFiles
-            )
-
-            val ktFiles = ArrayList<File>()
-            for (file in sourceFiles) {
-                if (file.path.endsWith(DOT_KT)) {
-                    ktFiles.add(file)
-                }
-            }
-            KotlinLintAnalyzerFacade().analyze(ktFiles, roots, projectEnvironment.project)
+            val index = request.index?.let { ExtractionIndex(it, computeFingerprint(roots)) }
+            val extractFiles = index?.getFilesToExtract(sourceFiles) ?: sourceFiles
 
             val displayInfo = logger.isEnabled(LogLevel.INFO)
             val extractor = Extractor(null, classDir.files, displayInfo, false, false)
+            extractor.setIndex(index)
+
+            if (extractFiles.isEmpty()) {
+                // Everything is reused from the index; no need to parse anything
+                extractor.extractFromProjectSource(emptyList())
+            } else {
+                val appEnv = LintCoreApplicationEnvironment.get()
+                val projectEnvironment =
+                    LintCoreProjectEnvironment.create(parentDisposable, appEnv)
+                projectEnvironment.registerPaths(roots)
+                val parsedUnits = Extractor.createUnitsForFiles(
+                    projectEnvironment.project,
+                    extractFiles
+                )
+
+                // Analyze all the Kotlin sources (not just the ones to extract annotations
+                // from) since the extracted files may reference any of them
+                val ktFiles = ArrayList<File>()
+                for (file in sourceFiles) {
+                    if (file.path.endsWith(DOT_KT)) {
+                        ktFiles.add(file)
+                    }
+                }
+                KotlinLintAnalyzerFacade().analyze(ktFiles, roots, projectEnvironment.project)
 
-            extractor.extractFromProjectSource(parsedUnits)
+                extractor.extractFromProjectSource(parsedUnits)
+            }
             extractor.export(output, null)
             extractor.writeTypedefFile(typedefFile)
+            index?.write()
         } catch (e: IOException) {
             throw UncheckedIOException(e)
         } finally {
@@ -71,4 +86,21 @@ class LintExtractAnnotations {
             LintCoreApplicationEnvironment.clearAccessorCache()
         }
     }
+
+    /**
+     * Computes a fingerprint of the inputs other than the source files which the extracted
+     * annotations depend on: the library jars and the extractor itself
+     */
+    private fun computeFingerprint(roots: List<File>): String {
+        val hasher = Hashing.sha256().newHasher()
+        val extractor = Extractor::class.java.protectionDomain?.codeSource?.location?.path
+        for (file in roots + listOfNotNull(extractor?.let { File(it) })) {
+            hasher.putString(file.path, Charsets.UTF_8)
+            if (file.isFile) {
+                hasher.putLong(file.length())
+                hasher.putLong(file.lastModified())
+            }
+        }
+        return hasher.hash().toString()
+    }
 }
\ No newline at end of file
@@ -93,6 +93,9 @@ public class ExtractAnnotationsDriver {
                 "--skip-class-retention   : Don't extract annotations that have class retention");
         output.println(
                 "--typedef-file <path>    : Write a packaging recipe description to the given file");
+        output.println(
+                "--index <path>           : Record the extracted annotations in the given file, and"
+                        + " only extract annotations from changed sources if it already exists");
         System.exit(-1);
     }
 
@@ -112,6 +115,7 @@ public class ExtractAnnotationsDriver {
         File output = null;
         File proguard = null;
         File typedefFile = null;
+        File indexFile = null;
         if (args.length == 1 && "--help".equals(args[0])) {
             usage(System.out);
         }
@@ -187,6 +191,9 @@ public class ExtractAnnotationsDriver {
                 case "--typedef-file":
                     typedefFile = new File(value);
                     break;
+                case "--index":
+                    indexFile = new File(value);
+                    break;
                 case "--api-filter":
                     if (apiFilters == null) {
                         apiFilters = Lists.newArrayList();
@@ -260,7 +267,14 @@ public class ExtractAnnotationsDriver {
         List<File> paths = projectEnvironment.getPaths();
 
         List<File> allSourceFiles = Extractor.gatherSources(sources);
-        List<? extends PsiFile> units = Extractor.createUnitsForFiles(project, allSourceFiles);
+        List<File> extractFiles = allSourceFiles;
+        ExtractionIndex index = null;
+        if (indexFile != null) {
+            index = new ExtractionIndex(indexFile, classpath.toString());
+            extractFiles = index.getFilesToExtract(allSourceFiles);
+            extractor.setIndex(index);
+        }
+        List<? extends PsiFile> units = Extractor.createUnitsForFiles(project, extractFiles);
 
         List<File> ktFiles = new ArrayList<>();
         for (File file : allSourceFiles) {
@@ -285,6 +299,10 @@ public class ExtractAnnotationsDriver {
             extractor.writeTypedefFile(typedefFile);
         }
 
+        if (index != null) {
+            index.write();
+        }
+
         //noinspection VariableNotUsedInsideIf
         if (rmTypeDefs != null) {
             if (typedefFile != null) {
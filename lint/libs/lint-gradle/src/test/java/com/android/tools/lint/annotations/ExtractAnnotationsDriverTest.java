@@ -382,6 +382,52 @@ public class ExtractAnnotationsDriverTest {
         deleteFile(project);
     }
 
+    @Test
+    public void testIncrementalExtraction() throws Exception {
+        File androidJar = TestUtils.getPlatformFile("android.jar");
+
+        File project =
+                createProject(intDefTest, permissionsTest, manifest, SUPPORT_ANNOTATIONS_JAR);
+        File supportLib = new File(project, SUPPORT_JAR_PATH);
+        File output = new File(temporaryFolder.getRoot(), "annotations.zip");
+        File index = new File(temporaryFolder.getRoot(), "index.bin");
+
+        String[] args = {
+            "--sources",
+            new File(project, "src").getPath(),
+            "--classpath",
+            androidJar.getPath() + pathSeparator + supportLib,
+            "--quiet",
+            "--output",
+            output.getPath(),
+            "--index",
+            index.getPath()
+        };
+
+        new ExtractAnnotationsDriver().run(args);
+        assertTrue(index.isFile());
+        String xml = readPackageXml("test.pkg", output);
+        assertTrue(xml.contains("test.pkg.IntDefTest void setStyle(int, int) 0"));
+        assertTrue(xml.contains("android.permission.MY_PERMISSION_STRING2"));
+
+        // Nothing changed: everything is reused from the index
+        new ExtractAnnotationsDriver().run(args);
+        assertEquals(xml, readPackageXml("test.pkg", output));
+
+        // PermissionsTest inlines the constants from Manifest, so it has to be extracted
+        // again when only Manifest changes
+        File manifestFile = new File(project, "src/test/pkg/Manifest.java");
+        String source = Files.toString(manifestFile, Charsets.UTF_8);
+        Files.asCharSink(manifestFile, Charsets.UTF_8)
+                .write(source.replace("MY_PERMISSION_STRING2", "MY_OTHER_PERMISSION_STRING"));
+        new ExtractAnnotationsDriver().run(args);
+        assertEquals(
+                xml.replace("MY_PERMISSION_STRING2", "MY_OTHER_PERMISSION_STRING"),
+                readPackageXml("test.pkg", output));
+
+        deleteFile(project);
+    }
+
     private File createProject(@NonNull TestFile... files) throws IOException {
         File dir = temporaryFolder.newFolder();
 
@@ -617,6 +663,10 @@ public class ExtractAnnotationsDriverTest {
     private static void checkPackageXml(
             @SuppressWarnings("SameParameterValue") String pkg, File output, String expected)
             throws IOException {
+        assertEquals(expected, readPackageXml(pkg, output));
+    }
+
+    private static String readPackageXml(String pkg, File output) throws IOException {
         assertNotNull(output);
         assertTrue(output.exists());
         URL url =
@@ -630,8 +680,7 @@ public class ExtractAnnotationsDriverTest {
         try {
             byte[] bytes = ByteStreams.toByteArray(stream);
             assertNotNull(bytes);
-            String xml = new String(bytes, Charsets.UTF_8).replace("\r\n", "\n");
-            assertEquals(expected, xml);
+            return new String(bytes, Charsets.UTF_8).replace("\r\n", "\n");
         } finally {
             Closeables.closeQuietly(stream);
         }
@@ -34,10 +34,13 @@ import com.android.tools.lint.detector.api.Detector;
 import com.android.tools.lint.detector.api.Issue;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import kotlin.text.StringsKt;
 import org.intellij.lang.annotations.Language;
 
@@ -305,6 +308,243 @@ public class MainTest extends AbstractCheckTest {
                 });
     }
 
+    public void testPrefetchThreads() throws Exception {
+        // Several files per folder so that they are prepared ahead of the detectors, including
+        // files which fail to parse
+        File project =
+                getProjectDir(
+                        null,
+                        manifest().minSdk(1),
+                        xml("res/layout/accessibility1.xml", ACCESSIBILITY_XML),
+                        xml("res/layout/accessibility2.xml", ACCESSIBILITY_XML),
+                        xml("res/layout/accessibility3.xml", ACCESSIBILITY_XML),
+                        xml("res/layout/broken.xml", "<LinearLayout\n"),
+                        mGetterTest,
+                        mGetterTest2);
+        File classes = new File(project, "bin/classes");
+        File classDir = new File(classes, "test/bytecode");
+        assertTrue(classDir.mkdirs());
+        try (ZipFile jar = new ZipFile(new File(project, "bin/classes.jar"))) {
+            ZipEntry entry = jar.getEntry("test/bytecode/GetterTest.class");
+            try (InputStream input = jar.getInputStream(entry)) {
+                Files.copy(input, new File(classDir, "GetterTest.class").toPath());
+            }
+        }
+        Files.write(new File(classDir, "Broken.class").toPath(), "Broken".getBytes());
+        File report = new File(project, "report.txt");
+
+        // Prefetching must not change the reported incidents
+        String sequential = null;
+        for (String threads : new String[] {"1", "4"}) {
+            checkDriver(
+                    null,
+                    null,
+
+                    // Expected exit code
+                    ERRNO_SUCCESS,
+
+                    // Args
+                    new String[] {
+                        "--prefetch-threads",
+                        threads,
+                        "--check",
+                        "ContentDescription,FieldGetter",
+                        "--disable",
+                        "LintError",
+                        "--classpath",
+                        classes.getPath(),
+                        "--text",
+                        report.getPath(),
+                        project.getPath(),
+                    });
+            String output = new String(Files.readAllBytes(report.toPath()));
+            if (sequential == null) {
+                sequential = output;
+            } else {
+                assertEquals(sequential, output);
+            }
+        }
+        assertTrue(sequential, sequential.contains("accessibility1.xml:5: Warning"));
+        assertTrue(sequential, sequential.contains("accessibility3.xml:5: Warning"));
+        assertTrue(sequential, sequential.contains("GetterTest.java:55: Warning"));
+    }
+
+    public void testIncidentCache() throws Exception {
+        File project = getProjectDir(null, mAccessibility2, mAccessibility3);
+        File cacheDir = new File(project, "incident-cache");
+        String expected =
+                ""
+                        + "\n"
+                        + "Scanning MainTest_testIncidentCache: ..\n"
+                        + "myres1/layout/accessibility1.xml:4: Warning: Missing contentDescription attribute on image [ContentDescription]\n"
+                        + "    <ImageView android:id=\"@+id/android_logo\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\" android:src=\"@drawable/android_button\" android:focusable=\"false\" android:clickable=\"false\" android:layout_weight=\"1.0\" />\n"
+                        + "     ~~~~~~~~~\n"
+                        + "myres2/layout/accessibility1.xml:4: Warning: Missing contentDescription attribute on image [ContentDescription]\n"
+                        + "    <ImageView android:id=\"@+id/android_logo\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\" android:src=\"@drawable/android_button\" android:focusable=\"false\" android:clickable=\"false\" android:layout_weight=\"1.0\" />\n"
+                        + "     ~~~~~~~~~\n"
+                        + "myres1/layout/accessibility1.xml:5: Warning: Missing contentDescription attribute on image [ContentDescription]\n"
+                        + "    <ImageButton android:importantForAccessibility=\"yes\" android:id=\"@+id/android_logo2\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\" android:src=\"@drawable/android_button\" android:focusable=\"false\" android:clickable=\"false\" android:layout_weight=\"1.0\" />\n"
+                        + "     ~~~~~~~~~~~\n"
+                        + "myres2/layout/accessibility1.xml:5: Warning: Missing contentDescription attribute on image [ContentDescription]\n"
+                        + "    <ImageButton android:importantForAccessibility=\"yes\" android:id=\"@+id/android_logo2\" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\" android:src=\"@drawable/android_button\" android:focusable=\"false\" android:clickable=\"false\" android:layout_weight=\"1.0\" />\n"
+                        + "     ~~~~~~~~~~~\n"
+                        + "0 errors, 4 warnings\n";
+
+        // The second run reports the issues from the cache without visiting the layouts
+        for (int i = 0; i < 2; i++) {
+            File profile = new File(project, "profile" + i + ".json");
+            checkDriver(
+                    expected,
+                    "",
+
+                    // Expected exit code
+                    ERRNO_SUCCESS,
+
+                    // Args
+                    new String[] {
+                        "--incident-cache",
+                        cacheDir.getPath(),
+                        "--profile",
+                        profile.getPath(),
+                        "--check",
+                        "ContentDescription",
+                        "--disable",
+                        "LintError",
+                        "--resources",
+                        new File(project, "myres1").getPath(),
+                        "--resources",
+                        new File(project, "myres2").getPath(),
+                        "--compile-sdk-version",
+                        "15",
+                        project.getPath(),
+                    },
+                    s -> cleanup(s).replaceAll("Wrote detector profile to .*\n?", ""),
+                    null);
+            File[] cacheFiles = cacheDir.listFiles();
+            assertNotNull(cacheFiles);
+            assertEquals(1, cacheFiles.length);
+            String visits = "{\"callback\": \"visitElement\"";
+            String output = new String(Files.readAllBytes(profile.toPath()));
+            assertEquals(output, i == 0, output.contains(visits));
+        }
+    }
+
+    public void testIncidentCacheWithCrossFileDetector() throws Exception {
+        // DuplicateResourceDetector compares all the files in a folder, so editing one file
+        // can add an incident in a file which is unchanged since the previous run
+        File project =
+                getProjectDir(
+                        null,
+                        manifest().minSdk(14),
+                        xml(
+                                "res/values/a.xml",
+                                ""
+                                        + "<resources>\n"
+                                        + "    <string name=\"foo\">Foo</string>\n"
+                                        + "</resources>\n"),
+                        xml(
+                                "res/values/b.xml",
+                                ""
+                                        + "<resources>\n"
+                                        + "    <string name=\"bar\">Bar</string>\n"
+                                        + "</resources>\n"));
+        File cacheDir = new File(project, "incident-cache");
+        File report = new File(project, "report.txt");
+        String[] args = {
+            "--incident-cache",
+            cacheDir.getPath(),
+            "--check",
+            "DuplicateDefinition",
+            "--disable",
+            "LintError",
+            "--text",
+            report.getPath(),
+            project.getPath(),
+        };
+
+        checkDriver(null, null, ERRNO_SUCCESS, args);
+        String output = new String(Files.readAllBytes(report.toPath()));
+        assertFalse(output, output.contains("[DuplicateDefinition]"));
+
+        Files.write(
+                new File(project, "res/values/b.xml").toPath(),
+                (""
+                                + "<resources>\n"
+                                + "    <string name=\"bar\">Bar</string>\n"
+                                + "    <string name=\"foo\">Foo</string>\n"
+                                + "</resources>\n")
+                        .getBytes(),
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        checkDriver(null, null, ERRNO_SUCCESS, args);
+        output = new String(Files.readAllBytes(report.toPath()));
+        assertTrue(output, output.contains("[DuplicateDefinition]"));
+    }
+
+    public void testSharedLibraryWithCrossFileDetector() throws Exception {
+        // The library is checked once per app; DuplicateResourceDetector compares all the
+        // files of a folder, so its incidents must not be shared or cached per file
+        File app1 =
+                getProjectDir(
+                        "App1",
+                        manifest().pkg("test.app1").minSdk(14),
+                        projectProperties().compileSdk(14).dependsOn("../Lib"));
+        File app2 =
+                getProjectDir(
+                        "App2",
+                        manifest().pkg("test.app2").minSdk(14),
+                        projectProperties().compileSdk(14).dependsOn("../Lib"));
+        File lib =
+                getProjectDir(
+                        "Lib",
+                        manifest().pkg("test.lib").minSdk(14),
+                        projectProperties().library(true).compileSdk(14),
+                        xml(
+                                "res/values/a.xml",
+                                ""
+                                        + "<resources>\n"
+                                        + "    <string name=\"foo\">Foo</string>\n"
+                                        + "</resources>\n"),
+                        xml(
+                                "res/values/b.xml",
+                                ""
+                                        + "<resources>\n"
+                                        + "    <string name=\"bar\">Bar</string>\n"
+                                        + "</resources>\n"));
+        File cacheDir = new File(lib.getParentFile(), "incident-cache");
+        File report = new File(lib.getParentFile(), "report.txt");
+        String[] args = {
+            "--incident-cache",
+            cacheDir.getPath(),
+            "--check",
+            "DuplicateDefinition",
+            "--disable",
+            "LintError",
+            "--text",
+            report.getPath(),
+            app1.getPath(),
+            app2.getPath(),
+        };
+
+        checkDriver(null, null, ERRNO_SUCCESS, args);
+        String output = new String(Files.readAllBytes(report.toPath()));
+        assertFalse(output, output.contains("[DuplicateDefinition]"));
+
+        Files.write(
+                new File(lib, "res/values/b.xml").toPath(),
+                (""
+                                + "<resources>\n"
+                                + "    <string name=\"bar\">Bar</string>\n"
+                                + "    <string name=\"foo\">Foo</string>\n"
+                                + "</resources>\n")
+                        .getBytes(),
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        checkDriver(null, null, ERRNO_SUCCESS, args);
+        output = new String(Files.readAllBytes(report.toPath()));
+        assertTrue(output, output.contains("[DuplicateDefinition]"));
+    }
+
     public void testPathList() throws Exception {
         File project = getProjectDir(null, mAccessibility2, mAccessibility3);
 
@@ -388,6 +388,23 @@ public class ApiLookupTest extends AbstractCheckTest {
         ApiLookup.dispose();
     }
 
+    public void testSharedData() {
+        mCacheDir = new File(getTempDir(), "shared-cache");
+        mLogBuffer.setLength(0);
+        ApiLookup lookup1 = ApiLookup.get(new LookupTestClient());
+        assertNotNull(lookup1);
+        ApiLookup.dispose();
+
+        // A new database reading the same file shares the data of the first one
+        ApiLookup lookup2 = ApiLookup.get(new LookupTestClient());
+        assertNotNull(lookup2);
+        assertNotSame(lookup1, lookup2);
+        assertSame(lookup1.mData, lookup2.mData);
+        assertEquals(11, lookup2.getFieldVersion("android/R$attr", "actionMenuTextAppearance"));
+        assertEquals("", mLogBuffer.toString()); // No warnings
+        ApiLookup.dispose();
+    }
+
     private static final boolean CHECK_DEPRECATED = true;
 
     private static void assertSameApi(String desc, int expected, int actual) {
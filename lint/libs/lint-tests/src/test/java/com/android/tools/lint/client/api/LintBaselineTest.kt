@@ -349,4 +349,79 @@ There are quickfixes to automatically extract this hardcoded string into a resou
                     "</issues>\n"
         )
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testCachedBaseline() {
+        val baselineFile = temporaryFolder.newFile("lint-baseline.xml")
+
+        @Language("XML")
+        val baselineContents = """<?xml version="1.0" encoding="UTF-8"?>
+<issues format="5" by="lint unittest" custom="value">
+
+    <issue
+        id="HardcodedText"
+        message="Hardcoded string &quot;Fooo&quot;, should use @string resource">
+        <location
+            file="res/layout/main.xml"
+            line="12"/>
+        <location
+            file="res/layout/main2.xml"
+            line="11"/>
+    </issue>
+
+    <issue
+        id="HardcodedText"
+        message="Hardcoded string &quot;Fooo&quot;, should use @string resource">
+        <location
+            file="main3.xml"
+            line="11"/>
+    </issue>
+
+</issues>
+"""
+        Files.asCharSink(baselineFile, Charsets.UTF_8).write(baselineContents)
+
+        val client = ToolsBaseTestLintClient()
+        // The second baseline is read from the cache of the first
+        for (i in 0 until 2) {
+            val baseline = LintBaseline(client, baselineFile)
+            assertThat(baseline.totalCount).isEqualTo(2)
+            assertThat(baseline.getAttribute("custom")).isEqualTo("value")
+
+            var found = baseline.findAndMark(
+                HardcodedValuesDetector.ISSUE,
+                Location.create(File("/project/res/layout/main2.xml")),
+                "Hardcoded string \"Fooo\", should use @string resource",
+                Severity.WARNING, null
+            )
+            assertThat(found).isTrue()
+            assertThat(baseline.fixedCount).isEqualTo(1)
+
+            // All locations of an issue are matched at once
+            found = baseline.findAndMark(
+                HardcodedValuesDetector.ISSUE,
+                Location.create(File("/project/res/layout/main.xml")),
+                "Hardcoded string \"Fooo\", should use @string resource",
+                Severity.WARNING, null
+            )
+            assertThat(found).isFalse()
+
+            found = baseline.findAndMark(
+                HardcodedValuesDetector.ISSUE,
+                Location.create(File("/project/main3.xml")),
+                "Hardcoded string \"Fooo\", should use @string resource",
+                Severity.WARNING, null
+            )
+            assertThat(found).isTrue()
+            assertThat(baseline.fixedCount).isEqualTo(0)
+        }
+
+        // Editing the baseline invalidates the cache
+        Files.asCharSink(baselineFile, Charsets.UTF_8)
+            .write(baselineContents.replace(" custom=\"value\"", ""))
+        baselineFile.setLastModified(baselineFile.lastModified() + 2000)
+        val baseline = LintBaseline(client, baselineFile)
+        assertThat(baseline.getAttribute("custom")).isNull()
+        assertThat(baseline.totalCount).isEqualTo(2)
+    }
+}
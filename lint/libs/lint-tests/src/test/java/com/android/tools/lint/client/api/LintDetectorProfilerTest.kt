@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.lint.client.api
+
+import com.android.tools.lint.checks.BuiltinIssueRegistry
+import com.android.tools.lint.checks.HardcodedValuesDetector
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import java.io.StringWriter
+
+class LintDetectorProfilerTest {
+    @Test
+    fun testProfile() {
+        val profiler = LintDetectorProfiler()
+        val detector = HardcodedValuesDetector()
+        for (i in 0 until 3) {
+            profiler.measure(detector, "visitAttribute", Runnable { })
+        }
+        profiler.measure(detector, "afterCheckFile", Runnable { Thread.sleep(5) })
+
+        val writer = StringWriter()
+        profiler.write(writer, BuiltinIssueRegistry())
+        val profile = writer.toString()
+
+        // Only the slow invocation is included in the trace
+        assertThat(profile).contains(
+            "{\"name\": \"afterCheckFile\", \"cat\": \"HardcodedValuesDetector\", \"ph\": \"X\""
+        )
+        assertThat(profile).doesNotContain("{\"name\": \"visitAttribute\"")
+
+        assertThat(profile).contains(
+            "\"detector\": \"com.android.tools.lint.checks.HardcodedValuesDetector\""
+        )
+        assertThat(profile).contains("\"issues\": [\"HardcodedText\"]")
+        assertThat(profile).contains("\"count\": 4")
+        assertThat(profile).contains("{\"callback\": \"visitAttribute\", \"count\": 3")
+        assertThat(profile).contains("{\"callback\": \"afterCheckFile\", \"count\": 1")
+    }
+}
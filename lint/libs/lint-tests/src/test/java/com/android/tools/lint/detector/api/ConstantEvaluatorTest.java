@@ -367,6 +367,23 @@ public class ConstantEvaluatorTest extends TestCase {
         checkExpression(-4, "3 - (MY_INT_FIELD + 2)");
     }
 
+    public void testFieldInitializers() {
+        // Static final field which isn't a compile time constant; the second reference
+        // uses the cached initializer value
+        @Language("JAVA")
+        String source =
+                ""
+                        + "package test.pkg;\n"
+                        + "public class Test {\n"
+                        + "    public void test() {\n"
+                        + "        int size = ARRAY_SIZE + ARRAY_SIZE;\n"
+                        + "    }\n"
+                        + "    public static final int ARRAY_SIZE = new int[] { 1, 2, 3 }.length;\n"
+                        + "}\n";
+
+        check(6, source, "size");
+    }
+
     public void testStatements() {
         checkStatements(
                 9,
@@ -36,7 +36,9 @@ import java.util.concurrent.ExecutionException;
  *
  * It is implicitly incremental, shards (which correspond to type directories for resource files,
  * eg. layout-land) are created or loaded only when the output files that they store are changed,
- * and only the changed files are written when {@link #write()} is called.
+ * and only the changed files are written when {@link #write()} is called. Loading a shard of
+ * merged files only reads the list of files that it contains, the positions of a file are decoded
+ * the first time they are looked up.
  *
  * For its use by MergeWriter, it uses ConcurrentMaps internally, so it is safe to perform any log
  * operation from any thread.
@@ -62,7 +64,7 @@ public class MergingLog {
                         @Override
                         public Map<SourceFile, Map<SourcePosition, SourceFilePosition>> load(
                                 String shard) throws Exception {
-                            return MergingLogPersistUtil.loadFromMultiFileVersion2(
+                            return MergingLogPersistUtil.loadFromMultiFileVersion3(
                                     mOutputFolder, shard);
                         }
                     };
@@ -259,7 +261,7 @@ public class MergingLog {
         // will be saved. Empty map will result in the deletion of the file.
         for (Map.Entry<String, Map<SourceFile, Map<SourcePosition, SourceFilePosition>>> entry :
                 mMergedFileMaps.asMap().entrySet()) {
-            MergingLogPersistUtil.saveToMultiFileVersion2(
+            MergingLogPersistUtil.saveToMultiFileVersion3(
                     mOutputFolder, entry.getKey(), entry.getValue());
         }
         for (Map.Entry<String, Map<SourceFile, SourceFile>> entry :
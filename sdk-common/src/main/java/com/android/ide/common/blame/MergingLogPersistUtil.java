@@ -18,8 +18,10 @@ package com.android.ide.common.blame;
 
 import static com.android.SdkConstants.DOT_JSON;
 
+import com.android.SdkConstants;
 import com.android.annotations.NonNull;
 import com.android.ide.common.blame.MergingLogPersistUtil.SourcePositionsSerializer.Kind;
+import com.android.utils.FileUtils;
 import com.android.utils.Pair;
 import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
@@ -32,6 +34,10 @@ import com.google.gson.stream.JsonWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -100,6 +106,10 @@ public class MergingLogPersistUtil {
         return new File(new File(folder, "multi-v2"), shard + DOT_JSON);
     }
 
+    private static File getMultiFileVersion3(File folder, String shard) {
+        return new File(new File(folder, "multi-v3"), shard + ".bin");
+    }
+
     private static File getSingleFile(File folder, String shard) {
         return new File (new File(folder, "single"), shard + DOT_JSON);
     }
@@ -504,6 +514,63 @@ public class MergingLogPersistUtil {
                         : positions.get(START_OFFSETS).get(index));
     }
 
+    /**
+     * Saves the merged file maps of a shard in the binary format of {@link MergingLogShardFormat},
+     * and deletes the version 2 file of the shard, if any. An empty map deletes the shard.
+     *
+     * <p>The file is replaced atomically, as the previous version of it may still be mapped by
+     * {@link #loadFromMultiFileVersion3(File, String)}.
+     */
+    static void saveToMultiFileVersion3(
+            @NonNull File folder,
+            @NonNull String shard,
+            @NonNull Map<SourceFile, Map<SourcePosition, SourceFilePosition>> map)
+            throws IOException {
+        FileUtils.deleteIfExists(getMultiFile(folder, shard));
+        File file = getMultiFileVersion3(folder, shard);
+        if (map.isEmpty()) {
+            FileUtils.deleteIfExists(file);
+            return;
+        }
+        byte[] bytes = MergingLogShardFormat.write(map);
+        FileUtils.mkdirs(file.getParentFile());
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(bytes, tempFile);
+        java.nio.file.Files.move(
+                tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads the merged file maps of a shard saved by {@link #saveToMultiFileVersion3(File, String,
+     * Map)}, falling back to the version 2 format for logs written by older versions.
+     *
+     * <p>The file is memory-mapped, except on Windows where a mapped file could not be replaced,
+     * and the positions of each output file are only decoded when they are first looked up.
+     */
+    @NonNull
+    static Map<SourceFile, Map<SourcePosition, SourceFilePosition>> loadFromMultiFileVersion3(
+            @NonNull File folder, @NonNull String shard) {
+        File file = getMultiFileVersion3(folder, shard);
+        if (!file.exists()) {
+            return loadFromMultiFileVersion2(folder, shard);
+        }
+        try {
+            ByteBuffer buffer;
+            if (SdkConstants.currentPlatform() == SdkConstants.PLATFORM_WINDOWS) {
+                buffer = ByteBuffer.wrap(Files.toByteArray(file));
+            } else {
+                try (FileChannel channel =
+                        FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            return MergingLogShardFormat.read(buffer, file.getPath());
+        } catch (IOException e) {
+            // TODO: trigger a non-incremental merge if this happens.
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * File format for single file blame.
      * <pre>[
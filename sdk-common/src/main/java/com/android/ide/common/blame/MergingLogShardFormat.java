@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ide.common.blame;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary format of the merged file maps of a {@link MergingLog} shard.
+ *
+ * <pre>
+ * header:      int magic, int version, int stringCount, int sourceFileCount, int outputCount
+ * strings:     int[stringCount + 1] absolute offsets of the UTF-8 bytes of each string
+ * sourceFiles: (int path, int description)[sourceFileCount], string indexes or -1 for null
+ * outputs:     (int sourceFile, int blockOffset, int entryCount)[outputCount]
+ * string bytes
+ * blocks:      for each output file, the entries of its map
+ * </pre>
+ *
+ * All the fixed size parts are addressed by absolute offsets, so a shard can be read from a
+ * memory-mapped file, and the map of one output file is only decoded when it is first accessed.
+ *
+ * <p>Each block entry is a sequence of zigzag-encoded varints: the source file index, then the
+ * merged ("to") position and the original ("from") position. A position is encoded as its start
+ * line and offset relative to the previous position of the same kind in the block, its start
+ * column, and its end line, column and offset relative to its start, so that typical entries
+ * only take a few bytes.
+ */
+final class MergingLogShardFormat {
+
+    private static final int MAGIC = 0x4d4c4f47; // "MLOG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private MergingLogShardFormat() {}
+
+    /** Encodes the merged file maps of a shard. */
+    @NonNull
+    static byte[] write(@NonNull Map<SourceFile, Map<SourcePosition, SourceFilePosition>> map)
+            throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        Map<SourceFile, Integer> sourceFiles = new LinkedHashMap<>();
+        List<int[]> outputs = new ArrayList<>(map.size());
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+
+        for (Map.Entry<SourceFile, Map<SourcePosition, SourceFilePosition>> entry :
+                map.entrySet()) {
+            int outputFile = intern(sourceFiles, strings, entry.getKey());
+            Map<SourcePosition, SourceFilePosition> mappings = entry.getValue();
+            outputs.add(new int[] {outputFile, blocks.size(), mappings.size()});
+
+            SourcePosition previousTo = SourcePosition.UNKNOWN;
+            SourcePosition previousFrom = SourcePosition.UNKNOWN;
+            for (Map.Entry<SourcePosition, SourceFilePosition> mapping : mappings.entrySet()) {
+                SourcePosition to = mapping.getKey();
+                SourcePosition from = mapping.getValue().getPosition();
+                writeVarInt(blocks, intern(sourceFiles, strings, mapping.getValue().getFile()));
+                writePosition(blocks, to, previousTo);
+                writePosition(blocks, from, previousFrom);
+                previousTo = to;
+                previousFrom = from;
+            }
+        }
+
+        List<byte[]> stringBytes = new ArrayList<>(strings.size());
+        int stringsSize = 0;
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(Charsets.UTF_8);
+            stringBytes.add(bytes);
+            stringsSize += bytes.length;
+        }
+
+        int stringDataOffset =
+                HEADER_SIZE
+                        + 4 * (strings.size() + 1)
+                        + 8 * sourceFiles.size()
+                        + 12 * outputs.size();
+        int blocksOffset = stringDataOffset + stringsSize;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(blocksOffset + blocks.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(strings.size());
+        out.writeInt(sourceFiles.size());
+        out.writeInt(outputs.size());
+        int stringOffset = stringDataOffset;
+        for (byte[] string : stringBytes) {
+            out.writeInt(stringOffset);
+            stringOffset += string.length;
+        }
+        out.writeInt(stringOffset);
+        for (SourceFile sourceFile : sourceFiles.keySet()) {
+            File file = sourceFile.getSourceFile();
+            String description = sourceFile.getDescription();
+            out.writeInt(file != null ? strings.get(file.getAbsolutePath()) : -1);
+            out.writeInt(description != null ? strings.get(description) : -1);
+        }
+        for (int[] output : outputs) {
+            out.writeInt(output[0]);
+            out.writeInt(blocksOffset + output[1]);
+            out.writeInt(output[2]);
+        }
+        for (byte[] string : stringBytes) {
+            out.write(string);
+        }
+        blocks.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the merged file maps of a shard from the given buffer, which must not be modified
+     * afterwards. Only the table of output files is decoded eagerly.
+     */
+    @NonNull
+    static Map<SourceFile, Map<SourcePosition, SourceFilePosition>> read(
+            @NonNull ByteBuffer buffer, @NonNull String source) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(String.format("Malformed log file : %s", source));
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(
+                    String.format(
+                            "Unsupported log file version %d : %s", buffer.getInt(4), source));
+        }
+        Shard shard = new Shard(buffer);
+        Map<SourceFile, Map<SourcePosition, SourceFilePosition>> map =
+                Maps.newConcurrentMap();
+        int outputs = shard.outputsOffset();
+        for (int i = 0; i < buffer.getInt(16); i++) {
+            int entry = outputs + 12 * i;
+            map.put(
+                    shard.getSourceFile(buffer.getInt(entry)),
+                    new LazyPositionMap(
+                            shard, buffer.getInt(entry + 4), buffer.getInt(entry + 8)));
+        }
+        return map;
+    }
+
+    private static int intern(
+            @NonNull Map<SourceFile, Integer> sourceFiles,
+            @NonNull Map<String, Integer> strings,
+            @NonNull SourceFile sourceFile) {
+        Integer index = sourceFiles.get(sourceFile);
+        if (index == null) {
+            File file = sourceFile.getSourceFile();
+            if (file != null) {
+                strings.putIfAbsent(file.getAbsolutePath(), strings.size());
+            }
+            if (sourceFile.getDescription() != null) {
+                strings.putIfAbsent(sourceFile.getDescription(), strings.size());
+            }
+            index = sourceFiles.size();
+            sourceFiles.put(sourceFile, index);
+        }
+        return index;
+    }
+
+    private static void writePosition(
+            @NonNull ByteArrayOutputStream out,
+            @NonNull SourcePosition position,
+            @NonNull SourcePosition previous) {
+        writeVarInt(out, position.getStartLine() - previous.getStartLine());
+        writeVarInt(out, position.getStartColumn());
+        writeVarInt(out, position.getStartOffset() - previous.getStartOffset());
+        writeVarInt(out, position.getEndLine() - position.getStartLine());
+        writeVarInt(out, position.getEndColumn() - position.getStartColumn());
+        writeVarInt(out, position.getEndOffset() - position.getStartOffset());
+    }
+
+    private static void writeVarInt(@NonNull ByteArrayOutputStream out, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7f) != 0) {
+            out.write((zigzag & 0x7f) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.write(zigzag);
+    }
+
+    /** The shared tables of a shard, decoding strings and source files on demand. */
+    private static final class Shard {
+        @NonNull private final ByteBuffer mBuffer;
+        @NonNull private final SourceFile[] mSourceFiles;
+
+        Shard(@NonNull ByteBuffer buffer) {
+            mBuffer = buffer;
+            mSourceFiles = new SourceFile[buffer.getInt(12)];
+        }
+
+        private int sourceFilesOffset() {
+            return HEADER_SIZE + 4 * (mBuffer.getInt(8) + 1);
+        }
+
+        int outputsOffset() {
+            return sourceFilesOffset() + 8 * mSourceFiles.length;
+        }
+
+        @NonNull
+        synchronized SourceFile getSourceFile(int index) {
+            SourceFile sourceFile = mSourceFiles[index];
+            if (sourceFile == null) {
+                int entry = sourceFilesOffset() + 8 * index;
+                String path = getString(mBuffer.getInt(entry));
+                String description = getString(mBuffer.getInt(entry + 4));
+                if (path != null) {
+                    sourceFile =
+                            description != null
+                                    ? new SourceFile(new File(path), description)
+                                    : new SourceFile(new File(path));
+                } else {
+                    sourceFile =
+                            description != null ? new SourceFile(description) : SourceFile.UNKNOWN;
+                }
+                mSourceFiles[index] = sourceFile;
+            }
+            return sourceFile;
+        }
+
+        @Nullable
+        private String getString(int index) {
+            if (index < 0) {
+                return null;
+            }
+            int start = mBuffer.getInt(HEADER_SIZE + 4 * index);
+            int end = mBuffer.getInt(HEADER_SIZE + 4 * (index + 1));
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = mBuffer.duplicate();
+            slice.position(start);
+            slice.get(bytes);
+            return new String(bytes, Charsets.UTF_8);
+        }
+
+        @NonNull
+        Map<SourcePosition, SourceFilePosition> decode(int offset, int count) {
+            ByteBuffer in = mBuffer.duplicate();
+            in.position(offset);
+            Map<SourcePosition, SourceFilePosition> map =
+                    Maps.newLinkedHashMapWithExpectedSize(count);
+            SourcePosition previousTo = SourcePosition.UNKNOWN;
+            SourcePosition previousFrom = SourcePosition.UNKNOWN;
+            for (int i = 0; i < count; i++) {
+                SourceFile sourceFile = getSourceFile(readVarInt(in));
+                SourcePosition to = readPosition(in, previousTo);
+                SourcePosition from = readPosition(in, previousFrom);
+                map.put(to, new SourceFilePosition(sourceFile, from));
+                previousTo = to;
+                previousFrom = from;
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        @NonNull
+        private static SourcePosition readPosition(
+                @NonNull ByteBuffer in, @NonNull SourcePosition previous) {
+            int startLine = previous.getStartLine() + readVarInt(in);
+            int startColumn = readVarInt(in);
+            int startOffset = previous.getStartOffset() + readVarInt(in);
+            return new SourcePosition(
+                    startLine,
+                    startColumn,
+                    startOffset,
+                    startLine + readVarInt(in),
+                    startColumn + readVarInt(in),
+                    startOffset + readVarInt(in));
+        }
+
+        private static int readVarInt(@NonNull ByteBuffer in) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.get();
+                zigzag |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+
+    /**
+     * The map of positions of one output file, decoded from its block the first time it is
+     * accessed.
+     */
+    private static final class LazyPositionMap
+            extends AbstractMap<SourcePosition, SourceFilePosition> {
+        @NonNull private final Shard mShard;
+        private final int mOffset;
+        private final int mCount;
+        @Nullable private volatile Map<SourcePosition, SourceFilePosition> mMap;
+
+        LazyPositionMap(@NonNull Shard shard, int offset, int count) {
+            mShard = shard;
+            mOffset = offset;
+            mCount = count;
+        }
+
+        @NonNull
+        private Map<SourcePosition, SourceFilePosition> getMap() {
+            Map<SourcePosition, SourceFilePosition> map = mMap;
+            if (map == null) {
+                synchronized (this) {
+                    map = mMap;
+                    if (map == null) {
+                        map = mShard.decode(mOffset, mCount);
+                        mMap = map;
+                    }
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public int size() {
+            return mCount;
+        }
+
+        @Override
+        public SourceFilePosition get(Object key) {
+            return getMap().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return getMap().containsKey(key);
+        }
+
+        @NonNull
+        @Override
+        public Set<Entry<SourcePosition, SourceFilePosition>> entrySet() {
+            return getMap().entrySet();
+        }
+    }
+}
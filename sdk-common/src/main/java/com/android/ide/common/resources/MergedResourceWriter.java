@@ -49,7 +49,9 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -96,6 +98,12 @@ public class MergedResourceWriter
      */
     private Set<String> mQualifierWithDeletedValues;
 
+    /**
+     * Files to generate with the preprocessor, by original file. They are generated in batches of
+     * {@link #GENERATED_FILES_BATCH_SIZE} original files once all the items have been added.
+     */
+    private ListMultimap<File, File> mGeneratedFiles;
+
     /**
      * Futures we are waiting for...
      */
@@ -128,6 +136,12 @@ public class MergedResourceWriter
      */
     private final Properties mCompiledFileMap;
 
+    /**
+     * Maximum number of original files generated by one work action. Batches let the preprocessor
+     * share work across files, e.g. image buffers, while still spreading them over the workers.
+     */
+    private static final int GENERATED_FILES_BATCH_SIZE = 16;
+
     @NonNull
     private final ConcurrentLinkedQueue<CompileResourceRequest> mCompileResourceRequests =
             new ConcurrentLinkedQueue<>();
@@ -233,6 +247,7 @@ public class MergedResourceWriter
         super.start(factory);
         mValuesResMap = ArrayListMultimap.create();
         mQualifierWithDeletedValues = Sets.newHashSet();
+        mGeneratedFiles = ArrayListMultimap.create();
         mFactory = factory;
     }
 
@@ -331,6 +346,7 @@ public class MergedResourceWriter
 
         mValuesResMap = null;
         mQualifierWithDeletedValues = null;
+        mGeneratedFiles = null;
         mFactory = null;
 
         try (FileWriter fw = new FileWriter(mCompiledFileMapFile)) {
@@ -363,17 +379,8 @@ public class MergedResourceWriter
                 File file = item.getFile();
                 String folderName = getFolderName(item);
 
-                // TODO : make this also a request and use multi-threading for generation.
                 if (type == DataFile.FileType.GENERATED_FILES) {
-                    try {
-                        FileGenerationParameters workItem =
-                                new FileGenerationParameters(item, mPreprocessor);
-                        if (workItem.resourceItem.getSourceFile() != null) {
-                            getExecutor().submit(FileGenerationWorkAction.class, workItem);
-                        }
-                    } catch (Exception e) {
-                        throw new ConsumerException(e, item.getSourceFile().getFile());
-                    }
+                    mGeneratedFiles.put(item.getSourceFile().getFile(), file);
                 }
 
                 // enlist a new crunching request.
@@ -383,13 +390,35 @@ public class MergedResourceWriter
         }
     }
 
+    /** Submits the generation of the files of {@link #mGeneratedFiles}, in batches. */
+    private void submitFileGeneration() throws ConsumerException {
+        List<File> originals = new ArrayList<>(mGeneratedFiles.keySet());
+        for (List<File> batch : Lists.partition(originals, GENERATED_FILES_BATCH_SIZE)) {
+            LinkedHashMap<File, ArrayList<File>> toBeGenerated = new LinkedHashMap<>();
+            for (File original : batch) {
+                toBeGenerated.put(original, new ArrayList<>(mGeneratedFiles.get(original)));
+            }
+            try {
+                getExecutor()
+                        .submit(
+                                FileGenerationWorkAction.class,
+                                new FileGenerationParameters(toBeGenerated, mPreprocessor));
+            } catch (Exception e) {
+                throw new ConsumerException(e, batch.get(0));
+            }
+        }
+        mGeneratedFiles.clear();
+    }
+
     public static class FileGenerationParameters implements Serializable {
-        public final ResourceMergerItem resourceItem;
+        /** The files to generate, by original file. */
+        public final LinkedHashMap<File, ArrayList<File>> toBeGenerated;
         public final ResourcePreprocessor resourcePreprocessor;
 
         private FileGenerationParameters(
-                ResourceMergerItem resourceItem, ResourcePreprocessor resourcePreprocessor) {
-            this.resourceItem = resourceItem;
+                LinkedHashMap<File, ArrayList<File>> toBeGenerated,
+                ResourcePreprocessor resourcePreprocessor) {
+            this.toBeGenerated = toBeGenerated;
             this.resourcePreprocessor = resourcePreprocessor;
         }
     }
@@ -406,16 +435,10 @@ public class MergedResourceWriter
         @Override
         public void run() {
             try {
-                workItem.resourcePreprocessor.generateFile(
-                        workItem.resourceItem.getFile(),
-                        workItem.resourceItem.getSourceFile().getFile());
+                workItem.resourcePreprocessor.generateFiles(workItem.toBeGenerated);
             } catch (Exception e) {
-                throw new RuntimeException(
-                        "Error while processing "
-                                + workItem.resourceItem.getSourceFile().getFile()
-                                + " : "
-                                + e.getMessage(),
-                        e);
+                // The preprocessor reports which original file failed.
+                throw new RuntimeException(e.getMessage(), e);
             }
         }
     }
@@ -458,6 +481,8 @@ public class MergedResourceWriter
 
     @Override
     protected void postWriteAction() throws ConsumerException {
+        // Generate files while the values files are written, end() waits for them.
+        submitFileGeneration();
 
         /*
          * Create a temporary directory where merged XML files are placed before being processed
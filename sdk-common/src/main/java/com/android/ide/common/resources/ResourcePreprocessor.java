@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Provides functionality the resource merger needs for preprocessing resources during merge.
@@ -36,4 +37,26 @@ public interface ResourcePreprocessor extends Serializable {
 
     /** Actually generate the file based on the original file. */
     void generateFile(@NonNull File toBeGenerated, @NonNull File original) throws IOException;
+
+    /**
+     * Generates a batch of files, given by original file. Implementations can share work across
+     * the files of an original file and across the batch. The default implementation calls {@link
+     * #generateFile(File, File)} for each file.
+     *
+     * @throws IOException if a file could not be generated, with the original file in its message
+     */
+    default void generateFiles(@NonNull Map<File, ? extends Collection<File>> toBeGenerated)
+            throws IOException {
+        for (Map.Entry<File, ? extends Collection<File>> entry : toBeGenerated.entrySet()) {
+            File original = entry.getKey();
+            try {
+                for (File file : entry.getValue()) {
+                    generateFile(file, original);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new IOException(
+                        "Error while processing " + original + " : " + e.getMessage(), e);
+            }
+        }
+    }
 }
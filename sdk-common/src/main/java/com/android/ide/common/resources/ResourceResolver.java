@@ -41,6 +41,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
@@ -51,6 +52,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -81,6 +83,13 @@ public class ResourceResolver extends RenderResources {
     private final Map<ResourceReference, StyleResourceValue> mStyleInheritanceMap = new HashMap<>();
     private final Multimap<ResourceReference, StyleResourceValue> mReverseStyleInheritanceMap =
             HashMultimap.create();
+    /**
+     * Flattened inheritance chains: the ancestors of each style, from its parent up, computed on
+     * demand from {@link #mStyleInheritanceMap}, and cleared whenever that map changes. Concurrent
+     * since it is filled while resolving, which may happen on several threads at once.
+     */
+    private final Map<ResourceReference, StyleResourceValue[]> mStyleAncestors =
+            new ConcurrentHashMap<>();
 
     @Nullable private final StyleResourceValue mDefaultTheme;
 
@@ -266,6 +275,7 @@ public class ResourceResolver extends RenderResources {
             if (from != null && to != null) {
                 mStyleInheritanceMap.put(from.asReference(), to);
                 mReverseStyleInheritanceMap.clear();
+                mStyleAncestors.clear();
             }
         }
     }
@@ -365,18 +375,22 @@ public class ResourceResolver extends RenderResources {
     @Nullable
     public StyleItemResourceValue findItemInStyle(
             @NonNull StyleResourceValue style, @NonNull ResourceReference attr) {
-        for (int depth = 0; depth < MAX_RESOURCE_INDIRECTION; depth++) {
-            StyleItemResourceValue item = style.getItem(attr);
+        StyleItemResourceValue item = style.getItem(attr);
+        if (item != null) {
+            return item;
+        }
 
+        // If we didn't find it, we look in the parent styles (if applicable).
+        StyleResourceValue[] ancestors = getStyleAncestors(style);
+        for (int depth = 0; depth < ancestors.length && depth < MAX_RESOURCE_INDIRECTION - 1;
+                depth++) {
+            item = ancestors[depth].getItem(attr);
             if (item != null) {
                 return item;
             }
-
-            // If we didn't find it, we look in the parent style (if applicable).
-            style = mStyleInheritanceMap.get(style.asReference());
-            if (style == null) {
-                return null;
-            }
+        }
+        if (ancestors.length < MAX_RESOURCE_INDIRECTION) {
+            return null;
         }
 
         if (mLogger != null) {
@@ -384,7 +398,7 @@ public class ResourceResolver extends RenderResources {
                     LayoutLog.TAG_BROKEN,
                     String.format(
                             "Cyclic style parent definitions: %1$s",
-                            computeCyclicStyleChain(style)),
+                            computeCyclicStyleChain(ancestors[MAX_RESOURCE_INDIRECTION - 1])),
                     null,
                     null,
                     null);
@@ -393,6 +407,27 @@ public class ResourceResolver extends RenderResources {
         return null;
     }
 
+    /**
+     * Returns the ancestors of the given style, starting with its parent. At most {@link
+     * #MAX_RESOURCE_INDIRECTION} ancestors are returned, so that cyclic definitions end.
+     */
+    @NonNull
+    private StyleResourceValue[] getStyleAncestors(@NonNull StyleResourceValue style) {
+        ResourceReference reference = style.asReference();
+        StyleResourceValue[] ancestors = mStyleAncestors.get(reference);
+        if (ancestors == null) {
+            List<StyleResourceValue> chain = new ArrayList<>();
+            StyleResourceValue parent = mStyleInheritanceMap.get(reference);
+            while (parent != null && chain.size() < MAX_RESOURCE_INDIRECTION) {
+                chain.add(parent);
+                parent = mStyleInheritanceMap.get(parent.asReference());
+            }
+            ancestors = chain.toArray(new StyleResourceValue[0]);
+            mStyleAncestors.put(reference, ancestors);
+        }
+        return ancestors;
+    }
+
     @NonNull
     private String computeCyclicStyleChain(@NonNull StyleResourceValue style) {
         StringBuilder result = new StringBuilder(100);
@@ -615,6 +650,7 @@ public class ResourceResolver extends RenderResources {
         // setDeviceDefault will be lost. Set mDeviceDefaultParent to null so when setDeviceDefault
         // is called again, it knows that it needs to modify the inheritance map again.
         mDeviceDefaultParent = null;
+        mStyleAncestors.clear();
 
         for (Map<ResourceType, ResourceValueMap> mapForNamespace : mResources.values()) {
             ResourceValueMap styles = mapForNamespace.get(ResourceType.STYLE);
@@ -27,6 +27,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -68,9 +69,34 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
 
     private static final ResourceQualifier[] NULL_QUALIFIERS = new ResourceQualifier[INDEX_COUNT];
 
+    /**
+     * Configurations parsed from qualifier strings, keyed by qualifier string. They are never
+     * exposed, only copied, since configurations are mutable.
+     */
+    private static final Map<String, FolderConfiguration> PARSED_CONFIGS =
+            new ConcurrentHashMap<>();
+
+    /** Maximum size of {@link #PARSED_CONFIGS}, which is cleared when it is reached. */
+    private static final int MAX_PARSED_CONFIGS = 4096;
+
+    /** Marks invalid qualifier strings in {@link #PARSED_CONFIGS}. */
+    private static final FolderConfiguration INVALID_CONFIG;
+
     private final ResourceQualifier[] mQualifiers;
     @Nullable private String mQualifierString; // Evaluated lazily.
 
+    /*
+     * Bitmasks of qualifier indices, evaluated lazily by computeMasks() and used to compare
+     * configurations without going through all the qualifiers:
+     * - present: the qualifier is not null,
+     * - set: the qualifier is not null and not the null qualifier of its index,
+     * - valued: the qualifier is not null and not equal to its null qualifier.
+     */
+    private transient int mPresentMask;
+    private transient int mSetMask;
+    private transient int mValuedMask;
+    private transient volatile boolean mMasksComputed;
+
     static {
         // get the default qualifiers.
         FolderConfiguration defaultConfig = createDefault();
@@ -78,6 +104,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         for (int i = 0; i < DEFAULT_QUALIFIERS.length; i++) {
             NULL_QUALIFIERS[i] = DEFAULT_QUALIFIERS[i].getNullQualifier();
         }
+        INVALID_CONFIG = new FolderConfiguration();
     }
 
     public FolderConfiguration() {
@@ -433,7 +460,14 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
      */
     @Nullable
     public static FolderConfiguration getConfigForFolder(@NonNull String folderName) {
-        return getConfig(QUALIFIER_SPLITTER.split(folderName));
+        int dash = folderName.indexOf('-');
+        if (dash < 0) {
+            return new FolderConfiguration();
+        }
+        if (dash == folderName.length() - 1) {
+            return null; // Empty qualifier, not a valid folder configuration
+        }
+        return getCachedConfig(folderName.substring(dash + 1));
     }
 
     /**
@@ -457,8 +491,42 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         if (qualifierString.isEmpty()) {
             return new FolderConfiguration();
         } else {
-            return getConfigFromQualifiers(QUALIFIER_SPLITTER.split(qualifierString));
+            return getCachedConfig(qualifierString);
+        }
+    }
+
+    /**
+     * Returns a copy of the configuration parsed from the given non-empty qualifier string,
+     * parsing it only if it was not parsed before.
+     */
+    @Nullable
+    private static FolderConfiguration getCachedConfig(@NonNull String qualifierString) {
+        FolderConfiguration parsed = PARSED_CONFIGS.get(qualifierString);
+        if (parsed == null) {
+            parsed = getConfigFromQualifiers(QUALIFIER_SPLITTER.split(qualifierString));
+            if (parsed == null) {
+                parsed = INVALID_CONFIG;
+            } else {
+                // Evaluate the lazy values once, for all the copies.
+                parsed.getQualifierString();
+                parsed.computeMasks();
+            }
+            if (PARSED_CONFIGS.size() >= MAX_PARSED_CONFIGS) {
+                PARSED_CONFIGS.clear();
+            }
+            PARSED_CONFIGS.put(qualifierString, parsed);
+        }
+        if (parsed == INVALID_CONFIG) {
+            return null;
         }
+
+        FolderConfiguration copy = new FolderConfiguration(parsed.mQualifiers);
+        copy.mQualifierString = parsed.mQualifierString;
+        copy.mPresentMask = parsed.mPresentMask;
+        copy.mSetMask = parsed.mSetMask;
+        copy.mValuedMask = parsed.mValuedMask;
+        copy.mMasksComputed = true;
+        return copy;
     }
 
     /**
@@ -494,7 +562,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
                 ResourceQualifier q = config.mQualifiers[i];
                 if (!nonFakeValuesOnly || q == null || !q.hasFakeValue()) {
                     mQualifiers[i] = q;
-                    mQualifierString = null;
+                    clearCachedValues();
                 }
             }
         }
@@ -505,9 +573,44 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
      */
     public void reset() {
         System.arraycopy(NULL_QUALIFIERS, 0, mQualifiers, 0, INDEX_COUNT);
+        clearCachedValues();
         mQualifierString = "";
     }
 
+    /** Must be called whenever qualifiers change, to clear the values derived from them. */
+    private void clearCachedValues() {
+        mQualifierString = null;
+        mMasksComputed = false;
+    }
+
+    /** Computes the qualifier masks, unless they are already computed. */
+    private void computeMasks() {
+        if (mMasksComputed) {
+            return;
+        }
+        int present = 0;
+        int set = 0;
+        int valued = 0;
+        for (int i = 0; i < INDEX_COUNT; i++) {
+            ResourceQualifier qualifier = mQualifiers[i];
+            if (qualifier == null) {
+                continue;
+            }
+            present |= 1 << i;
+            if (qualifier != NULL_QUALIFIERS[i]) {
+                set |= 1 << i;
+            }
+            if (!qualifier.equals(qualifier.getNullQualifier())) {
+                valued |= 1 << i;
+            }
+        }
+        mPresentMask = present;
+        mSetMask = set;
+        mValuedMask = valued;
+        // Publishes the masks written above.
+        mMasksComputed = true;
+    }
+
     /**
      * Removes the qualifiers from the receiver if they are present (and valid)
      * in the given configuration.
@@ -516,7 +619,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         for (int i = 0; i < INDEX_COUNT; i++) {
             if (ResourceQualifier.isValid(config.mQualifiers[i])) {
                 mQualifiers[i] = NULL_QUALIFIERS[i];
-                mQualifierString = null;
+                clearCachedValues();
             }
         }
     }
@@ -529,7 +632,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         for (int i = 0; i < INDEX_COUNT; i++) {
             if (config.mQualifiers[i] != NULL_QUALIFIERS[i]) {
                 mQualifiers[i] = config.mQualifiers[i];
-                mQualifierString = null;
+                clearCachedValues();
             }
         }
     }
@@ -602,7 +705,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         } else if (qualifier instanceof VersionQualifier) {
             mQualifiers[INDEX_VERSION] = qualifier;
         }
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     /**
@@ -613,7 +716,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         for (int i = 0; i < INDEX_COUNT; i++) {
             if (mQualifiers[i] == qualifier) {
                 mQualifiers[i] = NULL_QUALIFIERS[i];
-                mQualifierString = null;
+                clearCachedValues();
                 return;
             }
         }
@@ -657,7 +760,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setCountryCodeQualifier(CountryCodeQualifier qualifier) {
         mQualifiers[INDEX_COUNTRY_CODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_COUNTRY_CODE]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -668,7 +771,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setNetworkCodeQualifier(NetworkCodeQualifier qualifier) {
         mQualifiers[INDEX_NETWORK_CODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_NETWORK_CODE]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -679,7 +782,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setLocaleQualifier(LocaleQualifier qualifier) {
         mQualifiers[INDEX_LOCALE] = qualifier == null ? NULL_QUALIFIERS[INDEX_LOCALE]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -690,7 +793,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setLayoutDirectionQualifier(LayoutDirectionQualifier qualifier) {
         mQualifiers[INDEX_LAYOUT_DIR] = qualifier == null ? NULL_QUALIFIERS[INDEX_LAYOUT_DIR]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -702,7 +805,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         mQualifiers[INDEX_SMALLEST_SCREEN_WIDTH] = qualifier == null ? NULL_QUALIFIERS
                 [INDEX_SMALLEST_SCREEN_WIDTH]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -713,7 +816,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setScreenWidthQualifier(ScreenWidthQualifier qualifier) {
         mQualifiers[INDEX_SCREEN_WIDTH] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_WIDTH]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -724,7 +827,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setScreenHeightQualifier(ScreenHeightQualifier qualifier) {
         mQualifiers[INDEX_SCREEN_HEIGHT] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_HEIGHT]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -735,7 +838,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setScreenSizeQualifier(ScreenSizeQualifier qualifier) {
         mQualifiers[INDEX_SCREEN_LAYOUT_SIZE] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_SCREEN_LAYOUT_SIZE] : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -746,7 +849,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setScreenRatioQualifier(ScreenRatioQualifier qualifier) {
         mQualifiers[INDEX_SCREEN_RATIO] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_RATIO]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -757,7 +860,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setScreenRoundQualifier(ScreenRoundQualifier qualifier) {
         mQualifiers[INDEX_SCREEN_ROUND] = qualifier == null ? NULL_QUALIFIERS[INDEX_SCREEN_ROUND]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -768,7 +871,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setWideColorGamutQualifier(WideGamutColorQualifier qualifier) {
         mQualifiers[INDEX_WIDE_COLOR_GAMUT] =
                 qualifier == null ? NULL_QUALIFIERS[INDEX_WIDE_COLOR_GAMUT] : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -779,7 +882,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setHighDynamicRangeQualifier(HighDynamicRangeQualifier qualifier) {
         mQualifiers[INDEX_HIGH_DYNAMIC_RANGE] =
                 qualifier == null ? NULL_QUALIFIERS[INDEX_HIGH_DYNAMIC_RANGE] : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -790,7 +893,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setScreenOrientationQualifier(ScreenOrientationQualifier qualifier) {
         mQualifiers[INDEX_SCREEN_ORIENTATION] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_SCREEN_ORIENTATION] : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -801,7 +904,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setUiModeQualifier(UiModeQualifier qualifier) {
         mQualifiers[INDEX_UI_MODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_UI_MODE]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -812,7 +915,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setNightModeQualifier(NightModeQualifier qualifier) {
         mQualifiers[INDEX_NIGHT_MODE] = qualifier == null ? NULL_QUALIFIERS[INDEX_NIGHT_MODE]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -823,7 +926,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setDensityQualifier(DensityQualifier qualifier) {
         mQualifiers[INDEX_PIXEL_DENSITY] = qualifier == null ? NULL_QUALIFIERS[INDEX_PIXEL_DENSITY]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -834,7 +937,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setTouchTypeQualifier(TouchScreenQualifier qualifier) {
         mQualifiers[INDEX_TOUCH_TYPE] = qualifier == null ? NULL_QUALIFIERS[INDEX_TOUCH_TYPE]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -845,7 +948,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setKeyboardStateQualifier(KeyboardStateQualifier qualifier) {
         mQualifiers[INDEX_KEYBOARD_STATE] = qualifier == null ? NULL_QUALIFIERS[INDEX_KEYBOARD_STATE]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -856,7 +959,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setTextInputMethodQualifier(TextInputMethodQualifier qualifier) {
         mQualifiers[INDEX_TEXT_INPUT_METHOD] = qualifier == null ? NULL_QUALIFIERS[INDEX_TEXT_INPUT_METHOD]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -867,7 +970,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setNavigationStateQualifier(NavigationStateQualifier qualifier) {
         mQualifiers[INDEX_NAVIGATION_STATE] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_NAVIGATION_STATE] : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -878,7 +981,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setNavigationMethodQualifier(NavigationMethodQualifier qualifier) {
         mQualifiers[INDEX_NAVIGATION_METHOD] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_NAVIGATION_METHOD] : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -889,7 +992,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setScreenDimensionQualifier(ScreenDimensionQualifier qualifier) {
         mQualifiers[INDEX_SCREEN_DIMENSION] = qualifier == null
                 ? NULL_QUALIFIERS[INDEX_SCREEN_DIMENSION] : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -900,7 +1003,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
     public void setVersionQualifier(VersionQualifier qualifier) {
         mQualifiers[INDEX_VERSION] = qualifier == null ? NULL_QUALIFIERS[INDEX_VERSION]
                 : qualifier;
-        mQualifierString = null;
+        clearCachedValues();
     }
 
     @Nullable
@@ -930,7 +1033,7 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         if (mQualifiers[INDEX_VERSION] == NULL_QUALIFIERS[INDEX_VERSION] ||
                 ((VersionQualifier)mQualifiers[INDEX_VERSION]).getVersion() < minSdk) {
             mQualifiers[INDEX_VERSION] = new VersionQualifier(minSdk);
-            mQualifierString = null;
+            clearCachedValues();
         }
     }
 
@@ -1223,74 +1326,76 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
         }
 
         // 2. Loop on the qualifiers, and eliminate matches.
-        int count = getQualifierCount();
-        for (int q = 0; q < count; q++) {
-            // Look to see if one configurable has this qualifier.
-            // At the same time also record the best match value for the qualifier (if applicable).
-
-            // The reference value, to find the best match.
-            // Note that this qualifier could be null. In which case any qualifier found in the
-            // possible match, will all be considered best match.
-            ResourceQualifier referenceQualifier = getQualifier(q);
-
-            // If referenceQualifier is null, we don't eliminate resources based on it.
-            if (referenceQualifier == NULL_QUALIFIERS[q] || referenceQualifier == null) {
+        // If a reference qualifier is null, we don't eliminate resources based on it, so only
+        // the qualifiers set in this configuration are considered, in order.
+        computeMasks();
+        int referenceQualifiers = mSetMask;
+        int presentQualifiers = getPresentQualifiers(matchingConfigurables);
+        while (referenceQualifiers != 0) {
+            int q = Integer.numberOfTrailingZeros(referenceQualifiers);
+            referenceQualifiers &= referenceQualifiers - 1;
+            int bit = 1 << q;
+
+            // 3. Look to see if one configurable has this qualifier.
+            if ((presentQualifiers & bit) == 0) {
                 continue;
             }
 
-            boolean found = false;
+            // Record the best match value for the qualifier.
+            ResourceQualifier referenceQualifier = mQualifiers[q];
             ResourceQualifier bestMatch = null; // this is to store the best match.
             for (T configurable : matchingConfigurables) {
                 ResourceQualifier qualifier = configurable.getConfiguration().getQualifier(q);
-                if (qualifier != null) {
-                    // Set the flag.
-                    found = true;
-
-                    // Now check for a best match. If the reference qualifier is null ,
-                    // any qualifier is a "best" match (we don't need to record all of them.
-                    // Instead the non compatible ones are removed below)
-                    if (qualifier.isBetterMatchThan(bestMatch, referenceQualifier)) {
-                        bestMatch = qualifier;
-                    }
+                if (qualifier != null
+                        && qualifier.isBetterMatchThan(bestMatch, referenceQualifier)) {
+                    bestMatch = qualifier;
                 }
             }
 
-            // 4. If a configurable has a qualifier at the current index, remove all the ones that
-            // do not have one, or whose qualifier value does not equal the best match found above
-            // unless there's no reference qualifier, in which case they are all considered
-            // "best" match.
-            if (found) {
-                for (int i = 0; i < matchingConfigurables.size(); ) {
-                    T configurable = matchingConfigurables.get(i);
-                    FolderConfiguration configuration = configurable.getConfiguration();
-                    ResourceQualifier qualifier = configuration.getQualifier(q);
-
-                    if (qualifier == null) {
-                        // This resource has no qualifier of this type: rejected.
-                        matchingConfigurables.remove(configurable);
-                    } else if (bestMatch != null && !bestMatch.equals(qualifier)) {
-                        // There's a reference qualifier and there is a better match for it than
-                        // this resource, so we reject it.
-                        matchingConfigurables.remove(configurable);
-                    } else {
-                        // Looks like we keep this resource, move on to the next one.
-                        //noinspection AssignmentToForLoopParameter
-                        i++;
-                    }
+            // 4. A configurable has a qualifier at the current index, remove all the ones that
+            // do not have one, or whose qualifier value does not equal the best match found above.
+            for (int i = 0; i < matchingConfigurables.size(); ) {
+                T configurable = matchingConfigurables.get(i);
+                FolderConfiguration configuration = configurable.getConfiguration();
+                configuration.computeMasks();
+
+                if ((configuration.mPresentMask & bit) == 0) {
+                    // This resource has no qualifier of this type: rejected.
+                    matchingConfigurables.remove(i);
+                } else if (bestMatch != null && !bestMatch.equals(configuration.getQualifier(q))) {
+                    // There's a reference qualifier and there is a better match for it than
+                    // this resource, so we reject it.
+                    matchingConfigurables.remove(i);
+                } else {
+                    // Looks like we keep this resource, move on to the next one.
+                    //noinspection AssignmentToForLoopParameter
+                    i++;
                 }
+            }
 
-                // At this point we may have run out of matching resources before going
-                // through all the qualifiers.
-                if (matchingConfigurables.size() < 2) {
-                    break;
-                }
+            // At this point we may have run out of matching resources before going
+            // through all the qualifiers.
+            if (matchingConfigurables.size() < 2) {
+                break;
             }
+            presentQualifiers = getPresentQualifiers(matchingConfigurables);
         }
 
         // We've exhausted all the qualifiers. If we still have matching ones left, return all.
         return matchingConfigurables;
     }
 
+    /** Returns the union of the masks of the qualifiers present in the given configurables. */
+    private static int getPresentQualifiers(@NonNull List<? extends Configurable> configurables) {
+        int present = 0;
+        for (Configurable configurable : configurables) {
+            FolderConfiguration configuration = configurable.getConfiguration();
+            configuration.computeMasks();
+            present |= configuration.mPresentMask;
+        }
+        return present;
+    }
+
     /**
      * Returns whether the configuration is a match for the given reference config.
      *
@@ -1308,16 +1413,14 @@ public final class FolderConfiguration implements Comparable<FolderConfiguration
             return false;
         }
 
-        for (int i = 0; i < INDEX_COUNT; i++) {
-            ResourceQualifier testQualifier = mQualifiers[i];
-            ResourceQualifier referenceQualifier = referenceConfig.mQualifiers[i];
-
-            // it's only a non match if both qualifiers are non-null, and they don't match.
-            if (testQualifier != null
-                    && !testQualifier.equals(testQualifier.getNullQualifier())
-                    && referenceQualifier != null
-                    && !referenceQualifier.equals(referenceQualifier.getNullQualifier())
-                    && !testQualifier.isMatchFor(referenceQualifier)) {
+        // It's only a non match if both qualifiers have a value, and they don't match.
+        computeMasks();
+        referenceConfig.computeMasks();
+        int candidates = mValuedMask & referenceConfig.mValuedMask;
+        while (candidates != 0) {
+            int i = Integer.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            if (!mQualifiers[i].isMatchFor(referenceConfig.mQualifiers[i])) {
                 return false;
             }
         }
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ide.common.symbols
+
+import com.android.SdkConstants
+import com.android.resources.ResourceType
+import com.android.resources.ResourceVisibility
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableTable
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.EnumMap
+
+/**
+ * A [SymbolTable] stored in a compact binary format, queried directly from a (memory-mapped,
+ * except on Windows) buffer instead of being parsed into [Symbol]s upfront.
+ *
+ * The format, written by [write], is made of big-endian 32-bit integers:
+ * ```
+ * header:   magic, version, package string, string count, type count, extras offset
+ * types:    for each resource type: type name string, symbol count, records offset
+ * strings:  offset of each string, then each string as an unsigned 16-bit length and UTF-8 bytes
+ * records:  for each type, its symbols sorted by canonical name, as RECORD_SIZE integers:
+ *           canonical name string, name string, value (or extras start for styleables),
+ *           visibility ordinal | flags << 8, children count, values count
+ * extras:   for each styleable, the strings of its children followed by its values
+ * ```
+ * All strings (names, children, the package and the resource types) are interned in the string
+ * pool and referenced by their index. Strings and the symbols of each type are only decoded when
+ * first used, and looking up a symbol is a binary search over the records of its type.
+ */
+internal class BinarySymbolTable private constructor(
+    private val buffer: ByteBuffer
+) : SymbolTable() {
+
+    private val stringCount = buffer.getInt(STRING_COUNT)
+    private val strings = arrayOfNulls<String>(stringCount)
+    private val typeOffsets = EnumMap<ResourceType, Int>(ResourceType::class.java)
+    private val typeCounts = EnumMap<ResourceType, Int>(ResourceType::class.java)
+    private val extrasOffset = buffer.getInt(EXTRAS_OFFSET)
+    private val stringOffsetsStart = HEADER_SIZE + buffer.getInt(TYPE_COUNT) * TYPE_ENTRY_SIZE
+
+    // Decoded symbols, by resource type ordinal. Symbols are immutable so races are benign.
+    private val decodedTypes = arrayOfNulls<List<Symbol>>(ResourceType.values().size)
+
+    init {
+        for (i in 0 until buffer.getInt(TYPE_COUNT)) {
+            val entry = HEADER_SIZE + i * TYPE_ENTRY_SIZE
+            val typeName = string(buffer.getInt(entry))
+            val type = TYPES_BY_NAME[typeName]
+                ?: throw IOException("Unknown resource type '$typeName' in symbol table")
+            typeCounts[type] = buffer.getInt(entry + 4)
+            typeOffsets[type] = buffer.getInt(entry + 8)
+        }
+    }
+
+    override val tablePackage: String = string(buffer.getInt(PACKAGE))
+
+    override val symbols: ImmutableTable<ResourceType, String, Symbol> by lazy {
+        val builder = ImmutableTable.builder<ResourceType, String, Symbol>()
+        for (type in typeCounts.keys) {
+            for (symbol in symbolsOfType(type)) {
+                builder.put(type, symbol.canonicalName, symbol)
+            }
+        }
+        builder.build()
+    }
+
+    override val resourceTypes: Set<ResourceType> get() = typeCounts.keys
+
+    override fun getSymbol(type: ResourceType, canonicalName: String): Symbol? {
+        val offset = typeOffsets[type] ?: return null
+        var low = 0
+        var high = typeCounts[type]!! - 1
+        while (low <= high) {
+            val middle = (low + high).ushr(1)
+            val record = offset + middle * RECORD_SIZE
+            val comparison = string(buffer.getInt(record)).compareTo(canonicalName)
+            when {
+                comparison < 0 -> low = middle + 1
+                comparison > 0 -> high = middle - 1
+                else -> return decode(type, record)
+            }
+        }
+        return null
+    }
+
+    override fun symbolsOfType(type: ResourceType): List<Symbol> {
+        decodedTypes[type.ordinal]?.let { return it }
+        val offset = typeOffsets[type] ?: return ImmutableList.of()
+        val count = typeCounts[type]!!
+        val symbols = ImmutableList.builder<Symbol>()
+        for (i in 0 until count) {
+            symbols.add(decode(type, offset + i * RECORD_SIZE))
+        }
+        return symbols.build().also { decodedTypes[type.ordinal] = it }
+    }
+
+    // Records are stored sorted by canonical name.
+    override fun sortedSymbolsOfType(type: ResourceType): List<Symbol> = symbolsOfType(type)
+
+    override fun toString(): String = "SymbolTable ($tablePackage)" +
+            "\n  " + symbols.values().joinToString("\n  ")
+
+    private fun decode(type: ResourceType, record: Int): Symbol {
+        val canonicalName = string(buffer.getInt(record))
+        val name = string(buffer.getInt(record + 4))
+        val value = buffer.getInt(record + 8)
+        val visibilityAndFlags = buffer.getInt(record + 12)
+        val visibility = VISIBILITIES[visibilityAndFlags and 0xFF]
+        return when (type) {
+            ResourceType.STYLEABLE -> {
+                val childCount = buffer.getInt(record + 16)
+                val valueCount = buffer.getInt(record + 20)
+                val children = ImmutableList.builder<String>()
+                for (i in 0 until childCount) {
+                    children.add(string(buffer.getInt(extrasOffset + (value + i) * 4)))
+                }
+                val values = ImmutableList.builder<Int>()
+                for (i in 0 until valueCount) {
+                    values.add(buffer.getInt(extrasOffset + (value + childCount + i) * 4))
+                }
+                Symbol.StyleableSymbol(
+                    name, values.build(), children.build(), visibility, canonicalName)
+            }
+            ResourceType.ATTR ->
+                Symbol.AttributeSymbol(
+                    name,
+                    value,
+                    (visibilityAndFlags ushr 8) and FLAG_MAYBE_DEFINITION != 0,
+                    visibility,
+                    canonicalName)
+            else -> Symbol.NormalSymbol(type, name, value, visibility, canonicalName)
+        }
+    }
+
+    private fun string(index: Int): String {
+        strings[index]?.let { return it }
+        val offset = buffer.getInt(stringOffsetsStart + index * 4)
+        val length = buffer.getShort(offset).toInt() and 0xFFFF
+        val bytes = ByteArray(length)
+        for (i in 0 until length) {
+            bytes[i] = buffer.get(offset + 2 + i)
+        }
+        return String(bytes, Charsets.UTF_8).also { strings[index] = it }
+    }
+
+    companion object {
+        private const val MAGIC = 0x53594D42 // SYMB
+        private const val VERSION = 1
+
+        // Header fields, as byte offsets.
+        private const val VERSION_FIELD = 4
+        private const val PACKAGE = 8
+        private const val STRING_COUNT = 12
+        private const val TYPE_COUNT = 16
+        private const val EXTRAS_OFFSET = 20
+        private const val HEADER_SIZE = 24
+
+        private const val TYPE_ENTRY_SIZE = 12
+        private const val RECORD_SIZE = 24
+
+        private const val FLAG_MAYBE_DEFINITION = 1
+
+        private val VISIBILITIES = ResourceVisibility.values()
+        private val TYPES_BY_NAME = ResourceType.values().associateBy { it.getName() }
+
+        /** Returns whether the given file is in the binary symbol table format. */
+        @JvmStatic
+        fun isBinarySymbolTable(file: Path): Boolean {
+            if (Files.size(file) < HEADER_SIZE) {
+                return false
+            }
+            return DataInputStream(Files.newInputStream(file)).use { it.readInt() == MAGIC }
+        }
+
+        /** Memory-maps the given binary symbol table file. */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun load(file: Path): SymbolTable {
+            val buffer = if (SdkConstants.CURRENT_PLATFORM == SdkConstants.PLATFORM_WINDOWS) {
+                // Windows doesn't allow mapped files to be deleted or replaced until the mapping
+                // has been garbage collected, which would break the next incremental build.
+                ByteBuffer.wrap(Files.readAllBytes(file))
+            } else {
+                FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                }
+            }
+            return from(buffer, file.toString())
+        }
+
+        /** Reads a binary symbol table from the given buffer, which must not be modified. */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun from(buffer: ByteBuffer, source: String): SymbolTable {
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw IOException("Invalid binary symbol table '$source'")
+            }
+            if (buffer.getInt(VERSION_FIELD) != VERSION) {
+                throw IOException(
+                    "Unsupported binary symbol table version ${buffer.getInt(VERSION_FIELD)} " +
+                            "in '$source'")
+            }
+            return BinarySymbolTable(buffer)
+        }
+
+        /** Writes the given table to a file in the binary format. */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun write(table: SymbolTable, file: Path) {
+            DataOutputStream(BufferedOutputStream(Files.newOutputStream(file))).use {
+                write(table, it)
+            }
+        }
+
+        @JvmStatic
+        @Throws(IOException::class)
+        fun write(table: SymbolTable, out: DataOutputStream) {
+            val pool = LinkedHashMap<String, Int>()
+            fun intern(string: String): Int = pool.getOrPut(string) { pool.size }
+
+            val packageIndex = intern(table.tablePackage)
+            val types = table.resourceTypes.sorted()
+            val typeNames = types.map { intern(it.getName()) }
+
+            // Records and extras, with offsets relative to the start of their section for now.
+            val records = ByteArrayOutputStream()
+            val recordsOut = DataOutputStream(records)
+            val extras = ByteArrayOutputStream()
+            val extrasOut = DataOutputStream(extras)
+            var extraCount = 0
+            val typeCounts = IntArray(types.size)
+            val typeOffsets = IntArray(types.size)
+            for ((i, type) in types.withIndex()) {
+                val symbols = table.symbolsOfType(type).sortedBy { it.canonicalName }
+                typeCounts[i] = symbols.size
+                typeOffsets[i] = records.size()
+                for (symbol in symbols) {
+                    recordsOut.writeInt(intern(symbol.canonicalName))
+                    recordsOut.writeInt(intern(symbol.name))
+                    var flags = 0
+                    when (symbol) {
+                        is Symbol.StyleableSymbol -> {
+                            recordsOut.writeInt(extraCount)
+                            for (child in symbol.children) {
+                                extrasOut.writeInt(intern(child))
+                            }
+                            for (value in symbol.values) {
+                                extrasOut.writeInt(value)
+                            }
+                            extraCount += symbol.children.size + symbol.values.size
+                        }
+                        is Symbol.AttributeSymbol -> {
+                            recordsOut.writeInt(symbol.intValue)
+                            if (symbol.isMaybeDefinition) {
+                                flags = flags or FLAG_MAYBE_DEFINITION
+                            }
+                        }
+                        is Symbol.NormalSymbol -> recordsOut.writeInt(symbol.intValue)
+                    }
+                    recordsOut.writeInt(symbol.resourceVisibility.ordinal or (flags shl 8))
+                    if (symbol is Symbol.StyleableSymbol) {
+                        recordsOut.writeInt(symbol.children.size)
+                        recordsOut.writeInt(symbol.values.size)
+                    } else {
+                        recordsOut.writeInt(0)
+                        recordsOut.writeInt(0)
+                    }
+                }
+            }
+
+            val encodedStrings = pool.keys.map { it.toByteArray(Charsets.UTF_8) }
+            val stringOffsetsStart = HEADER_SIZE + types.size * TYPE_ENTRY_SIZE
+            val stringDataStart = stringOffsetsStart + encodedStrings.size * 4
+            val recordsStart = stringDataStart + encodedStrings.sumBy { it.size + 2 }
+
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            out.writeInt(packageIndex)
+            out.writeInt(encodedStrings.size)
+            out.writeInt(types.size)
+            out.writeInt(recordsStart + records.size())
+            for (i in types.indices) {
+                out.writeInt(typeNames[i])
+                out.writeInt(typeCounts[i])
+                out.writeInt(recordsStart + typeOffsets[i])
+            }
+            var stringOffset = stringDataStart
+            for (string in encodedStrings) {
+                out.writeInt(stringOffset)
+                stringOffset += string.size + 2
+            }
+            for (string in encodedStrings) {
+                if (string.size > 0xFFFF) {
+                    throw IOException("Symbol name too long: ${String(string, Charsets.UTF_8)}")
+                }
+                out.writeShort(string.size)
+                out.write(string)
+            }
+            records.writeTo(out)
+            extras.writeTo(out)
+        }
+    }
+}
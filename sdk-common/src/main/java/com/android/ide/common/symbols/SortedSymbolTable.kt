@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ide.common.symbols
+
+import com.android.SdkConstants
+import com.android.resources.ResourceType
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.ImmutableTable
+import com.google.common.collect.Sets
+import java.io.IOException
+import java.util.Arrays
+import java.util.PriorityQueue
+import java.util.TreeSet
+
+/**
+ * A [SymbolTable] storing the symbols of each resource type in an array sorted by canonical name,
+ * next to a parallel array of the names. Looking up a symbol is a binary search, and the symbols
+ * of a type can be iterated in order without sorting them, which is what [SymbolTable.merge] needs
+ * to merge tables as sorted streams.
+ */
+internal class SortedSymbolTable private constructor(
+    override val tablePackage: String,
+    // Canonical names and symbols, by resource type ordinal; null for absent types.
+    private val names: Array<Array<String>?>,
+    private val values: Array<Array<Symbol>?>
+) : SymbolTable() {
+
+    override val resourceTypes: Set<ResourceType> =
+        Sets.immutableEnumSet(ResourceType.values().filter { values[it.ordinal] != null })
+
+    override val symbols: ImmutableTable<ResourceType, String, Symbol> by lazy {
+        val builder = ImmutableTable.builder<ResourceType, String, Symbol>()
+        for (type in resourceTypes) {
+            for (symbol in values[type.ordinal]!!) {
+                builder.put(type, symbol.canonicalName, symbol)
+            }
+        }
+        builder.build()
+    }
+
+    override fun getSymbol(type: ResourceType, canonicalName: String): Symbol? {
+        val typeNames = names[type.ordinal] ?: return null
+        val index = Arrays.binarySearch(typeNames, canonicalName)
+        return if (index >= 0) values[type.ordinal]!![index] else null
+    }
+
+    override fun symbolsOfType(type: ResourceType): List<Symbol> =
+        values[type.ordinal]?.asList() ?: ImmutableList.of()
+
+    override fun sortedSymbolsOfType(type: ResourceType): List<Symbol> = symbolsOfType(type)
+
+    override fun toString(): String = "SymbolTable ($tablePackage)" +
+            "\n  " + symbols.values().joinToString("\n  ")
+
+    /** A position in the sorted symbols of one of the merged tables. */
+    private class Cursor(val symbols: List<Symbol>, val table: Int) {
+        var position = 0
+        val current: Symbol get() = symbols[position]
+    }
+
+    companion object {
+
+        private const val ANDROID_UNDERSCORE_PREFIX = "android_"
+
+        private val CURSOR_ORDER =
+            compareBy<Cursor> { it.current.canonicalName }.thenBy { it.table }
+
+        /**
+         * Merges the tables with a k-way merge of their sorted symbols, type by type. When a
+         * symbol is present in multiple tables, the one of the first table is used.
+         */
+        fun merge(tables: List<SymbolTable>): SymbolTable {
+            val packageName = if (tables.isEmpty()) "" else tables[0].tablePackage
+            return merge(packageName, tables, null)
+        }
+
+        /**
+         * Merges and renumbers the symbols of a library and of its dependencies, as
+         * [mergeAndRenumberSymbols] needs: symbols are given new sequential ids, in resource type
+         * and canonical name order, and lose their visibility. Styleables of the same name are
+         * merged into one with the sorted union of their children, and their values are the new
+         * ids of their attributes, the ids of [platformSymbols] for platform attributes, or 0 for
+         * unknown attributes.
+         */
+        fun mergeAndRenumber(
+            packageName: String,
+            tables: List<SymbolTable>,
+            platformSymbols: SymbolTable
+        ): SymbolTable = merge(packageName, tables, platformSymbols)
+
+        /** Merges the tables, renumbering their symbols if [platformSymbols] is not null. */
+        private fun merge(
+            packageName: String,
+            tables: List<SymbolTable>,
+            platformSymbols: SymbolTable?
+        ): SymbolTable {
+            val idProvider = if (platformSymbols != null) IdProvider.sequential() else null
+            val typeCount = ResourceType.values().size
+            val names = arrayOfNulls<Array<String>>(typeCount)
+            val values = arrayOfNulls<Array<Symbol>>(typeCount)
+            val queue = PriorityQueue<Cursor>(maxOf(tables.size, 1), CURSOR_ORDER)
+
+            // Types are processed in ordinal order, so attributes are renumbered before the
+            // styleables referencing them.
+            for (type in ResourceType.values()) {
+                tables.forEachIndexed { index, table ->
+                    if (table.resourceTypes.contains(type)) {
+                        val symbols = table.sortedSymbolsOfType(type)
+                        if (symbols.isNotEmpty()) {
+                            queue.add(Cursor(symbols, index))
+                        }
+                    }
+                }
+                if (queue.isEmpty()) {
+                    continue
+                }
+
+                val typeNames = ArrayList<String>()
+                val typeSymbols = ArrayList<Symbol>()
+                if (queue.size == 1 && platformSymbols == null) {
+                    // Nothing to merge, the symbols are already sorted.
+                    queue.poll().symbols.forEach {
+                        typeNames.add(it.canonicalName)
+                        typeSymbols.add(it)
+                    }
+                } else if (platformSymbols != null && type == ResourceType.STYLEABLE) {
+                    while (queue.isNotEmpty()) {
+                        val name = queue.peek().current.canonicalName
+                        val children = TreeSet<String>()
+                        // Equal names come out one after the other, merge all their children.
+                        while (queue.isNotEmpty() && queue.peek().current.canonicalName == name) {
+                            val cursor = queue.poll()
+                            children.addAll((cursor.current as Symbol.StyleableSymbol).children)
+                            advance(cursor, queue)
+                        }
+                        typeNames.add(name)
+                        typeSymbols.add(
+                            mergedStyleable(name, children, names, values, platformSymbols))
+                    }
+                } else {
+                    while (queue.isNotEmpty()) {
+                        val cursor = queue.poll()
+                        val symbol = cursor.current
+                        // Equal names come out in table order, so only the first one is kept.
+                        if (typeNames.isEmpty() || typeNames.last() != symbol.canonicalName) {
+                            typeNames.add(symbol.canonicalName)
+                            typeSymbols.add(
+                                if (idProvider == null) symbol else renumber(symbol, idProvider))
+                        }
+                        advance(cursor, queue)
+                    }
+                }
+                names[type.ordinal] = typeNames.toTypedArray()
+                values[type.ordinal] = typeSymbols.toTypedArray()
+            }
+
+            return SortedSymbolTable(packageName, names, values)
+        }
+
+        private fun advance(cursor: Cursor, queue: PriorityQueue<Cursor>) {
+            cursor.position++
+            if (cursor.position < cursor.symbols.size) {
+                queue.add(cursor)
+            }
+        }
+
+        /** Returns a new symbol with a new id, and the canonical name as name. */
+        private fun renumber(symbol: Symbol, idProvider: IdProvider): Symbol {
+            val name = symbol.canonicalName
+            return when (symbol) {
+                is Symbol.AttributeSymbol ->
+                    Symbol.AttributeSymbol(name, idProvider.next(ResourceType.ATTR), false)
+                is Symbol.NormalSymbol ->
+                    Symbol.NormalSymbol(
+                        resourceType = symbol.resourceType,
+                        name = name,
+                        intValue = idProvider.next(symbol.resourceType),
+                        canonicalName = name
+                    )
+                else -> throw IOException("Unexpected symbol $symbol")
+            }
+        }
+
+        private fun mergedStyleable(
+            name: String,
+            children: Collection<String>,
+            names: Array<Array<String>?>,
+            values: Array<Array<Symbol>?>,
+            platformSymbols: SymbolTable
+        ): Symbol {
+            val attrNames = names[ResourceType.ATTR.ordinal]
+            val attrs = values[ResourceType.ATTR.ordinal]
+            val childValues = ImmutableList.builder<Int>()
+            for (child in children) {
+                // Resources coming from this module might have the "android:" prefix, but the
+                // ones coming from dependencies might have the "android_" prefix.
+                val platformSymbol =
+                    if (child.startsWith(SdkConstants.ANDROID_NS_NAME_PREFIX)
+                        || child.startsWith(ANDROID_UNDERSCORE_PREFIX)) {
+                        platformSymbols.getSymbol(
+                            ResourceType.ATTR,
+                            child.substring(SdkConstants.ANDROID_NS_NAME_PREFIX_LEN))
+                    } else {
+                        null
+                    }
+                // The attribute can be missing if the symbol table is broken, which is possible
+                // for some non-final AARs built with non-final Gradle versions, e.g.
+                // com.android.support:appcompat-v7:26.0.0-beta2. Use the invalid id 0 so that
+                // the R.txt file is still parse-able.
+                val attr = attrNames?.let { Arrays.binarySearch(it, child) } ?: -1
+                childValues.add(
+                    when {
+                        platformSymbol != null -> platformSymbol.intValue
+                        attr >= 0 -> attrs!![attr].intValue
+                        else -> 0
+                    }
+                )
+            }
+            return Symbol.StyleableSymbol(
+                name, childValues.build(), ImmutableList.copyOf(children), canonicalName = name)
+        }
+    }
+}
@@ -88,6 +88,12 @@ import org.xml.sax.SAXException;
  *     - May contain internal resource types (e.g. "maybe attributes" defined under declare
  *       styleable resources).
  *
+ *  - Binary symbol table format.
+ *     - Compact alternative to the text formats, memory-mapped and queried without parsing all
+ *       the symbols. See BinarySymbolTable for the details of the format.
+ *     - Written by writeBinary(), read by readBinary(), and also accepted by readRDef().
+ *     - Used instead of the R-def format for the symbols defined by libraries.
+ *
  *  All files are written in UTF-8. R files use linux-type line separators, while R.java use system
  *  line separators.
  * </pre>
@@ -185,15 +191,50 @@ public final class SymbolIo {
     /**
      * Loads a symbol table from an partial file.
      *
+     * <p>The file may be either in the R-def text format or, as written by the library resource
+     * parsing tasks, in the binary symbol table format.
+     *
      * @param file the symbol file
      * @return the table read
      * @throws IOException failed to read the table
      */
     @NonNull
     public static SymbolTable readRDef(@NonNull Path file) throws IOException {
+        if (BinarySymbolTable.isBinarySymbolTable(file)) {
+            return readBinary(file);
+        }
         return readWithPackage(file, ReadConfiguration.R_DEF);
     }
 
+    /**
+     * Loads a symbol table from a file written by {@link #writeBinary(SymbolTable, Path)}.
+     *
+     * <p>The file is memory-mapped (read into memory on Windows, where mapped files cannot be
+     * replaced) and symbols are only decoded when queried, so this is much cheaper than reading the
+     * text formats. The file must not be modified while the table is in use.
+     *
+     * @param file the binary symbol table file
+     * @return the table read
+     * @throws IOException failed to read the table
+     */
+    @NonNull
+    public static SymbolTable readBinary(@NonNull Path file) throws IOException {
+        return BinarySymbolTable.load(file);
+    }
+
+    /**
+     * Writes a symbol table, including its package, values and styleable children, in the binary
+     * symbol table format.
+     *
+     * @param table the table
+     * @param file the file where the table should be written
+     * @throws IOException I/O error
+     */
+    public static void writeBinary(@NonNull SymbolTable table, @NonNull Path file)
+            throws IOException {
+        BinarySymbolTable.write(table, file);
+    }
+
     @NonNull
     private static SymbolTable readWithPackage(
             @NonNull Path file, @NonNull ReadConfiguration readConfiguration) throws IOException {
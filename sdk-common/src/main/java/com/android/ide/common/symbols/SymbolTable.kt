@@ -59,6 +59,12 @@ abstract class SymbolTable protected constructor() {
                 "\n  " + symbols.values().joinToString("\n  ")
     }
 
+    /** Tables are equal if they have the same package and symbols, whatever their storage. */
+    final override fun equals(other: Any?): Boolean =
+        other is SymbolTable && tablePackage == other.tablePackage && symbols == other.symbols
+
+    final override fun hashCode(): Int = 31 * tablePackage.hashCode() + symbols.hashCode()
+
     /**
      * Produces a subset of this symbol table that has the symbols with resource type / name defined
      * in `filter`. In other words, a symbol `s` will exist in the result if and only
@@ -71,14 +77,11 @@ abstract class SymbolTable protected constructor() {
     fun filter(table: SymbolTable): SymbolTable {
         val builder = ImmutableTable.builder<ResourceType, String, Symbol>()
 
-        for (resourceType in table.symbols.rowKeySet()) {
-            val symbols = table.symbols.row(resourceType).values
-            val filteringSymbolNames = this.symbols.row(resourceType).keys
-
-            for (symbol in symbols) {
-                if (filteringSymbolNames.contains(symbol.canonicalName)) {
-                    builder.put(
-                        resourceType, symbol.canonicalName, this.symbols.get(resourceType, symbol.canonicalName))
+        for (resourceType in table.resourceTypes) {
+            for (symbol in table.symbolsOfType(resourceType)) {
+                val filtered = getSymbol(resourceType, symbol.canonicalName)
+                if (filtered != null) {
+                    builder.put(resourceType, symbol.canonicalName, filtered)
                 }
             }
         }
@@ -113,9 +116,7 @@ abstract class SymbolTable protected constructor() {
      * The symbols are sorted by name to make output predicable and, therefore, testing easier.
      */
     fun getSymbolByResourceType(type: ResourceType): List<Symbol> {
-        val symbols = Lists.newArrayList(symbols.row(type).values)
-        symbols.sortWith(compareBy { it.canonicalName })
-        return Collections.unmodifiableList(symbols)
+        return Collections.unmodifiableList(sortedSymbolsOfType(type))
     }
 
     /**
@@ -135,7 +136,7 @@ abstract class SymbolTable protected constructor() {
      * Checks if the table contains a resource with matching type and name.
      */
     fun containsSymbol(type: ResourceType, canonicalName: String): Boolean {
-        var found = symbols.contains(type, canonicalName)
+        var found = getSymbol(type, canonicalName) != null
         if (!found && type == ResourceType.STYLEABLE && canonicalName.contains('_')) {
             // If the symbol is a styleable and contains the underscore character, it is very likely
             // that we're looking for a styleable child. These are stored under the parent's symbol,
@@ -163,9 +164,9 @@ abstract class SymbolTable protected constructor() {
         val index = canonicalName.indexOf('_', start)
         if (index > -1) {
             val parentName = canonicalName.substring(0, index)
-            if (symbols.contains(ResourceType.STYLEABLE, parentName)) {
+            val parent = getSymbol(ResourceType.STYLEABLE, parentName)
+            if (parent != null) {
                 var childName = canonicalName.substring(index + 1, canonicalName.length)
-                val parent = symbols.get(ResourceType.STYLEABLE, parentName)
                 found =
                         if (parent.children.any { it == childName })
                             parent as Symbol.StyleableSymbol
@@ -200,7 +201,28 @@ abstract class SymbolTable protected constructor() {
             = mainSymbolTable.filter(this).rename(this.tablePackage)
 
     /** [ResourceType]s present in the table. */
-    val resourceTypes: Set<ResourceType> get() = symbols.rowKeySet()
+    open val resourceTypes: Set<ResourceType> get() = symbols.rowKeySet()
+
+    /**
+     * Returns the symbol with the given resource type and canonical name, or null if there is
+     * none. Unlike [symbols], this does not require all the symbols of the table to be loaded.
+     */
+    internal open fun getSymbol(type: ResourceType, canonicalName: String): Symbol? =
+        symbols.get(type, canonicalName)
+
+    /**
+     * Returns the symbols of the given resource type. Unlike [symbols], this does not require the
+     * symbols of other types to be loaded.
+     */
+    internal open fun symbolsOfType(type: ResourceType): Collection<Symbol> =
+        symbols.row(type).values
+
+    /**
+     * Returns the symbols of the given resource type sorted by canonical name. Tables that keep
+     * their symbols sorted return them without copying.
+     */
+    internal open fun sortedSymbolsOfType(type: ResourceType): List<Symbol> =
+        symbolsOfType(type).sortedBy { it.canonicalName }
 
     /** Builder that creates a symbol table.  */
     class Builder {
@@ -406,29 +428,7 @@ abstract class SymbolTable protected constructor() {
             if (tables.size == 1) {
                 return tables.first()
             }
-            val builder = ImmutableTable.builder<ResourceType, String, Symbol>()
-
-            val present = HashSet<String>()
-
-            for (resourceType in ResourceType.values()) {
-                present.clear()
-                for (t in tables) {
-                    val tableSymbolMap = t.symbols.row(resourceType)
-                    if (tableSymbolMap != null && !tableSymbolMap.isEmpty()) {
-                        for (s in tableSymbolMap.values) {
-                            val canonicalName = s.canonicalName
-                            if (!present.contains(canonicalName)) {
-                                present.add(canonicalName)
-                                builder.put(resourceType, canonicalName, s)
-                            }
-                        }
-                    }
-                }
-            }
-
-            val packageName = if (tables.isEmpty()) "" else tables[0].tablePackage
-
-            return SymbolTableImpl(packageName, builder.build())
+            return SortedSymbolTable.merge(tables)
         }
 
         /**
@@ -18,25 +18,20 @@
 
 package com.android.ide.common.symbols
 
-import com.android.SdkConstants
 import com.android.ide.common.xml.AndroidManifestParser
 import com.android.ide.common.xml.ManifestData
 import com.android.io.FileWrapper
-import com.android.resources.ResourceType
 import com.android.xml.AndroidManifest
 import com.google.common.annotations.VisibleForTesting
 import com.google.common.base.CharMatcher
 import com.google.common.base.Splitter
-import com.google.common.collect.HashMultimap
 import com.google.common.collect.ImmutableList
 import com.google.common.collect.ImmutableSet
-import com.google.common.collect.Lists
 import org.w3c.dom.Element
 import org.w3c.dom.Node
 import org.xml.sax.SAXException
 import java.io.File
 import java.io.IOException
-import java.util.HashMap
 import javax.xml.parsers.DocumentBuilder
 import javax.xml.parsers.DocumentBuilderFactory
 import javax.xml.parsers.ParserConfigurationException
@@ -46,8 +41,6 @@ import javax.xml.parsers.ParserConfigurationException
 private val NORMALIZED_VALUE_NAME_CHARS =
     CharMatcher.anyOf(".:").precomputed()
 
-private const val ANDROID_UNDERSCORE_PREFIX = "android_"
-
 fun mergeAndRenumberSymbols(
     mainPackageName: String,
     librarySymbols: SymbolTable,
@@ -56,8 +49,8 @@ fun mergeAndRenumberSymbols(
 ): SymbolTable {
 
     /*
-     For most symbol types, we are simply going to loop on all the symbols, and merge them in
-     the final table while renumbering them.
+     For most symbol types, we are simply going to merge the symbols of all the tables in the
+     final table while renumbering them.
      For Styleable arrays we will handle things differently. We cannot rely on the array values,
      as some R.txt were published with dummy values. We are instead simply going to merge
      the children list from all the styleable, and create the symbol from this list.
@@ -69,106 +62,7 @@ fun mergeAndRenumberSymbols(
     tables.add(librarySymbols)
     tables.addAll(dependencySymbols)
 
-    // the ID value provider.
-    val idProvider = IdProvider.sequential()
-
-    // first pass, we use two different multi-map to record all symbols.
-    // 1. resourceType -> name. This is for all by the Styleable symbols
-    // 2. styleable name -> children. This is for styleable only.
-    val newSymbolMap = HashMultimap.create<ResourceType, String>()
-    val arrayToAttrs = HashMap<String, MutableSet<String>>()
-
-    tables.forEach { table ->
-        table.symbols.values().forEach { symbol ->
-            when (symbol) {
-                is Symbol.AttributeSymbol -> newSymbolMap.put(ResourceType.ATTR, symbol.canonicalName)
-                is Symbol.NormalSymbol -> newSymbolMap.put(symbol.resourceType, symbol.canonicalName)
-                is Symbol.StyleableSymbol -> {
-                    arrayToAttrs
-                        .getOrPut(symbol.canonicalName) { HashSet() }
-                        .addAll(symbol.children)
-                }
-                else -> throw IOException("Unexpected symbol $symbol")
-            }
-        }
-    }
-
-    // the builder for the table
-    val tableBuilder = SymbolTable.builder().tablePackage(mainPackageName)
-
-    // let's keep a map of the new ATTR names to symbol so that we can find them easily later
-    // when we process the styleable
-    val attrToValue = HashMap<String, Symbol.AttributeSymbol>()
-
-    // process the normal symbols
-    for (resourceType in newSymbolMap.keySet()) {
-        val symbolNames = Lists.newArrayList(newSymbolMap.get(resourceType))
-        symbolNames.sort()
-
-        for (symbolName in symbolNames) {
-            val value = idProvider.next(resourceType)
-            val newSymbol: Symbol
-            if (resourceType == ResourceType.ATTR) {
-                newSymbol = Symbol.AttributeSymbol(symbolName, value, false)
-                // Also store the new ATTR value in the map.
-                attrToValue[symbolName] = newSymbol
-            } else {
-                newSymbol = Symbol.NormalSymbol(
-                    resourceType = resourceType,
-                    name = symbolName, // All names are canonical at this point.
-                    canonicalName = symbolName,
-                    intValue = value
-                )
-            }
-            tableBuilder.add(newSymbol)
-        }
-    }
-
-    // process the arrays.
-    arrayToAttrs.forEach { arrayName, children ->
-        val attributes = children.sorted()
-
-        // now get the attributes values using the new symbol map
-        val attributeValues = ImmutableList.builder<Int>()
-        for (attribute in attributes) {
-            // Resources coming from this module might have the "android:" prefix, but the ones
-            // coming from dependencies might have the "android_" prefix.
-            if (attribute.startsWith(SdkConstants.ANDROID_NS_NAME_PREFIX)
-                    || attribute.startsWith(ANDROID_UNDERSCORE_PREFIX)) {
-                val name = attribute.substring(SdkConstants.ANDROID_NS_NAME_PREFIX_LEN)
-
-                val platformSymbol = platformSymbols.symbols.get(ResourceType.ATTR, name)
-                if (platformSymbol != null) {
-                    attributeValues.add(platformSymbol.intValue)
-                    continue
-                }
-            }
-
-            // If it's not a resource from the platform, try finding the ID in the attrToValue map
-            val symbol = attrToValue[attribute]
-            if (symbol != null) {
-                // symbol can be null if the symbol table is broken. This is possible
-                // some non-final AAR built with non final Gradle.
-                // e.g.  com.android.support:appcompat-v7:26.0.0-beta2
-                attributeValues.add(symbol.intValue)
-            } else {
-                // If we couldn't find the ID, add a non-valid ID of "0" so that the R.txt file is
-                // still parse-able.
-                attributeValues.add(0)
-            }
-        }
-
-        tableBuilder.add(
-            Symbol.StyleableSymbol(
-                arrayName,
-                attributeValues.build(),
-                ImmutableList.copyOf(attributes),
-                canonicalName = arrayName // All names are canonical at this point.
-            )
-        )
-    }
-
-    return tableBuilder.build()
+    return SortedSymbolTable.mergeAndRenumber(mainPackageName, tables, platformSymbols)
 }
 
 /**
@@ -25,12 +25,16 @@ import com.android.utils.XmlUtils;
 import com.google.common.base.Strings;
 import com.sun.org.apache.xml.internal.serialize.OutputFormat;
 import com.sun.org.apache.xml.internal.serialize.XMLSerializer;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -45,6 +49,35 @@ public class VdPreview {
     private static final String ANDROID_WIDTH = "android:width";
     private static final int MAX_PREVIEW_IMAGE_SIZE = 4096;
     private static final int MIN_PREVIEW_IMAGE_SIZE = 1;
+    private static final int MAX_REUSED_IMAGES = 16;
+    private static final int MAX_REUSED_IMAGE_PIXELS = 1024 * 1024;
+
+    /**
+     * Image buffers reused by successive {@link #renderVectorXml} calls of a batch, e.g. the
+     * drawables of one batch of files generated by the resource merger. The buffers are released
+     * along with this object once the batch is done. Not thread safe: each thread of a batch needs
+     * its own instance.
+     */
+    public static final class ImageBuffers {
+        /** Images by size, least recently used first. */
+        private final Map<Dimension, BufferedImage> images =
+                new LinkedHashMap<Dimension, BufferedImage>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<Dimension, BufferedImage> eldest) {
+                        return size() > MAX_REUSED_IMAGES;
+                    }
+                };
+
+        @NonNull
+        private BufferedImage get(@NonNull Dimension size) {
+            if ((long) size.width * size.height > MAX_REUSED_IMAGE_PIXELS) {
+                return AssetUtil.newArgbBufferedImage(size.width, size.height);
+            }
+            return images.computeIfAbsent(
+                    size, s -> AssetUtil.newArgbBufferedImage(s.width, s.height));
+        }
+    }
 
     /**
      * Encapsulates the information used to determine the preview image size. The reason we have
@@ -229,6 +262,63 @@ public class VdPreview {
     public static BufferedImage getPreviewFromVectorTree(@NonNull TargetSize targetSize,
                                                          @NonNull VdTree vdTree,
                                                          @Nullable StringBuilder errorLog) {
+        Dimension imageSize = getImageSize(targetSize, vdTree, errorLog);
+        BufferedImage image = AssetUtil.newArgbBufferedImage(imageSize.width, imageSize.height);
+        vdTree.drawIntoImage(image);
+        return image;
+    }
+
+    /**
+     * Parses the VectorDrawable's XML content once, and renders it at each of the target sizes,
+     * e.g. for all the densities a drawable is rasterized for.
+     *
+     * <p>When {@code buffers} is given, the images are drawn into buffers that are reused by later
+     * calls with the same buffers, so the consumer must not keep a reference to an image once it
+     * returns.
+     *
+     * @param targetSizes the sizes of the images to render.
+     * @param xmlFileContent VectorDrawable's XML file's content.
+     * @param errorLog log for the parsing errors and warnings.
+     * @param buffers the buffers to draw the images into, or null to allocate new images.
+     * @param consumer receives each target size and the image rendered for it, in order.
+     * @return false if the XML content is empty, in which case no image is rendered
+     */
+    public static boolean renderVectorXml(
+            @NonNull List<TargetSize> targetSizes,
+            @Nullable String xmlFileContent,
+            @Nullable StringBuilder errorLog,
+            @Nullable ImageBuffers buffers,
+            @NonNull ImageConsumer consumer)
+            throws IOException {
+        if (Strings.isNullOrEmpty(xmlFileContent)) {
+            return false;
+        }
+
+        InputStream inputStream = new ByteArrayInputStream(xmlFileContent.getBytes(UTF_8));
+        VdTree vdTree = VdParser.parse(inputStream, errorLog);
+
+        for (TargetSize targetSize : targetSizes) {
+            Dimension imageSize = getImageSize(targetSize, vdTree, errorLog);
+            BufferedImage image =
+                    buffers != null
+                            ? buffers.get(imageSize)
+                            : AssetUtil.newArgbBufferedImage(imageSize.width, imageSize.height);
+            vdTree.drawIntoImage(image);
+            consumer.accept(targetSize, image);
+        }
+        return true;
+    }
+
+    /** Receives the images rendered by {@link #renderVectorXml}. */
+    public interface ImageConsumer {
+        void accept(@NonNull TargetSize targetSize, @NonNull BufferedImage image)
+                throws IOException;
+    }
+
+    @NonNull
+    private static Dimension getImageSize(@NonNull TargetSize targetSize,
+                                          @NonNull VdTree vdTree,
+                                          @Nullable StringBuilder errorLog) {
         // If the forceImageSize is set (>0), then we honor that.
         // Otherwise, we will ask the vector drawable for the prefer size, then apply the imageScale.
         double vdWidth = vdTree.getBaseWidth();
@@ -260,12 +350,9 @@ public class VdPreview {
         }
 
         // Create the image according to the vector drawable's aspect ratio.
-        BufferedImage image =
-                AssetUtil.newArgbBufferedImage(
-                        roundToInt(imageWidth, RoundingMode.HALF_UP),
-                        roundToInt(imageHeight, RoundingMode.HALF_UP));
-        vdTree.drawIntoImage(image);
-        return image;
+        return new Dimension(
+                roundToInt(imageWidth, RoundingMode.HALF_UP),
+                roundToInt(imageHeight, RoundingMode.HALF_UP));
     }
 
     private static double limitToInterval(double value, double begin, double end) {
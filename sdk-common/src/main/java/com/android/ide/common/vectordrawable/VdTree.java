@@ -88,8 +88,10 @@ class VdTree {
         Graphics2D gFinal = (Graphics2D) image.getGraphics();
         int width = image.getWidth();
         int height = image.getHeight();
-        gFinal.setColor(new Color(255, 255, 255, 0));
+        // Clear the image, which may be reused from a previous drawing.
+        gFinal.setComposite(AlphaComposite.Clear);
         gFinal.fillRect(0, 0, width, height);
+        gFinal.setComposite(AlphaComposite.SrcOver);
 
         if (mRootAlpha < 1.0) {
             // Draw into a temporary image, then draw into the result image applying alpha blending.
@@ -19,6 +19,7 @@ package com.android.ide.common.blame;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import java.io.File;
@@ -175,34 +176,84 @@ public class MergingLogTest {
 
         mergingLog.write();
         assertThat(tempDir.listFiles()).isNotEmpty();
-        File expectedLogFile = new File(new File(tempDir, "multi-v2"), "values.json");
+        assertThat(new File(new File(tempDir, "multi-v3"), "values.bin").exists()).isTrue();
+        assertThat(new File(new File(tempDir, "multi-v2"), "values.json").exists()).isFalse();
+        checkMinimalLog(
+                MergingLogPersistUtil.loadFromMultiFileVersion3(tempDir, "values"), outputFile, map);
+
+        // The version 2 format is still read when there is no log in the binary format.
+        File legacyDir = mTemporaryFolder.newFolder();
+        MergingLogPersistUtil.saveToMultiFileVersion2(
+                legacyDir, "values", ImmutableMap.of(new SourceFile(outputFile), map));
+        File expectedLogFile = new File(new File(legacyDir, "multi-v2"), "values.json");
         assertThat(expectedLogFile.exists()).isTrue();
         String log = Files.asCharSource(expectedLogFile, Charsets.UTF_8).read();
         assertThat(log).doesNotContain("\"to\"");
         assertThat(log).doesNotContain("endLines");
 
         // now reload the minimal log and assert that memory model is correct.
-        Map<SourceFile, Map<SourcePosition, SourceFilePosition>> values =
-                MergingLogPersistUtil.loadFromMultiFileVersion2(tempDir, "values");
+        checkMinimalLog(
+                MergingLogPersistUtil.loadFromMultiFileVersion3(legacyDir, "values"), outputFile, map);
+    }
 
+    private static void checkMinimalLog(
+            Map<SourceFile, Map<SourcePosition, SourceFilePosition>> values,
+            File outputFile,
+            Map<SourcePosition, SourceFilePosition> expected) {
         assertThat(values).hasSize(1);
         Map<SourcePosition, SourceFilePosition> loadedMap = values.get(new SourceFile(outputFile));
         assertThat(loadedMap).isNotNull();
-        assertThat(loadedMap).hasSize(2);
-
-        SourceFilePosition sourceFilePosition1 = loadedMap.get(sourcePosition1);
-        assertThat(sourceFilePosition1).isNotNull();
-        assertThat(sourceFilePosition1.getPosition()).isEqualTo(sourcePosition1);
-        assertThat(sourceFilePosition1.getFile().getSourceFile()).isEqualTo(sourceFile1);
-        assertThat(sourceFilePosition1.getPosition().getEndLine())
-                .isEqualTo(position1.getPosition().getEndLine());
-
-        SourceFilePosition sourceFilePosition2 = loadedMap.get(sourcePosition2);
-        assertThat(sourceFilePosition2).isNotNull();
-        assertThat(sourceFilePosition2.getPosition()).isEqualTo(sourcePosition2);
-        assertThat(sourceFilePosition2.getFile().getSourceFile()).isEqualTo(sourceFile2);
-        assertThat(sourceFilePosition2.getPosition().getEndLine())
-                .isEqualTo(position2.getPosition().getEndLine());
+        assertThat(loadedMap).containsExactlyEntriesIn(expected);
+    }
+
+    @Test
+    public void testBinaryShardRoundTrip() throws IOException {
+        SourceFile output = new SourceFile(absoluteFile("merged/values/values.xml"));
+        SourceFile otherOutput = new SourceFile(absoluteFile("merged/values/other.xml"));
+        SourceFile source = new SourceFile(absoluteFile("exploded/a/values/values.xml"));
+        SourceFile described = new SourceFile(absoluteFile("exploded/b/values/values.xml"), "b");
+
+        Map<SourcePosition, SourceFilePosition> map = Maps.newLinkedHashMap();
+        map.put(
+                new SourcePosition(1, 2, 3, 7, 1, 120),
+                new SourceFilePosition(source, new SourcePosition(7, 8, 20)));
+        map.put(
+                new SourcePosition(4, -1, -1, 6, -1, -1),
+                new SourceFilePosition(described, new SourcePosition(2, 3, 14, 2, 30, 41)));
+        map.put(
+                new SourcePosition(2, 4, 10, 2, 8, 14),
+                new SourceFilePosition(SourceFile.UNKNOWN, SourcePosition.UNKNOWN));
+        Map<SourcePosition, SourceFilePosition> otherMap =
+                ImmutableMap.of(
+                        new SourcePosition(100000, 1, 3000000),
+                        new SourceFilePosition(source, new SourcePosition(0, 0, 0)));
+
+        File tempDir = mTemporaryFolder.newFolder();
+        MergingLogPersistUtil.saveToMultiFileVersion3(
+                tempDir, "values", ImmutableMap.of(output, map, otherOutput, otherMap));
+
+        Map<SourceFile, Map<SourcePosition, SourceFilePosition>> loaded =
+                MergingLogPersistUtil.loadFromMultiFileVersion3(tempDir, "values");
+        assertThat(loaded.keySet()).containsExactly(output, otherOutput);
+        assertThat(loaded.get(output)).containsExactlyEntriesIn(map).inOrder();
+        assertThat(loaded.get(otherOutput)).containsExactlyEntriesIn(otherMap);
+        assertThat(
+                        loaded.get(output)
+                                .get(new SourcePosition(4, -1, -1, 6, -1, -1))
+                                .getFile()
+                                .getDescription())
+                .isEqualTo("b");
+
+        // Saving the loaded maps again, e.g. after an incremental change, replaces the file.
+        loaded.remove(otherOutput);
+        MergingLogPersistUtil.saveToMultiFileVersion3(tempDir, "values", loaded);
+        assertThat(MergingLogPersistUtil.loadFromMultiFileVersion3(tempDir, "values"))
+                .containsExactly(output, map);
+
+        // And an empty shard deletes it.
+        MergingLogPersistUtil.saveToMultiFileVersion3(tempDir, "values", ImmutableMap.of());
+        assertThat(new File(new File(tempDir, "multi-v3"), "values.bin").exists()).isFalse();
+        assertThat(MergingLogPersistUtil.loadFromMultiFileVersion3(tempDir, "values")).isEmpty();
     }
 
     private File testPath;
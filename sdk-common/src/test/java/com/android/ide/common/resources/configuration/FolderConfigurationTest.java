@@ -623,6 +623,29 @@ public class FolderConfigurationTest {
         assertThat(blankFolder).hasNoVersion();
     }
 
+    @Test
+    public void cachedConfigsAreCopies() {
+        FolderConfiguration first = FolderConfiguration.getConfigForFolder("values-en-hdpi");
+        FolderConfiguration second = FolderConfiguration.getConfigForFolder("values-en-hdpi");
+        Truth.assertThat(first).isNotNull();
+        Truth.assertThat(second).isEqualTo(first);
+        Truth.assertThat(second).isNotSameAs(first);
+
+        first.setVersionQualifier(new VersionQualifier(21));
+        first.setDensityQualifier(null);
+        Truth.assertThat(first.getQualifierString()).isEqualTo("en-v21");
+        assertThat(first).isMatchFor(FolderConfiguration.getConfigForQualifierString("en-v21"));
+
+        FolderConfiguration third = FolderConfiguration.getConfigForFolder("values-en-hdpi");
+        Truth.assertThat(third.getQualifierString()).isEqualTo("en-hdpi");
+        assertThat(third).hasNoVersion();
+        assertThat(third).hasDensity(Density.HIGH);
+
+        Truth.assertThat(FolderConfiguration.getConfigForFolder("values-")).isNull();
+        Truth.assertThat(FolderConfiguration.getConfigForFolder("values-notaqualifier")).isNull();
+        Truth.assertThat(FolderConfiguration.getConfigForFolder("values-notaqualifier")).isNull();
+    }
+
     @Test
     public void screenSizeMatching() {
         runConfigMatchTest("normal-v21", 2, "", "v21", "normal", "large");
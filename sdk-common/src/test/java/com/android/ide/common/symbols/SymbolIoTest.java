@@ -1118,4 +1118,69 @@ public class SymbolIoTest {
         FileSubject.assertThat(rClass).exists();
         FileSubject.assertThat(rClass).contains("e_ë = 0x0");
     }
+
+    @Test
+    public void testBinaryFormat() throws Exception {
+        SymbolTable table =
+                SymbolTable.builder()
+                        .tablePackage("com.example.lib")
+                        .add(new Symbol.NormalSymbol(ResourceType.STRING, "b", 0x7f010002))
+                        .add(
+                                new Symbol.NormalSymbol(
+                                        ResourceType.STRING,
+                                        "a",
+                                        0x7f010001,
+                                        ResourceVisibility.PUBLIC))
+                        .add(new Symbol.NormalSymbol(ResourceType.ID, "e_ë", 0x7f030001))
+                        .add(new Symbol.AttributeSymbol("color", 0x7f020001, true))
+                        .add(
+                                new Symbol.StyleableSymbol(
+                                        "Foo",
+                                        ImmutableList.of(0x7f020001, 0x01010000),
+                                        ImmutableList.of("color", "android:text")))
+                        .build();
+
+        Path file = mTemporaryFolder.newFile("symbols.bin").toPath();
+        SymbolIo.writeBinary(table, file);
+        SymbolTable read = SymbolIo.readBinary(file);
+
+        assertThat(read).isEqualTo(table);
+        assertThat(read.getTablePackage()).isEqualTo("com.example.lib");
+        assertThat(read.getSymbolByResourceType(ResourceType.STRING))
+                .containsExactlyElementsIn(table.getSymbolByResourceType(ResourceType.STRING))
+                .inOrder();
+        assertTrue(read.containsSymbol(ResourceType.STRING, "a"));
+        assertTrue(read.containsSymbol(ResourceType.STYLEABLE, "Foo_android_text"));
+        assertFalse(read.containsSymbol(ResourceType.STRING, "c"));
+        assertFalse(read.containsSymbol(ResourceType.LAYOUT, "a"));
+
+        // Binary tables can be read where R-def files are expected.
+        assertThat(SymbolIo.readRDef(file)).isEqualTo(table);
+    }
+
+    @Test
+    public void testBinaryFormatMerge() throws Exception {
+        SymbolTable first =
+                SymbolTable.builder()
+                        .tablePackage("com.example.first")
+                        .add(new Symbol.NormalSymbol(ResourceType.STRING, "a", 1))
+                        .build();
+        SymbolTable second =
+                SymbolTable.builder()
+                        .tablePackage("com.example.second")
+                        .add(new Symbol.NormalSymbol(ResourceType.STRING, "a", 2))
+                        .add(new Symbol.NormalSymbol(ResourceType.STRING, "b", 3))
+                        .build();
+        Path firstFile = mTemporaryFolder.newFile("first.bin").toPath();
+        SymbolIo.writeBinary(first, firstFile);
+        Path secondFile = mTemporaryFolder.newFile("second.bin").toPath();
+        SymbolIo.writeBinary(second, secondFile);
+
+        SymbolTable merged =
+                SymbolTable.merge(
+                        ImmutableList.of(
+                                SymbolIo.readBinary(firstFile), SymbolIo.readBinary(secondFile)));
+
+        assertThat(merged).isEqualTo(SymbolTable.merge(ImmutableList.of(first, second)));
+    }
 }
@@ -127,6 +127,37 @@ public class SymbolTableTest {
         assertEquals(expected, r);
     }
 
+    @Test
+    public void mergeKeepsSymbolsSorted() {
+        SymbolTable m0 =
+                SymbolTable.builder()
+                        .tablePackage("bar")
+                        .add(createSymbol("string", "d", "int", 1))
+                        .add(createSymbol("string", "b", "int", 2))
+                        .build();
+
+        SymbolTable m1 =
+                SymbolTable.builder()
+                        .tablePackage("muu")
+                        .add(createSymbol("string", "c", "int", 3))
+                        .add(createSymbol("string", "b", "int", 4))
+                        .add(createSymbol("string", "a", "int", 5))
+                        .build();
+
+        SymbolTable r = SymbolTable.merge(Arrays.asList(m0, m1));
+
+        assertThat(r.getSymbolByResourceType(ResourceType.STRING))
+                .containsExactly(
+                        createSymbol("string", "a", "int", 5),
+                        createSymbol("string", "b", "int", 2),
+                        createSymbol("string", "c", "int", 3),
+                        createSymbol("string", "d", "int", 1))
+                .inOrder();
+        assertTrue(r.containsSymbol(ResourceType.STRING, "c"));
+        assertFalse(r.containsSymbol(ResourceType.STRING, "e"));
+        assertFalse(r.containsSymbol(ResourceType.ATTR, "a"));
+    }
+
     @Test
     public void tableFilter() {
         SymbolTable t =